@@ -0,0 +1,81 @@
+package net.sharksystem.messenger.android;
+
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Wraps session keys (see {@link SessionKeyCache}) with an AES key that never leaves Android
+ * key store. Key is created on first use. Wrapped key: nonce, AES-GCM ciphertext.
+ */
+public class AndroidSessionKeyProtection implements SessionKeyCache.KeyProtection {
+    private static final String KEYSTORE_NAME = "AndroidKeyStore";
+    private static final String ALIAS = "SN2SessionKeyProtection";
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int KEY_SIZE = 256;
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH_IN_BITS = 128;
+
+    private SecretKey wrappingKey = null;
+
+    @Override
+    public byte[] protect(byte[] key) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(CIPHER);
+        // key store chooses nonce - caller provided ones are refused
+        cipher.init(Cipher.ENCRYPT_MODE, this.getWrappingKey());
+        byte[] nonce = cipher.getIV();
+        byte[] cipherText = cipher.doFinal(key);
+
+        byte[] protectedKey = Arrays.copyOf(nonce, nonce.length + cipherText.length);
+        System.arraycopy(cipherText, 0, protectedKey, nonce.length, cipherText.length);
+        return protectedKey;
+    }
+
+    @Override
+    public byte[] unprotect(byte[] protectedKey) throws GeneralSecurityException {
+        if(protectedKey.length <= NONCE_LENGTH) {
+            throw new GeneralSecurityException("protected key too short");
+        }
+
+        Cipher cipher = Cipher.getInstance(CIPHER);
+        cipher.init(Cipher.DECRYPT_MODE, this.getWrappingKey(),
+                new GCMParameterSpec(TAG_LENGTH_IN_BITS, protectedKey, 0, NONCE_LENGTH));
+        return cipher.doFinal(protectedKey, NONCE_LENGTH, protectedKey.length - NONCE_LENGTH);
+    }
+
+    private synchronized SecretKey getWrappingKey() throws GeneralSecurityException {
+        if(this.wrappingKey != null) return this.wrappingKey;
+
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE_NAME);
+        try {
+            keyStore.load(null);
+        } catch (IOException e) {
+            throw new GeneralSecurityException("cannot load key store: " + e.getLocalizedMessage());
+        }
+
+        if(keyStore.containsAlias(ALIAS)) {
+            this.wrappingKey = (SecretKey) keyStore.getKey(ALIAS, null);
+        } else {
+            KeyGenerator keyGenerator = KeyGenerator.getInstance(
+                    KeyProperties.KEY_ALGORITHM_AES, KEYSTORE_NAME);
+            keyGenerator.init(new KeyGenParameterSpec.Builder(ALIAS,
+                    KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                    .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                    .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                    .setKeySize(KEY_SIZE)
+                    .build());
+            this.wrappingKey = keyGenerator.generateKey();
+        }
+
+        return this.wrappingKey;
+    }
+}
@@ -0,0 +1,362 @@
+package net.sharksystem.messenger.android;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects session encrypted content (see {@link SessionKeyCache}) sent to single recipients
+ * of a channel within a short window. Collected content leaves as one message to all those
+ * recipients - one write, one signature and one round trip over each hub and Bluetooth
+ * connection instead of one per recipient. A batch is sent earlier if it gets too large.
+ * <p>
+ * Content that is alone in its window is sent as it is - sealed content without batch envelope.
+ * <p>
+ * An entry is recipient and sequence number. A burst of messages to the same recipients
+ * leaves as one batch - entries of a recipient are numbered in the order they were added.
+ * Plain (not session encrypted) messages are not batched at all.
+ * <p>
+ * Envelope: magic, version, number of entries, per entry: recipient, sequence number and
+ * sealed content. Version 1 envelopes (one entry per recipient, no sequence number) are read.
+ */
+public class OutgoingMessageBatcher {
+    public static final long DEFAULT_WINDOW_IN_MILLIS = 50;
+    public static final int DEFAULT_MAX_BATCH_BYTES = 64 * 1024;
+
+    private static final byte[] MAGIC = {'S', 'N', '2', 'B'};
+    private static final byte ENVELOPE_VERSION = 2;
+    private static final byte ENVELOPE_VERSION_SINGLE_ENTRY = 1;
+    private static final int MAX_ENTRIES = 10000;
+    private static final int MAX_ENTRY_LENGTH = 16 * 1024 * 1024;
+
+    /** batch sizes 1, 2, 3-4, 5-8, ... 65-128, more */
+    static final int HISTOGRAM_BUCKETS = 9;
+
+    /**
+     * Hands batches to the messenger.
+     */
+    public interface Sender {
+        void send(byte[] content, CharSequence uri, Set<CharSequence> recipients, boolean sign)
+                throws Exception;
+
+        /** batch is lost - e.g. start new sessions with those recipients */
+        void failed(Set<CharSequence> recipients, Exception e);
+    }
+
+    private final Sender sender;
+    private volatile long windowInMillis;
+    private volatile int maxBatchBytes;
+
+    /** channel and sign flag -> batch that is collected */
+    private final Map<String, Batch> open = new HashMap<>();
+
+    private final ScheduledExecutorService sendExecutor;
+
+    private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+    private final AtomicLongArray histogramBytes = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+    public OutgoingMessageBatcher(Sender sender, long windowInMillis, int maxBatchBytes) {
+        this.sender = sender;
+        this.setWindow(windowInMillis, maxBatchBytes);
+        this.sendExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SN2MessageBatcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param windowInMillis how long content waits for more - 0 sends each at once
+     * @param maxBatchBytes batch leaves before window ends if it gets that large
+     */
+    public void setWindow(long windowInMillis, int maxBatchBytes) {
+        if(windowInMillis < 0 || maxBatchBytes <= 0) {
+            throw new IllegalArgumentException("window must not be negative, size positive");
+        }
+        this.windowInMillis = windowInMillis;
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    public long getWindowInMillis() {
+        return this.windowInMillis;
+    }
+
+    public int getMaxBatchBytes() {
+        return this.maxBatchBytes;
+    }
+
+    /**
+     * @return true if content was produced by batching content of several recipients
+     */
+    public static boolean isBatch(byte[] content) {
+        if(content == null || content.length < MAGIC.length + 5) return false;
+        for(int i = 0; i < MAGIC.length; i++) {
+            if(content[i] != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         batching                                        //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Queue content for a single recipient - sent when window ends or batch is full.
+     * @param sealed content produced by {@link SessionKeyCache#seal(byte[], CharSequence)}
+     */
+    public void add(CharSequence uri, CharSequence recipient, byte[] sealed, boolean sign) {
+        String key = (sign ? "s:" : "u:") + uri;
+        Batch full = null;
+        Batch started = null;
+
+        synchronized(this.open) {
+            Batch batch = this.open.get(key);
+            if(batch == null) {
+                batch = new Batch(uri, sign);
+                this.open.put(key, batch);
+                started = batch;
+            }
+            batch.add(recipient, sealed);
+
+            if(batch.bytes >= this.maxBatchBytes || batch.contents.size() >= MAX_ENTRIES
+                    || this.windowInMillis == 0) {
+                this.open.remove(key);
+                full = batch;
+                started = null;
+            }
+        }
+
+        if(full != null) {
+            this.submit(full);
+        } else if(started != null) {
+            final String batchKey = key;
+            final Batch batch = started;
+            this.sendExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    OutgoingMessageBatcher.this.flush(batchKey, batch);
+                }
+            }, this.windowInMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush(String key, Batch batch) {
+        synchronized(this.open) {
+            // already sent because it was full or flushed
+            if(this.open.get(key) != batch) return;
+            this.open.remove(key);
+        }
+        this.send(batch);
+    }
+
+    private void submit(final Batch batch) {
+        this.sendExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                OutgoingMessageBatcher.this.send(batch);
+            }
+        });
+    }
+
+    private void send(Batch batch) {
+        int size = batch.contents.size();
+        try {
+            byte[] content = size == 1 ? batch.contents.get(0) : batch.pack();
+            this.count(size, content.length);
+            this.sender.send(content, batch.uri,
+                    new LinkedHashSet<CharSequence>(batch.recipients.keySet()), batch.sign);
+        } catch (Exception e) {
+            Log.w(this.getLogStart(), "cannot send batch of " + size + " to " + batch.uri
+                    + ": " + e.getLocalizedMessage());
+            this.sender.failed(new LinkedHashSet<CharSequence>(batch.recipients.keySet()), e);
+        }
+    }
+
+    private static class Batch {
+        final CharSequence uri;
+        final boolean sign;
+        /** recipient -> entries of that recipient so far */
+        final Map<String, Integer> recipients = new LinkedHashMap<>();
+        final List<String> entryRecipients = new ArrayList<>();
+        final List<Integer> sequences = new ArrayList<>();
+        final List<byte[]> contents = new ArrayList<>();
+        int bytes = 0;
+
+        Batch(CharSequence uri, boolean sign) {
+            this.uri = uri;
+            this.sign = sign;
+        }
+
+        void add(CharSequence recipient, byte[] sealed) {
+            String recipientID = recipient.toString();
+            Integer sequence = this.recipients.get(recipientID);
+            if(sequence == null) sequence = 0;
+            this.recipients.put(recipientID, sequence + 1);
+
+            this.entryRecipients.add(recipientID);
+            this.sequences.add(sequence);
+            this.contents.add(sealed);
+            this.bytes += sealed.length;
+        }
+
+        byte[] pack() throws IOException {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(this.bytes + 64);
+            DataOutputStream dos = new DataOutputStream(baos);
+            dos.write(MAGIC);
+            dos.writeByte(ENVELOPE_VERSION);
+            dos.writeInt(this.contents.size());
+            for(int i = 0; i < this.contents.size(); i++) {
+                dos.writeUTF(this.entryRecipients.get(i));
+                dos.writeInt(this.sequences.get(i));
+                dos.writeInt(this.contents.get(i).length);
+                dos.write(this.contents.get(i));
+            }
+            return baos.toByteArray();
+        }
+    }
+
+    /**
+     * @return sealed content for recipient in sequence order - empty if batch holds nothing
+     * for recipient
+     * @throws IOException if batch is malformed
+     */
+    public static List<byte[]> unpack(byte[] batch, CharSequence recipient) throws IOException {
+        return unpackEntries(batch, recipient.toString());
+    }
+
+    /**
+     * Sender can read each entry - entries of each recipient hold same content sealed with
+     * sender's outgoing session of that recipient.
+     * @return sealed content of recipient of first entry in sequence order, empty if batch
+     * is empty
+     * @throws IOException if batch is malformed
+     */
+    public static List<byte[]> unpackFirst(byte[] batch) throws IOException {
+        return unpackEntries(batch, null);
+    }
+
+    /**
+     * @param recipientID null: recipient of first entry
+     */
+    private static List<byte[]> unpackEntries(byte[] batch, String recipientID)
+            throws IOException {
+
+        if(!isBatch(batch)) throw new IOException("not a message batch");
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(batch));
+        dis.skipBytes(MAGIC.length);
+        byte version = dis.readByte();
+        if(version != ENVELOPE_VERSION && version != ENVELOPE_VERSION_SINGLE_ENTRY) {
+            throw new IOException("unknown batch version: " + version);
+        }
+
+        int number = dis.readInt();
+        if(number < 0 || number > MAX_ENTRIES) throw new IOException("batch size out of range");
+
+        // sequence number -> sealed content
+        Map<Integer, byte[]> entries = new HashMap<>();
+        for(int i = 0; i < number; i++) {
+            String entryRecipient = dis.readUTF();
+            int sequence = version == ENVELOPE_VERSION_SINGLE_ENTRY ? 0 : dis.readInt();
+            int length = dis.readInt();
+            if(length < 0 || length > MAX_ENTRY_LENGTH) {
+                throw new IOException("batch entry length out of range: " + length);
+            }
+            if(recipientID == null) recipientID = entryRecipient;
+
+            if(entryRecipient.equals(recipientID)) {
+                byte[] sealed = new byte[length];
+                dis.readFully(sealed);
+                if(entries.put(sequence, sealed) != null) {
+                    throw new IOException("sequence number used twice: " + sequence);
+                }
+            } else {
+                dis.skipBytes(length);
+            }
+        }
+
+        List<Integer> sequences = new ArrayList<>(entries.keySet());
+        Collections.sort(sequences);
+        List<byte[]> sealed = new ArrayList<>(sequences.size());
+        for(Integer sequence : sequences) sealed.add(entries.get(sequence));
+        return sealed;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                       statistics                                        //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    static int bucket(int batchSize) {
+        int bucket = 0;
+        int upperBound = 1;
+        while(batchSize > upperBound && bucket < HISTOGRAM_BUCKETS - 1) {
+            upperBound <<= 1;
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private void count(int batchSize, int bytes) {
+        int bucket = bucket(batchSize);
+        this.histogram.incrementAndGet(bucket);
+        this.histogramBytes.addAndGet(bucket, bytes);
+    }
+
+    /**
+     * @return number of batches handed to messenger per bucket - 1, 2, 3-4, 5-8, ..., 65-128, more
+     */
+    long[] getHistogram() {
+        long[] histogram = new long[HISTOGRAM_BUCKETS];
+        for(int i = 0; i < HISTOGRAM_BUCKETS; i++) histogram[i] = this.histogram.get(i);
+        return histogram;
+    }
+
+    /**
+     * @return window and one line per used histogram bucket: batches and average batch size
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("window ms: ").append(this.windowInMillis)
+                .append(", max bytes: ").append(this.maxBatchBytes);
+
+        int lowerBound = 1;
+        for(int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            int upperBound = 1 << i;
+            long batches = this.histogram.get(i);
+            if(batches > 0) {
+                sb.append("\n");
+                if(i == HISTOGRAM_BUCKETS - 1) sb.append(">").append(lowerBound - 1);
+                else if(lowerBound == upperBound) sb.append(lowerBound);
+                else sb.append(lowerBound).append("-").append(upperBound);
+                sb.append(" messages: ").append(batches).append(" batches, avg bytes ")
+                        .append(this.histogramBytes.get(i) / batches);
+            }
+            lowerBound = upperBound + 1;
+        }
+        return sb.toString();
+    }
+
+    private String getLogStart() {
+        return this.getClass().getSimpleName();
+    }
+}
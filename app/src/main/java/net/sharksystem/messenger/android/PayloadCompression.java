@@ -0,0 +1,489 @@
+package net.sharksystem.messenger.android;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflates message content before it is handed to ASAP - it travels compressed over hubs
+ * and Bluetooth and is stored compressed.
+ * <p>
+ * Older app versions cannot read compressed content. Content is compressed if user switched
+ * it on for all messages or if each recipient is known to read it. A peer is known to read it
+ * after we received compressed content from it in a message with verified signature - those
+ * peers are kept in app storage.
+ * <p>
+ * Already encrypted and other high-entropy content is not compressed, neither is content
+ * that would not get smaller or is larger than {@value #MAX_CONTENT_LENGTH} bytes.
+ * Compression ratio is counted per channel.
+ * <p>
+ * Content length in envelope is not trusted: output grows while inflating and inflating
+ * stops beyond that length or the limit. Messages are shown again and again - small
+ * decompressed content is cached, least recently used is dropped.
+ * <p>
+ * Envelope: magic, version, dictionary id, content length, raw deflate data.
+ */
+public class PayloadCompression {
+    private static final String CAPABLE_PEERS_FILE_NAME = "SN2CompressionPeers";
+    private static final int FORMAT_VERSION = 1;
+    private static final long SAVE_DELAY_IN_MILLIS = 2000;
+
+    private static final byte[] MAGIC = {'S', 'N', '2', 'Z'};
+    private static final byte ENVELOPE_VERSION = 1;
+    private static final int HEADER_LENGTH = MAGIC.length + 2 + 4;
+    static final byte DICTIONARY_NONE = 0;
+    static final byte DICTIONARY_TEXT = 1;
+
+    /** smaller content does not win enough to pay for the envelope */
+    static final int MIN_CONTENT_LENGTH = 64;
+    private static final int ENTROPY_SAMPLE_LENGTH = 4096;
+    /** random or encrypted bytes come close to 8 */
+    static final double MAX_BITS_PER_BYTE = 7.2;
+    static final int MAX_CONTENT_LENGTH = 1024 * 1024;
+    private static final int MAX_CACHED_CONTENT_LENGTH = 16 * 1024;
+    private static final int MAX_CACHED_ENTRIES = 128;
+
+    /**
+     * Preset dictionary for short text messages - deflate finds matches even in the
+     * first message. Most likely strings come last. Never change it, add another one.
+     */
+    private static final byte[] TEXT_DICTIONARY = (
+            "https://www. http://  .com .org .net .de sharknet shark hub peer bluetooth "
+            + "Thank you! thanks Danke! Bitte Hallo Hello Hi, Ja Nein yes no okay OK "
+            + "heute morgen gestern today tomorrow yesterday meeting treffen "
+            + "ich du wir ihr sie nicht und oder aber das die der ist ein eine "
+            + "you we they not and or but that this the is are a an to of in on at for with "
+            + "I'm I am it's don't can't will would could should have has had was were be "
+            ).getBytes(StandardCharsets.UTF_8);
+
+    private final File capablePeersFile;
+    private final Set<String> capablePeers = new HashSet<>();
+    private volatile boolean compressAll;
+
+    /** channel uri -> statistics */
+    private final Map<String, ChannelStats> channelStats = new ConcurrentHashMap<>();
+
+    /** compressed content -> decompressed content */
+    private final Map<ByteBuffer, byte[]> decompressed =
+            new LinkedHashMap<ByteBuffer, byte[]>(MAX_CACHED_ENTRIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ByteBuffer, byte[]> eldest) {
+                    return this.size() > MAX_CACHED_ENTRIES;
+                }
+            };
+
+    private final ScheduledExecutorService saveExecutor;
+    private boolean saveScheduled = false;
+
+    /**
+     * @param compressAll compress content to any recipient - not only to peers known to read it
+     */
+    public PayloadCompression(File filesDir, boolean compressAll) {
+        this.capablePeersFile = new File(filesDir, CAPABLE_PEERS_FILE_NAME);
+        this.compressAll = compressAll;
+        this.saveExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SN2CompressionPeersWriter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.restore();
+    }
+
+    public void setCompressAll(boolean compressAll) {
+        this.compressAll = compressAll;
+    }
+
+    public boolean isCompressAll() {
+        return this.compressAll;
+    }
+
+    /**
+     * @return true if content was produced by {@link #compress(byte[], CharSequence, Set)}
+     */
+    public static boolean isCompressed(byte[] content) {
+        if(content == null || content.length < HEADER_LENGTH) return false;
+        for(int i = 0; i < MAGIC.length; i++) {
+            if(content[i] != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                 compress / decompress                                   //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param recipients null or empty if message goes to anybody
+     * @return compressed content or content itself if it is not worth it or a recipient
+     * might not read it
+     */
+    public byte[] compress(byte[] content, CharSequence uri, Set<CharSequence> recipients) {
+        ChannelStats stats = this.getStats(uri);
+        if(!this.compressAll && !this.readableBy(recipients)) {
+            stats.passed(content.length);
+            return content;
+        }
+
+        if(content.length < MIN_CONTENT_LENGTH || content.length > MAX_CONTENT_LENGTH) {
+            stats.passed(content.length);
+            return content;
+        }
+
+        if(SessionKeyCache.isSealed(content) || isCompressed(content)
+                || bitsPerByte(content) > MAX_BITS_PER_BYTE) {
+            stats.bypassed(content.length);
+            return content;
+        }
+
+        byte[] compressed = deflate(content, DICTIONARY_TEXT);
+        if(compressed.length >= content.length) {
+            stats.bypassed(content.length);
+            return content;
+        }
+
+        stats.compressed(content.length, compressed.length);
+        return compressed;
+    }
+
+    /**
+     * @param sender verified sender of content - is known to read compressed content
+     * afterwards. null if sender is not verified: nothing is learned.
+     * @return decompressed content or content itself if it was not compressed - do not change
+     * it, it could be cached
+     * @throws IOException if compressed content is corrupted or too large
+     */
+    public byte[] decompress(byte[] content, CharSequence sender) throws IOException {
+        if(!isCompressed(content)) return content;
+
+        ByteBuffer key = ByteBuffer.wrap(content);
+        byte[] decompressed;
+        synchronized(this.decompressed) {
+            decompressed = this.decompressed.get(key);
+        }
+
+        if(decompressed == null) {
+            decompressed = inflate(content);
+            if(decompressed.length <= MAX_CACHED_CONTENT_LENGTH) {
+                synchronized(this.decompressed) {
+                    this.decompressed.put(key, decompressed);
+                }
+            }
+        }
+
+        if(sender != null) this.learned(sender.toString());
+        return decompressed;
+    }
+
+    private boolean readableBy(Set<CharSequence> recipients) {
+        if(recipients == null || recipients.isEmpty()) return false;
+        synchronized(this.capablePeers) {
+            for(CharSequence recipient : recipients) {
+                if(!this.capablePeers.contains(recipient.toString())) return false;
+            }
+        }
+        return true;
+    }
+
+    private void learned(String peerID) {
+        synchronized(this.capablePeers) {
+            // saved later - no I/O on the decompression path
+            if(this.capablePeers.add(peerID)) this.scheduleSave();
+        }
+    }
+
+    static byte[] deflate(byte[] content, byte dictionary) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            if(dictionary == DICTIONARY_TEXT) deflater.setDictionary(TEXT_DICTIONARY);
+            deflater.setInput(content);
+            deflater.finish();
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(content.length / 2 + 16);
+            baos.write(MAGIC, 0, MAGIC.length);
+            baos.write(ENVELOPE_VERSION);
+            baos.write(dictionary);
+            baos.write(content.length >>> 24);
+            baos.write(content.length >>> 16);
+            baos.write(content.length >>> 8);
+            baos.write(content.length);
+
+            byte[] buffer = new byte[4096];
+            while(!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                baos.write(buffer, 0, length);
+            }
+            return baos.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] inflate(byte[] compressed) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(compressed));
+        dis.skipBytes(MAGIC.length);
+        int version = dis.readByte();
+        if(version != ENVELOPE_VERSION) {
+            throw new IOException("unknown compression envelope version: " + version);
+        }
+        int dictionary = dis.readByte();
+        if(dictionary != DICTIONARY_NONE && dictionary != DICTIONARY_TEXT) {
+            throw new IOException("unknown compression dictionary: " + dictionary);
+        }
+        int length = dis.readInt();
+        if(length < 0 || length > MAX_CONTENT_LENGTH) {
+            throw new IOException("compressed content length out of range: " + length);
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            // raw deflate data does not ask for its dictionary
+            if(dictionary == DICTIONARY_TEXT) inflater.setDictionary(TEXT_DICTIONARY);
+            inflater.setInput(compressed, HEADER_LENGTH, compressed.length - HEADER_LENGTH);
+
+            // grows with what is really inflated - declared length is not trusted
+            ByteArrayOutputStream content = new ByteArrayOutputStream(
+                    Math.min(length, compressed.length * 4));
+            byte[] buffer = new byte[4096];
+            while(!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if(inflated == 0 && inflater.needsInput()) {
+                    throw new IOException("compressed content truncated");
+                }
+                if(content.size() + inflated > length) {
+                    throw new IOException("compressed content longer than declared " + length);
+                }
+                content.write(buffer, 0, inflated);
+            }
+
+            if(content.size() != length) {
+                throw new IOException("compressed content shorter than declared " + length);
+            }
+            return content.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("corrupted compressed content: " + e.getLocalizedMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Shannon entropy of a sample of content.
+     * @return bits per byte - 8 for random data
+     */
+    static double bitsPerByte(byte[] content) {
+        int length = Math.min(content.length, ENTROPY_SAMPLE_LENGTH);
+        if(length == 0) return 0;
+
+        int[] counts = new int[256];
+        for(int i = 0; i < length; i++) counts[content[i] & 0xFF]++;
+
+        double bits = 0;
+        for(int count : counts) {
+            if(count == 0) continue;
+            double p = (double) count / length;
+            bits -= p * Math.log(p);
+        }
+        return bits / Math.log(2);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                       statistics                                        //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    ChannelStats getStats(CharSequence uri) {
+        String key = uri == null ? "" : uri.toString();
+        ChannelStats stats = this.channelStats.get(key);
+        if(stats == null) {
+            ChannelStats newStats = new ChannelStats(key);
+            stats = this.channelStats.putIfAbsent(key, newStats);
+            if(stats == null) stats = newStats;
+        }
+        return stats;
+    }
+
+    /**
+     * @return one line per channel - most saved bytes first
+     */
+    public String report() {
+        List<ChannelStats> stats = new ArrayList<>(this.channelStats.values());
+        if(stats.isEmpty()) return "nothing sent yet";
+
+        Collections.sort(stats, new Comparator<ChannelStats>() {
+            @Override
+            public int compare(ChannelStats s1, ChannelStats s2) {
+                return Long.compare(s2.getSavedBytes(), s1.getSavedBytes());
+            }
+        });
+
+        StringBuilder sb = new StringBuilder();
+        for(ChannelStats channel : stats) {
+            if(sb.length() > 0) sb.append("\n");
+            sb.append(channel);
+        }
+        return sb.toString();
+    }
+
+    static class ChannelStats {
+        private final String uri;
+        private final AtomicLong originalBytes = new AtomicLong();
+        private final AtomicLong sentBytes = new AtomicLong();
+        private final AtomicLong compressed = new AtomicLong();
+        private final AtomicLong bypassed = new AtomicLong();
+        private final AtomicLong passed = new AtomicLong();
+
+        ChannelStats(String uri) {
+            this.uri = uri;
+        }
+
+        void compressed(int originalLength, int compressedLength) {
+            this.originalBytes.addAndGet(originalLength);
+            this.sentBytes.addAndGet(compressedLength);
+            this.compressed.incrementAndGet();
+        }
+
+        /** not compressed - high entropy or would not get smaller */
+        void bypassed(int length) {
+            this.originalBytes.addAndGet(length);
+            this.sentBytes.addAndGet(length);
+            this.bypassed.incrementAndGet();
+        }
+
+        /** not compressed - too small or recipients might not read it */
+        void passed(int length) {
+            this.originalBytes.addAndGet(length);
+            this.sentBytes.addAndGet(length);
+            this.passed.incrementAndGet();
+        }
+
+        long getCompressed() {
+            return this.compressed.get();
+        }
+
+        long getBypassed() {
+            return this.bypassed.get();
+        }
+
+        long getPassed() {
+            return this.passed.get();
+        }
+
+        long getSavedBytes() {
+            return this.originalBytes.get() - this.sentBytes.get();
+        }
+
+        /**
+         * @return sent bytes / original bytes, 1 if nothing was compressed
+         */
+        double getRatio() {
+            long original = this.originalBytes.get();
+            return original == 0 ? 1 : (double) this.sentBytes.get() / original;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: ratio %.2f, saved %d bytes "
+                    + "(compressed %d, bypassed %d, as is %d)", this.uri, this.getRatio(),
+                    this.getSavedBytes(), this.getCompressed(), this.getBypassed(),
+                    this.getPassed());
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                       persistence                                       //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void scheduleSave() {
+        if(this.saveScheduled) return;
+        this.saveScheduled = true;
+
+        this.saveExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                PayloadCompression.this.save();
+            }
+        }, SAVE_DELAY_IN_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void save() {
+        List<String> snapshot;
+        synchronized(this.capablePeers) {
+            this.saveScheduled = false;
+            snapshot = new ArrayList<>(this.capablePeers);
+        }
+
+        File tmpFile = new File(this.capablePeersFile.getPath() + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(new FileOutputStream(tmpFile))) {
+            dos.writeInt(FORMAT_VERSION);
+            dos.writeInt(snapshot.size());
+            for(String peerID : snapshot) dos.writeUTF(peerID);
+        } catch (IOException e) {
+            Log.w(this.getLogStart(), "cannot write compression peers: " + e.getLocalizedMessage());
+            return;
+        }
+
+        if(!tmpFile.renameTo(this.capablePeersFile)) {
+            Log.w(this.getLogStart(), "cannot replace compression peers file");
+        }
+    }
+
+    /**
+     * Write peers known to read compressed content now - not after a delay.
+     */
+    void flush() {
+        this.save();
+    }
+
+    private void restore() {
+        if(!this.capablePeersFile.exists()) return;
+
+        try (DataInputStream dis =
+                     new DataInputStream(new FileInputStream(this.capablePeersFile))) {
+            int version = dis.readInt();
+            if(version != FORMAT_VERSION) {
+                Log.d(this.getLogStart(), "unknown compression peers file version - ignored");
+                return;
+            }
+
+            int number = dis.readInt();
+            synchronized(this.capablePeers) {
+                for(int i = 0; i < number; i++) this.capablePeers.add(dis.readUTF());
+            }
+        } catch (IOException e) {
+            Log.w(this.getLogStart(), "cannot read compression peers: " + e.getLocalizedMessage());
+        }
+    }
+
+    private String getLogStart() {
+        return this.getClass().getSimpleName();
+    }
+}
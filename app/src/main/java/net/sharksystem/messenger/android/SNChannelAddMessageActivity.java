@@ -14,12 +14,14 @@ import net.sharksystem.SharkException;
 import net.sharksystem.android.ASAPChannelIntent;
 import net.sharksystem.app.messenger.SharkMessengerException;
 import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPSecurityException;
 import net.sharksystem.pki.android.PersonListSelectionActivity;
 import net.sharksystem.pki.android.PersonStatusHelper;
 import net.sharksystem.sharknet.android.SharkNetActivity;
 import net.sharksystem.sharknet.android.SharkNetApp;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Set;
 
 public class SNChannelAddMessageActivity extends SharkNetActivity {
@@ -107,11 +109,19 @@ public class SNChannelAddMessageActivity extends SharkNetActivity {
                 CheckBox encryptedCheckBox = findViewById(R.id.snEncrypted);
                 boolean encrypt = encryptedCheckBox.isChecked();
 
-                // send with shark messenger
-                this.getSharkNetApp().getSharkMessenger().sendSharkMessage(
-                        content, this.uri, sign);
+                if(encrypt && this.selectedRecipients != null
+                        && !this.selectedRecipients.isEmpty()) {
+                    // session keys are bound to sender - always signed
+                    this.sendSessionEncrypted(content);
+                } else {
+                    // send with shark messenger - to anybody, compressed if switched on
+                    content = this.getSharkNetApp().getPayloadCompression()
+                            .compress(content, this.uri, null);
+                    this.getSharkNetApp().getSharkMessenger().sendSharkMessage(
+                            content, this.uri, sign);
+                }
 
-            } catch (IOException | SharkMessengerException e) {
+            } catch (IOException | SharkMessengerException | ASAPSecurityException e) {
                 Toast.makeText(this, e.getLocalizedMessage(), Toast.LENGTH_SHORT).show();
                 Log.d(this.getLogStart(), "problems when sending message in SNChannel: "
                         + e.getLocalizedMessage());
@@ -123,6 +133,24 @@ public class SNChannelAddMessageActivity extends SharkNetActivity {
         this.finish();
     }
 
+    /**
+     * Content is encrypted per recipient with a session key shared with that recipient.
+     * Only the first message of a session pays for an asymmetric key wrap. Encrypted content
+     * of all recipients leaves as one message - see {@link OutgoingMessageBatcher}. Message is
+     * signed - recipients accept session keys from verified senders only.
+     */
+    private void sendSessionEncrypted(byte[] content) throws ASAPSecurityException {
+        SessionKeyCache sessionKeyCache = this.getSharkNetApp().getSessionKeyCache();
+        PayloadCompression compression = this.getSharkNetApp().getPayloadCompression();
+        OutgoingMessageBatcher batcher = this.getSharkNetApp().getOutgoingMessageBatcher();
+        for(CharSequence recipient : this.selectedRecipients) {
+            // compress first - ciphertext does not compress
+            byte[] plain = compression.compress(
+                    content, this.uri, Collections.singleton(recipient));
+            batcher.add(this.uri, recipient, sessionKeyCache.seal(plain, recipient), true);
+        }
+    }
+
     public void onAbortClick(View view) {
         ASAPChannelIntent intent = new ASAPChannelIntent(this, this.name, this.uri,
                 SNChannelViewActivity.class);
@@ -0,0 +1,67 @@
+package net.sharksystem.messenger.android;
+
+import net.sharksystem.app.messenger.InMemoSharkMessage;
+import net.sharksystem.app.messenger.SharkMessage;
+import net.sharksystem.app.messenger.SharkMessengerComponent;
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPMessageCompare;
+import net.sharksystem.asap.ASAPMessages;
+import net.sharksystem.pki.SharkPKIComponent;
+import net.sharksystem.sharknet.android.SharkNetApp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Messages of a messenger channel ordered by creation time - as SharkMessenger lists them.
+ * Other than the messenger list it also delivers a message as it was sent (serialized,
+ * signature included). {@link VerificationResultCache} needs it.
+ */
+class SNChannelMessages {
+    private final SharkPKIComponent sharkPKI;
+    private final ASAPMessages asapMessages;
+
+    SNChannelMessages(CharSequence uri) throws IOException, ASAPException {
+        SharkNetApp sharkNetApp = SharkNetApp.getSharkNetApp();
+        this.sharkPKI = sharkNetApp.getSharkPKI();
+        this.asapMessages = sharkNetApp.getASAPAndroidPeer()
+                .getASAPStorage(SharkMessengerComponent.SHARK_MESSENGER_FORMAT)
+                .getChannel(uri)
+                .getMessages(new ASAPMessageCompare() {
+                    @Override
+                    public boolean earlier(byte[] messageA, byte[] messageB) {
+                        return getCreationTime(messageA) < getCreationTime(messageB);
+                    }
+                });
+    }
+
+    int size() throws IOException {
+        return this.asapMessages.size();
+    }
+
+    /**
+     * @return message as it was sent
+     */
+    byte[] getASAPMessage(int position) throws IOException, ASAPException {
+        return this.asapMessages.getMessage(position, false);
+    }
+
+    SharkMessage getSharkMessage(int position) throws IOException, ASAPException {
+        return InMemoSharkMessage.parseMessage(this.getASAPMessage(position),
+                this.asapMessages.getChunk(position, false).getASAPHopList(),
+                this.sharkPKI.getASAPKeyStore());
+    }
+
+    /**
+     * @return creation time - or -1 if message cannot be read
+     */
+    private long getCreationTime(byte[] asapMessage) {
+        try {
+            InMemoSharkMessage sharkMessage = InMemoSharkMessage.parseMessage(
+                    asapMessage, new ArrayList<>(), this.sharkPKI.getASAPKeyStore());
+            return sharkMessage.couldBeDecrypted() ? sharkMessage.getCreationTime() : -1;
+        } catch (IOException | ASAPException e) {
+            return -1;
+        }
+    }
+}
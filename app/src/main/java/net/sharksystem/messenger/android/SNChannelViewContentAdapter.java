@@ -11,7 +11,6 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import net.sharksystem.R;
 import net.sharksystem.app.messenger.SharkMessage;
-import net.sharksystem.app.messenger.SharkMessengerComponent;
 import net.sharksystem.app.messenger.SharkMessengerException;
 import net.sharksystem.sharknet.android.SharkNetApp;
 
@@ -71,19 +70,18 @@ public class SNChannelViewContentAdapter extends
         Log.d(LOGSTART, "onBindViewHolder with position: " + position);
 
         try {
-            //byte[] asapMessage = this.asapChannel.getMessages().getMessage(position, false);
-            SharkMessengerComponent sharkMessenger =
-                    SharkNetApp.getSharkNetApp().getSharkMessenger();
-
-            SharkMessage sharkMessage = sharkMessenger.getChannel(this.channelURI)
-                            .getMessages(false, true)
-                            .getSharkMessage(position, false);
+            // serialized message is needed for verification cache
+            SNChannelMessages channelMessages = new SNChannelMessages(this.channelURI);
+            byte[] asapMessage = channelMessages.getASAPMessage(position);
+            SharkMessage sharkMessage = channelMessages.getSharkMessage(position);
 
             CharSequence encrypted2View =
-                    SNMessageViewHelper.getEncryptedCharSequence(sharkMessage);
+                    SNMessageViewHelper.getEncryptedCharSequence(sharkMessage, asapMessage);
             CharSequence sender2View = SNMessageViewHelper.getSenderCharSequence(sharkMessage);
-            CharSequence content2View = SNMessageViewHelper.getContentCharSequence(sharkMessage);
-            CharSequence verified2View = SNMessageViewHelper.getVerifiedCharSequence(sharkMessage);
+            CharSequence content2View =
+                    SNMessageViewHelper.getContentCharSequence(sharkMessage, asapMessage);
+            CharSequence verified2View =
+                    SNMessageViewHelper.getVerifiedCharSequence(sharkMessage, asapMessage);
             CharSequence timestamp2View = SNMessageViewHelper.getCreationTimeCharSequence(sharkMessage);
 
             holder.dateTextView.setText(timestamp2View);
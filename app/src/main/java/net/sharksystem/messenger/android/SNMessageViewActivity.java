@@ -7,7 +7,6 @@ import android.widget.TextView;
 import net.sharksystem.R;
 import net.sharksystem.SharkException;
 import net.sharksystem.app.messenger.SharkMessage;
-import net.sharksystem.app.messenger.SharkMessengerComponent;
 import net.sharksystem.asap.android.apps.ASAPActivity;
 import net.sharksystem.sharknet.android.SharkNetApp;
 
@@ -30,12 +29,10 @@ public class SNMessageViewActivity extends ASAPActivity {
             CharSequence uri = snMessageIntent.getUri();
             int position = snMessageIntent.getPosition();
 
-            SharkMessengerComponent sharkMessenger =
-                    SharkNetApp.getSharkNetApp().getSharkMessenger();
-
-            SharkMessage sharkMessage = sharkMessenger.getChannel(uri)
-                    .getMessages(false, true)
-                    .getSharkMessage(position, false);
+            // same order as channel view - serialized message is needed for verification cache
+            SNChannelMessages channelMessages = new SNChannelMessages(uri);
+            byte[] asapMessage = channelMessages.getASAPMessage(position);
+            SharkMessage sharkMessage = channelMessages.getSharkMessage(position);
 
             // Receivers
             CharSequence receiversCharSequence =
@@ -45,7 +42,7 @@ public class SNMessageViewActivity extends ASAPActivity {
 
             // encrypted
             CharSequence encryptedCharSequence =
-                    SNMessageViewHelper.getEncryptedCharSequence(sharkMessage);
+                    SNMessageViewHelper.getEncryptedCharSequence(sharkMessage, asapMessage);
             TextView encryptedView = this.findViewById(R.id.sn_message_encrypted);
             encryptedView.setText(encryptedCharSequence);
 
@@ -57,13 +54,13 @@ public class SNMessageViewActivity extends ASAPActivity {
 
             // content
             CharSequence contentCharSequence =
-                    SNMessageViewHelper.getContentCharSequence(sharkMessage);
+                    SNMessageViewHelper.getContentCharSequence(sharkMessage, asapMessage);
             TextView contentView = this.findViewById(R.id.sn_message_content);
             contentView.setText(contentCharSequence);
 
             // verified
             CharSequence verifiedCharSequence =
-                    SNMessageViewHelper.getVerifiedCharSequence(sharkMessage);
+                    SNMessageViewHelper.getVerifiedCharSequence(sharkMessage, asapMessage);
             TextView verifiedView = this.findViewById(R.id.sn_message_verified);
             verifiedView.setText(verifiedCharSequence);
 
@@ -75,7 +72,8 @@ public class SNMessageViewActivity extends ASAPActivity {
 
             // identity assurance
             CharSequence iACharSequence =
-                    SNMessageViewHelper.getIdentityAssuranceCharSequence(sharkMessage);
+                    SNMessageViewHelper.getIdentityAssuranceCharSequence(
+                            sharkMessage, asapMessage);
             TextView identityAssuranceView = this.findViewById(R.id.sn_message_identityassurance);
             identityAssuranceView.setText(iACharSequence);
 
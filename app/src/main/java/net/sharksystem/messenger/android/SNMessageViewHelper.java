@@ -49,9 +49,12 @@ class SNMessageViewHelper {
         return receiversCharSequence;
     }
 
-    static CharSequence getEncryptedCharSequence(SharkMessage sharkMessage) {
+    static CharSequence getEncryptedCharSequence(SharkMessage sharkMessage,
+                                                 byte[] asapMessage) {
         CharSequence encryptedCharSequence = "not E2E encrypted";
-        if (sharkMessage.encrypted()) {
+        // session encrypted content counts only if sender is verified - see SessionKeyCache
+        if (sharkMessage.encrypted() || (sessionEncrypted(sharkMessage)
+                && verifiedQuietly(sharkMessage, asapMessage))) {
             encryptedCharSequence = "is E2E encrypted";
         }
 
@@ -74,17 +77,41 @@ class SNMessageViewHelper {
         return "from: " + senderName;
     }
 
-    public static CharSequence getContentCharSequence(SharkMessage sharkMessage) {
+    public static CharSequence getContentCharSequence(SharkMessage sharkMessage,
+                                                      byte[] asapMessage) {
         CharSequence contentCharSequence;
 
         if (sharkMessage.couldBeDecrypted()) {
-            byte[] snContent = new byte[0];
+            byte[] snContent;
             try {
                 snContent = sharkMessage.getContent();
             } catch (ASAPSecurityException e) {
-                contentCharSequence = "no content in message";
+                return "no content in message";
+            }
+            if (OutgoingMessageBatcher.isBatch(snContent)) {
+                List<byte[]> entries;
+                try {
+                    CharSequence ownerID = SharkNetApp.getSharkNetApp().getOwnerID();
+                    if (isSender(sharkMessage, ownerID)) {
+                        // own message - entries of any recipient open with our outgoing session
+                        entries = OutgoingMessageBatcher.unpackFirst(snContent);
+                    } else {
+                        entries = OutgoingMessageBatcher.unpack(snContent, ownerID);
+                    }
+                } catch (IOException e) {
+                    return "cannot read message: " + e.getLocalizedMessage();
+                }
+                if (entries.isEmpty()) return "message is not for you";
+
+                StringBuilder sb = new StringBuilder();
+                for (byte[] entry : entries) {
+                    if (sb.length() > 0) sb.append("\n");
+                    sb.append(getEntryCharSequence(sharkMessage, asapMessage, entry));
+                }
+                contentCharSequence = sb.toString();
+            } else {
+                contentCharSequence = getEntryCharSequence(sharkMessage, asapMessage, snContent);
             }
-            contentCharSequence = new String(snContent);
         } else {
             contentCharSequence = "cannot decrypt message";
         }
@@ -92,11 +119,51 @@ class SNMessageViewHelper {
         return contentCharSequence;
     }
 
-    public static CharSequence getVerifiedCharSequence(SharkMessage sharkMessage) {
+    /**
+     * @param snContent message content or one entry of a batch - see
+     * {@link OutgoingMessageBatcher}
+     */
+    private static CharSequence getEntryCharSequence(SharkMessage sharkMessage,
+                                                     byte[] asapMessage, byte[] snContent) {
+        if (SessionKeyCache.isSealed(snContent)) {
+            if (!verifiedQuietly(sharkMessage, asapMessage)) {
+                return "cannot decrypt message: sender not verified";
+            }
+            try {
+                snContent = SharkNetApp.getSharkNetApp().getSessionKeyCache()
+                        .open(snContent, sharkMessage.getSender());
+            } catch (ASAPSecurityException e) {
+                return "cannot decrypt message: " + e.getLocalizedMessage();
+            }
+        }
+        if (PayloadCompression.isCompressed(snContent)) {
+            try {
+                // capabilities are learned from verified senders only
+                CharSequence sender = verifiedQuietly(sharkMessage, asapMessage)
+                        ? sharkMessage.getSender() : null;
+                snContent = SharkNetApp.getSharkNetApp().getPayloadCompression()
+                        .decompress(snContent, sender);
+            } catch (IOException | ASAPSecurityException e) {
+                return "cannot decompress message: " + e.getLocalizedMessage();
+            }
+        }
+        return new String(snContent);
+    }
+
+    private static boolean isSender(SharkMessage sharkMessage, CharSequence peerID) {
+        try {
+            return sharkMessage.getSender().toString().equals(peerID.toString());
+        } catch (ASAPSecurityException e) {
+            return false;
+        }
+    }
+
+    public static CharSequence getVerifiedCharSequence(SharkMessage sharkMessage,
+                                                       byte[] asapMessage) {
         CharSequence verified2View = "not verified";
         if (sharkMessage.couldBeDecrypted()) {
             try {
-                if (sharkMessage.verified()) {
+                if (verified(sharkMessage, asapMessage)) {
                     verified2View = "verified sender";
                 } else {
                     verified2View = "cannot verify sender";
@@ -128,12 +195,13 @@ class SNMessageViewHelper {
         return creationTimeCharSequence;
     }
 
-    public static CharSequence getIdentityAssuranceCharSequence(SharkMessage sharkMessage) {
+    public static CharSequence getIdentityAssuranceCharSequence(SharkMessage sharkMessage,
+                                                                byte[] asapMessage) {
         CharSequence iA2CharSequence = "iA: unknown";
 
         try {
             if(sharkMessage.couldBeDecrypted()) {
-                if(sharkMessage.verified()) {
+                if(verified(sharkMessage, asapMessage)) {
                     int identityAssurance =
                             SharkNetApp.getSharkNetApp().getSharkPKI().
                                     getIdentityAssurance(sharkMessage.getSender());
@@ -149,6 +217,39 @@ class SNMessageViewHelper {
         return iA2CharSequence;
     }
 
+    /**
+     * Encrypted by app with a session key - see {@link SessionKeyCache}
+     */
+    private static boolean sessionEncrypted(SharkMessage sharkMessage) {
+        if (!sharkMessage.couldBeDecrypted()) return false;
+        try {
+            byte[] content = sharkMessage.getContent();
+            return SessionKeyCache.isSealed(content) || OutgoingMessageBatcher.isBatch(content);
+        } catch (ASAPSecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Signature is checked once per message and signer keys - see {@link VerificationResultCache}
+     */
+    private static boolean verified(SharkMessage sharkMessage, byte[] asapMessage)
+            throws ASAPSecurityException {
+        return SharkNetApp.getSharkNetApp().getVerificationResultCache()
+                .verified(sharkMessage, asapMessage);
+    }
+
+    /**
+     * @return false if message is not signed or signature cannot be checked
+     */
+    private static boolean verifiedQuietly(SharkMessage sharkMessage, byte[] asapMessage) {
+        try {
+            return sharkMessage.signed() && verified(sharkMessage, asapMessage);
+        } catch (ASAPSecurityException e) {
+            return false;
+        }
+    }
+
     public static CharSequence getASAPHopsCharSequence(SharkMessage sharkMessage) {
         List<ASAPHop> asapHopsList = sharkMessage.getASAPHopsList();
         if(asapHopsList != null && asapHopsList.size() > 0)
@@ -0,0 +1,543 @@
+package net.sharksystem.messenger.android;
+
+import android.util.Log;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.crypto.ASAPCryptoAlgorithms;
+import net.sharksystem.asap.crypto.ASAPKeyStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Encrypts messages to a recipient with a symmetric session key. Session key is wrapped
+ * with recipient's public key once and travels with the first message of a session. Later
+ * messages of that session are only symmetrically encrypted - no asymmetric operation at all.
+ * <p>
+ * A session belongs to its sender and recipient. Both are part of the envelope and
+ * authenticated with the ciphertext. Sessions are looked up by sender, recipient and id -
+ * a peer cannot plant a key for a session of another peer. Sealed content must travel in
+ * signed messages: {@link #open(byte[], CharSequence)} takes the verified sender of the
+ * message and rejects envelopes naming someone else.
+ * <p>
+ * An outgoing session is used for a limited time and number of messages, and only as long
+ * as recipient's public key does not change. A new session is started otherwise.
+ * Keys of incoming and outgoing sessions are kept in app storage - messages stay readable
+ * after app restart. Sessions not used for {@value #MAX_IDLE_IN_DAYS} days are dropped, and
+ * least recently used ones if there are more than {@value #MAX_SESSIONS}. Messages of
+ * dropped sessions cannot be read any longer.
+ * <p>
+ * Session keys are written to file SN2SessionKeys wrapped by a {@link KeyProtection} -
+ * on devices a key in Android key store, see {@link AndroidSessionKeyProtection}.
+ * <p>
+ * Envelope: magic, version, type, session id, sender, recipient, [wrapped session key], nonce,
+ * AES-GCM ciphertext. Session id, sender and recipient are authenticated as additional data.
+ */
+public class SessionKeyCache {
+    private static final String CACHE_FILE_NAME = "SN2SessionKeys";
+    private static final int FORMAT_VERSION = 2;
+    private static final long SESSION_LIFETIME_IN_MILLIS = 1000L * 60 * 60 * 24;
+    private static final int MAX_MESSAGES_PER_SESSION = 1000;
+    private static final int MAX_SESSIONS = 2048;
+    private static final int MAX_IDLE_IN_DAYS = 180;
+    private static final long MAX_IDLE_IN_MILLIS = 1000L * 60 * 60 * 24 * MAX_IDLE_IN_DAYS;
+    private static final long SAVE_DELAY_IN_MILLIS = 2000;
+
+    private static final byte[] MAGIC = {'S', 'N', '2', 'S'};
+    private static final byte ENVELOPE_VERSION = 2;
+    private static final byte TYPE_DATA = 0;
+    private static final byte TYPE_KEY_AND_DATA = 1;
+
+    private static final String KEY_ALGORITHM = "AES";
+    private static final int KEY_SIZE = 256;
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH_IN_BITS = 128;
+    private static final int MAX_FIELD_LENGTH = 64 * 1024;
+
+    private final File cacheFile;
+    private final ASAPKeyStore keyStore;
+    private final KeyProtection keyProtection;
+    private final String ownerID;
+    private final SecureRandom random = new SecureRandom();
+
+    /** sender, recipient and session id (see {@link #sessionKey}) -> session */
+    private final Map<String, Session> sessions = new HashMap<>();
+    /** recipient -> current outgoing session */
+    private final Map<String, Session> outgoing = new HashMap<>();
+
+    private final ScheduledExecutorService saveExecutor;
+    private boolean saveScheduled = false;
+
+    /**
+     * Protects session keys in app storage.
+     */
+    public interface KeyProtection {
+        byte[] protect(byte[] key) throws GeneralSecurityException;
+
+        byte[] unprotect(byte[] protectedKey) throws GeneralSecurityException;
+    }
+
+    /**
+     * @param keyStore key store that knows public keys of recipients - usually the PKI's
+     * @param keyProtection wraps session keys before they are written to app storage
+     */
+    public SessionKeyCache(File filesDir, ASAPKeyStore keyStore, KeyProtection keyProtection) {
+        this.cacheFile = new File(filesDir, CACHE_FILE_NAME);
+        this.keyStore = keyStore;
+        this.keyProtection = keyProtection;
+        this.ownerID = keyStore.getOwner().toString();
+        this.saveExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SN2SessionKeyWriter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.restore();
+    }
+
+    /**
+     * @return true if content was produced by {@link #seal(byte[], CharSequence)}
+     */
+    public static boolean isSealed(byte[] content) {
+        if(content == null || content.length < MAGIC.length + 2) return false;
+        for(int i = 0; i < MAGIC.length; i++) {
+            if(content[i] != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                     encrypt / decrypt                                   //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Encrypt content for recipient. Starts a new session if necessary.
+     */
+    public byte[] seal(byte[] content, CharSequence recipient) throws ASAPSecurityException {
+        String recipientID = recipient.toString();
+        String recipientKeyFingerprint = this.getRecipientKeyFingerprint(recipientID);
+
+        Session session;
+        boolean newSession = false;
+        synchronized(this) {
+            session = this.outgoing.get(recipientID);
+            if(session == null || !session.usableFor(recipientKeyFingerprint)) {
+                session = this.createSession(recipientID, recipientKeyFingerprint);
+                newSession = true;
+            }
+            session.messages++;
+            session.lastUsed = System.currentTimeMillis();
+            this.scheduleSave();
+        }
+
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(baos);
+            dos.write(MAGIC);
+            dos.writeByte(ENVELOPE_VERSION);
+            dos.writeByte(newSession ? TYPE_KEY_AND_DATA : TYPE_DATA);
+            dos.writeUTF(session.id);
+            dos.writeUTF(this.ownerID);
+            dos.writeUTF(recipientID);
+
+            if(newSession) {
+                // the only asymmetric operation of this session
+                byte[] wrappedKey = ASAPCryptoAlgorithms.produceEncryptedMessagePackage(
+                        session.key, recipientID, this.keyStore);
+                dos.writeInt(wrappedKey.length);
+                dos.write(wrappedKey);
+            }
+
+            byte[] nonce = new byte[NONCE_LENGTH];
+            this.random.nextBytes(nonce);
+            dos.write(nonce);
+
+            byte[] cipherText = this.crypt(Cipher.ENCRYPT_MODE, session.key,
+                    additionalData(session.id, this.ownerID, recipientID), nonce, content);
+            dos.writeInt(cipherText.length);
+            dos.write(cipherText);
+
+            return baos.toByteArray();
+        } catch (IOException | GeneralSecurityException e) {
+            throw new ASAPSecurityException("cannot seal message: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Decrypt content produced by {@link #seal(byte[], CharSequence)} - here or on another peer.
+     * @param sender verified sender of the signed message that carried sealed content
+     * @throws ASAPSecurityException session key unknown (e.g. first message of session not
+     * received yet), message not for us, sealed by someone else than sender or manipulated
+     */
+    public byte[] open(byte[] sealed, CharSequence sender) throws ASAPSecurityException {
+        if(!isSealed(sealed)) throw new ASAPSecurityException("not a session encrypted message");
+        String senderID = sender.toString();
+
+        try {
+            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(sealed));
+            dis.skipBytes(MAGIC.length);
+            byte version = dis.readByte();
+            if(version != ENVELOPE_VERSION) {
+                throw new ASAPSecurityException("unknown envelope version: " + version);
+            }
+
+            byte type = dis.readByte();
+            String sessionID = dis.readUTF();
+            String envelopeSender = dis.readUTF();
+            String envelopeRecipient = dis.readUTF();
+
+            if(!envelopeSender.equals(senderID)) {
+                throw new ASAPSecurityException("sealed by " + envelopeSender
+                        + " - message sent by " + senderID);
+            }
+            boolean ownMessage = this.ownerID.equals(envelopeSender);
+            if(!ownMessage && !this.ownerID.equals(envelopeRecipient)) {
+                throw new ASAPSecurityException("sealed for " + envelopeRecipient);
+            }
+
+            byte[] wrappedKey = null;
+            if(type == TYPE_KEY_AND_DATA) wrappedKey = readField(dis);
+
+            byte[] nonce = new byte[NONCE_LENGTH];
+            dis.readFully(nonce);
+            byte[] cipherText = readField(dis);
+
+            String key = sessionKey(envelopeSender, envelopeRecipient, sessionID);
+            Session session;
+            synchronized(this) {
+                session = this.sessions.get(key);
+                if(session != null) {
+                    session.lastUsed = System.currentTimeMillis();
+                    this.scheduleSave();
+                }
+            }
+
+            if(session == null) {
+                // own sessions are never learned from messages
+                if(wrappedKey == null || ownMessage) {
+                    throw new ASAPSecurityException("session key not received (yet)");
+                }
+                session = this.unwrapSession(envelopeSender, sessionID, wrappedKey);
+            }
+
+            return this.crypt(Cipher.DECRYPT_MODE, session.key,
+                    additionalData(sessionID, envelopeSender, envelopeRecipient),
+                    nonce, cipherText);
+        } catch (ASAPSecurityException e) {
+            throw e;
+        } catch (IOException | GeneralSecurityException | ASAPException e) {
+            throw new ASAPSecurityException("cannot open message: " + e.getLocalizedMessage());
+        }
+    }
+
+    private byte[] crypt(int mode, byte[] key, byte[] additionalData, byte[] nonce,
+                         byte[] input) throws GeneralSecurityException {
+
+        Cipher cipher = Cipher.getInstance(CIPHER);
+        cipher.init(mode, new SecretKeySpec(key, KEY_ALGORITHM),
+                new GCMParameterSpec(TAG_LENGTH_IN_BITS, nonce));
+        cipher.updateAAD(additionalData);
+        return cipher.doFinal(input);
+    }
+
+    private static byte[] additionalData(String sessionID, String senderID, String recipientID)
+            throws IOException {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeUTF(sessionID);
+        dos.writeUTF(senderID);
+        dos.writeUTF(recipientID);
+        return baos.toByteArray();
+    }
+
+    private static byte[] readField(DataInputStream dis) throws IOException {
+        int length = dis.readInt();
+        if(length < 0 || length > MAX_FIELD_LENGTH) {
+            throw new IOException("corrupt field length: " + length);
+        }
+        byte[] field = new byte[length];
+        dis.readFully(field);
+        return field;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         sessions                                        //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Next message to recipient starts a new session. Call it if a sealed message could not
+     * be sent - it could have carried the session key.
+     */
+    public synchronized void abandonOutgoingSession(CharSequence recipient) {
+        this.outgoing.remove(recipient.toString());
+    }
+
+    private Session createSession(String recipientID, String recipientKeyFingerprint)
+            throws ASAPSecurityException {
+
+        byte[] key;
+        try {
+            KeyGenerator keyGenerator = KeyGenerator.getInstance(KEY_ALGORITHM);
+            keyGenerator.init(KEY_SIZE, this.random);
+            key = keyGenerator.generateKey().getEncoded();
+        } catch (NoSuchAlgorithmException e) {
+            throw new ASAPSecurityException(
+                    "cannot create session key: " + e.getLocalizedMessage());
+        }
+
+        byte[] idBytes = new byte[16];
+        this.random.nextBytes(idBytes);
+
+        long now = System.currentTimeMillis();
+        Session session = new Session(toHex(idBytes), this.ownerID, recipientID,
+                recipientKeyFingerprint, key, now, now, 0);
+        this.put(session);
+        this.outgoing.put(recipientID, session);
+
+        Log.d(this.getLogStart(), "new session with " + recipientID + ": " + session.id);
+        return session;
+    }
+
+    private Session unwrapSession(String senderID, String sessionID, byte[] wrappedKey)
+            throws IOException, ASAPException {
+
+        ASAPCryptoAlgorithms.EncryptedMessagePackage encryptedPackage =
+                ASAPCryptoAlgorithms.parseEncryptedMessagePackage(wrappedKey);
+
+        if(!this.keyStore.isOwner(encryptedPackage.getReceiver())) {
+            throw new ASAPSecurityException("session key is for " + encryptedPackage.getReceiver());
+        }
+
+        byte[] key = ASAPCryptoAlgorithms.decryptPackage(encryptedPackage, this.keyStore);
+
+        // incoming session - never used to send
+        long now = System.currentTimeMillis();
+        Session session = new Session(sessionID, senderID, this.ownerID, null, key, now, now, 0);
+        synchronized(this) {
+            Session existing = this.sessions.get(session.getKey());
+            if(existing != null) return existing;
+            this.put(session);
+            this.scheduleSave();
+        }
+
+        return session;
+    }
+
+    private void put(Session session) {
+        this.sessions.put(session.getKey(), session);
+        if(this.sessions.size() <= MAX_SESSIONS) return;
+
+        // drop least recently used - current outgoing sessions are kept
+        Session oldest = null;
+        for(Session candidate : this.sessions.values()) {
+            if(this.outgoing.get(candidate.recipientID) == candidate) continue;
+            if(oldest == null || candidate.lastUsed < oldest.lastUsed) oldest = candidate;
+        }
+        if(oldest != null) this.sessions.remove(oldest.getKey());
+    }
+
+    private static String sessionKey(String senderID, String recipientID, String sessionID) {
+        return senderID + "\n" + recipientID + "\n" + sessionID;
+    }
+
+    private String getRecipientKeyFingerprint(String recipientID) throws ASAPSecurityException {
+        try {
+            return ASAPCryptoAlgorithms.getFingerprint(this.keyStore.getPublicKey(recipientID));
+        } catch (NoSuchAlgorithmException e) {
+            throw new ASAPSecurityException("cannot fingerprint key of " + recipientID);
+        }
+    }
+
+    private static class Session {
+        final String id;
+        final String senderID;
+        final String recipientID;
+        /** null for incoming sessions */
+        final String recipientKeyFingerprint;
+        final byte[] key;
+        final long createdAt;
+        long lastUsed;
+        int messages;
+
+        Session(String id, String senderID, String recipientID, String recipientKeyFingerprint,
+                byte[] key, long createdAt, long lastUsed, int messages) {
+            this.id = id;
+            this.senderID = senderID;
+            this.recipientID = recipientID;
+            this.recipientKeyFingerprint = recipientKeyFingerprint;
+            this.key = key;
+            this.createdAt = createdAt;
+            this.lastUsed = lastUsed;
+            this.messages = messages;
+        }
+
+        String getKey() {
+            return sessionKey(this.senderID, this.recipientID, this.id);
+        }
+
+        boolean isOutgoing() {
+            return this.recipientKeyFingerprint != null;
+        }
+
+        boolean usableFor(String recipientKeyFingerprint) {
+            return this.messages < MAX_MESSAGES_PER_SESSION
+                    && System.currentTimeMillis() - this.createdAt < SESSION_LIFETIME_IN_MILLIS
+                    && recipientKeyFingerprint.equals(this.recipientKeyFingerprint);
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                       persistence                                       //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void scheduleSave() {
+        if(this.saveScheduled) return;
+        this.saveScheduled = true;
+
+        this.saveExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                SessionKeyCache.this.save();
+            }
+        }, SAVE_DELAY_IN_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void save() {
+        List<Session> snapshot;
+        long now = System.currentTimeMillis();
+        synchronized(this) {
+            this.saveScheduled = false;
+            snapshot = new ArrayList<>(this.sessions.size());
+            Iterator<Session> sessionIterator = this.sessions.values().iterator();
+            while(sessionIterator.hasNext()) {
+                Session session = sessionIterator.next();
+                if(now - session.lastUsed > MAX_IDLE_IN_MILLIS
+                        && this.outgoing.get(session.recipientID) != session) {
+                    sessionIterator.remove();
+                    continue;
+                }
+                // copy - message counter changes meanwhile
+                snapshot.add(new Session(session.id, session.senderID, session.recipientID,
+                        session.recipientKeyFingerprint, session.key,
+                        session.createdAt, session.lastUsed, session.messages));
+            }
+        }
+
+        File tmpFile = new File(this.cacheFile.getPath() + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(new FileOutputStream(tmpFile))) {
+            dos.writeInt(FORMAT_VERSION);
+            dos.writeInt(snapshot.size());
+            for(Session session : snapshot) {
+                dos.writeUTF(session.id);
+                dos.writeUTF(session.senderID);
+                dos.writeUTF(session.recipientID);
+                dos.writeBoolean(session.isOutgoing());
+                if(session.isOutgoing()) dos.writeUTF(session.recipientKeyFingerprint);
+                byte[] protectedKey = this.keyProtection.protect(session.key);
+                dos.writeInt(protectedKey.length);
+                dos.write(protectedKey);
+                dos.writeLong(session.createdAt);
+                dos.writeLong(session.lastUsed);
+                dos.writeInt(session.messages);
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            Log.w(this.getLogStart(), "cannot write session keys: " + e.getLocalizedMessage());
+            return;
+        }
+
+        if(!tmpFile.renameTo(this.cacheFile)) {
+            Log.w(this.getLogStart(), "cannot replace session key file");
+        }
+    }
+
+    private synchronized void restore() {
+        if(!this.cacheFile.exists()) return;
+
+        long now = System.currentTimeMillis();
+        boolean outdated = false;
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(this.cacheFile))) {
+            int version = dis.readInt();
+            outdated = version != FORMAT_VERSION;
+            if(outdated) {
+                Log.d(this.getLogStart(), "session key file version " + version + " - removed");
+                return;
+            }
+
+            int number = dis.readInt();
+            for(int i = 0; i < number; i++) {
+                String id = dis.readUTF();
+                String senderID = dis.readUTF();
+                String recipientID = dis.readUTF();
+                String fingerprint = dis.readBoolean() ? dis.readUTF() : null;
+                byte[] protectedKey = readField(dis);
+                long createdAt = dis.readLong();
+                long lastUsed = dis.readLong();
+                int messages = dis.readInt();
+
+                if(now - lastUsed > MAX_IDLE_IN_MILLIS) continue;
+
+                Session session = new Session(id, senderID, recipientID, fingerprint,
+                        this.keyProtection.unprotect(protectedKey), createdAt, lastUsed,
+                        messages);
+                this.sessions.put(session.getKey(), session);
+                if(session.isOutgoing()) {
+                    Session current = this.outgoing.get(recipientID);
+                    if(current == null || current.createdAt < createdAt) {
+                        this.outgoing.put(recipientID, session);
+                    }
+                }
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            Log.w(this.getLogStart(), "cannot read session keys: " + e.getLocalizedMessage());
+        } finally {
+            // older files hold raw keys of sessions not bound to a sender
+            if(outdated && !this.cacheFile.delete()) {
+                Log.w(this.getLogStart(), "cannot remove old session key file");
+            }
+        }
+
+        Log.d(this.getLogStart(), "sessions restored: " + this.sessions.size());
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private String getLogStart() {
+        return this.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,284 @@
+package net.sharksystem.messenger.android;
+
+import android.util.Log;
+
+import net.sharksystem.app.messenger.SharkMessage;
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.crypto.ASAPCryptoAlgorithms;
+import net.sharksystem.asap.pki.ASAPCertificate;
+import net.sharksystem.pki.SharkPKIComponent;
+import net.sharksystem.pki.android.RevocationList;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers results of message signature verification. Key is digest of the message as it
+ * was sent - signature included - and fingerprint of the keys the signer is known with.
+ * Another signature on same content is another message. New certificates or a new key pair
+ * change this fingerprint - message is verified again. Otherwise a signature is checked
+ * once and never again - not on each list rebind and not after app restart.
+ * <p>
+ * Revoked certificates do not count as signer keys. A sender who is only known with
+ * revoked certificates is not verified at all.
+ * <p>
+ * Least recently used entries are dropped if cache is full. Cache is written to app
+ * storage shortly after changes.
+ */
+public class VerificationResultCache {
+    private static final String CACHE_FILE_NAME = "SN2VerificationResults";
+    private static final int FORMAT_VERSION = 2;
+    private static final int MAX_ENTRIES = 5000;
+    private static final long SAVE_DELAY_IN_MILLIS = 2000;
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /** fingerprint of a signer without any known key */
+    private static final String NO_KEY = "-";
+    /** fingerprint of a signer whose certificates are all revoked */
+    private static final String REVOKED = "revoked";
+
+    private final File cacheFile;
+    private final SharkPKIComponent sharkPKI;
+    private final RevocationList revocationList;
+    private final Map<String, Boolean> results =
+            new LinkedHashMap<String, Boolean>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return this.size() > MAX_ENTRIES;
+                }
+            };
+
+    private final ScheduledExecutorService saveExecutor;
+    private boolean saveScheduled = false;
+
+    public VerificationResultCache(File filesDir, SharkPKIComponent sharkPKI,
+                                   RevocationList revocationList) {
+        this.cacheFile = new File(filesDir, CACHE_FILE_NAME);
+        this.sharkPKI = sharkPKI;
+        this.revocationList = revocationList;
+        this.saveExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SN2VerificationCacheWriter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.restore();
+    }
+
+    /**
+     * Same as {@link SharkMessage#verified()} - but message signature is only checked if
+     * there is no result for this message and current signer keys.
+     * @param asapMessage serialized message - as it was sent
+     */
+    public boolean verified(SharkMessage sharkMessage, byte[] asapMessage)
+            throws ASAPSecurityException {
+        String key;
+        try {
+            key = this.getCacheKey(sharkMessage, asapMessage);
+        } catch (ASAPException | NoSuchAlgorithmException e) {
+            Log.d(this.getLogStart(), "cannot produce cache key - verify without cache: "
+                    + e.getLocalizedMessage());
+            return sharkMessage.verified();
+        }
+
+        // signature could be fine - but key is not trusted any longer
+        if(key.endsWith(":" + REVOKED)) return false;
+
+        synchronized(this) {
+            Boolean result = this.results.get(key);
+            if(result != null) return result;
+        }
+
+        // verify outside the lock - can take a while
+        boolean verified = sharkMessage.verified();
+
+        synchronized(this) {
+            this.results.put(key, verified);
+            this.scheduleSave();
+        }
+
+        return verified;
+    }
+
+    public synchronized int size() {
+        return this.results.size();
+    }
+
+    public synchronized void clear() {
+        this.results.clear();
+        this.scheduleSave();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                       cache key                                         //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    private String getCacheKey(SharkMessage sharkMessage, byte[] asapMessage)
+            throws ASAPException, NoSuchAlgorithmException {
+
+        CharSequence sender = sharkMessage.getSender();
+        return getMessageDigest(asapMessage) + ":" + this.getSignerKeysFingerprint(sender);
+    }
+
+    /**
+     * Digest over serialized message: sender, recipients, creation time, content and
+     * signature (or the encrypted package holding all of them).
+     */
+    private static String getMessageDigest(byte[] asapMessage) throws NoSuchAlgorithmException {
+        return toHex(MessageDigest.getInstance(DIGEST_ALGORITHM).digest(asapMessage));
+    }
+
+    /**
+     * Fingerprint over all public keys a signature of this sender could be verified with:
+     * own public key or public keys in not revoked certificates of that subject.
+     */
+    private String getSignerKeysFingerprint(CharSequence sender)
+            throws ASAPSecurityException, NoSuchAlgorithmException {
+
+        List<String> fingerprints = new ArrayList<>();
+        if(this.sharkPKI.getOwnerID().toString().equals(sender.toString())) {
+            fingerprints.add(ASAPCryptoAlgorithms.getFingerprint(this.sharkPKI.getPublicKey()));
+        } else {
+            Collection<ASAPCertificate> certificates =
+                    this.sharkPKI.getCertificatesBySubject(sender);
+            if(certificates != null) {
+                boolean allRevoked = !certificates.isEmpty();
+                for(ASAPCertificate certificate : certificates) {
+                    if(this.revocationList.isRevoked(certificate)) continue;
+                    allRevoked = false;
+                    PublicKey publicKey = certificate.getPublicKey();
+                    if(publicKey != null) {
+                        fingerprints.add(ASAPCryptoAlgorithms.getFingerprint(publicKey));
+                    }
+                }
+                if(allRevoked) return REVOKED;
+            }
+        }
+
+        if(fingerprints.isEmpty()) return NO_KEY;
+        if(fingerprints.size() == 1) return fingerprints.get(0);
+
+        Collections.sort(fingerprints);
+        MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        for(String fingerprint : fingerprints) this.update(digest, fingerprint);
+        return toHex(digest.digest());
+    }
+
+    private void update(MessageDigest digest, CharSequence value) {
+        byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+        digest.update(bytes);
+        digest.update((byte) 0); // separator
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                       persistence                                       //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Changes come in bursts while a channel is displayed - write them together.
+     */
+    private void scheduleSave() {
+        if(this.saveScheduled) return;
+
+        this.saveScheduled = true;
+        this.saveExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                persist();
+            }
+        }, SAVE_DELAY_IN_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void persist() {
+        Map<String, Boolean> copy;
+        synchronized(this) {
+            this.saveScheduled = false;
+            copy = new LinkedHashMap<>(this.results);
+        }
+
+        File tmpFile = new File(this.cacheFile.getAbsolutePath() + ".tmp");
+        try {
+            DataOutputStream dos = new DataOutputStream(new FileOutputStream(tmpFile));
+            try {
+                dos.writeInt(FORMAT_VERSION);
+                dos.writeInt(copy.size());
+                for(Map.Entry<String, Boolean> entry : copy.entrySet()) {
+                    dos.writeUTF(entry.getKey());
+                    dos.writeBoolean(entry.getValue());
+                }
+            } finally {
+                dos.close();
+            }
+
+            if(!tmpFile.renameTo(this.cacheFile)) {
+                throw new IOException("cannot rename " + tmpFile + " to " + this.cacheFile);
+            }
+        } catch (IOException e) {
+            Log.e(this.getLogStart(), "cannot persist verification results: "
+                    + e.getLocalizedMessage());
+        }
+    }
+
+    private void restore() {
+        if(!this.cacheFile.exists()) return;
+
+        try {
+            DataInputStream dis = new DataInputStream(new FileInputStream(this.cacheFile));
+            try {
+                int version = dis.readInt();
+                if(version != FORMAT_VERSION) {
+                    Log.w(this.getLogStart(), "unknown cache format - ignored: " + version);
+                    return;
+                }
+
+                int number = dis.readInt();
+                for(int i = 0; i < number; i++) {
+                    String key = dis.readUTF();
+                    this.results.put(key, dis.readBoolean());
+                }
+            } finally {
+                dis.close();
+            }
+            Log.d(this.getLogStart(), "restored verification results: " + this.results.size());
+        } catch (IOException e) {
+            // just a cache - start empty
+            this.results.clear();
+            Log.e(this.getLogStart(), "cannot restore verification results: "
+                    + e.getLocalizedMessage());
+        }
+    }
+
+    private String getLogStart() {
+        return this.getClass().getSimpleName();
+    }
+}
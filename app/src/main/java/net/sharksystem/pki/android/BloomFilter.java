@@ -0,0 +1,82 @@
+package net.sharksystem.pki.android;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over strings. Answers "definitely not contained" in constant time without
+ * locking - bits are only ever set. A positive answer must be confirmed by an exact lookup.
+ * <p>
+ * Bit positions are derived from two 32 bit FNV-1a hashes (double hashing).
+ */
+class BloomFilter {
+    private final AtomicLongArray bits;
+    private final int numberBits;
+    private final int numberHashes;
+    private final int capacity;
+
+    /**
+     * @param capacity number of entries the filter is designed for
+     * @param falsePositiveRate wanted false positive rate at capacity, e.g. 0.01
+     */
+    BloomFilter(int capacity, double falsePositiveRate) {
+        this.capacity = Math.max(1, capacity);
+        double ln2 = Math.log(2);
+        int m = (int) Math.ceil(-this.capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.numberBits = Math.max(64, m);
+        this.numberHashes = Math.max(1,
+                (int) Math.round((double) this.numberBits / this.capacity * ln2));
+        this.bits = new AtomicLongArray((this.numberBits + 63) / 64);
+    }
+
+    int getCapacity() {
+        return this.capacity;
+    }
+
+    void add(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for(int i = 0; i < this.numberHashes; i++) {
+            int bit = Math.abs((h1 + i * h2) % this.numberBits);
+            int index = bit >>> 6;
+            long mask = 1L << (bit & 63);
+
+            long word = this.bits.get(index);
+            while((word & mask) == 0 && !this.bits.compareAndSet(index, word, word | mask)) {
+                word = this.bits.get(index);
+            }
+        }
+    }
+
+    /**
+     * @return false if value was never added. True if value was probably added.
+     */
+    boolean mightContain(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for(int i = 0; i < this.numberHashes; i++) {
+            int bit = Math.abs((h1 + i * h2) % this.numberBits);
+            if((this.bits.get(bit >>> 6) & (1L << (bit & 63))) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return two independent 32 bit hashes - low and high half
+     */
+    private static long hash(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int h1 = 0x811C9DC5;
+        int h2 = 0x050C5D1F;
+        for(byte b : bytes) {
+            h1 = (h1 ^ (b & 0xFF)) * 0x01000193;
+            h2 = (h2 ^ (b & 0xFF)) * 0x01000193;
+            h2 ^= h2 >>> 15;
+        }
+        // h2 must not be 0 - all probes would hit the same bit
+        if(h2 == 0) h2 = 0x5BD1E995;
+        return (h1 & 0xFFFFFFFFL) | ((long) h2 << 32);
+    }
+}
@@ -21,11 +21,14 @@ import net.sharksystem.sharknet.android.SharkNetActivity;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public class CertificateListActivity extends SharkNetActivity {
     private RecyclerView mRecyclerView;
     private LinearLayoutManager mLayoutManager;
     private CertificateListContentAdapter mAdapter;
+    /** produces displayed certificates - called on a background thread */
+    private Callable<Collection<ASAPCertificate>> certificateSource;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -34,29 +37,28 @@ public class CertificateListActivity extends SharkNetActivity {
 
         setContentView(R.layout.certificate_list_drawer_layout);
 
-        List<ASAPCertificate> certList = null;
-
         // find out what to do
         try {
-            PersonIntent intent = new PersonIntent(this.getIntent());
+            final PersonIntent intent = new PersonIntent(this.getIntent());
             if(intent.isOwnerIDSet()) {
                 if(intent.explainIdentityAssurance()) {
-                    certList = this.produceListToExplain(intent.getSubjectID());
-                } else {
-                    certList = this.produceListBySubject(intent.getSubjectID());
-                }
-            } else {
-                if(intent.isSignerIDSet()) {
-                    certList = this.produceListByIssuer(intent.getIssuerID());
-                } else {
-                    Toast.makeText(this,
-                            "internal failure: neither owner nor signer id set",
-                            Toast.LENGTH_SHORT).show();
-                    this.finish();
-                    return;
+                    if(!this.canExplain(intent.getSubjectID())) return;
                 }
+            } else if(!intent.isSignerIDSet()) {
+                Toast.makeText(this,
+                        "internal failure: neither owner nor signer id set",
+                        Toast.LENGTH_SHORT).show();
+                this.finish();
+                return;
             }
 
+            this.certificateSource = new Callable<Collection<ASAPCertificate>>() {
+                @Override
+                public Collection<ASAPCertificate> call() throws Exception {
+                    return produceCertList(intent);
+                }
+            };
+
             ////////////////////////////////////////////////////////////////////////
             //                         prepare action bar                         //
             ////////////////////////////////////////////////////////////////////////
@@ -69,7 +71,7 @@ public class CertificateListActivity extends SharkNetActivity {
             ////////////////////////////////////////////////////////////////////////
             mRecyclerView = (RecyclerView) findViewById(R.id.certificate_list_recycler_view);
 
-            mAdapter = new CertificateListContentAdapter(this, certList);
+            mAdapter = new CertificateListContentAdapter(this);
             RecyclerView.LayoutManager mLayoutManager =
                     new LinearLayoutManager(getApplicationContext());
 
@@ -86,6 +88,17 @@ public class CertificateListActivity extends SharkNetActivity {
         }
     }
 
+    private List<ASAPCertificate> produceCertList(PersonIntent intent) throws ASAPSecurityException {
+        if(intent.isOwnerIDSet()) {
+            if(intent.explainIdentityAssurance()) {
+                return this.produceListToExplain(intent.getSubjectID());
+            }
+            return this.produceListBySubject(intent.getSubjectID());
+        }
+
+        return this.produceListByIssuer(intent.getIssuerID());
+    }
+
     private List<ASAPCertificate> produceCertList(Collection<ASAPCertificate> certColl) {
         return new ArrayList<>(certColl);
     }
@@ -104,33 +117,39 @@ public class CertificateListActivity extends SharkNetActivity {
         return this.produceCertList(certColl);
     }
 
-    private List<ASAPCertificate> produceListToExplain(CharSequence userID)
-            throws ASAPSecurityException {
-
-        List<ASAPCertificate> certList = new ArrayList<>();
-        List<CharSequence> idPath =
-                this.getSharkNetApp().getSharkPKI().getIdentityAssurancesCertificationPath(userID);
+    /**
+     * @return false if there is nothing to explain - activity is finished in that case
+     */
+    private boolean canExplain(CharSequence userID) {
+        List<ASAPCertificate> path = this.getCertificationPath(userID);
 
-        if(idPath.isEmpty()) {
+        if(path.isEmpty()) {
             Toast.makeText(this, "Person can not be verified", Toast.LENGTH_LONG).show();
             this.finish();
-            return null;
+            return false;
         }
 
-        if(idPath.get(0).toString().equalsIgnoreCase(this.getSharkNetApp().getOwnerID().toString())) {
+        if(path.size() == 1) {
             // direct certificate
             Toast.makeText(this, "You met this person and signed a certificate",
                     Toast.LENGTH_LONG).show();
             this.finish();
-            return null;
+            return false;
         }
 
-        for(CharSequence id : idPath) {
-            certList.add(this.getSharkNetApp().getSharkPKI().
-                    getCertificatesBySubject(id).iterator().next());
-        }
+        return true;
+    }
 
-        return certList;
+    private List<ASAPCertificate> produceListToExplain(CharSequence userID) {
+        return new ArrayList<>(this.getCertificationPath(userID));
+    }
+
+    /**
+     * @return precomputed best path - certificate of that person first. Engine is kept up to
+     * date by PKI changes (see {@link PKISnapshot}) - nothing is computed here.
+     */
+    private List<ASAPCertificate> getCertificationPath(CharSequence userID) {
+        return TrustPathEngine.getTrustPathEngine().getCertificationPath(userID);
     }
 
     /////////////////////////////////////////////////////////////////////////////////
@@ -173,7 +192,10 @@ public class CertificateListActivity extends SharkNetActivity {
 
     protected void onResume() {
         super.onResume();
-        Log.d(Util.getLogStart(this), "onResume: assume data set changed.");
-        this.mAdapter.notifyDataSetChanged();
+        if(this.mAdapter != null) {
+            // first call fills the list - later calls update changed rows only
+            Log.d(Util.getLogStart(this), "onResume: refresh certificates snapshot");
+            this.mAdapter.refresh(this.certificateSource);
+        }
     }
 }
@@ -7,24 +7,28 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
+import androidx.recyclerview.widget.AsyncListDiffer;
 import androidx.recyclerview.widget.RecyclerView;
 
 import net.sharksystem.R;
 import net.sharksystem.SharkException;
-import net.sharksystem.asap.ASAPSecurityException;
 import net.sharksystem.asap.pki.ASAPCertificate;
 import net.sharksystem.sharknet.android.SharkNetApp;
 
 import java.text.SimpleDateFormat;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 class CertificateListContentAdapter extends
         RecyclerView.Adapter<CertificateListContentAdapter.MyViewHolder>
         implements View.OnClickListener /*, View.OnLongClickListener */ {
 
     private final Context ctx;
-    private final List<ASAPCertificate> certList;
+    private final AsyncListDiffer<CertificateListEntry> differ =
+            new AsyncListDiffer<>(this, CertificateListEntry.DIFF_CALLBACK);
+    private final ListSnapshots.StableIDs stableIDs = new ListSnapshots.StableIDs();
     private View.OnClickListener clickListener;
 //    private View.OnLongClickListener longClickListener;
 
@@ -49,12 +53,26 @@ class CertificateListContentAdapter extends
         }
     }
 
-    public CertificateListContentAdapter(Context ctx, List<ASAPCertificate> certList) throws SharkException {
+    public CertificateListContentAdapter(Context ctx) throws SharkException {
         Log.d(this.getLogStart(), "constructor");
         this.ctx = ctx;
         this.clickListener = this;
-        this.certList = certList;
         //this.longClickListener = this;
+        this.setHasStableIds(true);
+    }
+
+    /**
+     * Produce certificate list and rows in background. Only rows that changed are rebound.
+     * @param certificateSource called on a background thread
+     */
+    void refresh(final Callable<Collection<ASAPCertificate>> certificateSource) {
+        ListSnapshots.load(new Callable<List<CertificateListEntry>>() {
+            @Override
+            public List<CertificateListEntry> call() throws Exception {
+                return CertificateListEntry.produceSnapshot(certificateSource.call(),
+                        SharkNetApp.getSharkNetApp().getSharkPKI());
+            }
+        }, this.differ);
     }
 
     @Override
@@ -72,63 +90,30 @@ class CertificateListContentAdapter extends
     public void onBindViewHolder(CertificateListContentAdapter.MyViewHolder holder, int position) {
         Log.d(this.getLogStart(), "onBindViewHolder with position: " + position);
 
-        ASAPCertificate asapCertificate = this.certList.get(position);
+        CertificateListEntry entry = this.differ.getCurrentList().get(position);
 
         SimpleDateFormat simpleDateFormat = new SimpleDateFormat("MMM dd., yyyy");
-        holder.validSince.setText(simpleDateFormat.format(
-                new Date(asapCertificate.getValidSince().getTimeInMillis())));
-
-        holder.validUntil.setText(simpleDateFormat.format(
-                new Date(asapCertificate.getValidUntil().getTimeInMillis())));
-
-        CharSequence ownerName = null;
-        try {
-            ownerName = SharkNetApp.getSharkNetApp().
-                    getSharkPKI().getPersonValuesByID(asapCertificate.getSubjectID()).getName();
-        } catch (ASAPSecurityException e) {
-            Log.d(this.getLogStart(), "problems finding a name for peerID: " + e.getLocalizedMessage());
-        }
-
-        holder.subjectName.setText(ownerName);
-
-        holder.subjectNameCopy.setText(" " + ownerName + ": ");
-
-        CharSequence signerName;
-        if(asapCertificate.getIssuerID().toString().
-                equalsIgnoreCase(SharkNetApp.getSharkNetApp().getOwnerID().toString())) {
-            signerName = "You";
-        } else {
-            signerName = asapCertificate.getIssuerName();
-        }
+        holder.validSince.setText(simpleDateFormat.format(new Date(entry.validSince)));
+        holder.validUntil.setText(simpleDateFormat.format(new Date(entry.validUntil)));
 
-        holder.issuerName.setText(signerName);
+        holder.subjectName.setText(entry.subjectName);
+        holder.subjectNameCopy.setText(" " + entry.subjectName + ": ");
+        holder.issuerName.setText(entry.issuerName);
+        holder.caIssuer.setText(String.valueOf(entry.issuerSigningFailureRate));
+        holder.identityAssurance.setText(String.valueOf(entry.identityAssurance));
 
-        int cef = SharkNetApp.getSharkNetApp().getSharkPKI().
-                getSigningFailureRate(asapCertificate.getIssuerID());
-
-        holder.caIssuer.setText(String.valueOf(cef));
-
-        int identityAssurance = 0;
-        try {
-            identityAssurance = SharkNetApp.getSharkNetApp().getSharkPKI().
-                    getIdentityAssurance(asapCertificate.getSubjectID());
-        } catch (ASAPSecurityException e) {
-            Log.d(this.getLogStart(),
-                    "issuer in certificate but not found in person storage " +
-                            "- can happen if persons are manually removed from list");
-        }
-
-        holder.identityAssurance.setText(String.valueOf(identityAssurance));
-
-        holder.itemView.setTag(R.id.certificate_list_subject_tag, asapCertificate.getSubjectID());
-        holder.itemView.setTag(R.id.certificate_list_issuer_tag, asapCertificate.getIssuerID());
+        holder.itemView.setTag(R.id.certificate_list_subject_tag, entry.subjectID);
+        holder.itemView.setTag(R.id.certificate_list_issuer_tag, entry.issuerID);
     }
 
     @Override
     public int getItemCount() {
-        Log.d(this.getLogStart(), "called getItemCount");
+        return this.differ.getCurrentList().size();
+    }
 
-        return this.certList.size();
+    @Override
+    public long getItemId(int position) {
+        return this.stableIDs.idOf(this.differ.getCurrentList().get(position).identity);
     }
 
     /*
@@ -0,0 +1,119 @@
+package net.sharksystem.pki.android;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.pki.ASAPCertificate;
+import net.sharksystem.pki.SharkPKIComponent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable copy of what a certificate list row displays. Produced on a background
+ * thread - binding a row needs no PKI lookup.
+ */
+final class CertificateListEntry {
+    /** issuer, subject and begin of validity identify a certificate */
+    final String identity;
+    final String subjectID;
+    final String issuerID;
+    final String subjectName;
+    final String issuerName;
+    final long validSince;
+    final long validUntil;
+    final int issuerSigningFailureRate;
+    final int identityAssurance;
+
+    private CertificateListEntry(ASAPCertificate certificate, SharkPKIComponent sharkPKI) {
+        this.subjectID = certificate.getSubjectID().toString();
+        this.issuerID = certificate.getIssuerID().toString();
+        this.validSince = certificate.getValidSince().getTimeInMillis();
+        this.validUntil = certificate.getValidUntil().getTimeInMillis();
+        this.identity = this.issuerID + "/" + this.subjectID + "/" + this.validSince;
+
+        String subjectName = null;
+        try {
+            subjectName = String.valueOf(
+                    sharkPKI.getPersonValuesByID(certificate.getSubjectID()).getName());
+        } catch (ASAPSecurityException e) {
+            Log.d(this.getLogStart(), "problems finding a name for peerID: "
+                    + e.getLocalizedMessage());
+        }
+        this.subjectName = subjectName;
+
+        if(this.issuerID.equalsIgnoreCase(sharkPKI.getOwnerID().toString())) {
+            this.issuerName = "You";
+        } else {
+            this.issuerName = String.valueOf(certificate.getIssuerName());
+        }
+
+        this.issuerSigningFailureRate = sharkPKI.getSigningFailureRate(certificate.getIssuerID());
+
+        int identityAssurance = 0;
+        try {
+            identityAssurance = sharkPKI.getIdentityAssurance(certificate.getSubjectID());
+        } catch (ASAPSecurityException e) {
+            Log.d(this.getLogStart(),
+                    "issuer in certificate but not found in person storage " +
+                            "- can happen if persons are manually removed from list");
+        }
+        this.identityAssurance = identityAssurance;
+    }
+
+    static List<CertificateListEntry> produceSnapshot(Collection<ASAPCertificate> certificates,
+                                                      SharkPKIComponent sharkPKI) {
+        List<CertificateListEntry> entries = new ArrayList<>(certificates.size());
+        for(ASAPCertificate certificate : certificates) {
+            entries.add(new CertificateListEntry(certificate, sharkPKI));
+        }
+
+        return entries;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(!(o instanceof CertificateListEntry)) return false;
+
+        CertificateListEntry other = (CertificateListEntry) o;
+        return this.identity.equals(other.identity)
+                && this.validUntil == other.validUntil
+                && equalStrings(this.subjectName, other.subjectName)
+                && this.issuerName.equals(other.issuerName)
+                && this.issuerSigningFailureRate == other.issuerSigningFailureRate
+                && this.identityAssurance == other.identityAssurance;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.identity.hashCode();
+    }
+
+    private static boolean equalStrings(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private String getLogStart() {
+        return this.getClass().getSimpleName();
+    }
+
+    static final DiffUtil.ItemCallback<CertificateListEntry> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<CertificateListEntry>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull CertificateListEntry oldEntry,
+                                               @NonNull CertificateListEntry newEntry) {
+                    return oldEntry.identity.equals(newEntry.identity);
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull CertificateListEntry oldEntry,
+                                                  @NonNull CertificateListEntry newEntry) {
+                    return oldEntry.equals(newEntry);
+                }
+            };
+}
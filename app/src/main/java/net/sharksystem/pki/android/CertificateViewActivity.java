@@ -8,9 +8,11 @@ import android.widget.Toast;
 
 import net.sharksystem.R;
 import net.sharksystem.SharkException;
+import net.sharksystem.asap.ASAPException;
 import net.sharksystem.asap.ASAPSecurityException;
 import net.sharksystem.asap.pki.ASAPCertificate;
 import net.sharksystem.sharknet.android.SharkNetActivity;
+import net.sharksystem.sharknet.android.SharkNetApp;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -18,6 +20,7 @@ import java.util.Date;
 public class CertificateViewActivity extends SharkNetActivity {
     private CharSequence subjectID;
     private CharSequence issuerID;
+    private ASAPCertificate certificate;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -76,6 +79,14 @@ public class CertificateViewActivity extends SharkNetActivity {
             tv.setText(simpleDateFormat.format(
                     new Date(cert.getValidUntil().getTimeInMillis())));
 
+            // only issuer can revoke
+            this.certificate = cert;
+            boolean revocable = this.getSharkNetApp().getOwnerID().toString()
+                    .equals(cert.getIssuerID().toString())
+                    && !this.getSharkNetApp().getRevocationList().isRevoked(cert);
+            findViewById(R.id.certificate_view_revoke_button)
+                    .setVisibility(revocable ? View.VISIBLE : View.GONE);
+
         } catch (SharkException e) {
             Log.d(this.getLogStart(),
                     "problems when setting up certificate view: " + e.getLocalizedMessage());
@@ -86,6 +97,54 @@ public class CertificateViewActivity extends SharkNetActivity {
         this.finish();
     }
 
+    public void onRevokeClick(View view) {
+        if(this.certificate == null) return;
+
+        // signing can take a while - activity is closed when record is out
+        view.setEnabled(false);
+        final SharkNetApp sharkNetApp = this.getSharkNetApp();
+        try {
+            RevocationRecord.produceRevocation(this.certificate, sharkNetApp.getSharkPKI(),
+                    sharkNetApp.getSigningService(), new RevocationRecord.Callback() {
+                        @Override
+                        public void produced(RevocationRecord record) {
+                            try {
+                                if(sharkNetApp.getRevocationList().add(record)) {
+                                    // spread like certificates
+                                    sharkNetApp.getASAPAndroidPeer().sendASAPMessage(
+                                            RevocationList.REVOCATION_FORMAT,
+                                            RevocationList.REVOCATION_URI, record.asBytes());
+                                    PKISnapshot.invalidate();
+                                }
+                                revocationDone("certificate revoked");
+                            } catch (ASAPException e) {
+                                failed(e);
+                            }
+                        }
+
+                        @Override
+                        public void failed(ASAPException e) {
+                            Log.w(getLogStart(), "cannot revoke certificate: "
+                                    + e.getLocalizedMessage());
+                            revocationDone("cannot revoke: " + e.getLocalizedMessage());
+                        }
+                    });
+        } catch (ASAPSecurityException e) {
+            Log.w(this.getLogStart(), "cannot revoke certificate: " + e.getLocalizedMessage());
+            this.revocationDone("cannot revoke: " + e.getLocalizedMessage());
+        }
+    }
+
+    private void revocationDone(final String text) {
+        this.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(CertificateViewActivity.this, text, Toast.LENGTH_LONG).show();
+                CertificateViewActivity.this.finish();
+            }
+        });
+    }
+
     public void onDeleteClick(View view) {
         Toast.makeText(this, "TODO: doDeleteClick", Toast.LENGTH_SHORT).show();
         this.finish();
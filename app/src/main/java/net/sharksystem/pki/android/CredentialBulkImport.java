@@ -0,0 +1,261 @@
+package net.sharksystem.pki.android;
+
+import android.util.Log;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.pki.ASAPCertificate;
+import net.sharksystem.asap.pki.CredentialMessageInMemo;
+import net.sharksystem.pki.CredentialMessage;
+import net.sharksystem.pki.SharkPKIComponent;
+import net.sharksystem.sharknet.android.KeyProfile;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Imports many credential messages at once - e.g. a whole team during onboarding.
+ * <p>
+ * Import file is a sequence of records: length (int, big endian) followed by a serialized
+ * credential message. File is read as a stream. Records are parsed and validated in
+ * parallel while reading goes on - a bounded number of records is in memory. Valid
+ * credentials are signed in file order on the calling thread as soon as their validation
+ * is done - signing does not wait for the end of file. Validation does not touch PKI -
+ * SharkPKI is used by the calling thread only. Changes are announced once at the end, even
+ * if file cannot be read to its end. Result is a {@link Report}.
+ */
+class CredentialBulkImport {
+    /** reject records larger than that - credential messages are a few hundred bytes */
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+    /** records read but not yet signed */
+    private static final int MAX_RECORDS_IN_FLIGHT = 64;
+    /** credential may claim a validity start that far in future - clocks differ */
+    private static final long MAX_CLOCK_SKEW_IN_MILLIS = 1000L * 60 * 60 * 24;
+
+    private final SharkPKIComponent sharkPKI;
+
+    CredentialBulkImport(SharkPKIComponent sharkPKI) {
+        this.sharkPKI = sharkPKI;
+    }
+
+    /**
+     * Read, validate and accept all credentials. Runs long - do not call on UI thread.
+     * Read errors end the import - credentials read before are still accepted.
+     */
+    Report importCredentials(InputStream is) {
+        Report report = new Report();
+        long start = System.currentTimeMillis();
+
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        ExecutorService validationPool = Executors.newFixedThreadPool(threads);
+        final String ownerID = this.sharkPKI.getOwnerID().toString();
+        final long now = System.currentTimeMillis();
+
+        // validations in file order - head is signed as soon as it is done
+        Deque<Future<Validation>> pending = new ArrayDeque<>();
+        Set<String> seen = new HashSet<>();
+        DataInputStream dis = new DataInputStream(is);
+        try {
+            for(;;) {
+                int length;
+                try {
+                    length = dis.readInt();
+                } catch (EOFException e) {
+                    break; // regular end of file
+                }
+
+                if(length <= 0 || length > MAX_RECORD_SIZE) {
+                    // cannot find next record - give up on rest of file
+                    report.reject("corrupt record length: " + length);
+                    break;
+                }
+
+                final byte[] record = new byte[length];
+                dis.readFully(record);
+                report.read++;
+
+                pending.add(validationPool.submit(new Callable<Validation>() {
+                    @Override
+                    public Validation call() {
+                        return validate(record, ownerID, now);
+                    }
+                }));
+
+                // sign what is validated - wait for head if too many records are in memory
+                while(!pending.isEmpty() && (pending.peek().isDone()
+                        || pending.size() >= MAX_RECORDS_IN_FLIGHT)) {
+                    this.accept(pending.poll(), seen, report);
+                }
+            }
+        } catch (EOFException e) {
+            report.reject("truncated record at end of file");
+        } catch (IOException e) {
+            report.reject("cannot read rest of file: " + e.getLocalizedMessage());
+        } finally {
+            validationPool.shutdown();
+
+            // records read so far are signed - whatever happened to the rest of file
+            while(!pending.isEmpty()) this.accept(pending.poll(), seen, report);
+
+            // announce changes once
+            if(!report.accepted.isEmpty()) PKISnapshot.invalidate();
+        }
+
+        report.durationInMillis = System.currentTimeMillis() - start;
+        Log.d(this.getLogStart(), report.toString());
+        return report;
+    }
+
+    /**
+     * Sign and store a validated credential - in file order, duplicates within file and
+     * credentials already certified are dropped here. Waits for validation to finish.
+     */
+    private void accept(Future<Validation> future, Set<String> seen, Report report) {
+        Validation validation;
+        try {
+            validation = future.get();
+        } catch (ExecutionException | InterruptedException e) {
+            report.reject("validation failed: " + e.getLocalizedMessage());
+            return;
+        }
+
+        if(validation.problem != null) {
+            report.reject(validation.problem);
+            return;
+        }
+
+        CredentialMessage credential = validation.credential;
+        String subjectID = credential.getSubjectID().toString();
+        if(!seen.add(subjectID)) {
+            report.reject("duplicate in file");
+            return;
+        }
+
+        try {
+            ASAPCertificate existing = this.sharkPKI.getCertificateByIssuerAndSubject(
+                    this.sharkPKI.getOwnerID(), subjectID);
+            if(existing != null
+                    && existing.getPublicKey().equals(credential.getPublicKey())) {
+                report.reject("already certified");
+                return;
+            }
+        } catch (ASAPSecurityException e) {
+            // no certificate yet - fine
+        }
+
+        try {
+            TrustPathEngine.getTrustPathEngine()
+                    .addCertificate(this.sharkPKI.acceptAndSignCredential(credential));
+            report.accepted.add(credential.getSubjectName().toString());
+        } catch (IOException | ASAPSecurityException e) {
+            Log.w(this.getLogStart(), "cannot accept credential of "
+                    + credential.getSubjectID() + ": " + e.getLocalizedMessage());
+            report.reject("signing failed");
+        }
+    }
+
+    /**
+     * Called in parallel - must not change anything and must not use PKI.
+     */
+    private Validation validate(byte[] record, String ownerID, long now) {
+        CredentialMessage credential;
+        try {
+            credential = new CredentialMessageInMemo(record);
+        } catch (IOException | ASAPException e) {
+            return new Validation("malformed credential");
+        }
+
+        if(credential.getSubjectID() == null || credential.getSubjectID().length() == 0) {
+            return new Validation("no subject id");
+        }
+
+        String subjectID = credential.getSubjectID().toString();
+        if(subjectID.equals(ownerID)) return new Validation("own credential");
+
+        if(credential.getPublicKey() == null) return new Validation("no public key");
+        // PKI verifies with RSA signatures only - see KeyProfile
+        if(!KeyProfile.DEFAULT_PROFILE.getKeyAlgorithm()
+                .equalsIgnoreCase(credential.getPublicKey().getAlgorithm())) {
+            return new Validation("unsupported key algorithm");
+        }
+
+        if(credential.getValidSince() > now + MAX_CLOCK_SKEW_IN_MILLIS) {
+            return new Validation("validity starts in future");
+        }
+
+        return new Validation(credential);
+    }
+
+    private String getLogStart() {
+        return this.getClass().getSimpleName();
+    }
+
+    private static class Validation {
+        final CredentialMessage credential;
+        final String problem;
+
+        Validation(CredentialMessage credential) {
+            this.credential = credential;
+            this.problem = null;
+        }
+
+        Validation(String problem) {
+            this.credential = null;
+            this.problem = problem;
+        }
+    }
+
+    /**
+     * What happened during import.
+     */
+    static class Report {
+        int read = 0;
+        final List<String> accepted = new ArrayList<>();
+        /** reason -> number of records */
+        final Map<String, Integer> rejected = new LinkedHashMap<>();
+        long durationInMillis = 0;
+
+        void reject(String reason) {
+            Integer number = this.rejected.get(reason);
+            this.rejected.put(reason, number == null ? 1 : number + 1);
+        }
+
+        int getRejectedNumber() {
+            int sum = 0;
+            for(int number : this.rejected.values()) sum += number;
+            return sum;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("read: ").append(this.read);
+            sb.append("\naccepted: ").append(this.accepted.size());
+            sb.append("\nrejected: ").append(this.getRejectedNumber());
+            for(Map.Entry<String, Integer> entry : this.rejected.entrySet()) {
+                sb.append("\n  ").append(entry.getKey()).append(": ").append(entry.getValue());
+            }
+            sb.append("\nduration (ms): ").append(this.durationInMillis);
+            if(!this.accepted.isEmpty()) {
+                sb.append("\n\nnew persons:");
+                for(String name : this.accepted) sb.append("\n  ").append(name);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -32,6 +32,14 @@ public class CredentialReceiveActivity extends SharkNetActivity
         this.finish();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // credentials received later are queued again
+        this.getSharkNetApp().getSharkPKI().setSharkCredentialReceivedListener(
+                this.getSharkNetApp().getReceivedCredentialListener());
+    }
+
     @Override
     public void credentialReceived(CredentialMessage credentialMessage) {
         CredentialExchangeActivity.addCredentialMessageToObjectHolder(credentialMessage, false);
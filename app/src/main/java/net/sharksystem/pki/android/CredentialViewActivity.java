@@ -91,7 +91,8 @@ public class CredentialViewActivity extends SharkNetActivity {
         }
 
         try {
-            this.getSharkNetApp().getSharkPKI().acceptAndSignCredential(this.credentialMessage);
+            PKISnapshot.certificateAdded(this.getSharkNetApp().getSharkPKI()
+                    .acceptAndSignCredential(this.credentialMessage));
         } catch (IOException | ASAPSecurityException e) {
             String s = "fatal: could not add certificate: " + e.getLocalizedMessage();
             Log.e(this.getLogStart(), s);
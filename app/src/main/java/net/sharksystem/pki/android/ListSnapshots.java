@@ -0,0 +1,82 @@
+package net.sharksystem.pki.android;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.recyclerview.widget.AsyncListDiffer;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Produces immutable list snapshots for list adapters off the UI thread. Snapshots
+ * are handed to an {@link AsyncListDiffer} - it computes the difference to the displayed
+ * list in background and updates changed rows only. Nothing changed - nothing is rebound.
+ */
+public final class ListSnapshots {
+    private static final ExecutorService executor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SN2ListSnapshots");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private ListSnapshots() {}
+
+    /**
+     * @param snapshotProducer called on a background thread - PKI lookups go here
+     * @param differ receives snapshot on UI thread
+     */
+    public static <T> void load(final Callable<List<T>> snapshotProducer,
+                         final AsyncListDiffer<T> differ) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<T> snapshot;
+                try {
+                    snapshot = Collections.unmodifiableList(snapshotProducer.call());
+                } catch (Exception e) {
+                    Log.w(ListSnapshots.class.getSimpleName(), "cannot produce list snapshot: "
+                            + e.getLocalizedMessage());
+                    return;
+                }
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        differ.submitList(snapshot);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Hands out a stable id for each key - same key, same id as long as adapter lives.
+     * Used from UI thread only.
+     */
+    public static class StableIDs {
+        private final Map<String, Long> ids = new HashMap<>();
+
+        public long idOf(String key) {
+            Long id = this.ids.get(key);
+            if(id == null) {
+                id = (long) this.ids.size();
+                this.ids.put(key, id);
+            }
+            return id;
+        }
+    }
+}
@@ -111,6 +111,8 @@ public class OwnerActivity extends SharkNetActivity {
             String text = null;
             try {
                 OwnerActivity.this.getSharkNetApp().getSharkPKI().generateKeyPair();
+                // signing service still holds a handle of the old key
+                OwnerActivity.this.getSharkNetApp().getSigningService().invalidateKeyHandle();
 
                 // debugging
                 /*
@@ -0,0 +1,425 @@
+package net.sharksystem.pki.android;
+
+import android.util.Log;
+
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.asap.ASAPMessageReceivedListener;
+import net.sharksystem.asap.ASAPMessages;
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.pki.ASAPCertificate;
+import net.sharksystem.asap.pki.ASAPCertificateImpl;
+import net.sharksystem.pki.SharkPKIComponent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of what the app derives from PKI: person list with identity assurance
+ * and the certificate index. Rebuilding that from PKI means an identity assurance search
+ * per person and parsing each certificate. Reading the snapshot is a memory map and
+ * a linear scan.
+ * <p>
+ * Layout (big endian): magic, format version, owner id, storage stamp, persons
+ * (id, name, identity assurance, signing failure rate), certificates (encoded bytes),
+ * CRC32 over everything before. Storage stamp is newest modification time in PKI storage -
+ * certificates received in the meantime make the snapshot stale. Stale, corrupt or
+ * unknown snapshots are ignored and rebuilt.
+ * <p>
+ * Snapshot is written via tmp file and rename - never half written. App side changes
+ * call {@link #invalidate()} - file is removed at once and rebuilt in background. So do
+ * certificates received from other peers - see {@link CertificateMessageReceivedListener}.
+ * {@link TrustPathEngine} is fed with app side changes at once - each rebuild syncs it with
+ * what arrived from other peers. Readers never sync it themselves. A {@link RebuildListener}
+ * is told about each rebuild.
+ */
+public class PKISnapshot {
+    private static final String SNAPSHOT_FILE_NAME = "SN2PKISnapshot";
+    private static final int MAGIC = 0x534E3250; // SN2P
+    private static final int FORMAT_VERSION = 1;
+
+    private static final ExecutorService executor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SN2PKISnapshot");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private static File snapshotFile = null;
+    private static File pkiStorageFolder = null;
+    private static SharkPKIComponent sharkPKI = null;
+    private static volatile PKISnapshot current = null;
+    private static boolean rebuildScheduled = false;
+    private static final List<RebuildListener> rebuildListeners = new CopyOnWriteArrayList<>();
+
+    private final String ownerID;
+    private final long storageStamp;
+    private final List<PersonListEntry> persons;
+    private final List<byte[]> certificates;
+
+    private PKISnapshot(String ownerID, long storageStamp,
+                        List<PersonListEntry> persons, List<byte[]> certificates) {
+        this.ownerID = ownerID;
+        this.storageStamp = storageStamp;
+        this.persons = Collections.unmodifiableList(persons);
+        this.certificates = Collections.unmodifiableList(certificates);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                       life cycle                                        //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Read snapshot - or rebuild it - in background. Called once during app start.
+     * @param filesDir app storage snapshot is kept in
+     * @param asapRootFolder root folder of shark peer - PKI storage is found there
+     */
+    public static synchronized void initialize(File filesDir, File asapRootFolder,
+                                               SharkPKIComponent sharkPKI) {
+        PKISnapshot.snapshotFile = new File(filesDir, SNAPSHOT_FILE_NAME);
+        PKISnapshot.pkiStorageFolder = asapRootFolder;
+        PKISnapshot.sharkPKI = sharkPKI;
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                String ownerID = PKISnapshot.sharkPKI.getOwnerID().toString();
+                long storageStamp = getStorageStamp();
+
+                PKISnapshot snapshot = read(snapshotFile, ownerID, storageStamp);
+                if(snapshot != null) {
+                    Log.d(getLogStart(), "startup trace: snapshot mapped in ms: "
+                            + (System.currentTimeMillis() - start));
+                    current = snapshot;
+                    snapshot.seedTrustPathEngine();
+                } else {
+                    rebuild();
+                    Log.d(getLogStart(), "startup trace: snapshot rebuilt in ms: "
+                            + (System.currentTimeMillis() - start));
+                }
+            }
+        });
+    }
+
+    /**
+     * Informed on snapshot thread after each rebuild - PKI might know certificates it
+     * did not know before.
+     */
+    public interface RebuildListener {
+        void snapshotRebuilt();
+    }
+
+    public static void addRebuildListener(RebuildListener listener) {
+        rebuildListeners.add(listener);
+    }
+
+    public static void removeRebuildListener(RebuildListener listener) {
+        rebuildListeners.remove(listener);
+    }
+
+    /**
+     * @return last valid snapshot or null if there is none (yet)
+     */
+    static PKISnapshot getCurrent() {
+        return current;
+    }
+
+    /**
+     * PKI state was changed by app (failure rate, accepted credential ...). Snapshot file
+     * is removed immediately - a crash cannot leave a stale one - and rebuilt in background.
+     */
+    public static synchronized void invalidate() {
+        if(snapshotFile == null) return; // not yet initialized
+        if(snapshotFile.exists() && !snapshotFile.delete()) {
+            Log.w(getLogStart(), "cannot remove stale snapshot");
+        }
+
+        if(rebuildScheduled) return;
+        rebuildScheduled = true;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized(PKISnapshot.class) {
+                    rebuildScheduled = false;
+                }
+                rebuild();
+            }
+        });
+    }
+
+    /**
+     * App issued a certificate. Trust path engine learns it at once - snapshot is rebuilt
+     * in background.
+     */
+    public static void certificateAdded(ASAPCertificate certificate) {
+        TrustPathEngine.getTrustPathEngine().addCertificate(certificate);
+        invalidate();
+    }
+
+    /**
+     * PKI stores certificates of other peers in its ASAP storage. Each delivery makes
+     * snapshot and trust paths stale - they are rebuilt in background.
+     */
+    public static class CertificateMessageReceivedListener
+            implements ASAPMessageReceivedListener {
+
+        @Override
+        public void asapMessagesReceived(ASAPMessages asapMessages, String senderE2E,
+                                         List<ASAPHop> asapHops) {
+            Log.d(getLogStart(), "certificates received from " + senderE2E);
+            invalidate();
+        }
+    }
+
+    private static void rebuild() {
+        try {
+            PKISnapshot snapshot = produce(sharkPKI, getStorageStamp());
+            snapshot.write(snapshotFile);
+            current = snapshot;
+            TrustPathEngine.getTrustPathEngine().sync(sharkPKI);
+            Log.d(getLogStart(), "snapshot rebuilt: " + snapshot.persons.size() + " persons, "
+                    + snapshot.certificates.size() + " certificates");
+        } catch (IOException | ASAPSecurityException | RuntimeException e) {
+            Log.e(getLogStart(), "cannot rebuild snapshot: " + e.getLocalizedMessage());
+        }
+
+        for(RebuildListener listener : rebuildListeners) listener.snapshotRebuilt();
+    }
+
+    /**
+     * @return newest modification time of any file in PKI storage
+     */
+    private static long getStorageStamp() {
+        return newestModification(pkiStorageFolder, false);
+    }
+
+    private static long newestModification(File file, boolean insidePKIStorage) {
+        if(file == null || !file.exists()) return 0;
+
+        boolean pki = insidePKIStorage
+                || file.getName().contains(SharkPKIComponent.PKI_APP_NAME);
+        if(file.isFile()) return pki ? file.lastModified() : 0;
+
+        long newest = pki ? file.lastModified() : 0;
+        File[] children = file.listFiles();
+        if(children != null) {
+            for(File child : children) {
+                newest = Math.max(newest, newestModification(child, pki));
+            }
+        }
+        return newest;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         content                                         //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    List<PersonListEntry> getPersons() {
+        return this.persons;
+    }
+
+    /**
+     * @return certificates - unreadable ones are skipped
+     */
+    List<ASAPCertificate> getCertificates() {
+        List<ASAPCertificate> certificateList = new ArrayList<>(this.certificates.size());
+        for(byte[] certificateBytes : this.certificates) {
+            try {
+                certificateList.add(ASAPCertificateImpl.produceCertificateFromBytes(certificateBytes));
+            } catch (IOException | GeneralSecurityException e) {
+                Log.w(getLogStart(), "skip unreadable certificate: " + e.getLocalizedMessage());
+            }
+        }
+        return certificateList;
+    }
+
+    private void seedTrustPathEngine() {
+        TrustPathEngine trustPathEngine = TrustPathEngine.getTrustPathEngine();
+        for(PersonListEntry person : this.persons) {
+            trustPathEngine.setSigningFailureRate(person.userID, person.signingFailureRate);
+        }
+        for(ASAPCertificate certificate : this.getCertificates()) {
+            trustPathEngine.addCertificate(certificate);
+        }
+    }
+
+    /**
+     * Full rebuild from PKI.
+     */
+    static PKISnapshot produce(SharkPKIComponent sharkPKI, long storageStamp)
+            throws ASAPSecurityException {
+
+        List<byte[]> certificates = new ArrayList<>();
+        for(ASAPCertificate certificate : sharkPKI.getCertificates()) {
+            certificates.add(certificate.asBytes());
+        }
+
+        return new PKISnapshot(sharkPKI.getOwnerID().toString(), storageStamp,
+                PersonListEntry.produceSnapshot(sharkPKI), certificates);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                      serialization                                      //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    void write(File file) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+
+        dos.writeInt(MAGIC);
+        dos.writeInt(FORMAT_VERSION);
+        writeString(dos, this.ownerID);
+        dos.writeLong(this.storageStamp);
+
+        dos.writeInt(this.persons.size());
+        for(PersonListEntry person : this.persons) {
+            writeString(dos, person.userID);
+            writeString(dos, person.name);
+            dos.writeInt(person.identityAssurance);
+            dos.writeInt(person.signingFailureRate);
+        }
+
+        dos.writeInt(this.certificates.size());
+        for(byte[] certificateBytes : this.certificates) {
+            dos.writeInt(certificateBytes.length);
+            dos.write(certificateBytes);
+        }
+        dos.flush();
+
+        byte[] content = baos.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(content);
+
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        try {
+            fos.write(content);
+            DataOutputStream crcStream = new DataOutputStream(fos);
+            crcStream.writeLong(crc.getValue());
+            crcStream.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+
+        if(!tmpFile.renameTo(file)) {
+            throw new IOException("cannot rename " + tmpFile + " to " + file);
+        }
+    }
+
+    /**
+     * @return snapshot or null if there is none, it is corrupt or stale
+     */
+    static PKISnapshot read(File file, String ownerID, long storageStamp) {
+        if(file == null || !file.exists()) return null;
+
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                long size = channel.size();
+                if(size < 8 || size > Integer.MAX_VALUE) {
+                    Log.w(getLogStart(), "snapshot has unexpected size - ignored: " + size);
+                    return null;
+                }
+
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                int contentLength = (int) size - 8;
+
+                // check sum first - parse nothing corrupt
+                if(checksum(buffer, contentLength) != buffer.getLong(contentLength)) {
+                    Log.w(getLogStart(), "snapshot corrupt - ignored");
+                    return null;
+                }
+
+                buffer.limit(contentLength);
+                if(buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                    Log.w(getLogStart(), "unknown snapshot format - ignored");
+                    return null;
+                }
+
+                String snapshotOwnerID = readString(buffer);
+                long snapshotStorageStamp = buffer.getLong();
+                if(!snapshotOwnerID.equals(ownerID) || snapshotStorageStamp != storageStamp) {
+                    Log.d(getLogStart(), "snapshot stale - ignored");
+                    return null;
+                }
+
+                int number = buffer.getInt();
+                List<PersonListEntry> persons = new ArrayList<>(number);
+                for(int i = 0; i < number; i++) {
+                    persons.add(new PersonListEntry(readString(buffer), readString(buffer),
+                            buffer.getInt(), buffer.getInt()));
+                }
+
+                number = buffer.getInt();
+                List<byte[]> certificates = new ArrayList<>(number);
+                for(int i = 0; i < number; i++) {
+                    byte[] certificateBytes = new byte[buffer.getInt()];
+                    buffer.get(certificateBytes);
+                    certificates.add(certificateBytes);
+                }
+
+                return new PKISnapshot(snapshotOwnerID, snapshotStorageStamp,
+                        persons, certificates);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException | BufferUnderflowException
+                | IllegalArgumentException | NegativeArraySizeException e) {
+            Log.w(getLogStart(), "cannot read snapshot - ignored: " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    private static long checksum(ByteBuffer buffer, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer content = buffer.duplicate();
+        byte[] chunk = new byte[8192];
+        int remaining = length;
+        while(remaining > 0) {
+            int n = Math.min(chunk.length, remaining);
+            content.get(chunk, 0, n);
+            crc.update(chunk, 0, n);
+            remaining -= n;
+        }
+        return crc.getValue();
+    }
+
+    private static void writeString(DataOutputStream dos, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String getLogStart() {
+        return PKISnapshot.class.getSimpleName();
+    }
+}
@@ -0,0 +1,132 @@
+package net.sharksystem.pki.android;
+
+import android.annotation.SuppressLint;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.widget.Toolbar;
+import androidx.recyclerview.widget.DefaultItemAnimator;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import net.sharksystem.R;
+import net.sharksystem.sharknet.android.SharkNetActivity;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Lists received credentials that are neither accepted nor rejected yet.
+ */
+public class PendingCredentialsListActivity extends SharkNetActivity {
+    private static final int PICK_IMPORT_FILE = 1;
+
+    private RecyclerView mRecyclerView;
+    private PendingCredentialsListContentAdapter mAdapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        Log.d(this.getLogStart(), "onCreate");
+
+        setContentView(R.layout.pending_credentials_list_drawer_layout);
+        this.getSharkNetApp().setupDrawerLayout(this);
+
+        ////////////////////////////////////////////////////////////////////////
+        //                         prepare action bar                         //
+        ////////////////////////////////////////////////////////////////////////
+        Toolbar myToolbar = (Toolbar) findViewById(R.id.pending_credentials_list_with_toolbar);
+        setSupportActionBar(myToolbar);
+
+        ////////////////////////////////////////////////////////////////////////
+        //                         prepare recycler view                      //
+        ////////////////////////////////////////////////////////////////////////
+        mRecyclerView = (RecyclerView) findViewById(R.id.pending_credentials_list_recycler_view);
+
+        mAdapter = new PendingCredentialsListContentAdapter(this);
+        RecyclerView.LayoutManager mLayoutManager =
+                new LinearLayoutManager(getApplicationContext());
+
+        mRecyclerView.setLayoutManager(mLayoutManager);
+        mRecyclerView.setItemAnimator(new DefaultItemAnimator());
+        mRecyclerView.setAdapter(mAdapter);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // credentials could have been handled or received meanwhile
+        this.mAdapter.refresh();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        MenuInflater inflater = getMenuInflater();
+        inflater.inflate(R.menu.pending_credentials_list_action_buttons, menu);
+        return true;
+    }
+
+    @SuppressLint("NonConstantResourceId")
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if(item.getItemId() == R.id.pendingCredentialsBulkImportButton) {
+            Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("*/*");
+            this.startActivityForResult(intent, PICK_IMPORT_FILE);
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if(requestCode != PICK_IMPORT_FILE || resultCode != RESULT_OK
+                || data == null || data.getData() == null) return;
+
+        final Uri uri = data.getData();
+        Toast.makeText(this, R.string.pendingCredentialsBulkImportRunning,
+                Toast.LENGTH_SHORT).show();
+
+        // parsing and signing hundreds of credentials takes a while - not on UI thread
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                String result;
+                try (InputStream is = getContentResolver().openInputStream(uri)) {
+                    if(is == null) throw new IOException("cannot open " + uri);
+                    CredentialBulkImport.Report report =
+                            new CredentialBulkImport(getSharkNetApp().getSharkPKI())
+                                    .importCredentials(is);
+                    result = report.toString();
+                } catch (IOException | RuntimeException e) {
+                    Log.w(getLogStart(), "bulk import failed: " + e.getLocalizedMessage());
+                    result = "import failed: " + e.getLocalizedMessage();
+                }
+
+                final String message = result;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(isFinishing()) return;
+                        new AlertDialog.Builder(PendingCredentialsListActivity.this)
+                                .setTitle(R.string.pendingCredentialsBulkImportTitle)
+                                .setMessage(message)
+                                .setPositiveButton(android.R.string.ok, null)
+                                .show();
+                        mAdapter.refresh();
+                    }
+                });
+            }
+        }, "SN2CredentialImport").start();
+    }
+}
@@ -0,0 +1,98 @@
+package net.sharksystem.pki.android;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import net.sharksystem.R;
+import net.sharksystem.android.IntentWithPosition;
+import net.sharksystem.asap.utils.DateTimeHelper;
+import net.sharksystem.pki.CredentialMessage;
+import net.sharksystem.pki.PKIHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class PendingCredentialsListContentAdapter extends
+        RecyclerView.Adapter<PendingCredentialsListContentAdapter.MyViewHolder>
+        implements View.OnClickListener {
+
+    private final Context ctx;
+    private List<CredentialMessage> pendingCredentials = new ArrayList<>();
+    private View.OnClickListener clickListener;
+
+    public class MyViewHolder extends RecyclerView.ViewHolder {
+        public TextView subjectName, subjectID, validSince, controlNumber;
+
+        public MyViewHolder(View view) {
+            super(view);
+            subjectName = view.findViewById(R.id.pending_credentials_list_row_subject_name);
+            subjectID = view.findViewById(R.id.pending_credentials_list_row_subject_id);
+            validSince = view.findViewById(R.id.pending_credentials_list_row_valid_since);
+            controlNumber = view.findViewById(R.id.pending_credentials_list_row_control_number);
+            view.setOnClickListener(clickListener);
+        }
+    }
+
+    PendingCredentialsListContentAdapter(Context ctx) {
+        this.ctx = ctx;
+        this.clickListener = this;
+    }
+
+    /**
+     * take a fresh copy of the pending credentials
+     */
+    void refresh() {
+        this.pendingCredentials =
+                ReceivedCredentialsQueue.getReceivedCredentialsQueue(this.ctx).getPendingCredentials();
+        this.notifyDataSetChanged();
+    }
+
+    @Override
+    public PendingCredentialsListContentAdapter.MyViewHolder onCreateViewHolder(
+            ViewGroup parent, int viewType) {
+
+        View itemView = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.pending_credentials_list_row, parent, false);
+
+        return new PendingCredentialsListContentAdapter.MyViewHolder(itemView);
+    }
+
+    @Override
+    public void onBindViewHolder(PendingCredentialsListContentAdapter.MyViewHolder holder,
+                                 int position) {
+        Log.d(this.getLogStart(), "onBindViewHolder with position: " + position);
+
+        CredentialMessage credentialMessage = this.pendingCredentials.get(position);
+
+        holder.subjectName.setText(credentialMessage.getSubjectName());
+        holder.subjectID.setText(credentialMessage.getSubjectID());
+        holder.validSince.setText("valid since: "
+                + DateTimeHelper.long2DateString(credentialMessage.getValidSince()));
+        holder.controlNumber.setText(PKIHelper.sixDigitsToString(credentialMessage.getRandomInt()));
+
+        holder.itemView.setId(position);
+    }
+
+    @Override
+    public int getItemCount() {
+        return this.pendingCredentials.size();
+    }
+
+    @Override
+    public void onClick(View view) {
+        IntentWithPosition intent = new IntentWithPosition(this.ctx, view.getId(),
+                PersonAddReceivedCredentialsActivity.class);
+
+        this.ctx.startActivity(intent);
+    }
+
+    protected String getLogStart() {
+        return this.getClass().getSimpleName();
+    }
+}
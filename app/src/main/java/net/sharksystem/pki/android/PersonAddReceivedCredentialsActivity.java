@@ -1,5 +1,6 @@
 package net.sharksystem.pki.android;
 
+import android.content.Intent;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
@@ -7,6 +8,8 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import net.sharksystem.R;
+import net.sharksystem.SharkException;
+import net.sharksystem.android.IntentWithPosition;
 import net.sharksystem.asap.utils.DateTimeHelper;
 import net.sharksystem.pki.CredentialMessage;
 import net.sharksystem.pki.PKIHelper;
@@ -29,9 +32,23 @@ public class PersonAddReceivedCredentialsActivity extends SharkNetActivity {
         setContentView(R.layout.person_add_received_credential_layout);
 
         Log.d(this.getLogStart(), "onCreate");
-        this.credential = PersonStatusHelper.getPersonsStorage().getReceivedCredential();
+        ReceivedCredentialsQueue queue = ReceivedCredentialsQueue.getReceivedCredentialsQueue(this);
+        try {
+            // a position is set if launched from pending credentials list
+            int position = new IntentWithPosition(this.getIntent()).getPosition();
+            this.credential = queue.get(position);
+        } catch (SharkException | IndexOutOfBoundsException e) {
+            // take oldest one
+            this.credential = queue.peek();
+        }
         Log.d(this.getLogStart(), "got credential: " + this.credential);
 
+        if(this.credential == null) {
+            Toast.makeText(this, "no pending credential", Toast.LENGTH_SHORT).show();
+            this.finish();
+            return;
+        }
+
         TextView tv = this.findViewById(R.id.credentialDisplayName);
         tv.setText(credential.getSubjectName());
 
@@ -48,7 +65,8 @@ public class PersonAddReceivedCredentialsActivity extends SharkNetActivity {
     public void onAddClick(View v) {
         try {
             Toast.makeText(this, "review implementation!!", Toast.LENGTH_LONG).show();
-            this.getSharkNetApp().getSharkPKI().acceptAndSignCredential(this.credential);
+            PKISnapshot.certificateAdded(
+                    this.getSharkNetApp().getSharkPKI().acceptAndSignCredential(this.credential));
 
             /* debugging code - I nearly run nuts..
             KeyStore keyStore = KeyStore.getInstance(KEYSTORE_NAME);
@@ -93,8 +111,35 @@ public class PersonAddReceivedCredentialsActivity extends SharkNetActivity {
                     + e.getLocalizedMessage());
  */
         } catch (Exception e) {
-
+            Log.w(this.getLogStart(), "could not accept credential: " + e.getLocalizedMessage());
+            Toast.makeText(this, e.getLocalizedMessage(), Toast.LENGTH_LONG).show();
+            this.finish();
+            return;
         }
+        this.doneWithCredential();
+    }
+
+    public void onRejectClick(View v) {
+        Log.d(this.getLogStart(), "credential rejected: " + this.credential.getSubjectID());
+        this.doneWithCredential();
+    }
+
+    public void onAbortClick(View v) {
+        // keep credential in queue - decide later
+        this.finish();
+    }
+
+    /**
+     * Remove handled credential from queue and continue with next one - if any
+     */
+    private void doneWithCredential() {
+        ReceivedCredentialsQueue queue = ReceivedCredentialsQueue.getReceivedCredentialsQueue(this);
+        queue.remove(this.credential);
+        SharkPKIReceivedCredentialMessageHandler.updateNotification(this);
+
         this.finish();
+        if(!queue.isEmpty()) {
+            this.startActivity(new Intent(this, PersonAddReceivedCredentialsActivity.class));
+        }
     }
 }
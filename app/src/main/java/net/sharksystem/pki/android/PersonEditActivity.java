@@ -151,6 +151,9 @@ public class PersonEditActivity extends SharkNetActivity
 
         try {
             this.getSharkNetApp().getSharkPKI().setSigningFailureRate(this.userID,newSigningFailure);
+            TrustPathEngine.getTrustPathEngine()
+                    .setSigningFailureRate(this.userID, newSigningFailure);
+            PKISnapshot.invalidate();
         } catch (ASAPSecurityException e) {
             Log.e(this.getLogStart(), "couldn't save data: " + e.getLocalizedMessage());
             Toast.makeText(this, "couldn't save data", Toast.LENGTH_SHORT).show();
@@ -71,8 +71,8 @@ public abstract class PersonListActivity extends SelectableListPersonAppActivity
     protected void onResume() {
         super.onResume();
         if(this.mAdapter != null) {
-            Log.d(Util.getLogStart(this), "onResume: assume data set changed.");
-            this.mAdapter.notifyDataSetChanged();
+            Log.d(Util.getLogStart(this), "onResume: refresh persons snapshot");
+            this.mAdapter.refresh();
         } else {
             Log.e(Util.getLogStart(this), "onResume: content adapter not initialized?!");
         }
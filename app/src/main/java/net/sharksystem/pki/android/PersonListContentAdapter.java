@@ -9,14 +9,17 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
 import androidx.recyclerview.widget.RecyclerView;
 
 import net.sharksystem.R;
 import net.sharksystem.SharkException;
-import net.sharksystem.asap.ASAPSecurityException;
-import net.sharksystem.asap.persons.PersonValues;
 import net.sharksystem.sharknet.android.SharkNetApp;
 
+import java.util.List;
+import java.util.concurrent.Callable;
+
 public class PersonListContentAdapter extends
         RecyclerView.Adapter<PersonListContentAdapter.MyViewHolder>
         implements View.OnClickListener, View.OnLongClickListener {
@@ -25,6 +28,10 @@ public class PersonListContentAdapter extends
     protected final SelectableListContentAdapterHelper scs;
     private View.OnClickListener clickListener;
     private View.OnLongClickListener longClickListener;
+    private final AsyncListDiffer<PersonListEntry> differ =
+            new AsyncListDiffer<>(this, PersonListEntry.DIFF_CALLBACK);
+    private final ListSnapshots.StableIDs stableIDs = new ListSnapshots.StableIDs();
+    private RecyclerView recyclerView = null;
 
     public class MyViewHolder extends RecyclerView.ViewHolder {
         public TextView personName, personIdentityAssurance,
@@ -48,6 +55,36 @@ public class PersonListContentAdapter extends
         this.clickListener = this;
         this.longClickListener = this;
         this.scs = scs;
+        this.setHasStableIds(true);
+
+        // show persons from startup snapshot at once - refresh() corrects differences
+        PKISnapshot snapshot = PKISnapshot.getCurrent();
+        if(snapshot != null) this.differ.submitList(snapshot.getPersons());
+    }
+
+    /**
+     * Read persons again - in background. Only rows that changed are rebound.
+     */
+    void refresh() {
+        ListSnapshots.load(new Callable<List<PersonListEntry>>() {
+            @Override
+            public List<PersonListEntry> call() throws Exception {
+                return PersonListEntry.produceSnapshot(
+                        SharkNetApp.getSharkNetApp().getSharkPKI());
+            }
+        }, this.differ);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        this.recyclerView = recyclerView;
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        this.recyclerView = null;
     }
 
     @Override
@@ -65,35 +102,36 @@ public class PersonListContentAdapter extends
     public void onBindViewHolder(PersonListContentAdapter.MyViewHolder holder, int position) {
         Log.d(this.getLogStart(), "onBindViewHolder with position: " + position);
 
-        try {
-            PersonValues personValues =
-                    SharkNetApp.getSharkNetApp().getSharkPKI().getPersonValuesByPosition(position);
+        PersonListEntry entry = this.differ.getCurrentList().get(position);
+        this.scs.setSelectedText(entry.userID, entry.userID,
+                holder.itemView, holder.personSelected);
 
-            CharSequence userID = personValues.getUserID();
-            this.scs.setSelectedText(Integer.toString(position), userID,
-                    holder.itemView, holder.personSelected);
-
-            holder.itemView.setTag(R.id.user_id_tag, userID);
-            holder.personName.setText(personValues.getName());
-
-            int identityAssurance = SharkNetApp.getSharkNetApp().getSharkPKI()
-                    .getIdentityAssurance(personValues.getUserID());
-            Log.d(this.getLogStart(), "identity Assurance: " + identityAssurance);
-            holder.personIdentityAssurance.setText(String.valueOf(identityAssurance));
-
-            int signingFailureRate = personValues.getSigningFailureRate();
-            Log.d(this.getLogStart(), "signing failure: " + signingFailureRate);
-            holder.personCertificateExchangeFailure.setText(String.valueOf(signingFailureRate));
+        holder.itemView.setTag(R.id.user_id_tag, entry.userID);
+        holder.personName.setText(entry.name);
+        holder.personIdentityAssurance.setText(String.valueOf(entry.identityAssurance));
+        holder.personCertificateExchangeFailure.setText(String.valueOf(entry.signingFailureRate));
+    }
 
-        } catch (ASAPSecurityException e) {
-            Toast.makeText(this.ctx, "error finding person information: ", Toast.LENGTH_SHORT).show();
+    @Override
+    public void onBindViewHolder(@NonNull PersonListContentAdapter.MyViewHolder holder,
+                                 int position, @NonNull List<Object> payloads) {
+        if(payloads.contains(SelectableListContentAdapterHelper.SELECTION_CHANGED)) {
+            // only selection changed - nothing else to redraw
+            PersonListEntry entry = this.differ.getCurrentList().get(position);
+            this.scs.setSelectedText(entry.userID, holder.itemView, holder.personSelected);
+        } else {
+            this.onBindViewHolder(holder, position);
         }
     }
 
     @Override
     public int getItemCount() {
-        Log.d(this.getLogStart(), "called getItemCount");
-        return SharkNetApp.getSharkNetApp().getSharkPKI().getNumberOfPersons();
+        return this.differ.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return this.stableIDs.idOf(this.differ.getCurrentList().get(position).userID);
     }
 
     @Override
@@ -114,8 +152,12 @@ public class PersonListContentAdapter extends
             Toast.makeText(this.ctx, "long click to edit", Toast.LENGTH_SHORT).show();
         }
 
+        if(this.recyclerView == null) return;
+        RecyclerView.ViewHolder holder = this.recyclerView.findContainingViewHolder(view);
+        if(holder == null) return;
+
         CharSequence userID = (CharSequence)view.getTag(R.id.user_id_tag);
-        this.scs.onAction(this, view, userID);
+        this.scs.onAction(this, holder, userID);
     }
 
     protected String getLogStart() {
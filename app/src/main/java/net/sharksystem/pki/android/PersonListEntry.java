@@ -0,0 +1,80 @@
+package net.sharksystem.pki.android;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.persons.PersonValues;
+import net.sharksystem.pki.SharkPKIComponent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable copy of what a person list row displays. Produced on a background thread -
+ * binding a row needs no PKI lookup.
+ */
+final class PersonListEntry {
+    final String userID;
+    final String name;
+    final int identityAssurance;
+    final int signingFailureRate;
+
+    PersonListEntry(PersonValues personValues, int identityAssurance) {
+        this(personValues.getUserID().toString(), String.valueOf(personValues.getName()),
+                identityAssurance, personValues.getSigningFailureRate());
+    }
+
+    PersonListEntry(String userID, String name, int identityAssurance, int signingFailureRate) {
+        this.userID = userID;
+        this.name = name;
+        this.identityAssurance = identityAssurance;
+        this.signingFailureRate = signingFailureRate;
+    }
+
+    static List<PersonListEntry> produceSnapshot(SharkPKIComponent sharkPKI)
+            throws ASAPSecurityException {
+
+        int number = sharkPKI.getNumberOfPersons();
+        List<PersonListEntry> entries = new ArrayList<>(number);
+        for(int position = 0; position < number; position++) {
+            PersonValues personValues = sharkPKI.getPersonValuesByPosition(position);
+            entries.add(new PersonListEntry(personValues,
+                    sharkPKI.getIdentityAssurance(personValues.getUserID())));
+        }
+
+        return entries;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(!(o instanceof PersonListEntry)) return false;
+
+        PersonListEntry other = (PersonListEntry) o;
+        return this.userID.equals(other.userID)
+                && this.name.equals(other.name)
+                && this.identityAssurance == other.identityAssurance
+                && this.signingFailureRate == other.signingFailureRate;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.userID.hashCode();
+    }
+
+    static final DiffUtil.ItemCallback<PersonListEntry> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<PersonListEntry>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull PersonListEntry oldEntry,
+                                               @NonNull PersonListEntry newEntry) {
+                    return oldEntry.userID.equals(newEntry.userID);
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull PersonListEntry oldEntry,
+                                                  @NonNull PersonListEntry newEntry) {
+                    return oldEntry.equals(newEntry);
+                }
+            };
+}
@@ -1,7 +1,6 @@
 package net.sharksystem.pki.android;
 
 import net.sharksystem.asap.android.apps.ASAPComponentNotYetInitializedException;
-import net.sharksystem.pki.CredentialMessage;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -9,7 +8,6 @@ import java.util.Set;
 public class PersonStatusHelper {
     private static PersonStatusHelper instance = null;
     private Set<CharSequence> selectedItemIDs = null;
-    private CredentialMessage credentialMessage;
 
     public void setLastPersonsSelection(Set<CharSequence> selectedItemIDs) {
         this.selectedItemIDs = selectedItemIDs;
@@ -25,14 +23,6 @@ public class PersonStatusHelper {
         this.preselectedIDs = preselectedIDs;
     }
 
-    public void setReceivedCredential(CredentialMessage credentialMessage) {
-        this.credentialMessage = credentialMessage;
-    }
-
-    public CredentialMessage getReceivedCredential() {
-        return this.credentialMessage;
-    }
-
     public Set<CharSequence> getPreselectionSet() {
         if(this.preselectedIDs == null) return new HashSet<>();
         else return this.preselectedIDs;
@@ -0,0 +1,180 @@
+package net.sharksystem.pki.android;
+
+import android.content.Context;
+import android.util.Log;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.pki.CredentialMessageInMemo;
+import net.sharksystem.pki.CredentialMessage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Received credentials wait here until owner accepted or rejected them. Credentials
+ * are kept in arrival order and written to app storage after each change - they survive
+ * an app restart. All methods are thread safe. Credential messages arrive on ASAP threads,
+ * they are consumed by activities.
+ */
+public class ReceivedCredentialsQueue {
+    private static final String QUEUE_FILE_NAME = "SN2ReceivedCredentials";
+    private static final int FORMAT_VERSION = 1;
+
+    private static ReceivedCredentialsQueue instance = null;
+
+    private final File queueFile;
+    private final LinkedList<CredentialMessage> credentials = new LinkedList<>();
+
+    public static synchronized ReceivedCredentialsQueue getReceivedCredentialsQueue(Context ctx) {
+        if(ReceivedCredentialsQueue.instance == null) {
+            File queueFile = new File(ctx.getApplicationContext().getFilesDir(), QUEUE_FILE_NAME);
+            ReceivedCredentialsQueue.instance = new ReceivedCredentialsQueue(queueFile);
+        }
+
+        return ReceivedCredentialsQueue.instance;
+    }
+
+    ReceivedCredentialsQueue(File queueFile) {
+        this.queueFile = queueFile;
+        this.restore();
+    }
+
+    /**
+     * Add credential at the end of the queue. A credential that is already queued
+     * (same subject, same random number) is not added again.
+     * @return number of pending credentials after this call
+     */
+    public synchronized int add(CredentialMessage credentialMessage) {
+        if(this.indexOf(credentialMessage) == -1) {
+            this.credentials.add(credentialMessage);
+            this.persist();
+        } else {
+            Log.d(this.getLogStart(), "credential already queued - ignored: "
+                    + credentialMessage.getSubjectID());
+        }
+
+        return this.credentials.size();
+    }
+
+    /**
+     * @return oldest pending credential or null if queue is empty
+     */
+    public synchronized CredentialMessage peek() {
+        return this.credentials.peek();
+    }
+
+    public synchronized CredentialMessage get(int position) {
+        return this.credentials.get(position);
+    }
+
+    public synchronized boolean remove(CredentialMessage credentialMessage) {
+        int index = this.indexOf(credentialMessage);
+        if(index == -1) return false;
+
+        this.credentials.remove(index);
+        this.persist();
+        return true;
+    }
+
+    public synchronized int size() {
+        return this.credentials.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return this.credentials.isEmpty();
+    }
+
+    /**
+     * @return copy of the pending credentials in arrival order
+     */
+    public synchronized List<CredentialMessage> getPendingCredentials() {
+        return new ArrayList<>(this.credentials);
+    }
+
+    private int indexOf(CredentialMessage credentialMessage) {
+        for(int index = 0; index < this.credentials.size(); index++) {
+            CredentialMessage queued = this.credentials.get(index);
+            if(queued.getRandomInt() == credentialMessage.getRandomInt()
+                && queued.getSubjectID().toString().equals(
+                        credentialMessage.getSubjectID().toString())) {
+                return index;
+            }
+        }
+
+        return -1;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                       persistence                                       //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void persist() {
+        File tmpFile = new File(this.queueFile.getAbsolutePath() + ".tmp");
+        try {
+            DataOutputStream dos = new DataOutputStream(new FileOutputStream(tmpFile));
+            try {
+                dos.writeInt(FORMAT_VERSION);
+                dos.writeInt(this.credentials.size());
+                for(CredentialMessage credentialMessage : this.credentials) {
+                    byte[] messageBytes = credentialMessage.getMessageAsBytes();
+                    dos.writeInt(messageBytes.length);
+                    dos.write(messageBytes);
+                }
+            } finally {
+                dos.close();
+            }
+
+            // replace old file in one step - never leave a half written queue
+            if(!tmpFile.renameTo(this.queueFile)) {
+                throw new IOException("cannot rename " + tmpFile + " to " + this.queueFile);
+            }
+        } catch (IOException e) {
+            Log.e(this.getLogStart(), "cannot persist received credentials: "
+                    + e.getLocalizedMessage());
+        }
+    }
+
+    private void restore() {
+        if(!this.queueFile.exists()) return;
+
+        try {
+            DataInputStream dis = new DataInputStream(new FileInputStream(this.queueFile));
+            try {
+                int version = dis.readInt();
+                if(version != FORMAT_VERSION) {
+                    Log.w(this.getLogStart(), "unknown queue format - ignored: " + version);
+                    return;
+                }
+
+                int number = dis.readInt();
+                for(int i = 0; i < number; i++) {
+                    byte[] messageBytes = new byte[dis.readInt()];
+                    dis.readFully(messageBytes);
+                    try {
+                        this.credentials.add(new CredentialMessageInMemo(messageBytes));
+                    } catch (ASAPException e) {
+                        Log.w(this.getLogStart(), "skip corrupted credential: "
+                                + e.getLocalizedMessage());
+                    }
+                }
+            } finally {
+                dis.close();
+            }
+            Log.d(this.getLogStart(), "restored pending credentials: " + this.credentials.size());
+        } catch (IOException e) {
+            Log.e(this.getLogStart(), "cannot restore received credentials: "
+                    + e.getLocalizedMessage());
+        }
+    }
+
+    private String getLogStart() {
+        return this.getClass().getSimpleName();
+    }
+}
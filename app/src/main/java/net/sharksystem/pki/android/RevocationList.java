@@ -0,0 +1,275 @@
+package net.sharksystem.pki.android;
+
+import android.util.Log;
+
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.asap.ASAPMessageReceivedListener;
+import net.sharksystem.asap.ASAPMessages;
+import net.sharksystem.asap.pki.ASAPCertificate;
+import net.sharksystem.pki.SharkPKIComponent;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Revoked certificates known on this device.
+ * <p>
+ * Revocations are checked during each verification and identity assurance computation.
+ * Nearly all certificates are not revoked - a Bloom filter answers that without locking.
+ * Only a hit is confirmed with the exact set. Revocation records are appended to a file
+ * and spread as ASAP messages of their own format.
+ * <p>
+ * Received records of issuers PKI has no certificate of (yet) are kept in memory - a bounded
+ * number, oldest are dropped. They are checked again after each PKI snapshot rebuild.
+ */
+public class RevocationList {
+    public static final String FILE_NAME = "SN2Revocations";
+    public static final String REVOCATION_FORMAT = "SN2Revocations";
+    public static final String REVOCATION_URI = "sn2://revocations";
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+    private static final int MAX_PENDING = 256;
+
+    private final File file;
+    /** certificate key -> record */
+    private final Map<String, RevocationRecord> revoked = new HashMap<>();
+    /** certificate key -> received record that could not be verified yet, oldest first */
+    private final Map<String, RevocationRecord> pending = new LinkedHashMap<>();
+    private volatile BloomFilter bloomFilter = new BloomFilter(INITIAL_CAPACITY, FALSE_POSITIVE_RATE);
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Informed about each new revocation - after it is persisted.
+     */
+    public interface Listener {
+        void certificateRevoked(RevocationRecord record);
+    }
+
+    public RevocationList(File file) {
+        this.file = file;
+        this.restore();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         queries                                         //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    public boolean isRevoked(ASAPCertificate certificate) {
+        return this.isRevoked(RevocationRecord.certificateKey(certificate));
+    }
+
+    boolean isRevoked(String certificateKey) {
+        if(!this.bloomFilter.mightContain(certificateKey)) return false;
+
+        synchronized(this) {
+            return this.revoked.containsKey(certificateKey);
+        }
+    }
+
+    public synchronized int size() {
+        return this.revoked.size();
+    }
+
+    public synchronized int pendingSize() {
+        return this.pending.size();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         changes                                         //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void addListener(Listener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Add a record that is already verified.
+     * @return false if certificate was already revoked
+     */
+    public boolean add(RevocationRecord record) {
+        synchronized(this) {
+            if(!this.put(record)) return false;
+            this.append(record);
+        }
+
+        Log.d(this.getLogStart(), "revoked: " + record);
+        for(Listener listener : this.listeners) listener.certificateRevoked(record);
+        return true;
+    }
+
+    private boolean put(RevocationRecord record) {
+        String key = record.getCertificateKey();
+        this.pending.remove(key);
+        if(this.revoked.containsKey(key)) return false;
+
+        this.revoked.put(key, record);
+        if(this.revoked.size() > this.bloomFilter.getCapacity()) {
+            // false positive rate would grow - rebuild larger filter
+            BloomFilter larger = new BloomFilter(
+                    this.bloomFilter.getCapacity() * 2, FALSE_POSITIVE_RATE);
+            for(String revokedKey : this.revoked.keySet()) larger.add(revokedKey);
+            this.bloomFilter = larger;
+        } else {
+            this.bloomFilter.add(key);
+        }
+
+        return true;
+    }
+
+    /**
+     * Keep a received record that cannot be verified yet.
+     */
+    synchronized void addPending(RevocationRecord record) {
+        String key = record.getCertificateKey();
+        if(this.revoked.containsKey(key) || this.pending.containsKey(key)) return;
+
+        if(this.pending.size() >= MAX_PENDING) {
+            Iterator<String> oldest = this.pending.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        this.pending.put(key, record);
+    }
+
+    /**
+     * Verify pending records again - PKI might know their issuers by now.
+     * @return true if a record was added
+     */
+    boolean recheckPending(SharkPKIComponent sharkPKI) {
+        List<RevocationRecord> candidates;
+        synchronized(this) {
+            if(this.pending.isEmpty()) return false;
+            candidates = new ArrayList<>(this.pending.values());
+        }
+
+        boolean changed = false;
+        for(RevocationRecord record : candidates) {
+            // verified without lock - signature checks take a while
+            if(record.verify(sharkPKI)) changed |= this.add(record);
+        }
+
+        return changed;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                       persistence                                       //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void append(RevocationRecord record) {
+        try (DataOutputStream dos = new DataOutputStream(new FileOutputStream(this.file, true))) {
+            byte[] bytes = record.asBytes();
+            dos.writeInt(bytes.length);
+            dos.write(bytes);
+        } catch (IOException e) {
+            Log.w(this.getLogStart(), "cannot persist revocation: " + e.getLocalizedMessage());
+        }
+    }
+
+    private synchronized void restore() {
+        if(!this.file.exists()) return;
+
+        try (DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(this.file)))) {
+            for(;;) {
+                int length;
+                try {
+                    length = dis.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if(length <= 0 || length > MAX_RECORD_SIZE) {
+                    throw new IOException("corrupt record length: " + length);
+                }
+                byte[] bytes = new byte[length];
+                dis.readFully(bytes);
+                this.put(RevocationRecord.fromBytes(bytes));
+            }
+        } catch (IOException e) {
+            // keep what could be read - a crash during append can leave a truncated record
+            Log.w(this.getLogStart(), "cannot read all revocations: " + e.getLocalizedMessage());
+        }
+
+        Log.d(this.getLogStart(), "revocations restored: " + this.revoked.size());
+    }
+
+    private String getLogStart() {
+        return this.getClass().getSimpleName();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                       distribution                                      //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Receives revocation records from other peers - only records signed by their issuer are taken.
+     * Records that cannot be verified are kept pending and checked again after PKI changed.
+     */
+    public static class RevocationMessageReceivedListener
+            implements ASAPMessageReceivedListener, PKISnapshot.RebuildListener {
+        private final RevocationList revocationList;
+        private final SharkPKIComponent sharkPKI;
+
+        public RevocationMessageReceivedListener(RevocationList revocationList,
+                                                 SharkPKIComponent sharkPKI) {
+            this.revocationList = revocationList;
+            this.sharkPKI = sharkPKI;
+        }
+
+        @Override
+        public void asapMessagesReceived(ASAPMessages asapMessages, String senderE2E,
+                                         List<ASAPHop> asapHops) throws IOException {
+            boolean changed = false;
+            Iterator<byte[]> messages = asapMessages.getMessages();
+            while(messages.hasNext()) {
+                RevocationRecord record;
+                try {
+                    record = RevocationRecord.fromBytes(messages.next());
+                } catch (IOException e) {
+                    Log.d(this.getLogStart(), "malformed revocation from " + senderE2E);
+                    continue;
+                }
+
+                if(this.revocationList.isRevoked(record.getCertificateKey())) continue;
+
+                if(!record.verify(this.sharkPKI)) {
+                    Log.d(this.getLogStart(), "cannot verify " + record + " (yet) - pending");
+                    this.revocationList.addPending(record);
+                    continue;
+                }
+
+                changed |= this.revocationList.add(record);
+            }
+
+            if(changed) PKISnapshot.invalidate();
+        }
+
+        @Override
+        public void snapshotRebuilt() {
+            if(this.revocationList.recheckPending(this.sharkPKI)) PKISnapshot.invalidate();
+        }
+
+        private String getLogStart() {
+            return this.getClass().getSimpleName();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package net.sharksystem.pki.android;
+
+import android.util.Log;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.pki.ASAPCertificate;
+import net.sharksystem.pki.SharkPKIComponent;
+import net.sharksystem.sharknet.android.SigningService;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Issuer's statement that a certificate it has signed must not be trusted any longer -
+ * e.g. subject's private key is compromised. A certificate is identified by issuer, subject
+ * and begin of validity. Record is signed by issuer and can be spread like a certificate.
+ * <p>
+ * Signed with the key SharkPKI issues certificates with - others know that key from
+ * certificates of the issuer. Signing algorithm is the one of PKI's key store.
+ */
+public class RevocationRecord {
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_SIGNATURE_LENGTH = 4096;
+
+    private final String issuerID;
+    private final String subjectID;
+    private final long validSince;
+    private final long revokedAt;
+    private final byte[] signature;
+
+    private RevocationRecord(String issuerID, String subjectID, long validSince,
+                             long revokedAt, byte[] signature) {
+        this.issuerID = issuerID;
+        this.subjectID = subjectID;
+        this.validSince = validSince;
+        this.revokedAt = revokedAt;
+        this.signature = signature;
+    }
+
+    /**
+     * Revoke a certificate owner has issued.
+     */
+    public static RevocationRecord produceRevocation(ASAPCertificate certificate,
+                 SharkPKIComponent sharkPKI, Signer signer) throws ASAPSecurityException {
+
+        String ownerID = checkIssuer(certificate, sharkPKI);
+        long revokedAt = System.currentTimeMillis();
+        String subjectID = certificate.getSubjectID().toString();
+        long validSince = certificate.getValidSince().getTimeInMillis();
+
+        byte[] signature = signer.sign(
+                signedPart(ownerID, subjectID, validSince, revokedAt));
+
+        return new RevocationRecord(ownerID, subjectID, validSince, revokedAt, signature);
+    }
+
+    /**
+     * Revoke a certificate owner has issued - without waiting for signature. Callback is
+     * called on signing thread.
+     * @throws ASAPSecurityException owner is not issuer - callback is not called
+     */
+    public static void produceRevocation(ASAPCertificate certificate,
+                 SharkPKIComponent sharkPKI, SigningService signingService,
+                 final Callback callback) throws ASAPSecurityException {
+
+        final String ownerID = checkIssuer(certificate, sharkPKI);
+        final long revokedAt = System.currentTimeMillis();
+        final String subjectID = certificate.getSubjectID().toString();
+        final long validSince = certificate.getValidSince().getTimeInMillis();
+
+        signingService.submit(signedPart(ownerID, subjectID, validSince, revokedAt),
+                new SigningService.Callback() {
+                    @Override
+                    public void signed(byte[] signature) {
+                        callback.produced(new RevocationRecord(
+                                ownerID, subjectID, validSince, revokedAt, signature));
+                    }
+
+                    @Override
+                    public void failed(ASAPSecurityException e) {
+                        callback.failed(e);
+                    }
+                });
+    }
+
+    private static String checkIssuer(ASAPCertificate certificate, SharkPKIComponent sharkPKI)
+            throws ASAPSecurityException {
+
+        String ownerID = sharkPKI.getOwnerID().toString();
+        if(!ownerID.equals(certificate.getIssuerID().toString())) {
+            throw new ASAPSecurityException("only issuer can revoke a certificate");
+        }
+        return ownerID;
+    }
+
+    /**
+     * Signs with owner's private key in PKI - e.g. SigningService.
+     */
+    public interface Signer {
+        byte[] sign(byte[] data) throws ASAPSecurityException;
+    }
+
+    public interface Callback {
+        void produced(RevocationRecord record);
+
+        void failed(ASAPException e);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         getter                                          //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    public String getIssuerID() {
+        return this.issuerID;
+    }
+
+    public String getSubjectID() {
+        return this.subjectID;
+    }
+
+    public long getValidSince() {
+        return this.validSince;
+    }
+
+    public long getRevokedAt() {
+        return this.revokedAt;
+    }
+
+    /**
+     * @return key of revoked certificate - same format as {@link #certificateKey(ASAPCertificate)}
+     */
+    public String getCertificateKey() {
+        return certificateKey(this.issuerID, this.subjectID, this.validSince);
+    }
+
+    public static String certificateKey(ASAPCertificate certificate) {
+        return certificateKey(certificate.getIssuerID(), certificate.getSubjectID(),
+                certificate.getValidSince().getTimeInMillis());
+    }
+
+    static String certificateKey(CharSequence issuerID, CharSequence subjectID, long validSince) {
+        return issuerID + "/" + subjectID + "/" + validSince;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                      verification                                       //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return true if signature was made by issuer. Issuer's public key is taken from
+     * certificates in PKI - records of unknown issuers cannot be verified.
+     */
+    public boolean verify(SharkPKIComponent sharkPKI) {
+        List<PublicKey> issuerKeys = new ArrayList<>();
+        try {
+            if(sharkPKI.getOwnerID().toString().equals(this.issuerID)) {
+                issuerKeys.add(sharkPKI.getPublicKey());
+            } else {
+                Collection<ASAPCertificate> certificates =
+                        sharkPKI.getCertificatesBySubject(this.issuerID);
+                if(certificates != null) {
+                    for(ASAPCertificate certificate : certificates) {
+                        if(certificate.getPublicKey() != null) {
+                            issuerKeys.add(certificate.getPublicKey());
+                        }
+                    }
+                }
+            }
+        } catch (ASAPSecurityException e) {
+            Log.d(this.getLogStart(), "no key of issuer: " + this.issuerID);
+            return false;
+        }
+
+        byte[] signedPart = signedPart(this.issuerID, this.subjectID,
+                this.validSince, this.revokedAt);
+        String algorithm = sharkPKI.getASAPKeyStore().getAsymmetricSigningAlgorithm();
+
+        for(PublicKey publicKey : issuerKeys) {
+            try {
+                Signature verifier = Signature.getInstance(algorithm);
+                verifier.initVerify(publicKey);
+                verifier.update(signedPart);
+                if(verifier.verify(this.signature)) return true;
+            } catch (GeneralSecurityException e) {
+                Log.d(this.getLogStart(), "cannot verify with key of " + this.issuerID
+                        + ": " + e.getLocalizedMessage());
+            }
+        }
+
+        return false;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                      serialization                                      //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static byte[] signedPart(String issuerID, String subjectID,
+                                     long validSince, long revokedAt) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(baos);
+            dos.writeInt(FORMAT_VERSION);
+            dos.writeUTF(issuerID);
+            dos.writeUTF(subjectID);
+            dos.writeLong(validSince);
+            dos.writeLong(revokedAt);
+            return baos.toByteArray();
+        } catch (IOException e) {
+            // cannot happen - writing into memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public byte[] asBytes() {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(baos);
+            dos.write(signedPart(this.issuerID, this.subjectID, this.validSince, this.revokedAt));
+            dos.writeInt(this.signature.length);
+            dos.write(this.signature);
+            return baos.toByteArray();
+        } catch (IOException e) {
+            // cannot happen - writing into memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static RevocationRecord fromBytes(byte[] bytes) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes));
+        int version = dis.readInt();
+        if(version != FORMAT_VERSION) {
+            throw new IOException("unknown revocation record version: " + version);
+        }
+
+        String issuerID = dis.readUTF();
+        String subjectID = dis.readUTF();
+        long validSince = dis.readLong();
+        long revokedAt = dis.readLong();
+
+        int length = dis.readInt();
+        if(length <= 0 || length > MAX_SIGNATURE_LENGTH) {
+            throw new IOException("corrupt signature length: " + length);
+        }
+        byte[] signature = new byte[length];
+        dis.readFully(signature);
+
+        return new RevocationRecord(issuerID, subjectID, validSince, revokedAt, signature);
+    }
+
+    private String getLogStart() {
+        return this.getClass().getSimpleName();
+    }
+
+    @Override
+    public String toString() {
+        return "revocation of " + this.getCertificateKey() + " at " + this.revokedAt;
+    }
+}
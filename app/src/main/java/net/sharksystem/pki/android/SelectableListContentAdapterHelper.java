@@ -9,6 +9,9 @@ import java.util.HashSet;
 import java.util.Set;
 
 class SelectableListContentAdapterHelper {
+    /** change payload - row only needs its selection state redrawn */
+    static final Object SELECTION_CHANGED = new Object();
+
     private Set<CharSequence> selectedItemIDs = new HashSet<>();
     private Set<CharSequence> uidSet = new HashSet<>();
     private Set<CharSequence> preselectedUIDSet = null;
@@ -37,8 +40,8 @@ class SelectableListContentAdapterHelper {
         this.setSelectedText(itemID, selectableItemView, selectedTextView);
     }
 
-    void onAction(RecyclerView.Adapter adapter, View view, CharSequence uid) {
-        CharSequence itemID = (CharSequence)view.getTag();
+    void onAction(RecyclerView.Adapter adapter, RecyclerView.ViewHolder holder, CharSequence uid) {
+        CharSequence itemID = (CharSequence)holder.itemView.getTag();
 
         if(this.selectedItemIDs.contains(itemID)) {
             this.selectedItemIDs.remove(itemID);
@@ -48,7 +51,10 @@ class SelectableListContentAdapterHelper {
             this.uidSet.add(uid);
         }
 
-        adapter.notifyDataSetChanged();
+        int position = holder.getBindingAdapterPosition();
+        if(position != RecyclerView.NO_POSITION) {
+            adapter.notifyItemChanged(position, SELECTION_CHANGED);
+        }
     }
 
     Set<CharSequence> getSelectedUIDs() {
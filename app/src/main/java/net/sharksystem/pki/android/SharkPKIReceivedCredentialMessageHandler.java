@@ -7,6 +7,8 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
@@ -17,24 +19,36 @@ import net.sharksystem.pki.CredentialMessage;
 import net.sharksystem.pki.SharkCredentialReceivedListener;
 import net.sharksystem.sharknet.android.SharkNetApp;
 
+import java.util.List;
+
 public class SharkPKIReceivedCredentialMessageHandler implements SharkCredentialReceivedListener {
     private static final String NOTIFICATION_CHANNEL_SN2_CREDENTIAL_RECEIVED =
             "SN2CredentialReceived";
 
+    /** all received credentials share one notification */
+    static final int CREDENTIAL_RECEIVED_NOTIFICATION_ID = 1;
+
+    /** notification is not updated more often - credentials arrive in bursts during meetups */
+    private static final long MIN_NOTIFICATION_INTERVAL_IN_MILLIS = 3000;
+
+    /** that many subject names are listed in the notification */
+    private static final int MAX_NAMES_IN_NOTIFICATION = 5;
+
     private static boolean notificationInitialized = false;
-    private static int currentNotificationID = -1;
+
+    private final Context appContext;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private long lastNotificationTime = 0;
+    private boolean notificationUpdateScheduled = false;
 
     public SharkPKIReceivedCredentialMessageHandler(Activity initialActivity) {
+        this.appContext = initialActivity.getApplicationContext();
         if(!notificationInitialized) {
             createCredentialReceivedNotificationChannel(initialActivity);
+            notificationInitialized = true;
         }
     }
 
-    private int nextNotificationID() {
-        currentNotificationID++;
-        return currentNotificationID;
-    }
-
     // https://developer.android.com/training/notify-user/build-notification#java
     public static void createCredentialReceivedNotificationChannel(Activity initialActivity) {
         // Create the NotificationChannel, but only on API 26+ because
@@ -63,40 +77,112 @@ public class SharkPKIReceivedCredentialMessageHandler implements SharkCredential
     @Override
     public void credentialReceived(CredentialMessage credentialMessage) {
         Log.d(getLogStart(), "credential message received: " + credentialMessage);
-        Context context = SharkNetApp.getSharkNetApp().getASAPAndroidPeer().getActivity();
 
         // store message to be retrievable from processing activity
-        PersonStatusHelper.getPersonsStorage().setReceivedCredential(credentialMessage);
+        int pending = ReceivedCredentialsQueue.getReceivedCredentialsQueue(this.appContext)
+                .add(credentialMessage);
+        Log.d(getLogStart(), "pending credentials: " + pending);
+
+        this.notifyPendingCredentials();
+    }
+
+    /**
+     * Show or update the one credential notification. Calls within
+     * {@link #MIN_NOTIFICATION_INTERVAL_IN_MILLIS} are collapsed into a single delayed update.
+     */
+    private synchronized void notifyPendingCredentials() {
+        if(this.notificationUpdateScheduled) return; // update already on its way
+
+        long now = System.currentTimeMillis();
+        long wait = this.lastNotificationTime + MIN_NOTIFICATION_INTERVAL_IN_MILLIS - now;
+        if(wait <= 0) {
+            this.lastNotificationTime = now;
+            postNotification(this.appContext);
+            return;
+        }
 
-        // Create an explicit intent for an Activity in your app
-        Intent intent = new Intent(context, PersonAddReceivedCredentialsActivity.class);
+        this.notificationUpdateScheduled = true;
+        this.mainHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                synchronized(SharkPKIReceivedCredentialMessageHandler.this) {
+                    notificationUpdateScheduled = false;
+                    lastNotificationTime = System.currentTimeMillis();
+                    postNotification(appContext);
+                }
+            }
+        }, wait);
+    }
+
+    /**
+     * Show notification with currently pending credentials - cancel it if there is none.
+     */
+    private static void postNotification(Context appContext) {
+        List<CredentialMessage> pendingCredentials =
+                ReceivedCredentialsQueue.getReceivedCredentialsQueue(appContext)
+                        .getPendingCredentials();
+
+        NotificationManagerCompat notificationManager =
+                NotificationManagerCompat.from(appContext);
+
+        if(pendingCredentials.isEmpty()) {
+            notificationManager.cancel(CREDENTIAL_RECEIVED_NOTIFICATION_ID);
+            return;
+        }
+
+        // a single credential can be handled directly - more need the list
+        Intent intent = pendingCredentials.size() == 1
+                ? new Intent(appContext, PersonAddReceivedCredentialsActivity.class)
+                : new Intent(appContext, PendingCredentialsListActivity.class);
 
         intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
         PendingIntent pendingIntent = PendingIntent.getActivity(
-                context,
-                0, // ??
+                appContext,
+                0,
                 intent,
-                0 // ??
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
         );
 
+        String title = pendingCredentials.size() == 1
+                ? "Credential received"
+                : pendingCredentials.size() + " credentials received";
+
+        NotificationCompat.InboxStyle inboxStyle = new NotificationCompat.InboxStyle();
+        int i = 0;
+        for(CredentialMessage credentialMessage : pendingCredentials) {
+            if(i++ == MAX_NAMES_IN_NOTIFICATION) {
+                inboxStyle.setSummaryText("+"
+                        + (pendingCredentials.size() - MAX_NAMES_IN_NOTIFICATION) + " more");
+                break;
+            }
+            inboxStyle.addLine(credentialMessage.getSubjectName());
+        }
+
         NotificationCompat.Builder builder =
-                new NotificationCompat.Builder(context, NOTIFICATION_CHANNEL_SN2_CREDENTIAL_RECEIVED)
+                new NotificationCompat.Builder(appContext,
+                        NOTIFICATION_CHANNEL_SN2_CREDENTIAL_RECEIVED)
                 .setSmallIcon(R.drawable.shark_red_lowerres)
-                .setContentTitle("Credential received")
-                .setContentText("A peer wants you to issue a certificate ...")
-//            .setStyle(new NotificationCompat.BigTextStyle()
-//                    .bigText("Much longer text that cannot fit one line..."))
+                .setContentTitle(title)
+                .setContentText("Peers want you to issue a certificate ...")
+                .setStyle(inboxStyle)
+                .setNumber(pendingCredentials.size())
+                .setOnlyAlertOnce(true)
                 .setPriority(NotificationCompat.PRIORITY_DEFAULT)
                 .setContentIntent(pendingIntent)
                 .setAutoCancel(true);
 
-        NotificationManagerCompat notificationManager = NotificationManagerCompat.from(context);
+        notificationManager.notify(CREDENTIAL_RECEIVED_NOTIFICATION_ID, builder.build());
+    }
 
-        // notificationId is a unique int for each notification that you must define
-        notificationManager.notify(nextNotificationID(), builder.build());
+    /**
+     * Show remaining number of pending credentials - notification is removed when no
+     * credential is pending any longer. Called after a credential was accepted or rejected.
+     */
+    public static void updateNotification(Context ctx) {
+        postNotification(ctx.getApplicationContext());
     }
 
     private static String getLogStart() {
-        return SharkNetApp.class.getSimpleName();
+        return SharkPKIReceivedCredentialMessageHandler.class.getSimpleName();
     }
 }
@@ -0,0 +1,352 @@
+package net.sharksystem.pki.android;
+
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.persons.PersonValues;
+import net.sharksystem.asap.pki.ASAPCertificate;
+import net.sharksystem.pki.SharkPKIComponent;
+import net.sharksystem.sharknet.android.SharkNetApp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Keeps the best certification path from owner to each known person.
+ * <p>
+ * Persons are nodes, certificates are edges from issuer to subject. A path is as good
+ * as the product of (1 - signingFailureRate / 10) of all issuers on it - owner does not
+ * fail. That is a shortest path problem with edge weight -log(1 - failureRate / 10).
+ * Paths of equal assurance are compared by length. Shortest paths are kept in a tree:
+ * each person remembers the certificate its best path arrives with.
+ * <p>
+ * Changes are applied incrementally: a new certificate or a lower failure rate relaxes
+ * affected edges and propagates improvements. A removed certificate or higher failure
+ * rate resets the subtree below and recomputes it from its remaining incoming edges.
+ * Reading a path follows the tree back to owner - no search at all.
+ * <p>
+ * Revoked certificates are no edges. A revocation removes its edge like a removed
+ * certificate - only paths running through it are recomputed.
+ */
+public class TrustPathEngine {
+    private static final int MAX_FAILURE_RATE = 10;
+    private static final double EPSILON = 1e-9;
+
+    private static TrustPathEngine instance = null;
+
+    private final String ownerID;
+    private final Node owner;
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final Map<String, Edge> edges = new HashMap<>();
+    private RevocationList revocationList = null;
+
+    public static synchronized TrustPathEngine getTrustPathEngine() {
+        if(TrustPathEngine.instance == null) {
+            SharkNetApp sharkNetApp = SharkNetApp.getSharkNetApp();
+            TrustPathEngine.instance = new TrustPathEngine(sharkNetApp.getOwnerID());
+            if(sharkNetApp.getRevocationList() != null) {
+                TrustPathEngine.instance.setRevocationList(sharkNetApp.getRevocationList());
+            }
+        }
+
+        return TrustPathEngine.instance;
+    }
+
+    TrustPathEngine(CharSequence ownerID) {
+        this.ownerID = ownerID.toString();
+        this.owner = this.getNode(this.ownerID);
+        this.owner.distance = 0;
+        this.owner.hops = 0;
+    }
+
+    /**
+     * Ignore revoked certificates from now on - and drop those already known.
+     */
+    synchronized void setRevocationList(RevocationList revocationList) {
+        this.revocationList = revocationList;
+        revocationList.addListener(new RevocationList.Listener() {
+            @Override
+            public void certificateRevoked(RevocationRecord record) {
+                TrustPathEngine.this.removeEdge(record.getCertificateKey());
+            }
+        });
+
+        for(String key : new ArrayList<>(this.edges.keySet())) {
+            if(revocationList.isRevoked(key)) this.removeEdge(key);
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         queries                                         //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return certificates of best path - certificate of subject first, certificate issued
+     * by owner last. Empty if there is no path.
+     */
+    public synchronized List<ASAPCertificate> getCertificationPath(CharSequence subjectID) {
+        Node node = this.nodes.get(subjectID.toString());
+        if(node == null || node.via == null) return Collections.emptyList();
+
+        List<ASAPCertificate> path = new ArrayList<>(node.hops);
+        while(node.via != null) {
+            path.add(node.via.certificate);
+            node = node.via.from;
+        }
+
+        return path;
+    }
+
+    /**
+     * @return probability in [0,1] that subject's public key is authentic. 0 if there is no path.
+     */
+    public synchronized float getAssurance(CharSequence subjectID) {
+        Node node = this.nodes.get(subjectID.toString());
+        if(node == null || node.distance == Double.POSITIVE_INFINITY) return 0;
+
+        return (float) Math.exp(-node.distance);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         changes                                         //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    public synchronized void addCertificate(ASAPCertificate certificate) {
+        String key = edgeKey(certificate);
+        if(this.edges.containsKey(key)) return;
+        if(this.revocationList != null && this.revocationList.isRevoked(key)) return;
+
+        Edge edge = new Edge(certificate,
+                this.getNode(certificate.getIssuerID().toString()),
+                this.getNode(certificate.getSubjectID().toString()));
+
+        this.edges.put(key, edge);
+        edge.from.out.add(edge);
+        edge.to.in.add(edge);
+
+        if(this.relax(edge)) this.propagate(Collections.singleton(edge.to));
+    }
+
+    public synchronized void removeCertificate(ASAPCertificate certificate) {
+        this.removeEdge(edgeKey(certificate));
+    }
+
+    private synchronized void removeEdge(String key) {
+        Edge edge = this.edges.remove(key);
+        if(edge == null) return;
+
+        edge.from.out.remove(edge);
+        edge.to.in.remove(edge);
+
+        if(edge.to.via == edge) this.recompute(Collections.singleton(edge));
+    }
+
+    public synchronized void setSigningFailureRate(CharSequence personID, int failureRate) {
+        Node node = this.getNode(personID.toString());
+        if(node.failureRate == failureRate) return;
+
+        boolean worse = failureRate > node.failureRate;
+        node.failureRate = failureRate;
+
+        if(worse) {
+            // paths through this issuer got worse - maybe others are better now
+            List<Edge> treeEdges = new ArrayList<>();
+            for(Edge edge : node.out) {
+                if(edge.to.via == edge) treeEdges.add(edge);
+            }
+            this.recompute(treeEdges);
+        } else {
+            Set<Node> improved = new HashSet<>();
+            for(Edge edge : node.out) {
+                if(this.relax(edge)) improved.add(edge.to);
+            }
+            this.propagate(improved);
+        }
+    }
+
+    /**
+     * Apply differences between PKI and what this engine knows: new and removed (or expired)
+     * certificates, changed signing failure rates. Costs a pass over certificates and persons -
+     * path computation is incremental.
+     */
+    public synchronized void sync(SharkPKIComponent sharkPKI) throws ASAPSecurityException {
+        long now = System.currentTimeMillis();
+
+        Map<String, ASAPCertificate> current = new HashMap<>();
+        for(ASAPCertificate certificate : sharkPKI.getCertificates()) {
+            if(certificate.getValidUntil().getTimeInMillis() < now) continue; // expired
+            if(this.revocationList != null && this.revocationList.isRevoked(certificate)) continue;
+            current.put(edgeKey(certificate), certificate);
+        }
+
+        for(Edge edge : new ArrayList<>(this.edges.values())) {
+            if(!current.containsKey(edgeKey(edge.certificate))) {
+                this.removeCertificate(edge.certificate);
+            }
+        }
+
+        for(Map.Entry<String, ASAPCertificate> entry : current.entrySet()) {
+            if(!this.edges.containsKey(entry.getKey())) this.addCertificate(entry.getValue());
+        }
+
+        for(Node node : new ArrayList<>(this.nodes.values())) {
+            if(node == this.owner) continue;
+            this.setSigningFailureRate(node.id, sharkPKI.getSigningFailureRate(node.id));
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                      path algorithm                                     //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    private double weight(Edge edge) {
+        if(edge.from == this.owner) return 0;
+        if(edge.from.failureRate >= MAX_FAILURE_RATE) return Double.POSITIVE_INFINITY;
+
+        return -Math.log(1.0 - (double) edge.from.failureRate / MAX_FAILURE_RATE);
+    }
+
+    /**
+     * @return true if path to edge target is improved by this edge
+     */
+    private boolean relax(Edge edge) {
+        Node to = edge.to;
+        if(to == this.owner || edge.from.distance == Double.POSITIVE_INFINITY) return false;
+
+        double weight = this.weight(edge);
+        if(weight == Double.POSITIVE_INFINITY) return false;
+
+        double distance = edge.from.distance + weight;
+        int hops = edge.from.hops + 1;
+
+        if(distance < to.distance - EPSILON
+                || (Math.abs(distance - to.distance) <= EPSILON && hops < to.hops)) {
+            to.distance = distance;
+            to.hops = hops;
+            to.via = edge;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Dijkstra starting with nodes whose distance just decreased.
+     */
+    private void propagate(Collection<Node> seeds) {
+        PriorityQueue<QueueEntry> queue = new PriorityQueue<>();
+        for(Node node : seeds) {
+            if(node.distance != Double.POSITIVE_INFINITY) queue.add(new QueueEntry(node));
+        }
+
+        while(!queue.isEmpty()) {
+            QueueEntry entry = queue.poll();
+            if(entry.isStale()) continue; // node was improved again after queuing
+
+            for(Edge edge : entry.node.out) {
+                if(this.relax(edge)) queue.add(new QueueEntry(edge.to));
+            }
+        }
+    }
+
+    /**
+     * Best paths of all nodes below these tree edges are invalid. Reset them, find best
+     * incoming edge from the unaffected rest and run Dijkstra on the affected part.
+     */
+    private void recompute(Collection<Edge> brokenTreeEdges) {
+        Set<Node> affected = new HashSet<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        for(Edge edge : brokenTreeEdges) stack.push(edge.to);
+
+        while(!stack.isEmpty()) {
+            Node node = stack.pop();
+            if(!affected.add(node)) continue;
+
+            for(Edge edge : node.out) {
+                if(edge.to.via == edge) stack.push(edge.to);
+            }
+            node.reset();
+        }
+
+        for(Node node : affected) {
+            for(Edge edge : node.in) this.relax(edge);
+        }
+
+        this.propagate(affected);
+    }
+
+    private Node getNode(String id) {
+        Node node = this.nodes.get(id);
+        if(node == null) {
+            node = new Node(id);
+            this.nodes.put(id, node);
+        }
+        return node;
+    }
+
+    private static String edgeKey(ASAPCertificate certificate) {
+        return RevocationRecord.certificateKey(certificate);
+    }
+
+    private static class Node {
+        final String id;
+        final List<Edge> out = new ArrayList<>();
+        final List<Edge> in = new ArrayList<>();
+        int failureRate = PersonValues.DEFAULT_SIGNING_FAILURE_RATE;
+
+        double distance = Double.POSITIVE_INFINITY;
+        int hops = Integer.MAX_VALUE;
+        /** last edge of best path - null if unreachable */
+        Edge via = null;
+
+        Node(String id) {
+            this.id = id;
+        }
+
+        void reset() {
+            this.distance = Double.POSITIVE_INFINITY;
+            this.hops = Integer.MAX_VALUE;
+            this.via = null;
+        }
+    }
+
+    private static class Edge {
+        final ASAPCertificate certificate;
+        final Node from, to;
+
+        Edge(ASAPCertificate certificate, Node from, Node to) {
+            this.certificate = certificate;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private static class QueueEntry implements Comparable<QueueEntry> {
+        final Node node;
+        final double distance;
+        final int hops;
+
+        QueueEntry(Node node) {
+            this.node = node;
+            this.distance = node.distance;
+            this.hops = node.hops;
+        }
+
+        boolean isStale() {
+            return this.distance != this.node.distance || this.hops != this.node.hops;
+        }
+
+        @Override
+        public int compareTo(QueueEntry other) {
+            int result = Double.compare(this.distance, other.distance);
+            return result != 0 ? result : Integer.compare(this.hops, other.hops);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package net.sharksystem.radar.android;
+
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.RecyclerView;
+
+import net.sharksystem.R;
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.pki.SharkPKIComponent;
+import net.sharksystem.pki.android.ListSnapshots;
+import net.sharksystem.sharknet.android.SharkNetApp;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Rows of {@link PresenceTable}. Snapshots are diffed in background - a peer coming or
+ * going rebinds its row only.
+ */
+class PresenceListContentAdapter extends
+        RecyclerView.Adapter<PresenceListContentAdapter.MyViewHolder> {
+
+    private final AsyncListDiffer<PresenceListEntry> differ =
+            new AsyncListDiffer<>(this, PresenceListEntry.DIFF_CALLBACK);
+    private final ListSnapshots.StableIDs stableIDs = new ListSnapshots.StableIDs();
+    /** peer id -> name, only touched on snapshot thread. Unknown peers are asked again. */
+    private final Map<String, String> names = new HashMap<>();
+
+    public class MyViewHolder extends RecyclerView.ViewHolder {
+        public TextView name, status, seen;
+
+        public MyViewHolder(View view) {
+            super(view);
+            name = view.findViewById(R.id.presence_list_row_name);
+            status = view.findViewById(R.id.presence_list_row_status);
+            seen = view.findViewById(R.id.presence_list_row_seen);
+        }
+    }
+
+    PresenceListContentAdapter() {
+        this.setHasStableIds(true);
+    }
+
+    /**
+     * Produce rows from presence table in background.
+     */
+    void refresh() {
+        ListSnapshots.load(new Callable<List<PresenceListEntry>>() {
+            @Override
+            public List<PresenceListEntry> call() {
+                List<PresenceTable.Presence> presences =
+                        PresenceTable.getPresenceTable().snapshot();
+                SharkPKIComponent sharkPKI = SharkNetApp.getSharkNetApp().getSharkPKI();
+
+                List<PresenceListEntry> entries = new ArrayList<>(presences.size());
+                for(PresenceTable.Presence presence : presences) {
+                    entries.add(new PresenceListEntry(presence,
+                            nameOf(presence.getPeerID(), sharkPKI)));
+                }
+                return entries;
+            }
+        }, this.differ);
+    }
+
+    private String nameOf(String peerID, SharkPKIComponent sharkPKI) {
+        String name = this.names.get(peerID);
+        if(name != null) return name;
+
+        try {
+            name = sharkPKI.getPersonValuesByID(peerID).getName().toString();
+            this.names.put(peerID, name);
+        } catch (ASAPSecurityException e) {
+            // not in PKI (yet) - no credentials exchanged
+        }
+        return name;
+    }
+
+    @Override
+    public PresenceListContentAdapter.MyViewHolder onCreateViewHolder(
+            ViewGroup parent, int viewType) {
+        Log.d(this.getLogStart(), "onCreateViewHolder");
+
+        View itemView = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.presence_list_row, parent, false);
+
+        return new PresenceListContentAdapter.MyViewHolder(itemView);
+    }
+
+    @Override
+    public void onBindViewHolder(PresenceListContentAdapter.MyViewHolder holder, int position) {
+        PresenceListEntry entry = this.differ.getCurrentList().get(position);
+
+        holder.name.setText(entry.name == null
+                ? "unknown | id: " + entry.peerID
+                : entry.name + " | id: " + entry.peerID);
+
+        holder.status.setText((entry.online ? "online" : "offline")
+                + " | encounters: " + entry.encounters);
+
+        SimpleDateFormat format = new SimpleDateFormat("MMM dd., HH:mm:ss");
+        holder.seen.setText("first seen: " + format.format(new Date(entry.firstSeen))
+                + " | last: " + format.format(new Date(entry.lastSeen)));
+    }
+
+    @Override
+    public int getItemCount() {
+        return this.differ.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return this.stableIDs.idOf(this.differ.getCurrentList().get(position).peerID);
+    }
+
+    private String getLogStart() {
+        return this.getClass().getSimpleName();
+    }
+}
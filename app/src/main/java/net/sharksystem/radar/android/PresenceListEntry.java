@@ -0,0 +1,61 @@
+package net.sharksystem.radar.android;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+
+/**
+ * Immutable copy of what a presence row displays. Produced on a background thread -
+ * binding a row needs no PKI lookup.
+ */
+final class PresenceListEntry {
+    final String peerID;
+    /** null if peer is unknown to PKI */
+    final String name;
+    final long firstSeen;
+    final long lastSeen;
+    final int encounters;
+    final boolean online;
+
+    PresenceListEntry(PresenceTable.Presence presence, String name) {
+        this.peerID = presence.getPeerID();
+        this.name = name;
+        this.firstSeen = presence.getFirstSeen();
+        this.lastSeen = presence.getLastSeen();
+        this.encounters = presence.getEncounters();
+        this.online = presence.isOnline();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(!(o instanceof PresenceListEntry)) return false;
+
+        PresenceListEntry other = (PresenceListEntry) o;
+        return this.peerID.equals(other.peerID)
+                && (this.name == null ? other.name == null : this.name.equals(other.name))
+                && this.firstSeen == other.firstSeen
+                && this.lastSeen == other.lastSeen
+                && this.encounters == other.encounters
+                && this.online == other.online;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.peerID.hashCode();
+    }
+
+    static final DiffUtil.ItemCallback<PresenceListEntry> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<PresenceListEntry>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull PresenceListEntry oldEntry,
+                                               @NonNull PresenceListEntry newEntry) {
+                    return oldEntry.peerID.equals(newEntry.peerID);
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull PresenceListEntry oldEntry,
+                                                  @NonNull PresenceListEntry newEntry) {
+                    return oldEntry.equals(newEntry);
+                }
+            };
+}
@@ -0,0 +1,236 @@
+package net.sharksystem.radar.android;
+
+import net.sharksystem.SharkPeerEncounterChangedListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Peers met since app start - first and last seen, number of encounters, online or not.
+ * Fed by encounter changes of the shark peer. Online peer lists ASAP sends to activities
+ * arrive late and out of order with those changes - they only fill in peers no encounter
+ * change was reported for yet (e.g. met before this table listened). Only peers that
+ * changed are touched - listeners learn which.
+ */
+public class PresenceTable implements SharkPeerEncounterChangedListener {
+    private static PresenceTable instance = null;
+
+    /**
+     * Informed after a peer came, went or was seen again - can be called on any thread.
+     */
+    public interface Listener {
+        void presenceChanged(CharSequence peerID);
+    }
+
+    /** peer id -> presence */
+    private final Map<String, Presence> presences = new HashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public static synchronized PresenceTable getPresenceTable() {
+        if(PresenceTable.instance == null) {
+            PresenceTable.instance = new PresenceTable();
+        }
+        return PresenceTable.instance;
+    }
+
+    PresenceTable() {}
+
+    public void addListener(Listener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                          events                                         //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void encounterStarted(CharSequence peerID) {
+        boolean changed;
+        synchronized(this) {
+            changed = this.online(peerID.toString(), System.currentTimeMillis());
+            // encounter changes decide about this peer from now on
+            this.presences.get(peerID.toString()).reported = true;
+        }
+        if(changed) this.notifyListeners(peerID);
+    }
+
+    @Override
+    public void encounterTerminated(CharSequence peerID) {
+        boolean changed;
+        synchronized(this) {
+            changed = this.offline(peerID.toString(), System.currentTimeMillis());
+            Presence presence = this.presences.get(peerID.toString());
+            if(presence != null) presence.reported = true;
+        }
+        if(changed) this.notifyListeners(peerID);
+    }
+
+    /**
+     * Reconcile with a complete list of online peers. Only peers without reported encounter
+     * changes are touched - a list can be older than the last change of a peer.
+     */
+    public void onlinePeersChanged(Set<CharSequence> onlinePeers) {
+        long now = System.currentTimeMillis();
+        Set<String> online = new HashSet<>();
+        if(onlinePeers != null) {
+            for(CharSequence peerID : onlinePeers) online.add(peerID.toString());
+        }
+
+        List<String> changed = new ArrayList<>();
+        synchronized(this) {
+            for(Presence presence : this.presences.values()) {
+                if(!presence.reported && presence.online && !online.contains(presence.peerID)) {
+                    presence.wentOffline(now);
+                    changed.add(presence.peerID);
+                }
+            }
+            for(String peerID : online) {
+                Presence presence = this.presences.get(peerID);
+                if(presence != null && presence.reported) continue;
+                if(this.online(peerID, now)) changed.add(peerID);
+            }
+        }
+
+        for(String peerID : changed) this.notifyListeners(peerID);
+    }
+
+    /**
+     * @return true if peer was not online before
+     */
+    private boolean online(String peerID, long now) {
+        Presence presence = this.presences.get(peerID);
+        if(presence == null) {
+            presence = new Presence(peerID, now);
+            this.presences.put(peerID, presence);
+        }
+        if(presence.online) return false;
+
+        presence.cameOnline(now);
+        return true;
+    }
+
+    /**
+     * @return true if peer was online before
+     */
+    private boolean offline(String peerID, long now) {
+        Presence presence = this.presences.get(peerID);
+        if(presence == null || !presence.online) return false;
+
+        presence.wentOffline(now);
+        return true;
+    }
+
+    private void notifyListeners(CharSequence peerID) {
+        for(Listener listener : this.listeners) listener.presenceChanged(peerID);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         queries                                         //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return copies - online peers first, most recently seen first
+     */
+    public synchronized List<Presence> snapshot() {
+        List<Presence> snapshot = new ArrayList<>(this.presences.size());
+        for(Presence presence : this.presences.values()) snapshot.add(presence.copy());
+
+        Collections.sort(snapshot, new Comparator<Presence>() {
+            @Override
+            public int compare(Presence p1, Presence p2) {
+                if(p1.online != p2.online) return p1.online ? -1 : 1;
+                return Long.compare(p2.lastSeen, p1.lastSeen);
+            }
+        });
+        return snapshot;
+    }
+
+    /**
+     * @return copy or null if peer was never seen
+     */
+    public synchronized Presence getPresence(CharSequence peerID) {
+        Presence presence = this.presences.get(peerID.toString());
+        return presence == null ? null : presence.copy();
+    }
+
+    public synchronized int getOnlineNumber() {
+        int number = 0;
+        for(Presence presence : this.presences.values()) {
+            if(presence.online) number++;
+        }
+        return number;
+    }
+
+    public synchronized int size() {
+        return this.presences.size();
+    }
+
+    public static class Presence {
+        private final String peerID;
+        private final long firstSeen;
+        private long lastSeen;
+        private int encounters;
+        private boolean online;
+        /** encounter changes were reported - online peer lists are ignored */
+        private boolean reported;
+
+        private Presence(String peerID, long firstSeen) {
+            this.peerID = peerID;
+            this.firstSeen = firstSeen;
+            this.lastSeen = firstSeen;
+        }
+
+        private void cameOnline(long now) {
+            this.online = true;
+            this.encounters++;
+            this.lastSeen = now;
+        }
+
+        private void wentOffline(long now) {
+            this.online = false;
+            this.lastSeen = now;
+        }
+
+        private Presence copy() {
+            Presence copy = new Presence(this.peerID, this.firstSeen);
+            copy.lastSeen = this.lastSeen;
+            copy.encounters = this.encounters;
+            copy.online = this.online;
+            return copy;
+        }
+
+        public String getPeerID() {
+            return this.peerID;
+        }
+
+        public long getFirstSeen() {
+            return this.firstSeen;
+        }
+
+        /**
+         * @return when peer came online or went offline lately
+         */
+        public long getLastSeen() {
+            return this.lastSeen;
+        }
+
+        public int getEncounters() {
+            return this.encounters;
+        }
+
+        public boolean isOnline() {
+            return this.online;
+        }
+    }
+}
@@ -1,62 +1,99 @@
 package net.sharksystem.radar.android;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.widget.TextView;
 
+import androidx.recyclerview.widget.DefaultItemAnimator;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
 import net.sharksystem.R;
-import net.sharksystem.asap.ASAPSecurityException;
-import net.sharksystem.pki.android.PersonStatusHelper;
-import net.sharksystem.pki.SharkPKIComponent;
 import net.sharksystem.sharknet.android.SharkNetActivity;
 import net.sharksystem.sharknet.android.SharkNetApp;
 
 import java.util.Set;
 
-public class RadarActivity extends SharkNetActivity {
+/**
+ * Peers met since app start - see {@link PresenceTable}. Bursts of peer changes are
+ * collected and shown at most every {@link #REFRESH_DELAY_IN_MILLIS}.
+ */
+public class RadarActivity extends SharkNetActivity implements PresenceTable.Listener {
+    private static final long REFRESH_DELAY_IN_MILLIS = 250;
+
+    private PresenceListContentAdapter adapter;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean refreshScheduled = false;
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            refreshScheduled = false;
+            showPresences();
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.radar_drawer_layout);
         SharkNetApp.getSharkNetApp().setupDrawerLayout(this);
 
-        this.setOnlinePeerText();
-    }
+        RecyclerView recyclerView = findViewById(R.id.radarPresenceRecyclerView);
+        this.adapter = new PresenceListContentAdapter();
+        recyclerView.setLayoutManager(new LinearLayoutManager(getApplicationContext()));
+        recyclerView.setItemAnimator(new DefaultItemAnimator());
+        recyclerView.setAdapter(this.adapter);
 
-    private void setOnlinePeerText() {
-        TextView peerListTextView = this.findViewById(R.id.radarOnlinePeersList);
+        // online peers before this activity was started
+        PresenceTable.getPresenceTable().onlinePeersChanged(
+                this.getASAPAndroidPeer().getOnlinePeerList());
+    }
 
-        Set<CharSequence> onlinePeerList = this.getASAPAndroidPeer().getOnlinePeerList();
-        if(onlinePeerList == null || onlinePeerList.size() < 1) {
-            peerListTextView.setText("no peer(s) connected");
+    private void showPresences() {
+        PresenceTable presenceTable = PresenceTable.getPresenceTable();
+        TextView summaryTextView = this.findViewById(R.id.radarOnlinePeersList);
+        int online = presenceTable.getOnlineNumber();
+        if(presenceTable.size() == 0) {
+            summaryTextView.setText("no peer(s) met yet");
+        } else if(online == 0) {
+            summaryTextView.setText("no peer(s) connected - met " + presenceTable.size());
         } else {
-            PersonStatusHelper personsApp = PersonStatusHelper.getPersonsStorage();
-            SharkPKIComponent sharkPKIComponent = this.getSharkNetApp().getSharkPKI();
-
-            StringBuilder sb = new StringBuilder();
-            sb.append("peers connected:");
-            sb.append("\n");
-            for(CharSequence peerID : onlinePeerList) {
-                String peerName = "unknown";
-                try {
-                    peerName = sharkPKIComponent.getPersonValuesByID(peerID).getName().toString();
-                } catch (ASAPSecurityException e) {
-                    e.printStackTrace();
-                }
-                sb.append("name: ");
-                sb.append(peerName);
-                sb.append(" | ");
-                sb.append("id: ");
-                sb.append(peerID);
-                sb.append("\n");
-            }
-            peerListTextView.setText(sb.toString());
+            summaryTextView.setText("peers connected: " + online + " of " + presenceTable.size());
         }
-        peerListTextView.refreshDrawableState();
+
+        this.adapter.refresh();
+    }
+
+    @Override
+    public void presenceChanged(CharSequence peerID) {
+        this.handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if(refreshScheduled) return;
+                refreshScheduled = true;
+                handler.postDelayed(refresh, REFRESH_DELAY_IN_MILLIS);
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        PresenceTable.getPresenceTable().addListener(this);
+        this.showPresences();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        PresenceTable.getPresenceTable().removeListener(this);
+        this.handler.removeCallbacks(this.refresh);
+        this.refreshScheduled = false;
     }
 
-    // TODO: use environment listener concept!
     public void asapNotifyOnlinePeersChanged(Set<CharSequence> peerList) {
         super.asapNotifyOnlinePeersChanged(peerList);
-        this.setOnlinePeerText();
+        PresenceTable.getPresenceTable().onlinePeersChanged(peerList);
     }
 }
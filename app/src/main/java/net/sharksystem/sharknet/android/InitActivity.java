@@ -3,6 +3,7 @@ package net.sharksystem.sharknet.android;
 import android.app.Activity;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Trace;
 import android.util.Log;
 import android.view.View;
 import android.widget.EditText;
@@ -46,7 +47,13 @@ public class InitActivity extends Activity {
                 ownerID = SharkNetApp.getOwnerID(this);
             }
 
-            SharkNetApp.initializeSharkNetApp(this, ownerID);
+            // startup trace: section shows up in system traces (perfetto)
+            Trace.beginSection("SN2:initializeSharkNetApp");
+            try {
+                SharkNetApp.initializeSharkNetApp(this, ownerID);
+            } finally {
+                Trace.endSection();
+            }
             Log.d(this.getLogStart(), "shark system is initialized - start first activity");
 
 //            Class firstActivity = veryFirstLaunch ? OwnerActivity.class : SNChannelsListActivity.class;
@@ -0,0 +1,84 @@
+package net.sharksystem.sharknet.android;
+
+import java.security.PublicKey;
+
+/**
+ * Key pair and signature settings - RSA 2048 and EC P-256.
+ * <p>
+ * Owner keys are RSA only: SharkPKI signs and verifies certificates and messages with one
+ * fixed algorithm. It does not derive the algorithm from the signer's key. EC keys would
+ * produce signatures peers cannot check - EC is not offered before verifiers choose the
+ * algorithm from the certificate key ({@link #signingAlgorithmFor(PublicKey)}).
+ * <p>
+ * Note: EC keys can sign and verify only. Peers with EC keys cannot receive
+ * end-to-end encrypted messages - asymmetric encryption remains RSA only.
+ */
+public enum KeyProfile {
+    RSA_2048("RSA", 2048, AndroidASAPKeyStore.SN_ANDROID_DEFAULT_SIGNING_ALGORITHM),
+    EC_P256("EC", 256, "SHA256withECDSA");
+
+    /** standard name of the NIST P-256 curve */
+    public static final String EC_CURVE_NAME = "secp256r1";
+
+    public static final KeyProfile DEFAULT_PROFILE = RSA_2048;
+
+    private final String keyAlgorithm;
+    private final int keySize;
+    private final String signingAlgorithm;
+
+    KeyProfile(String keyAlgorithm, int keySize, String signingAlgorithm) {
+        this.keyAlgorithm = keyAlgorithm;
+        this.keySize = keySize;
+        this.signingAlgorithm = signingAlgorithm;
+    }
+
+    public String getKeyAlgorithm() {
+        return this.keyAlgorithm;
+    }
+
+    public int getKeySize() {
+        return this.keySize;
+    }
+
+    public String getSigningAlgorithm() {
+        return this.signingAlgorithm;
+    }
+
+    public boolean canEncrypt() {
+        return this == RSA_2048;
+    }
+
+    /**
+     * @param keyAlgorithm algorithm name as delivered by {@link java.security.Key#getAlgorithm()}
+     * @return profile of a key with this algorithm
+     * @throws IllegalArgumentException unknown key algorithm
+     */
+    public static KeyProfile byKeyAlgorithm(String keyAlgorithm) {
+        for(KeyProfile profile : KeyProfile.values()) {
+            if(profile.keyAlgorithm.equalsIgnoreCase(keyAlgorithm)) return profile;
+        }
+
+        throw new IllegalArgumentException("no key profile for algorithm: " + keyAlgorithm);
+    }
+
+    /**
+     * @return signature algorithm that fits to this key - use it to verify signatures
+     * of the key owner
+     */
+    public static String signingAlgorithmFor(PublicKey publicKey) {
+        return KeyProfile.byKeyAlgorithm(publicKey.getAlgorithm()).getSigningAlgorithm();
+    }
+
+    /**
+     * @return profile of that name or default profile if name is unknown
+     */
+    public static KeyProfile byName(String name) {
+        if(name != null) {
+            for (KeyProfile profile : KeyProfile.values()) {
+                if (profile.name().equals(name)) return profile;
+            }
+        }
+
+        return DEFAULT_PROFILE;
+    }
+}
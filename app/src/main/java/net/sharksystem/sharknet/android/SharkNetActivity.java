@@ -2,6 +2,11 @@ package net.sharksystem.sharknet.android;
 
 import net.sharksystem.SharkPeer;
 import net.sharksystem.asap.android.apps.ASAPActivity;
+import net.sharksystem.hub.HubConnectionManager;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.sharknet.android.hubs.HubReconnectScheduler;
+
+import java.util.List;
 
 public abstract class SharkNetActivity extends ASAPActivity {
     protected SharkNetApp getSharkNetApp() {
@@ -17,6 +22,16 @@ public abstract class SharkNetActivity extends ASAPActivity {
         return this.getSharkNetApp().getSharkPeer();
     }
 
+    @Override
+    public void asapNotifyHubListAvailable(List<HubConnectorDescription> hubDescriptions) {
+        // connection manager is set up lazily
+        HubConnectionManager hubConnectionManager = this.getHubConnectionManager();
+        super.asapNotifyHubListAvailable(hubDescriptions);
+
+        HubReconnectScheduler.getHubReconnectScheduler().hubListReceived(
+                hubDescriptions, hubConnectionManager.getFailedConnectionAttempts());
+    }
+
     protected String getLogStart() {
         return this.getClass().getSimpleName();
     }
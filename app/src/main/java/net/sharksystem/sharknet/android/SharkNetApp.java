@@ -3,6 +3,7 @@ package net.sharksystem.sharknet.android;
 import android.app.Activity;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.drawerlayout.widget.DrawerLayout;
@@ -15,24 +16,52 @@ import net.sharksystem.SharkPeerFS;
 import net.sharksystem.SharkStatusException;
 import net.sharksystem.app.messenger.SharkMessengerComponent;
 import net.sharksystem.asap.ASAP;
-import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.ASAPEncounterConnectionType;
 import net.sharksystem.asap.android.Util;
+import net.sharksystem.asap.android.apps.ASAPActivity;
 import net.sharksystem.asap.android.apps.ASAPAndroidPeer;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.messenger.android.AndroidSessionKeyProtection;
+import net.sharksystem.messenger.android.SessionKeyCache;
+import net.sharksystem.messenger.android.OutgoingMessageBatcher;
+import net.sharksystem.messenger.android.PayloadCompression;
+import net.sharksystem.messenger.android.VerificationResultCache;
 import net.sharksystem.pki.HelperPKITests;
 import net.sharksystem.pki.SharkPKIComponent;
 import net.sharksystem.pki.SharkPKIComponentFactory;
+import net.sharksystem.pki.android.PKISnapshot;
+import net.sharksystem.pki.android.RevocationList;
 import net.sharksystem.pki.android.SharkPKIReceivedCredentialMessageHandler;
+import net.sharksystem.radar.android.PresenceTable;
 import net.sharksystem.app.messenger.SharkMessengerComponentFactory;
+import net.sharksystem.sharknet.android.encounters.EncounterLog;
+import net.sharksystem.sharknet.android.hubs.HubConnectivityMonitor;
+import net.sharksystem.sharknet.android.hubs.HubDescriptionRegistry;
+import net.sharksystem.sharknet.android.hubs.HubLatencyProber;
+import net.sharksystem.sharknet.android.hubs.HubReconnectScheduler;
+import net.sharksystem.sharknet.android.hubs.HubTrafficMetrics;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class SharkNetApp {
     private static final CharSequence APP_FOLDER_NAME = "SharkNet2_AppData";
     private static SharkNetApp singleton;
     private SharkPeer sharkPeer;
     private ASAPAndroidPeer asapAndroidPeer;
+    private SigningService signingService;
     private SharkPKIReceivedCredentialMessageHandler receivedCredentialListener;
+    private VerificationResultCache verificationResultCache;
+    private RevocationList revocationList;
+    private SessionKeyCache sessionKeyCache;
+    private PayloadCompression payloadCompression;
+    private OutgoingMessageBatcher outgoingMessageBatcher;
+    private HubDescriptionRegistry hubDescriptionRegistry;
+    private EncounterLog encounterLog;
 
     public static SharkNetApp getSharkNetApp() {
         if(SharkNetApp.singleton == null)
@@ -57,6 +86,8 @@ public class SharkNetApp {
         ///////////////////////////////////// restore app data - if any
         if(SharkNetApp.singleton == null) {
             Log.d(getLogStart(), "going to initialize shark net application");
+            // startup trace: durations in log - caller marks section for system traces
+            long initStart = SystemClock.elapsedRealtime();
             SharkNetApp.singleton = new SharkNetApp(initialActivity, ownerID);
 
             // produce folder
@@ -69,18 +100,31 @@ public class SharkNetApp {
                     rootDir.getAbsolutePath()
             );
 
+            // hub descriptions are kept by shark peer - accessed by key, not by position
+            final SharkPeer peer = SharkNetApp.singleton.sharkPeer;
+            SharkNetApp.singleton.hubDescriptionRegistry = new HubDescriptionRegistry(
+                    new HubDescriptionRegistry.Store() {
+                        @Override
+                        public List<HubConnectorDescription> getHubDescriptions() {
+                            return peer.getHubDescriptions();
+                        }
+
+                        @Override
+                        public void addHubDescription(HubConnectorDescription hubDescription) {
+                            peer.addHubDescription(hubDescription);
+                        }
+
+                        @Override
+                        public void removeHubDescription(HubConnectorDescription hubDescription) {
+                            peer.removeHubDescription(hubDescription);
+                        }
+                    });
+
             /////////////////////////// setup PKI /////////////////////////////////////////////
-            // create Android specific key store
-            AndroidASAPKeyStore androidASAPKeyStore = null;
-            try {
-                androidASAPKeyStore = new AndroidASAPKeyStore(initialActivity, ownerID);
-            } catch (ASAPSecurityException e) {
-                Log.e(getLogStart(), "cannot create Android key store, fatal - give up: "
-                        + e.getLocalizedMessage());
-                throw new SharkException("cannot create Android key store", e);
-            }
-
-            // create a pki component factory with android key store
+            // PKI keeps keys in a key store of its own - an Android key store cannot be
+            // injected (yet). No AndroidASAPKeyStore is created: nobody would read it.
+
+            // create a pki component factory
             SharkPKIComponentFactory pkiComponentFactory = new SharkPKIComponentFactory();
 
             // register this component with shark peer
@@ -90,6 +134,22 @@ public class SharkNetApp {
             SharkPKIComponent sharkPKI = (SharkPKIComponent)
                     SharkNetApp.singleton.sharkPeer.getComponent(SharkPKIComponent.class);
 
+            // owner signatures (revocations) are made with the key PKI signs certificates with
+            SharkNetApp.singleton.signingService = new SigningService(sharkPKI);
+
+            // revoked certificates - needed before any identity assurance is computed
+            SharkNetApp.singleton.revocationList = new RevocationList(
+                    new File(initialActivity.getFilesDir(), RevocationList.FILE_NAME));
+
+            // app side view of PKI (persons, identity assurance, certificates) from snapshot
+            PKISnapshot.initialize(initialActivity.getFilesDir(), rootDir, sharkPKI);
+
+            // received credentials are queued and announced by notification
+            SharkNetApp.singleton.receivedCredentialListener =
+                    new SharkPKIReceivedCredentialMessageHandler(initialActivity);
+            sharkPKI.setSharkCredentialReceivedListener(
+                    SharkNetApp.singleton.receivedCredentialListener);
+
             ///////////////////////////////////// setup SharkMessenger
             // create messenger factory - needs a pki
             // get messenger factory with pki component as parameter.
@@ -102,13 +162,55 @@ public class SharkNetApp {
             SharkNetApp.singleton.sharkPeer.addComponent(
                     messengerFactory, SharkMessengerComponent.class);
 
+            // message signatures are checked once - results survive restarts
+            SharkNetApp.singleton.verificationResultCache =
+                    new VerificationResultCache(initialActivity.getFilesDir(), sharkPKI,
+                            SharkNetApp.singleton.revocationList);
+
+            // encrypted messages share a session key per recipient - stored wrapped
+            SharkNetApp.singleton.sessionKeyCache = new SessionKeyCache(
+                    initialActivity.getFilesDir(), sharkPKI.getASAPKeyStore(),
+                    new AndroidSessionKeyProtection());
+
+            // message content is deflated for peers known to read it - or for all if switched on
+            SharkNetApp.singleton.payloadCompression = new PayloadCompression(
+                    initialActivity.getFilesDir(), isCompressAllMessages(initialActivity));
+
+            // encrypted messages to several recipients leave as one message
+            SharkNetApp.singleton.outgoingMessageBatcher = new OutgoingMessageBatcher(
+                    new OutgoingMessageBatcher.Sender() {
+                        @Override
+                        public void send(byte[] content, CharSequence uri,
+                                         Set<CharSequence> recipients, boolean sign)
+                                throws Exception {
+                            SharkNetApp.singleton.getSharkMessenger().sendSharkMessage(
+                                    content, uri, recipients, sign, false);
+                        }
+
+                        @Override
+                        public void failed(Set<CharSequence> recipients, Exception e) {
+                            // recipients might miss session keys - start new sessions next time
+                            for(CharSequence recipient : recipients) {
+                                SharkNetApp.singleton.sessionKeyCache
+                                        .abandonOutgoingSession(recipient);
+                            }
+                        }
+                    },
+                    OutgoingMessageBatcher.DEFAULT_WINDOW_IN_MILLIS,
+                    OutgoingMessageBatcher.DEFAULT_MAX_BATCH_BYTES);
+
             Log.d(getLogStart(), "shark net components added");
             ///////////////////////////////////// ignition
 
             // setup android (application side peer)
+            // revocation records are spread with a format of their own
+            Set<CharSequence> formats =
+                    new HashSet<>(SharkNetApp.singleton.sharkPeer.getFormats());
+            formats.add(RevocationList.REVOCATION_FORMAT);
+
             ASAPAndroidPeer.initializePeer(
                     ownerID,
-                    SharkNetApp.singleton.sharkPeer.getFormats(),
+                    formats,
                     SharkNetApp.APP_FOLDER_NAME,
                     initialActivity);
 
@@ -121,10 +223,65 @@ public class SharkNetApp {
             // remember
             SharkNetApp.singleton.setApplicationSideASAPAndroidPeer(applicationSideASAPPeer);
 
+            RevocationList.RevocationMessageReceivedListener revocationListener =
+                    new RevocationList.RevocationMessageReceivedListener(
+                            SharkNetApp.singleton.revocationList, sharkPKI);
+            applicationSideASAPPeer.addASAPMessageReceivedListener(
+                    RevocationList.REVOCATION_FORMAT, revocationListener);
+            // revocations of issuers unknown so far are checked again when PKI changed
+            PKISnapshot.addRebuildListener(revocationListener);
+            // certificates of other peers change trust paths
+            applicationSideASAPPeer.addASAPMessageReceivedListener(
+                    SharkPKIComponent.PKI_APP_NAME,
+                    new PKISnapshot.CertificateMessageReceivedListener());
+
             // use asap peer proxy for this app side shark peer
             SharkNetApp.singleton.sharkPeer.start(applicationSideASAPPeer);
             Log.d(getLogStart(), "shark net application launched");
 
+            // encounters are counted per hub - which hub carries our load
+            SharkNetApp.singleton.sharkPeer.addSharkPeerEncounterChangedListener(
+                    HubTrafficMetrics.getHubTrafficMetrics());
+            // who was around and how often - shown by radar
+            SharkNetApp.singleton.sharkPeer.addSharkPeerEncounterChangedListener(
+                    PresenceTable.getPresenceTable());
+
+            // past encounters - ring buffer file in app root folder
+            SharkNetApp.singleton.encounterLog = new EncounterLog(rootDir,
+                    EncounterLog.DEFAULT_CAPACITY, new EncounterLog.TransportSource() {
+                        @Override
+                        public ASAPEncounterConnectionType getTransport(CharSequence peerID) {
+                            // peers seen on a hub are met there
+                            return HubTrafficMetrics.getHubTrafficMetrics()
+                                    .getHubMetricsOf(peerID) == null
+                                    ? ASAPEncounterConnectionType.AD_HOC_LAYER_2_NETWORK
+                                    : ASAPEncounterConnectionType.ASAP_HUB;
+                        }
+                    });
+            SharkNetApp.singleton.sharkPeer.addSharkPeerEncounterChangedListener(
+                    SharkNetApp.singleton.encounterLog);
+
+            // measure hubs in background - best hubs are preferred when connecting
+            HubLatencyProber.getHubLatencyProber().start(new HubLatencyProber.HubSource() {
+                @Override
+                public Collection<HubConnectorDescription> getHubDescriptions() {
+                    return SharkNetApp.singleton.hubDescriptionRegistry.getHubDescriptions();
+                }
+            }, HubLatencyProber.DEFAULT_PROBE_INTERVAL_IN_MILLIS);
+
+            // failed hubs are retried - hubs can only be handed to ASAP by an activity
+            HubReconnectScheduler reconnectScheduler =
+                    HubReconnectScheduler.getHubReconnectScheduler();
+            reconnectScheduler.setHubConnector(new HubReconnectScheduler.HubConnector() {
+                @Override
+                public boolean connect(HubConnectorDescription hubDescription) {
+                    return connectHub(hubDescription);
+                }
+            });
+            HubConnectivityMonitor.register(initialActivity, reconnectScheduler);
+            Log.d(getLogStart(), "startup trace: shark net application initialized in ms: "
+                    + (SystemClock.elapsedRealtime() - initStart));
+
             ///////////////////////////////////// testing: example data
             //Log.d(getLogStart(), "fill pki with example data");
             //HelperPKITests.fillWithExampleData((SharkPKIComponent) sharkPKI);
@@ -137,16 +294,47 @@ public class SharkNetApp {
         this.asapAndroidPeer = asapAndroidPeer;
     }
 
+    public SigningService getSigningService() {
+        return this.signingService;
+    }
+
     public ASAPAndroidPeer getASAPAndroidPeer() {
 //            return this.sharkPeer.getASAPPeer();
         return this.asapAndroidPeer;
     }
 
-    // debug / tests
-    SharkPKIReceivedCredentialMessageHandler getReceivedCredentialListener() {
+    public SharkPKIReceivedCredentialMessageHandler getReceivedCredentialListener() {
         return this.receivedCredentialListener;
     }
 
+    public VerificationResultCache getVerificationResultCache() {
+        return this.verificationResultCache;
+    }
+
+    public SessionKeyCache getSessionKeyCache() {
+        return this.sessionKeyCache;
+    }
+
+    public PayloadCompression getPayloadCompression() {
+        return this.payloadCompression;
+    }
+
+    public OutgoingMessageBatcher getOutgoingMessageBatcher() {
+        return this.outgoingMessageBatcher;
+    }
+
+    public EncounterLog getEncounterLog() {
+        return this.encounterLog;
+    }
+
+    public HubDescriptionRegistry getHubDescriptionRegistry() {
+        return this.hubDescriptionRegistry;
+    }
+
+    public RevocationList getRevocationList() {
+        return this.revocationList;
+    }
+
 
     /////////////////////////////////////////////////////////////////////////////////////////////
     //                                    component getter                                     //
@@ -175,6 +363,19 @@ public class SharkNetApp {
     //                                      GUI support                                        //
     /////////////////////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Hand hub to ASAP - only an ASAP activity can do that. Called on background threads:
+     * activity that asked for it could be gone by then - current one is taken.
+     * @return false if current activity is no ASAP activity
+     */
+    public static boolean connectHub(HubConnectorDescription hubDescription) {
+        Activity activity = ASAPAndroidPeer.getASAPAndroidPeer().getActivity();
+        if(!(activity instanceof ASAPActivity)) return false;
+
+        ((ASAPActivity) activity).connectASAPHubs(hubDescription);
+        return true;
+    }
+
     public void setupDrawerLayout(Activity activity) {
         DrawerLayout mDrawerLayout = activity.findViewById(R.id.sharknet_drawer_layout);
         if(mDrawerLayout == null) {
@@ -194,6 +395,7 @@ public class SharkNetApp {
     public final static String PREFERENCES_FILE = "SharkNet2Identity";
     private final static String OWNER_NAME = "SharkNet2Identity_OwnerName";
     private final static String OWNER_ID = "SharkNet2Identity_OwnerID";
+    private final static String COMPRESS_ALL_MESSAGES = "SharkNet2_CompressAllMessages";
 
     public final static String DEFAULT_OWNER_NAME = "SNUser";
     private final static String DEFAULT_OWNER_ID = "Default_SN_USER_ID";
@@ -299,6 +501,23 @@ public class SharkNetApp {
         this.ownerName = ownerName;
     }
 
+    /**
+     * @return true if content to any recipient is compressed - not only to peers known to read it
+     * @see PayloadCompression
+     */
+    public static boolean isCompressAllMessages(Context ctx) {
+        return ctx.getSharedPreferences(PREFERENCES_FILE, Context.MODE_PRIVATE)
+                .getBoolean(COMPRESS_ALL_MESSAGES, false);
+    }
+
+    public void setCompressAllMessages(Context ctx, boolean compressAll) {
+        SharedPreferences.Editor editor =
+                ctx.getSharedPreferences(PREFERENCES_FILE, Context.MODE_PRIVATE).edit();
+        editor.putBoolean(COMPRESS_ALL_MESSAGES, compressAll);
+        editor.apply();
+        this.payloadCompression.setCompressAll(compressAll);
+    }
+
     /////////////////////////////////////////////////////////////////////////////////////////////
     //                                          utils                                          //
     /////////////////////////////////////////////////////////////////////////////////////////////
@@ -0,0 +1,300 @@
+package net.sharksystem.sharknet.android;
+
+import android.util.Log;
+
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.pki.SharkPKIComponent;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Signs data with owner's private key - the key SharkPKI signs certificates with - on a
+ * dedicated thread. Private key handle and initialized {@link Signature} object are kept
+ * between calls - key store is not asked for each signature.
+ * <p>
+ * Requests are queued. Signing thread takes all waiting requests (up to
+ * {@link #MAX_BATCH_SIZE}) as a batch and signs them in one go with the kept handle. A
+ * signature still covers one request - key stores have no call signing several payloads.
+ * <p>
+ * Key regeneration calls {@link #invalidateKeyHandle()}. Next request fetches the new key.
+ * A request signed while keys are switched is repeated with the new key.
+ */
+public class SigningService {
+    public static final int MAX_BATCH_SIZE = 32;
+
+    private final SharkPKIComponent sharkPKI;
+    private final LinkedBlockingQueue<SignRequest> queue = new LinkedBlockingQueue<>();
+    private Thread signingThread = null;
+
+    /** incremented with each key regeneration */
+    private final AtomicInteger keyGeneration = new AtomicInteger(0);
+
+    // key handle - used by signing thread only
+    private int handleGeneration = -1;
+    private Signature signature = null;
+
+    // metrics
+    private final AtomicLong signedTotal = new AtomicLong(0);
+    private final AtomicLong batchesTotal = new AtomicLong(0);
+    private final AtomicLong failedTotal = new AtomicLong(0);
+    private final AtomicLong signingNanosTotal = new AtomicLong(0);
+    private final AtomicLong queueWaitNanosTotal = new AtomicLong(0);
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong(0);
+
+    /**
+     * @param sharkPKI keys are taken from PKI when first needed - it can still be unstarted
+     */
+    public SigningService(SharkPKIComponent sharkPKI) {
+        this.sharkPKI = sharkPKI;
+    }
+
+    /**
+     * Called on signing thread - do not block it.
+     */
+    public interface Callback {
+        void signed(byte[] signature);
+
+        void failed(ASAPSecurityException e);
+    }
+
+    /**
+     * Queue data to be signed.
+     * @return future delivering signature
+     */
+    public Future<byte[]> submit(byte[] data) {
+        return this.submit(data, null);
+    }
+
+    /**
+     * Queue data to be signed - callback is told about result. Use it on UI thread.
+     * @param callback can be null
+     * @return future delivering signature
+     */
+    public Future<byte[]> submit(byte[] data, Callback callback) {
+        SignRequest request = new SignRequest(data, callback);
+        this.ensureSigningThread();
+        this.queue.add(request);
+        return request;
+    }
+
+    /**
+     * Sign data and wait for result. Not on UI thread - see {@link #submit(byte[], Callback)}.
+     */
+    public byte[] sign(byte[] data) throws ASAPSecurityException {
+        try {
+            return this.submit(data).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof ASAPSecurityException) throw (ASAPSecurityException) cause;
+            throw new ASAPSecurityException("cannot sign: " + cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            throw new ASAPSecurityException("interrupted while waiting for signature", e);
+        }
+    }
+
+    /**
+     * Drop key handle - called after owner keys were regenerated.
+     */
+    public void invalidateKeyHandle() {
+        this.keyGeneration.incrementAndGet();
+        Log.d(this.getLogStart(), "key handle invalidated");
+    }
+
+    private synchronized void ensureSigningThread() {
+        if(this.signingThread != null) return;
+
+        this.signingThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processQueue();
+            }
+        }, "SN2Signing");
+        this.signingThread.setDaemon(true);
+        this.signingThread.start();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                     signing thread                                      //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void processQueue() {
+        List<SignRequest> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        for(;;) {
+            try {
+                batch.add(this.queue.take());
+            } catch (InterruptedException e) {
+                Log.d(this.getLogStart(), "signing thread interrupted - stop");
+                return;
+            }
+            this.queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+            this.batchesTotal.incrementAndGet();
+
+            for(SignRequest request : batch) {
+                long start = System.nanoTime();
+                this.recordQueueWait(start - request.enqueuedAt);
+                try {
+                    byte[] signature = this.signWithHandle(request.data);
+                    this.signedTotal.incrementAndGet();
+                    request.set(signature);
+                } catch (ASAPSecurityException e) {
+                    this.failedTotal.incrementAndGet();
+                    request.setException(e);
+                }
+                this.signingNanosTotal.addAndGet(System.nanoTime() - start);
+            }
+            batch.clear();
+        }
+    }
+
+    private byte[] signWithHandle(byte[] data) throws ASAPSecurityException {
+        int generation = this.keyGeneration.get();
+        try {
+            return signWith(this.getSignature(generation), data);
+        } catch (GeneralSecurityException e) {
+            // keys could have been switched while signing - old key is gone: try again
+            if(generation == this.keyGeneration.get()) {
+                this.signature = null; // handle is broken anyway
+                throw new ASAPSecurityException("cannot sign: " + e.getMessage(), e);
+            }
+        }
+
+        Log.d(this.getLogStart(), "keys switched during signing - repeat with new key");
+        try {
+            return signWith(this.getSignature(this.keyGeneration.get()), data);
+        } catch (GeneralSecurityException e) {
+            this.signature = null;
+            throw new ASAPSecurityException("cannot sign: " + e.getMessage(), e);
+        }
+    }
+
+    private static byte[] signWith(Signature signature, byte[] data)
+            throws GeneralSecurityException {
+        // sign() resets signature object to state after initSign() - ready for next data
+        signature.update(data);
+        return signature.sign();
+    }
+
+    private Signature getSignature(int generation)
+            throws ASAPSecurityException, GeneralSecurityException {
+
+        if(this.signature == null || this.handleGeneration != generation) {
+            PrivateKey privateKey = this.sharkPKI.getPrivateKey();
+            Signature signature = Signature.getInstance(
+                    this.sharkPKI.getASAPKeyStore().getAsymmetricSigningAlgorithm());
+            signature.initSign(privateKey);
+
+            this.signature = signature;
+            this.handleGeneration = generation;
+        }
+
+        return this.signature;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         metrics                                         //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void recordQueueWait(long waitNanos) {
+        this.queueWaitNanosTotal.addAndGet(waitNanos);
+        long max = this.maxQueueWaitNanos.get();
+        while(waitNanos > max && !this.maxQueueWaitNanos.compareAndSet(max, waitNanos)) {
+            max = this.maxQueueWaitNanos.get();
+        }
+    }
+
+    public long getSignedTotal() {
+        return this.signedTotal.get();
+    }
+
+    public long getFailedTotal() {
+        return this.failedTotal.get();
+    }
+
+    public int getQueueLength() {
+        return this.queue.size();
+    }
+
+    /**
+     * @return requests per batch the signing thread took from queue
+     */
+    public double getAverageBatchSize() {
+        long batches = this.batchesTotal.get();
+        if(batches == 0) return 0;
+
+        return (this.signedTotal.get() + this.failedTotal.get()) / (double) batches;
+    }
+
+    /**
+     * @return signatures per second while signing thread was busy
+     */
+    public double getSignsPerSecond() {
+        long nanos = this.signingNanosTotal.get();
+        if(nanos == 0) return 0;
+
+        return this.signedTotal.get() * 1_000_000_000.0 / nanos;
+    }
+
+    /**
+     * @return average time requests waited in queue before signing started
+     */
+    public double getAverageQueueWaitMillis() {
+        long requests = this.signedTotal.get() + this.failedTotal.get();
+        if(requests == 0) return 0;
+
+        return this.queueWaitNanosTotal.get() / 1_000_000.0 / requests;
+    }
+
+    public double getMaxQueueWaitMillis() {
+        return this.maxQueueWaitNanos.get() / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(java.util.Locale.US,
+                "signed: %d | failed: %d | signs/s: %.1f | batch avg: %.1f"
+                        + " | queue wait avg/max ms: %.1f/%.1f",
+                this.getSignedTotal(), this.getFailedTotal(), this.getSignsPerSecond(),
+                this.getAverageBatchSize(),
+                this.getAverageQueueWaitMillis(), this.getMaxQueueWaitMillis());
+    }
+
+    private String getLogStart() {
+        return this.getClass().getSimpleName();
+    }
+
+    private static class SignRequest extends FutureTask<byte[]> {
+        private final byte[] data;
+        private final Callback callback;
+        private final long enqueuedAt = System.nanoTime();
+
+        SignRequest(byte[] data, Callback callback) {
+            super(new Runnable() {
+                @Override
+                public void run() { /* completed by signing thread */ }
+            }, null);
+            this.data = data;
+            this.callback = callback;
+        }
+
+        @Override
+        protected void set(byte[] signature) {
+            super.set(signature);
+            if(this.callback != null) this.callback.signed(signature);
+        }
+
+        void setException(ASAPSecurityException e) {
+            super.setException(e);
+            if(this.callback != null) this.callback.failed(e);
+        }
+    }
+}
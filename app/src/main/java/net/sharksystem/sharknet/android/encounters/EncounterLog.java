@@ -0,0 +1,413 @@
+package net.sharksystem.sharknet.android.encounters;
+
+import net.sharksystem.SharkPeerEncounterChangedListener;
+import net.sharksystem.asap.ASAPEncounterConnectionType;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Past encounters - who, when, how long and over which transport. Records have a fixed size
+ * and are written into a memory mapped file used as ring buffer - the oldest record is
+ * overwritten when it is full. The file keeps its size.
+ * <p>
+ * Bytes are not logged: encounter streams are owned by the ASAP service, the app only counts
+ * its own hub connections (see HubTrafficMetrics) which many encounters share.
+ * <p>
+ * The transport to a peer is looked up once when an encounter starts. Writing a record neither
+ * allocates nor waits for a lock: a slot is taken by an atomic counter and filled with
+ * absolute puts. The sequence number is written last - a reader skips slots that are empty or
+ * changed while read. Mapped pages are written back by the system, even if the app is killed.
+ * <p>
+ * Register it as encounter listener - ended encounters are appended.
+ */
+public class EncounterLog implements SharkPeerEncounterChangedListener {
+    public static final String FILE_NAME = "SN2EncounterLog";
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    static final int MAGIC = 0x534E3245; // SN2E
+    static final int FORMAT_VERSION = 2;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 56;
+    static final int MAX_PEER_ID_LENGTH = 32;
+    /** encounters running at the same time - more are not logged */
+    static final int MAX_OPEN_ENCOUNTERS = 64;
+
+    // record layout
+    private static final int SEQUENCE = 0;
+    private static final int START = 8;
+    private static final int DURATION = 16;
+    private static final int TRANSPORT = 20;
+    private static final int PEER_ID_LENGTH = 21;
+    private static final int PEER_ID = 24;
+
+    private static final ASAPEncounterConnectionType[] TRANSPORTS =
+            ASAPEncounterConnectionType.values();
+
+    /**
+     * What the app knows about the connections to peers.
+     */
+    public interface TransportSource {
+        /** Called when an encounter starts - transport is kept until it ends. */
+        ASAPEncounterConnectionType getTransport(CharSequence peerID);
+    }
+
+    private final int capacity;
+    private final TransportSource transportSource;
+    /** null if file could not be mapped - nothing is logged */
+    private final MappedByteBuffer buffer;
+    /** why file could not be mapped - null if it was */
+    private final String mapProblem;
+    /** sequence number of last written record - 0 if none */
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // running encounters - preallocated, taken and freed by compare and set
+    private final AtomicReferenceArray<CharSequence> openPeers =
+            new AtomicReferenceArray<>(MAX_OPEN_ENCOUNTERS);
+    private final AtomicLongArray openStarts = new AtomicLongArray(MAX_OPEN_ENCOUNTERS);
+    /** set last - null while start fills the slot */
+    private final AtomicReferenceArray<ASAPEncounterConnectionType> openTransports =
+            new AtomicReferenceArray<>(MAX_OPEN_ENCOUNTERS);
+
+    public EncounterLog(File rootDir, int capacity, TransportSource transportSource) {
+        if(capacity < 1) throw new IllegalArgumentException("at least one record");
+
+        this.capacity = capacity;
+        this.transportSource = transportSource;
+
+        MappedByteBuffer buffer = null;
+        String mapProblem = null;
+        try {
+            buffer = this.map(new File(rootDir, FILE_NAME));
+        } catch (IOException e) {
+            mapProblem = e.getLocalizedMessage();
+        }
+        this.buffer = buffer;
+        this.mapProblem = mapProblem;
+        if(this.buffer != null) this.sequence.set(this.lastSequence());
+    }
+
+    private MappedByteBuffer map(File file) throws IOException {
+        long size = HEADER_SIZE + (long) this.capacity * RECORD_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            boolean matches = raf.length() == size
+                    && raf.readInt() == MAGIC
+                    && raf.readInt() == FORMAT_VERSION
+                    && raf.readInt() == this.capacity
+                    && raf.readInt() == RECORD_SIZE;
+
+            if(!matches) {
+                raf.setLength(0); // forget records of another layout
+                raf.setLength(size);
+                raf.seek(0);
+                raf.writeInt(MAGIC);
+                raf.writeInt(FORMAT_VERSION);
+                raf.writeInt(this.capacity);
+                raf.writeInt(RECORD_SIZE);
+            }
+
+            // mapping stays valid when channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private long lastSequence() {
+        long last = 0;
+        for(int slot = 0; slot < this.capacity; slot++) {
+            last = Math.max(last, this.buffer.getLong(offset(slot) + SEQUENCE));
+        }
+        return last;
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                    encounter changes                                    //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void encounterStarted(CharSequence peerID) {
+        for(int i = 0; i < MAX_OPEN_ENCOUNTERS; i++) {
+            if(this.openPeers.compareAndSet(i, null, peerID)) {
+                this.openStarts.set(i, System.currentTimeMillis());
+                this.openTransports.set(i, this.transportSource.getTransport(peerID));
+                return;
+            }
+        }
+        this.dropped.incrementAndGet();
+    }
+
+    @Override
+    public void encounterTerminated(CharSequence peerID) {
+        for(int i = 0; i < MAX_OPEN_ENCOUNTERS; i++) {
+            CharSequence open = this.openPeers.get(i);
+            if(open == null || !sameID(open, peerID)) continue;
+
+            ASAPEncounterConnectionType transport = this.openTransports.get(i);
+            long start = this.openStarts.get(i);
+            // free transport before peer - a new encounter in this slot sets it again
+            if(transport != null && !this.openTransports.compareAndSet(i, transport, null)) {
+                continue;
+            }
+            if(!this.openPeers.compareAndSet(i, open, null)) continue;
+
+            if(transport == null) {
+                // terminated while start was still filling the slot
+                this.dropped.incrementAndGet();
+                return;
+            }
+            this.append(peerID, start, System.currentTimeMillis() - start, transport);
+            return;
+        }
+    }
+
+    private static boolean sameID(CharSequence a, CharSequence b) {
+        if(a.length() != b.length()) return false;
+        for(int i = 0; i < a.length(); i++) {
+            if(a.charAt(i) != b.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Append a record - overwrites the oldest one if log is full. Peer ids are cut after
+     * {@link #MAX_PEER_ID_LENGTH} characters, non ASCII characters are written as '?'.
+     */
+    public void append(CharSequence peerID, long start, long durationInMillis,
+                       ASAPEncounterConnectionType transport) {
+        MappedByteBuffer buffer = this.buffer;
+        if(buffer == null) {
+            this.dropped.incrementAndGet();
+            return;
+        }
+
+        long sequence = this.sequence.incrementAndGet();
+        int offset = offset((int) ((sequence - 1) % this.capacity));
+
+        buffer.putLong(offset + SEQUENCE, 0); // readers skip slot while written
+        buffer.putLong(offset + START, start);
+        buffer.putInt(offset + DURATION, (int) Math.min(Integer.MAX_VALUE, durationInMillis));
+        buffer.put(offset + TRANSPORT, (byte) transport.ordinal());
+
+        int length = Math.min(peerID.length(), MAX_PEER_ID_LENGTH);
+        for(int i = 0; i < length; i++) {
+            char c = peerID.charAt(i);
+            buffer.put(offset + PEER_ID + i, c < 0x80 ? (byte) c : (byte) '?');
+        }
+        buffer.put(offset + PEER_ID_LENGTH, (byte) length);
+        buffer.putLong(offset + SEQUENCE, sequence);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         queries                                         //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return records in log - oldest first
+     */
+    public List<Record> read() {
+        List<Record> records = new ArrayList<>();
+        MappedByteBuffer buffer = this.buffer;
+        if(buffer == null) return records;
+
+        byte[] peerID = new byte[MAX_PEER_ID_LENGTH];
+        for(int slot = 0; slot < this.capacity; slot++) {
+            int offset = offset(slot);
+            long sequence = buffer.getLong(offset + SEQUENCE);
+            if(sequence == 0) continue;
+
+            long start = buffer.getLong(offset + START);
+            int duration = buffer.getInt(offset + DURATION);
+            int transport = buffer.get(offset + TRANSPORT);
+            int length = Math.min(buffer.get(offset + PEER_ID_LENGTH), MAX_PEER_ID_LENGTH);
+            for(int i = 0; i < length; i++) peerID[i] = buffer.get(offset + PEER_ID + i);
+
+            // overwritten while read
+            if(buffer.getLong(offset + SEQUENCE) != sequence) continue;
+
+            records.add(new Record(sequence,
+                    new String(peerID, 0, Math.max(0, length), StandardCharsets.US_ASCII),
+                    start, duration,
+                    transport >= 0 && transport < TRANSPORTS.length
+                            ? TRANSPORTS[transport] : ASAPEncounterConnectionType.UNKNOWN));
+        }
+
+        Collections.sort(records, new Comparator<Record>() {
+            @Override
+            public int compare(Record r1, Record r2) {
+                return Long.compare(r1.sequence, r2.sequence);
+            }
+        });
+        return records;
+    }
+
+    /**
+     * @return encounters summed up per peer and transport - most encounters first
+     */
+    public static List<Aggregate> aggregate(List<Record> records) {
+        Map<String, Aggregate> aggregates = new HashMap<>();
+        for(Record record : records) {
+            String key = record.peerID + "|" + record.transport.ordinal();
+            Aggregate aggregate = aggregates.get(key);
+            if(aggregate == null) {
+                aggregate = new Aggregate(record.peerID, record.transport);
+                aggregates.put(key, aggregate);
+            }
+            aggregate.add(record);
+        }
+
+        List<Aggregate> list = new ArrayList<>(aggregates.values());
+        Collections.sort(list, new Comparator<Aggregate>() {
+            @Override
+            public int compare(Aggregate a1, Aggregate a2) {
+                if(a1.encounters != a2.encounters) {
+                    return Integer.compare(a2.encounters, a1.encounters);
+                }
+                return Long.compare(a2.lastSeen, a1.lastSeen);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * @return encounters that could not be logged - too many at once or no log file
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public String report() {
+        List<Record> records = this.read();
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.ROOT);
+        StringBuilder sb = new StringBuilder();
+        if(this.mapProblem != null) {
+            sb.append("cannot map log file: ").append(this.mapProblem).append("\n");
+        }
+        sb.append("records: ").append(records.size()).append(" of ").append(this.capacity);
+        if(!records.isEmpty()) {
+            sb.append(" since ").append(dateFormat.format(new Date(records.get(0).start)));
+        }
+        sb.append("\nnot logged: ").append(this.getDropped()).append("\n");
+
+        for(Aggregate aggregate : aggregate(records)) sb.append("\n").append(aggregate);
+        return sb.toString();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         records                                         //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    public static class Record {
+        private final long sequence;
+        private final String peerID;
+        private final long start;
+        private final long duration;
+        private final ASAPEncounterConnectionType transport;
+
+        Record(long sequence, String peerID, long start, long duration,
+               ASAPEncounterConnectionType transport) {
+            this.sequence = sequence;
+            this.peerID = peerID;
+            this.start = start;
+            this.duration = duration;
+            this.transport = transport;
+        }
+
+        public long getSequence() {
+            return this.sequence;
+        }
+
+        public String getPeerID() {
+            return this.peerID;
+        }
+
+        public long getStart() {
+            return this.start;
+        }
+
+        public long getDurationInMillis() {
+            return this.duration;
+        }
+
+        public ASAPEncounterConnectionType getTransport() {
+            return this.transport;
+        }
+    }
+
+    public static class Aggregate {
+        private final String peerID;
+        private final ASAPEncounterConnectionType transport;
+        private int encounters = 0;
+        private long durationInMillis = 0;
+        private long lastSeen = 0;
+
+        Aggregate(String peerID, ASAPEncounterConnectionType transport) {
+            this.peerID = peerID;
+            this.transport = transport;
+        }
+
+        void add(Record record) {
+            this.encounters++;
+            this.durationInMillis += record.duration;
+            this.lastSeen = Math.max(this.lastSeen, record.start + record.duration);
+        }
+
+        public String getPeerID() {
+            return this.peerID;
+        }
+
+        public ASAPEncounterConnectionType getTransport() {
+            return this.transport;
+        }
+
+        public int getEncounters() {
+            return this.encounters;
+        }
+
+        public long getDurationInMillis() {
+            return this.durationInMillis;
+        }
+
+        public long getLastSeen() {
+            return this.lastSeen;
+        }
+
+        @Override
+        public String toString() {
+            SimpleDateFormat dateFormat = new SimpleDateFormat("MMM dd., HH:mm", Locale.ROOT);
+            StringBuilder sb = new StringBuilder();
+            sb.append(this.peerID).append(" | ")
+                    .append(this.transport.name().toLowerCase(Locale.ROOT)).append("\n")
+                    .append("  encounters: ").append(this.encounters)
+                    .append(" (total ").append(this.durationInMillis / 1000)
+                    .append(" s, avg ").append(this.durationInMillis / this.encounters / 1000)
+                    .append(" s)\n");
+            sb.append("  last: ").append(dateFormat.format(new Date(this.lastSeen)))
+                    .append("\n");
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package net.sharksystem.sharknet.android.hubs;
+
+import net.sharksystem.hub.ASAPHubException;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+
+/**
+ * Outcome of connecting one hub in a {@link HubConnectionOrchestrator} round.
+ */
+public class HubConnectResult {
+    public enum Status {
+        /**
+         * hub answered a TCP probe and was handed to ASAP - ASAP connects on its own, this
+         * is no connection yet
+         */
+        HANDED_OVER,
+        /** hub answered - but there was no activity to hand it to ASAP */
+        NOT_HANDED_OVER,
+        /** hub did not answer within timeout */
+        TIMEOUT,
+        /** connection refused, unknown host ... */
+        UNREACHABLE,
+        /** round was cancelled */
+        CANCELLED
+    }
+
+    private final HubConnectorDescription hubDescription;
+    private final Status status;
+    private final long latencyInMillis;
+    private final String failure;
+
+    HubConnectResult(HubConnectorDescription hubDescription, Status status,
+                     long latencyInMillis, String failure) {
+        this.hubDescription = hubDescription;
+        this.status = status;
+        this.latencyInMillis = latencyInMillis;
+        this.failure = failure;
+    }
+
+    public HubConnectorDescription getHubDescription() {
+        return this.hubDescription;
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    /**
+     * @return time until hub answered the reachability probe - or gave up
+     */
+    public long getLatencyInMillis() {
+        return this.latencyInMillis;
+    }
+
+    /**
+     * @return reason of failure, null if there is none
+     */
+    public String getFailure() {
+        return this.failure;
+    }
+
+    static String hubName(HubConnectorDescription hubDescription) {
+        try {
+            return hubDescription.getHostName() + ":" + hubDescription.getPortNumber();
+        } catch (ASAPHubException e) {
+            return hubDescription.toString();
+        }
+    }
+
+    @Override
+    public String toString() {
+        String s = hubName(this.hubDescription) + ": " + this.status
+                + " (" + this.latencyInMillis + " ms)";
+        return this.failure == null ? s : s + " - " + this.failure;
+    }
+}
@@ -0,0 +1,315 @@
+package net.sharksystem.sharknet.android.hubs;
+
+import android.util.Log;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.hub.ASAPHubException;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connects to all hubs at once. Each hub is checked for reachability (TCP connect with
+ * timeout) on a thread of its own and handed to the ASAP service as soon as it answers.
+ * An unreachable hub costs its timeout - but delays no other hub.
+ * <p>
+ * That reachability probe is an extra TCP round trip: its socket is closed again and ASAP
+ * opens a connection of its own after hand over. Time to first hub is the probe latency of
+ * the fastest hub - it is not the time until ASAP is connected.
+ * <p>
+ * A round can be cancelled - pending checks are aborted and no further hub is connected.
+ * Multi channel hubs are checked on a warm connection of {@link HubConnectionPool} if there is
+ * one.
+ */
+public class HubConnectionOrchestrator {
+    public static final int DEFAULT_CONNECT_TIMEOUT_IN_MILLIS = 5000;
+
+    private static HubConnectionOrchestrator instance = null;
+
+    private final int connectTimeoutInMillis;
+    private final HubConnectionPool pool;
+    private final ExecutorService connectExecutor;
+
+    private Round currentRound = null;
+    private List<HubConnectResult> lastResults = Collections.emptyList();
+    private long lastTimeToFirstHubInMillis = -1;
+
+    /**
+     * Asks ASAP (service side) to connect a hub - e.g. ASAPActivity.connectASAPHubs.
+     * Called on connect threads.
+     */
+    public interface HubConnector {
+        /**
+         * @return false if hub could not be handed over - e.g. no activity
+         */
+        boolean connect(HubConnectorDescription hubDescription);
+    }
+
+    /**
+     * Called on connect threads - post to UI thread if needed.
+     */
+    public interface Listener {
+        void hubConnectResult(HubConnectResult result);
+
+        void allHubsDone(List<HubConnectResult> results, long timeToFirstHubInMillis);
+    }
+
+    public static synchronized HubConnectionOrchestrator getHubConnectionOrchestrator() {
+        if(HubConnectionOrchestrator.instance == null) {
+            HubConnectionOrchestrator.instance =
+                    new HubConnectionOrchestrator(DEFAULT_CONNECT_TIMEOUT_IN_MILLIS,
+                            HubConnectionPool.getHubConnectionPool());
+        }
+
+        return HubConnectionOrchestrator.instance;
+    }
+
+    HubConnectionOrchestrator(int connectTimeoutInMillis, HubConnectionPool pool) {
+        this.connectTimeoutInMillis = connectTimeoutInMillis;
+        this.pool = pool;
+        this.connectExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger number = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SN2HubConnect-" + this.number.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Start connecting all hubs. A running round is cancelled before.
+     */
+    public synchronized void connectAll(Collection<HubConnectorDescription> hubDescriptions,
+                                        HubConnector connector, Listener listener) {
+        this.cancel();
+
+        Round round = new Round(new ArrayList<>(hubDescriptions), connector, listener);
+        this.currentRound = round;
+
+        Log.d(this.getLogStart(), "connect " + hubDescriptions.size() + " hubs concurrently");
+        if(round.hubDescriptions.isEmpty()) {
+            this.roundDone(round);
+            return;
+        }
+
+        for(HubConnectorDescription hubDescription : round.hubDescriptions) {
+            this.connectExecutor.execute(new ConnectTask(round, hubDescription));
+        }
+    }
+
+    /**
+     * Abort pending checks of current round. Hubs already handed to ASAP stay connected.
+     */
+    public synchronized void cancel() {
+        if(this.currentRound == null) return;
+
+        this.currentRound.cancel();
+        this.currentRound = null;
+    }
+
+    /**
+     * @return results of running round so far - or of last round
+     */
+    public synchronized List<HubConnectResult> getResults() {
+        if(this.currentRound != null) {
+            synchronized(this.currentRound) {
+                return new ArrayList<>(this.currentRound.results);
+            }
+        }
+        return this.lastResults;
+    }
+
+    /**
+     * @return probe latency of fastest hub handed over in running or last round, -1 if none
+     * was reachable (yet)
+     */
+    public synchronized long getTimeToFirstHubInMillis() {
+        if(this.currentRound != null) {
+            synchronized(this.currentRound) {
+                return this.currentRound.timeToFirstHubInMillis;
+            }
+        }
+        return this.lastTimeToFirstHubInMillis;
+    }
+
+    private synchronized void roundDone(Round round) {
+        if(this.currentRound == round) this.currentRound = null;
+        if(round.cancelled) return;
+
+        this.lastResults = Collections.unmodifiableList(new ArrayList<>(round.results));
+        this.lastTimeToFirstHubInMillis = round.timeToFirstHubInMillis;
+
+        Log.d(this.getLogStart(), "all hubs done - time to first hub (ms): "
+                + round.timeToFirstHubInMillis);
+        if(round.listener != null) {
+            round.listener.allHubsDone(this.lastResults, round.timeToFirstHubInMillis);
+        }
+    }
+
+    private String getLogStart() {
+        return this.getClass().getSimpleName();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                          round                                          //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    private class Round {
+        final List<HubConnectorDescription> hubDescriptions;
+        final HubConnector connector;
+        final Listener listener;
+        final long startedAt = System.currentTimeMillis();
+
+        final List<HubConnectResult> results = new ArrayList<>();
+        final Set<Socket> openSockets = new HashSet<>();
+        long timeToFirstHubInMillis = -1;
+        volatile boolean cancelled = false;
+
+        Round(List<HubConnectorDescription> hubDescriptions,
+              HubConnector connector, Listener listener) {
+            this.hubDescriptions = hubDescriptions;
+            this.connector = connector;
+            this.listener = listener;
+        }
+
+        synchronized boolean register(Socket socket) {
+            if(this.cancelled) return false;
+            this.openSockets.add(socket);
+            return true;
+        }
+
+        synchronized void unregister(Socket socket) {
+            this.openSockets.remove(socket);
+        }
+
+        void cancel() {
+            List<Socket> sockets;
+            synchronized(this) {
+                this.cancelled = true;
+                sockets = new ArrayList<>(this.openSockets);
+                this.openSockets.clear();
+            }
+
+            // unblocks pending connects
+            for(Socket socket : sockets) closeQuietly(socket);
+        }
+
+        /**
+         * @return true if this was the last missing result
+         */
+        synchronized boolean addResult(HubConnectResult result) {
+            this.results.add(result);
+            if(result.getStatus() == HubConnectResult.Status.HANDED_OVER
+                    && this.timeToFirstHubInMillis < 0) {
+                this.timeToFirstHubInMillis = System.currentTimeMillis() - this.startedAt;
+            }
+            return this.results.size() == this.hubDescriptions.size();
+        }
+    }
+
+    private class ConnectTask implements Runnable {
+        private final Round round;
+        private final HubConnectorDescription hubDescription;
+
+        ConnectTask(Round round, HubConnectorDescription hubDescription) {
+            this.round = round;
+            this.hubDescription = hubDescription;
+        }
+
+        @Override
+        public void run() {
+            HubConnectResult result = this.checkAndConnect();
+            Log.d(getLogStart(), result.toString());
+
+            boolean last = this.round.addResult(result);
+            if(!this.round.cancelled && this.round.listener != null) {
+                this.round.listener.hubConnectResult(result);
+            }
+            if(last) roundDone(this.round);
+        }
+
+        private HubConnectResult checkAndConnect() {
+            long start = System.currentTimeMillis();
+            long latency = -1;
+
+            if(HubConnectionPool.isPooled(this.hubDescription)) {
+                // warm connection - no handshake
+                try {
+                    pool.check(this.hubDescription, connectTimeoutInMillis);
+                    latency = System.currentTimeMillis() - start;
+                } catch (SocketTimeoutException e) {
+                    return new HubConnectResult(this.hubDescription,
+                            HubConnectResult.Status.TIMEOUT,
+                            System.currentTimeMillis() - start, null);
+                } catch (IOException | ASAPException | IllegalArgumentException e) {
+                    return new HubConnectResult(this.hubDescription,
+                            this.round.cancelled ? HubConnectResult.Status.CANCELLED
+                                    : HubConnectResult.Status.UNREACHABLE,
+                            System.currentTimeMillis() - start, e.getLocalizedMessage());
+                }
+            } else if(this.hubDescription.getType() == HubConnectorDescription.TCP) {
+                Socket socket = new Socket();
+                if(!this.round.register(socket)) {
+                    return new HubConnectResult(this.hubDescription,
+                            HubConnectResult.Status.CANCELLED, 0, null);
+                }
+
+                try {
+                    socket.connect(new InetSocketAddress(
+                            this.hubDescription.getHostName().toString(),
+                            this.hubDescription.getPortNumber()), connectTimeoutInMillis);
+                    latency = System.currentTimeMillis() - start;
+                } catch (SocketTimeoutException e) {
+                    return new HubConnectResult(this.hubDescription,
+                            HubConnectResult.Status.TIMEOUT,
+                            System.currentTimeMillis() - start, null);
+                } catch (IOException | ASAPHubException | IllegalArgumentException e) {
+                    HubConnectResult.Status status = this.round.cancelled
+                            ? HubConnectResult.Status.CANCELLED
+                            : HubConnectResult.Status.UNREACHABLE;
+                    return new HubConnectResult(this.hubDescription, status,
+                            System.currentTimeMillis() - start, e.getLocalizedMessage());
+                } finally {
+                    this.round.unregister(socket);
+                    closeQuietly(socket);
+                }
+            }
+            // other hub types cannot be checked from here - let ASAP try
+            if(latency < 0) latency = System.currentTimeMillis() - start;
+
+            if(this.round.cancelled) {
+                return new HubConnectResult(this.hubDescription,
+                        HubConnectResult.Status.CANCELLED, latency, null);
+            }
+
+            HubConnectResult.Status status = this.round.connector.connect(this.hubDescription)
+                    ? HubConnectResult.Status.HANDED_OVER
+                    : HubConnectResult.Status.NOT_HANDED_OVER;
+            return new HubConnectResult(this.hubDescription, status, latency, null);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+}
@@ -0,0 +1,492 @@
+package net.sharksystem.sharknet.android.hubs;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.hub.protocol.HubPDU;
+import net.sharksystem.hub.protocol.HubPDUSilentRPLY;
+import net.sharksystem.hub.protocol.HubPDUSilentRQ;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Warm connections to multi channel hubs. Hub checks of this app (connect, probe, reconnect)
+ * borrow a connection instead of paying a TCP handshake each time. Connections are not
+ * registered with the hub - they carry hub protocol requests only.
+ * <p>
+ * Idle connections cause no traffic - nothing keeps them alive. One that was closed by
+ * hub meanwhile fails on next use and is replaced (see {@link #exchange}). Connections idle
+ * too long are closed. At most {@value #DEFAULT_MAX_POOL_SIZE} connections (by default) are
+ * open - borrowed or idle. Shared channel hubs expect a single connection per peer - they are
+ * not pooled.
+ * <p>
+ * Bytes, PDUs and failures on pooled connections are counted in {@link HubTrafficMetrics}.
+ */
+public class HubConnectionPool {
+    public static final int DEFAULT_MAX_IDLE_PER_HUB = 2;
+    public static final int DEFAULT_MAX_POOL_SIZE = 8;
+    public static final long DEFAULT_MAX_IDLE_IN_MILLIS = 2 * 60 * 1000;
+    /** hub keeps silent that long after a check - shorter than anything we do */
+    static final long CHECK_SILENCE_IN_MILLIS = 1;
+    private static final long MIN_EVICTION_INTERVAL_IN_MILLIS = 1000;
+
+    private static HubConnectionPool instance = null;
+
+    private final int maxIdlePerHub;
+    private final int maxPoolSize;
+    private final long maxIdleInMillis;
+    private final HubTrafficMetrics trafficMetrics;
+    private final ScheduledExecutorService evictionExecutor;
+    private ScheduledFuture<?> eviction = null;
+
+    private final Map<String, Deque<PooledConnection>> idle = new HashMap<>();
+    private int size = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictedIdle = new AtomicLong();
+    private final AtomicLong evictedUnhealthy = new AtomicLong();
+
+    public static synchronized HubConnectionPool getHubConnectionPool() {
+        if(HubConnectionPool.instance == null) {
+            HubConnectionPool.instance = new HubConnectionPool(
+                    DEFAULT_MAX_IDLE_PER_HUB, DEFAULT_MAX_POOL_SIZE, DEFAULT_MAX_IDLE_IN_MILLIS,
+                    HubTrafficMetrics.getHubTrafficMetrics());
+        }
+
+        return HubConnectionPool.instance;
+    }
+
+    HubConnectionPool(int maxIdlePerHub, int maxPoolSize, long maxIdleInMillis,
+                      HubTrafficMetrics trafficMetrics) {
+        this.maxIdlePerHub = maxIdlePerHub;
+        this.maxPoolSize = maxPoolSize;
+        this.maxIdleInMillis = maxIdleInMillis;
+        this.trafficMetrics = trafficMetrics;
+        this.evictionExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SN2HubPoolEviction");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return traffic counters fed by this pool - users of borrowed connections add theirs
+     */
+    HubTrafficMetrics getTrafficMetrics() {
+        return this.trafficMetrics;
+    }
+
+    /**
+     * @return true if connections to this hub are pooled
+     */
+    public static boolean isPooled(HubConnectorDescription hubDescription) {
+        return hubDescription.getType() == HubConnectorDescription.TCP
+                && hubDescription.canMultiChannel();
+    }
+
+    /**
+     * Borrow a connection - hand it back with {@link #release(PooledConnection)} or
+     * {@link #discard(PooledConnection)}. If pool is full an idle connection to another hub
+     * is closed.
+     * @throws IOException hub cannot be reached or all connections are borrowed
+     */
+    public PooledConnection acquire(HubConnectorDescription hubDescription, int timeoutInMillis)
+            throws IOException, ASAPException {
+
+        String key = HubDescriptionRegistry.key(hubDescription);
+        PooledConnection connection;
+        synchronized(this) {
+            Deque<PooledConnection> connections = this.idle.get(key);
+            connection = connections == null ? null : connections.pollFirst();
+        }
+        if(connection != null) {
+            try {
+                connection.socket.setSoTimeout(timeoutInMillis);
+                this.hits.incrementAndGet();
+                connection.reused = true;
+                return connection;
+            } catch (IOException e) {
+                this.evictedUnhealthy.incrementAndGet();
+                this.discard(connection);
+            }
+        }
+
+        // miss - full handshake, slot is taken before
+        this.misses.incrementAndGet();
+        PooledConnection victim;
+        synchronized(this) {
+            victim = this.size < this.maxPoolSize ? null : this.takeLeastRecentlyUsedIdle();
+            if(this.size >= this.maxPoolSize && victim == null) {
+                throw new IOException("connection pool exhausted: "
+                        + this.size + " connections borrowed");
+            }
+            this.size++;
+        }
+        if(victim != null) {
+            this.evictedIdle.incrementAndGet();
+            this.discard(victim);
+        }
+
+        Socket socket = new Socket();
+        try {
+            long start = System.nanoTime();
+            socket.connect(new InetSocketAddress(hubDescription.getHostName().toString(),
+                    hubDescription.getPortNumber()), timeoutInMillis);
+            double connectMillis = (System.nanoTime() - start) / 1e6;
+
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(timeoutInMillis);
+
+            return new PooledConnection(key, socket, connectMillis,
+                    this.trafficMetrics.forKey(key));
+        } catch (IOException | ASAPException | RuntimeException e) {
+            synchronized(this) {
+                this.size--;
+            }
+            closeQuietly(socket);
+            this.trafficMetrics.forKey(key).ioError(e.getLocalizedMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Something to do on a borrowed connection.
+     */
+    public interface Exchange<T> {
+        T exchange(PooledConnection connection) throws IOException, ASAPException;
+    }
+
+    /**
+     * Borrow a connection, run exchange and hand connection back. A reused connection might
+     * have been closed by hub meanwhile - exchange is repeated once on a fresh connection.
+     */
+    public <T> T exchange(HubConnectorDescription hubDescription, int timeoutInMillis,
+                          Exchange<T> exchange) throws IOException, ASAPException {
+
+        PooledConnection connection = this.acquire(hubDescription, timeoutInMillis);
+        try {
+            T result = exchange.exchange(connection);
+            this.release(connection);
+            return result;
+        } catch (IOException | ASAPException e) {
+            this.discard(connection);
+            connection.metrics.ioError(e.getLocalizedMessage());
+            if(!connection.isReused()) throw e;
+            this.evictedUnhealthy.incrementAndGet();
+        }
+
+        connection = this.acquire(hubDescription, timeoutInMillis);
+        try {
+            T result = exchange.exchange(connection);
+            this.release(connection);
+            return result;
+        } catch (IOException | ASAPException e) {
+            this.discard(connection);
+            connection.metrics.ioError(e.getLocalizedMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Check hub answers - a silence request on a pooled connection, no handshake if there is a
+     * warm connection.
+     * @throws IOException hub does not answer
+     */
+    public void check(HubConnectorDescription hubDescription, int timeoutInMillis)
+            throws IOException, ASAPException {
+
+        this.exchange(hubDescription, timeoutInMillis, new Exchange<Void>() {
+            @Override
+            public Void exchange(PooledConnection connection) throws IOException {
+                if(!connection.silence()) throw new IOException("hub does not answer");
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Connection worked - keep it for next time (or close it if pool is full).
+     */
+    public void release(PooledConnection connection) {
+        connection.lastUsedAt = System.currentTimeMillis();
+        synchronized(this) {
+            Deque<PooledConnection> connections = this.idle.get(connection.key);
+            if(connections == null) {
+                connections = new ArrayDeque<>();
+                this.idle.put(connection.key, connections);
+            }
+
+            if(connections.size() < this.maxIdlePerHub && this.size <= this.maxPoolSize) {
+                connections.addFirst(connection);
+                this.startEviction();
+                return;
+            }
+        }
+
+        this.discard(connection);
+    }
+
+    /**
+     * Connection failed or is no longer needed - close it.
+     */
+    public void discard(PooledConnection connection) {
+        synchronized(this) {
+            this.size--;
+        }
+        closeQuietly(connection.socket);
+    }
+
+    /**
+     * Close all idle connections - e.g. user switched hubs off.
+     */
+    public void clear() {
+        for(PooledConnection connection : this.takeAllIdle()) this.discard(connection);
+    }
+
+    private synchronized void startEviction() {
+        if(this.eviction != null) return;
+
+        long interval = Math.max(this.maxIdleInMillis, MIN_EVICTION_INTERVAL_IN_MILLIS);
+        this.eviction = this.evictionExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdle();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return idle connection unused longest - taken out of pool, null if there is none
+     */
+    private PooledConnection takeLeastRecentlyUsedIdle() {
+        Deque<PooledConnection> oldestHub = null;
+        for(Deque<PooledConnection> hubConnections : this.idle.values()) {
+            // most recently used first - last is oldest of that hub
+            PooledConnection last = hubConnections.peekLast();
+            if(last != null && (oldestHub == null
+                    || last.lastUsedAt < oldestHub.peekLast().lastUsedAt)) {
+                oldestHub = hubConnections;
+            }
+        }
+        return oldestHub == null ? null : oldestHub.pollLast();
+    }
+
+    private synchronized List<PooledConnection> takeAllIdle() {
+        List<PooledConnection> connections = new ArrayList<>();
+        for(Deque<PooledConnection> hubConnections : this.idle.values()) {
+            connections.addAll(hubConnections);
+        }
+        this.idle.clear();
+        return connections;
+    }
+
+    /**
+     * Close connections idle too long - no traffic on the others.
+     */
+    void evictIdle() {
+        List<PooledConnection> evicted = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized(this) {
+            boolean idleLeft = false;
+            for(Deque<PooledConnection> hubConnections : this.idle.values()) {
+                for(Iterator<PooledConnection> i = hubConnections.iterator(); i.hasNext(); ) {
+                    PooledConnection connection = i.next();
+                    if(now - connection.lastUsedAt > this.maxIdleInMillis) {
+                        evicted.add(connection);
+                        i.remove();
+                    }
+                }
+                idleLeft |= !hubConnections.isEmpty();
+            }
+
+            // nothing idle - no more wake ups, next release starts them again
+            if(!idleLeft && this.eviction != null) {
+                this.eviction.cancel(false);
+                this.eviction = null;
+            }
+        }
+
+        for(PooledConnection connection : evicted) {
+            this.evictedIdle.incrementAndGet();
+            this.discard(connection);
+        }
+    }
+
+    public synchronized Stats getStats() {
+        int idleCount = 0;
+        for(Deque<PooledConnection> hubConnections : this.idle.values()) {
+            idleCount += hubConnections.size();
+        }
+        return new Stats(this.size, idleCount, this.hits.get(), this.misses.get(),
+                this.evictedIdle.get(), this.evictedUnhealthy.get());
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                  pooled connection                                      //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    public static class PooledConnection {
+        private final String key;
+        private final Socket socket;
+        private final double connectMillis;
+        private final HubTrafficMetrics.HubMetrics metrics;
+        private final InputStream is;
+        private final OutputStream os;
+        private long lastUsedAt = System.currentTimeMillis();
+        private boolean reused = false;
+
+        PooledConnection(String key, Socket socket, double connectMillis,
+                         HubTrafficMetrics.HubMetrics metrics) throws IOException {
+            this.key = key;
+            this.socket = socket;
+            this.connectMillis = connectMillis;
+            this.metrics = metrics;
+            this.is = metrics.meter(socket.getInputStream());
+            this.os = new BufferedOutputStream(metrics.meter(socket.getOutputStream()));
+        }
+
+        public InputStream getInputStream() {
+            return this.is;
+        }
+
+        /**
+         * @return buffered stream - flush after each request
+         */
+        public OutputStream getOutputStream() {
+            return this.os;
+        }
+
+        /**
+         * @return true if connection was taken from pool. Hub might have closed it since last
+         * use - a failed request is worth a retry on a fresh connection.
+         */
+        public boolean isReused() {
+            return this.reused;
+        }
+
+        /**
+         * @return time TCP handshake took when connection was established
+         */
+        public double getConnectMillis() {
+            return this.connectMillis;
+        }
+
+        /**
+         * @return traffic counters of this hub - bytes are counted already, PDUs are not
+         */
+        HubTrafficMetrics.HubMetrics getMetrics() {
+            return this.metrics;
+        }
+
+        /**
+         * Ask hub for a short silence - it answers if it is alive.
+         */
+        boolean silence() {
+            try {
+                HubPDU request = new HubPDUSilentRQ(CHECK_SILENCE_IN_MILLIS);
+                request.sendPDU(this.os);
+                this.os.flush();
+                this.metrics.pduSent(request);
+
+                HubPDU reply = HubPDU.readPDU(this.is);
+                this.metrics.pduReceived(reply);
+                if(!(reply instanceof HubPDUSilentRPLY)) return false;
+
+                // let silence end before next request
+                Thread.sleep(CHECK_SILENCE_IN_MILLIS);
+                return true;
+            } catch (IOException | ASAPException e) {
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    public static class Stats {
+        private final int size;
+        private final int idle;
+        private final long hits;
+        private final long misses;
+        private final long evictedIdle;
+        private final long evictedUnhealthy;
+
+        Stats(int size, int idle, long hits, long misses, long evictedIdle, long evictedUnhealthy) {
+            this.size = size;
+            this.idle = idle;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictedIdle = evictedIdle;
+            this.evictedUnhealthy = evictedUnhealthy;
+        }
+
+        /** @return connections open - idle or borrowed */
+        public int getSize() {
+            return this.size;
+        }
+
+        public int getIdle() {
+            return this.idle;
+        }
+
+        public long getHits() {
+            return this.hits;
+        }
+
+        public long getMisses() {
+            return this.misses;
+        }
+
+        public long getEvictedIdle() {
+            return this.evictedIdle;
+        }
+
+        public long getEvictedUnhealthy() {
+            return this.evictedUnhealthy;
+        }
+
+        /** @return share of borrows without handshake, 0 if there was none */
+        public double getHitRatio() {
+            long all = this.hits + this.misses;
+            return all == 0 ? 0 : (double) this.hits / all;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d open (%d idle), reuse %.0f%% (%d/%d), evicted: %d idle, %d broken",
+                    this.size, this.idle, this.getHitRatio() * 100, this.hits,
+                    this.hits + this.misses, this.evictedIdle, this.evictedUnhealthy);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package net.sharksystem.sharknet.android.hubs;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.util.Log;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tells {@link HubReconnectScheduler} when internet connectivity is lost and when it returns.
+ */
+public class HubConnectivityMonitor extends ConnectivityManager.NetworkCallback {
+    private final HubReconnectScheduler scheduler;
+    private final Set<Network> networks = new HashSet<>();
+
+    private HubConnectivityMonitor(HubReconnectScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public static void register(Context ctx, HubReconnectScheduler scheduler) {
+        ConnectivityManager connectivityManager = (ConnectivityManager)
+                ctx.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        if(connectivityManager == null) return;
+
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+
+        // called back for networks already available
+        connectivityManager.registerNetworkCallback(request, new HubConnectivityMonitor(scheduler));
+    }
+
+    @Override
+    public void onAvailable(Network network) {
+        boolean restored;
+        synchronized(this.networks) {
+            restored = this.networks.isEmpty();
+            this.networks.add(network);
+        }
+
+        if(restored) {
+            Log.d(this.getLogStart(), "connectivity restored - reconnect failed hubs");
+            this.scheduler.connectivityRestored();
+        }
+    }
+
+    @Override
+    public void onLost(Network network) {
+        boolean lost;
+        synchronized(this.networks) {
+            lost = this.networks.remove(network) && this.networks.isEmpty();
+        }
+
+        if(lost) {
+            Log.d(this.getLogStart(), "connectivity lost - pause hub reconnects");
+            this.scheduler.connectivityLost();
+        }
+    }
+
+    private String getLogStart() {
+        return this.getClass().getSimpleName();
+    }
+}
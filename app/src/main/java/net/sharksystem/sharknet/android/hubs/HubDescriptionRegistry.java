@@ -0,0 +1,243 @@
+package net.sharksystem.sharknet.android.hubs;
+
+import net.sharksystem.hub.ASAPHubException;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Hub descriptions keyed by type, normalized host name and port. There is at most one
+ * description per key - adding a known hub replaces it. Changes are atomic: readers never see a
+ * hub removed but not yet re-added.
+ * <p>
+ * Each change is announced with position and key. Listeners applying those events to a
+ * copy of {@link #getKeys()} keep an identical list - no position ever refers to a stale
+ * entry.
+ */
+public class HubDescriptionRegistry {
+    private final Store store;
+    private final List<String> keys = new ArrayList<>();
+    private final Map<String, HubConnectorDescription> descriptions = new HashMap<>();
+    private final List<Listener> listeners = new ArrayList<>();
+    private boolean loaded = false;
+
+    /**
+     * Keeps descriptions - e.g. SharkPeer
+     */
+    public interface Store {
+        List<HubConnectorDescription> getHubDescriptions();
+
+        void addHubDescription(HubConnectorDescription hubDescription);
+
+        void removeHubDescription(HubConnectorDescription hubDescription);
+    }
+
+    /**
+     * Called while registry is locked - keep it short, post to UI thread if needed.
+     */
+    public interface Listener {
+        void hubInserted(int position, String key);
+
+        /** key can differ from key previously at that position */
+        void hubChanged(int position, String key);
+
+        void hubRemoved(int position, String key);
+    }
+
+    public HubDescriptionRegistry(Store store) {
+        this.store = store;
+    }
+
+    /**
+     * @return key of a description: type, host name (lower case, no surrounding blanks or
+     * trailing dot) and port, e.g. TCP:asaphub.example.org:6910
+     */
+    public static String key(HubConnectorDescription hubDescription) {
+        try {
+            String hostName = hubDescription.getHostName().toString().trim()
+                    .toLowerCase(Locale.ROOT);
+            while(hostName.endsWith(".")) hostName = hostName.substring(0, hostName.length() - 1);
+
+            return typeName(hubDescription.getType()) + ":" + hostName
+                    + ":" + hubDescription.getPortNumber();
+        } catch (ASAPHubException e) {
+            return typeName(hubDescription.getType()) + ":" + hubDescription;
+        }
+    }
+
+    private static String typeName(byte type) {
+        return type == HubConnectorDescription.TCP ? "TCP" : "TYPE" + type;
+    }
+
+    public void addListener(Listener listener) {
+        synchronized(this.listeners) {
+            this.listeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        synchronized(this.listeners) {
+            this.listeners.remove(listener);
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                          read                                           //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    public synchronized int size() {
+        this.load();
+        return this.keys.size();
+    }
+
+    public synchronized List<String> getKeys() {
+        this.load();
+        return new ArrayList<>(this.keys);
+    }
+
+    /**
+     * @return description with this key, null if there is none (anymore)
+     */
+    public synchronized HubConnectorDescription get(String key) {
+        this.load();
+        return this.descriptions.get(key);
+    }
+
+    /**
+     * @return all descriptions in registry order
+     */
+    public synchronized List<HubConnectorDescription> getHubDescriptions() {
+        this.load();
+        List<HubConnectorDescription> hubDescriptions = new ArrayList<>();
+        for(String key : this.keys) hubDescriptions.add(this.descriptions.get(key));
+        return hubDescriptions;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         write                                           //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Add a description - or replace one with same key.
+     * @return key of description
+     */
+    public synchronized String put(HubConnectorDescription hubDescription) {
+        this.load();
+        String key = key(hubDescription);
+
+        HubConnectorDescription known = this.descriptions.get(key);
+        if(known != null) {
+            this.store.removeHubDescription(known);
+            this.store.addHubDescription(hubDescription);
+            this.descriptions.put(key, hubDescription);
+            this.notifyChanged(this.keys.indexOf(key), key);
+        } else {
+            this.store.addHubDescription(hubDescription);
+            this.descriptions.put(key, hubDescription);
+            this.keys.add(key);
+            this.notifyInserted(this.keys.size() - 1, key);
+        }
+
+        return key;
+    }
+
+    /**
+     * Replace description with key oldKey. Description keeps its position - unless there is
+     * another one with same key already: that one is replaced, the old entry is removed.
+     * @return key of description
+     */
+    public synchronized String update(String oldKey, HubConnectorDescription hubDescription) {
+        this.load();
+        HubConnectorDescription old = this.descriptions.get(oldKey);
+        if(old == null) return this.put(hubDescription);
+
+        String key = key(hubDescription);
+        if(key.equals(oldKey)) return this.put(hubDescription);
+
+        this.store.removeHubDescription(old);
+        this.descriptions.remove(oldKey);
+        int position = this.keys.indexOf(oldKey);
+
+        if(this.descriptions.containsKey(key)) {
+            // changed into a known hub - merge
+            this.keys.remove(position);
+            this.notifyRemoved(position, oldKey);
+            return this.put(hubDescription);
+        }
+
+        this.store.addHubDescription(hubDescription);
+        this.descriptions.put(key, hubDescription);
+        this.keys.set(position, key);
+        this.notifyChanged(position, key);
+        return key;
+    }
+
+    /**
+     * @return removed description, null if there was none
+     */
+    public synchronized HubConnectorDescription remove(String key) {
+        this.load();
+        HubConnectorDescription removed = this.descriptions.remove(key);
+        if(removed == null) return null;
+
+        this.store.removeHubDescription(removed);
+        int position = this.keys.indexOf(key);
+        this.keys.remove(position);
+        this.notifyRemoved(position, key);
+        return removed;
+    }
+
+    /**
+     * Read store once - duplicates found there are removed.
+     */
+    private void load() {
+        if(this.loaded) return;
+        this.loaded = true;
+
+        List<HubConnectorDescription> duplicates = new ArrayList<>();
+        for(HubConnectorDescription hubDescription : this.store.getHubDescriptions()) {
+            String key = key(hubDescription);
+            if(this.descriptions.containsKey(key)) {
+                duplicates.add(hubDescription);
+            } else {
+                this.descriptions.put(key, hubDescription);
+                this.keys.add(key);
+            }
+        }
+
+        if(duplicates.isEmpty()) return;
+
+        // store might remove all equal descriptions - re-add remaining one
+        for(HubConnectorDescription duplicate : duplicates) {
+            this.store.removeHubDescription(duplicate);
+            String key = key(duplicate);
+            boolean stillThere = false;
+            for(HubConnectorDescription stored : this.store.getHubDescriptions()) {
+                if(key(stored).equals(key)) stillThere = true;
+            }
+            if(!stillThere) this.store.addHubDescription(this.descriptions.get(key));
+        }
+    }
+
+    private List<Listener> copyListeners() {
+        synchronized(this.listeners) {
+            return new ArrayList<>(this.listeners);
+        }
+    }
+
+    private void notifyInserted(int position, String key) {
+        for(Listener listener : this.copyListeners()) listener.hubInserted(position, key);
+    }
+
+    private void notifyChanged(int position, String key) {
+        for(Listener listener : this.copyListeners()) listener.hubChanged(position, key);
+    }
+
+    private void notifyRemoved(int position, String key) {
+        for(Listener listener : this.copyListeners()) listener.hubRemoved(position, key);
+    }
+}
@@ -0,0 +1,381 @@
+package net.sharksystem.sharknet.android.hubs;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.hub.protocol.HubPDU;
+import net.sharksystem.hub.protocol.HubPDUHubStatusRPLY;
+import net.sharksystem.hub.protocol.HubPDUHubStatusRQ;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probes configured hubs in background and ranks them. A probe connects (TCP handshake),
+ * sends a hub status request and waits for the reply - round trip time. A short pipelined burst
+ * of status requests follows - bytes per second of replies. No peer is registered, probes are
+ * invisible to other hub users. Multi channel hubs are probed on warm connections of
+ * {@link HubConnectionPool}. Peers listed in status replies are reported to
+ * {@link HubTrafficMetrics} - encounters with them are counted for that hub.
+ * <p>
+ * Results are kept as moving averages ({@link HubProbeStats}). Best hub has lowest
+ * {@link HubProbeStats#getScore()}.
+ */
+public class HubLatencyProber {
+    public static final long DEFAULT_PROBE_INTERVAL_IN_MILLIS = 5 * 60 * 1000;
+    public static final int DEFAULT_PROBE_TIMEOUT_IN_MILLIS = 3000;
+    static final int BURST_SIZE = 4;
+    /** other PDUs hub might send before status reply */
+    private static final int MAX_SKIPPED_PDUS = 8;
+
+    private static HubLatencyProber instance = null;
+
+    private final int probeTimeoutInMillis;
+    private final HubConnectionPool pool;
+    private final ScheduledExecutorService probeExecutor;
+    private final Map<String, HubProbeStats> stats = new HashMap<>();
+    private final List<Listener> listeners = new ArrayList<>();
+
+    private ScheduledFuture<?> schedule = null;
+    private HubSource hubSource = null;
+
+    /**
+     * Delivers hubs to be probed - e.g. SharkPeer.getHubDescriptions()
+     */
+    public interface HubSource {
+        Collection<HubConnectorDescription> getHubDescriptions();
+    }
+
+    /**
+     * Called on probe thread - post to UI thread if needed.
+     */
+    public interface Listener {
+        void rankingChanged(List<HubProbeStats> ranking);
+    }
+
+    public static synchronized HubLatencyProber getHubLatencyProber() {
+        if(HubLatencyProber.instance == null) {
+            HubLatencyProber.instance = new HubLatencyProber(DEFAULT_PROBE_TIMEOUT_IN_MILLIS,
+                    HubConnectionPool.getHubConnectionPool());
+        }
+
+        return HubLatencyProber.instance;
+    }
+
+    HubLatencyProber(int probeTimeoutInMillis, HubConnectionPool pool) {
+        this.probeTimeoutInMillis = probeTimeoutInMillis;
+        this.pool = pool;
+        this.probeExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SN2HubProbe");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Probe hubs now and each interval from now on. A running schedule is replaced.
+     */
+    public synchronized void start(HubSource hubSource, long intervalInMillis) {
+        this.stop();
+        this.hubSource = hubSource;
+        this.schedule = this.probeExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                probeAll();
+            }
+        }, 0, intervalInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if(this.schedule == null) return;
+
+        this.schedule.cancel(false);
+        this.schedule = null;
+    }
+
+    /**
+     * Probe hubs of recent {@link #start(HubSource, long)} call as soon as possible - e.g.
+     * if hub list is shown. Does nothing if prober was never started.
+     */
+    public synchronized void probeNow() {
+        if(this.hubSource == null) return;
+
+        this.probeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                probeAll();
+            }
+        });
+    }
+
+    public void addListener(Listener listener) {
+        synchronized(this.listeners) {
+            this.listeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        synchronized(this.listeners) {
+            this.listeners.remove(listener);
+        }
+    }
+
+    private void probeAll() {
+        HubSource source;
+        synchronized(this) {
+            source = this.hubSource;
+        }
+        if(source == null) return;
+
+        Collection<HubConnectorDescription> hubDescriptions;
+        try {
+            hubDescriptions = new ArrayList<>(source.getHubDescriptions());
+        } catch (RuntimeException e) {
+            // peer not (yet) running
+            return;
+        }
+
+        for(HubConnectorDescription hubDescription : hubDescriptions) {
+            this.probe(hubDescription);
+        }
+
+        List<HubProbeStats> ranking = this.getRanking();
+        List<Listener> listenersCopy;
+        synchronized(this.listeners) {
+            listenersCopy = new ArrayList<>(this.listeners);
+        }
+        for(Listener listener : listenersCopy) listener.rankingChanged(ranking);
+    }
+
+    /**
+     * Probe a single hub now (on calling thread) and update its moving averages.
+     * @return updated statistics
+     */
+    HubProbeStats probe(HubConnectorDescription hubDescription) {
+        String hubName = HubConnectResult.hubName(hubDescription);
+        HubProbeStats sample;
+        synchronized(this.stats) {
+            sample = this.stats.get(hubName);
+        }
+        if(sample == null) sample = new HubProbeStats(hubName);
+
+        if(hubDescription.getType() != HubConnectorDescription.TCP) {
+            // nothing we could probe from here
+            return sample;
+        }
+
+        final HubProbeStats previous = sample;
+        if(HubConnectionPool.isPooled(hubDescription)) {
+            // warm connection - connect time is that of its handshake
+            try {
+                sample = this.pool.exchange(hubDescription, this.probeTimeoutInMillis,
+                        new HubConnectionPool.Exchange<HubProbeStats>() {
+                            @Override
+                            public HubProbeStats exchange(HubConnectionPool.PooledConnection connection)
+                                    throws IOException, ASAPException {
+                                return measure(previous, hubDescription,
+                                        connection.getConnectMillis(), connection.getMetrics(),
+                                        connection.getOutputStream(), connection.getInputStream());
+                            }
+                        });
+            } catch (IOException | ASAPException | IllegalArgumentException e) {
+                sample = sample.withFailure(e.getLocalizedMessage());
+            }
+        } else {
+            HubTrafficMetrics.HubMetrics metrics =
+                    this.pool.getTrafficMetrics().forHub(hubDescription);
+            Socket socket = new Socket();
+            try {
+                long start = System.nanoTime();
+                socket.connect(new InetSocketAddress(hubDescription.getHostName().toString(),
+                        hubDescription.getPortNumber()), this.probeTimeoutInMillis);
+                double connectMillis = (System.nanoTime() - start) / 1e6;
+
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(this.probeTimeoutInMillis);
+                sample = this.measure(sample, hubDescription, connectMillis, metrics,
+                        new BufferedOutputStream(metrics.meter(socket.getOutputStream())),
+                        metrics.meter(socket.getInputStream()));
+            } catch (IOException | ASAPException | IllegalArgumentException e) {
+                metrics.ioError(e.getLocalizedMessage());
+                sample = sample.withFailure(e.getLocalizedMessage());
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // nothing to do
+                }
+            }
+        }
+
+        synchronized(this.stats) {
+            this.stats.put(hubName, sample);
+        }
+        return sample;
+    }
+
+    private HubProbeStats measure(HubProbeStats previous, HubConnectorDescription hubDescription,
+                                  double connectMillis, HubTrafficMetrics.HubMetrics metrics,
+                                  OutputStream os, InputStream hubIs)
+            throws IOException, ASAPException {
+
+        CountingInputStream is = new CountingInputStream(hubIs);
+
+        // round trip
+        long start = System.nanoTime();
+        HubPDUHubStatusRPLY reply = this.requestStatus(os, is, 1, metrics);
+        long rttNanos = System.nanoTime() - start;
+        this.pool.getTrafficMetrics().peersSeen(hubDescription, reply.connectedPeers);
+
+        // burst - replies carry list of connected peers, size grows with hub usage
+        long bytesBefore = is.count;
+        start = System.nanoTime();
+        this.requestStatus(os, is, BURST_SIZE, metrics);
+        long burstNanos = Math.max(1, System.nanoTime() - start);
+        double bytesPerSecond = (is.count - bytesBefore) * 1e9 / burstNanos;
+
+        return previous.withSuccess(connectMillis, rttNanos / 1e6, bytesPerSecond);
+    }
+
+    /**
+     * @return last status reply
+     */
+    private HubPDUHubStatusRPLY requestStatus(OutputStream os, InputStream is, int number,
+                                              HubTrafficMetrics.HubMetrics metrics)
+            throws IOException, ASAPException {
+
+        for(int i = 0; i < number; i++) {
+            HubPDU request = new HubPDUHubStatusRQ();
+            request.sendPDU(os);
+            metrics.pduSent(request);
+        }
+        os.flush();
+
+        HubPDUHubStatusRPLY reply = null;
+        int replies = 0;
+        int skipped = 0;
+        while(replies < number) {
+            HubPDU pdu = HubPDU.readPDU(is);
+            metrics.pduReceived(pdu);
+            if(pdu instanceof HubPDUHubStatusRPLY) {
+                reply = (HubPDUHubStatusRPLY) pdu;
+                replies++;
+            } else if(++skipped > MAX_SKIPPED_PDUS) {
+                throw new IOException("hub does not answer status requests");
+            }
+        }
+        return reply;
+    }
+
+    /**
+     * @return statistics of all probed hubs, best hub first
+     */
+    public List<HubProbeStats> getRanking() {
+        List<HubProbeStats> ranking;
+        synchronized(this.stats) {
+            ranking = new ArrayList<>(this.stats.values());
+        }
+        Collections.sort(ranking, new Comparator<HubProbeStats>() {
+            @Override
+            public int compare(HubProbeStats a, HubProbeStats b) {
+                return Double.compare(a.getScore(), b.getScore());
+            }
+        });
+        return ranking;
+    }
+
+    /**
+     * @return statistics of a hub, null if never probed
+     */
+    public HubProbeStats getStats(HubConnectorDescription hubDescription) {
+        synchronized(this.stats) {
+            return this.stats.get(HubConnectResult.hubName(hubDescription));
+        }
+    }
+
+    /**
+     * @return position of hub in ranking (1 is best), 0 if hub is down or was not probed yet
+     */
+    public int getRank(HubConnectorDescription hubDescription) {
+        String hubName = HubConnectResult.hubName(hubDescription);
+        int rank = 0;
+        for(HubProbeStats hubStats : this.getRanking()) {
+            if(Double.isInfinite(hubStats.getScore())) break;
+            rank++;
+            if(hubStats.getHubName().equals(hubName)) return rank;
+        }
+        return 0;
+    }
+
+    /**
+     * Hubs to be used for sync: best first. Hubs not probed yet follow known hubs. Hubs found
+     * down are left out - unless there is no other hub.
+     */
+    public List<HubConnectorDescription> preferred(
+            Collection<HubConnectorDescription> hubDescriptions) {
+
+        final Map<HubConnectorDescription, Double> scores = new HashMap<>();
+        List<HubConnectorDescription> preferred = new ArrayList<>();
+        for(HubConnectorDescription hubDescription : hubDescriptions) {
+            HubProbeStats hubStats = this.getStats(hubDescription);
+            if(hubStats != null && hubStats.isDown()) continue;
+
+            // not probed: behind probed hubs, before down hubs
+            scores.put(hubDescription,
+                    hubStats == null || hubStats.getSuccesses() == 0
+                            ? Double.MAX_VALUE : hubStats.getScore());
+            preferred.add(hubDescription);
+        }
+        if(preferred.isEmpty()) return new ArrayList<>(hubDescriptions);
+
+        Collections.sort(preferred, new Comparator<HubConnectorDescription>() {
+            @Override
+            public int compare(HubConnectorDescription a, HubConnectorDescription b) {
+                return Double.compare(scores.get(a), scores.get(b));
+            }
+        });
+        return preferred;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream is) {
+            super(is);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b >= 0) this.count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if(n > 0) this.count += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package net.sharksystem.sharknet.android.hubs;
+
+/**
+ * Moving averages of probing one hub - see {@link HubLatencyProber}. Instances are immutable,
+ * each probe produces a new one.
+ */
+public class HubProbeStats {
+    /** weight of newest sample in moving averages */
+    static final double ALPHA = 0.3;
+    /** hub is considered down after that many failed probes in a row */
+    static final int DOWN_AFTER_FAILURES = 3;
+
+    private final String hubName;
+    private final double connectMillis;
+    private final double rttMillis;
+    private final double bytesPerSecond;
+    private final int probes;
+    private final int successes;
+    private final int consecutiveFailures;
+    private final long lastProbeAt;
+    private final String lastFailure;
+
+    HubProbeStats(String hubName) {
+        this(hubName, -1, -1, -1, 0, 0, 0, 0, null);
+    }
+
+    private HubProbeStats(String hubName, double connectMillis, double rttMillis,
+                          double bytesPerSecond, int probes, int successes,
+                          int consecutiveFailures, long lastProbeAt, String lastFailure) {
+        this.hubName = hubName;
+        this.connectMillis = connectMillis;
+        this.rttMillis = rttMillis;
+        this.bytesPerSecond = bytesPerSecond;
+        this.probes = probes;
+        this.successes = successes;
+        this.consecutiveFailures = consecutiveFailures;
+        this.lastProbeAt = lastProbeAt;
+        this.lastFailure = lastFailure;
+    }
+
+    HubProbeStats withSuccess(double connectMillis, double rttMillis, double bytesPerSecond) {
+        return new HubProbeStats(this.hubName,
+                average(this.connectMillis, connectMillis),
+                average(this.rttMillis, rttMillis),
+                average(this.bytesPerSecond, bytesPerSecond),
+                this.probes + 1, this.successes + 1, 0, System.currentTimeMillis(), null);
+    }
+
+    HubProbeStats withFailure(String failure) {
+        return new HubProbeStats(this.hubName, this.connectMillis, this.rttMillis,
+                this.bytesPerSecond, this.probes + 1, this.successes,
+                this.consecutiveFailures + 1, System.currentTimeMillis(), failure);
+    }
+
+    private static double average(double average, double sample) {
+        return average < 0 ? sample : ALPHA * sample + (1 - ALPHA) * average;
+    }
+
+    public String getHubName() {
+        return this.hubName;
+    }
+
+    /**
+     * @return moving average of TCP connect time, -1 if never reached
+     */
+    public double getConnectMillis() {
+        return this.connectMillis;
+    }
+
+    /**
+     * @return moving average of hub status round trip time, -1 if never reached
+     */
+    public double getRttMillis() {
+        return this.rttMillis;
+    }
+
+    /**
+     * @return moving average of status reply bytes per second in a pipelined burst,
+     * -1 if never reached
+     */
+    public double getBytesPerSecond() {
+        return this.bytesPerSecond;
+    }
+
+    public int getProbes() {
+        return this.probes;
+    }
+
+    public int getSuccesses() {
+        return this.successes;
+    }
+
+    public int getConsecutiveFailures() {
+        return this.consecutiveFailures;
+    }
+
+    public long getLastProbeAt() {
+        return this.lastProbeAt;
+    }
+
+    /**
+     * @return reason of last failure, null if last probe succeeded
+     */
+    public String getLastFailure() {
+        return this.lastFailure;
+    }
+
+    public boolean isDown() {
+        return this.consecutiveFailures >= DOWN_AFTER_FAILURES;
+    }
+
+    /**
+     * @return expected time (ms) to get an answer - lower is better. Each failure in a row
+     * counts as another round trip. Infinite if hub is down or was never probed.
+     */
+    public double getScore() {
+        if(this.successes == 0 || this.isDown()) return Double.POSITIVE_INFINITY;
+        return (this.connectMillis + this.rttMillis) * (1 + this.consecutiveFailures);
+    }
+
+    @Override
+    public String toString() {
+        if(this.successes == 0) {
+            return this.hubName + ": " + (this.probes == 0 ? "not probed" : "unreachable");
+        }
+        return String.format("%s: rtt %.1f ms, connect %.1f ms, %.1f kB/s%s", this.hubName,
+                this.rttMillis, this.connectMillis, this.bytesPerSecond / 1024,
+                this.consecutiveFailures > 0
+                        ? " (" + this.consecutiveFailures + " failed)" : "");
+    }
+}
@@ -0,0 +1,413 @@
+package net.sharksystem.sharknet.android.hubs;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.hub.ASAPHubException;
+import net.sharksystem.hub.HubConnectionManager;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reconnects hubs the user wants to be connected. A failed hub is retried with exponential
+ * backoff and jitter. After too many failures in a row its circuit opens: a single attempt
+ * after a long cool down, nothing in between. Retries pause while there is no network and
+ * start immediately when connectivity returns.
+ * <p>
+ * Each attempt checks reachability (TCP connect) first - only reachable hubs are handed to
+ * ASAP. Multi channel hubs are checked on warm connections of {@link HubConnectionPool}.
+ * Each hub has at most one pending timer - a flaky hub costs a wake up now and then,
+ * nothing more. Connects and failures are counted in {@link HubTrafficMetrics}.
+ * <p>
+ * A hub handed to ASAP is not yet connected. Its failures are kept until ASAP's hub list
+ * reports it connected - a hub that takes connections and drops them at once still ends
+ * in an open circuit.
+ */
+public class HubReconnectScheduler {
+    public static final long DEFAULT_BASE_DELAY_IN_MILLIS = 5000;
+    public static final long DEFAULT_MAX_DELAY_IN_MILLIS = 10 * 60 * 1000;
+    public static final int DEFAULT_FAILURES_TO_OPEN_CIRCUIT = 6;
+    public static final long DEFAULT_OPEN_CIRCUIT_IN_MILLIS = 60 * 60 * 1000;
+    public static final int DEFAULT_CHECK_TIMEOUT_IN_MILLIS = 3000;
+    /** a hub handed to ASAP that long ago and not reported connected is considered lost */
+    static final long CONNECT_GRACE_IN_MILLIS = 30000;
+
+    private static HubReconnectScheduler instance = null;
+
+    private final long baseDelayInMillis;
+    private final long maxDelayInMillis;
+    private final int failuresToOpenCircuit;
+    private final long openCircuitInMillis;
+    private final int checkTimeoutInMillis;
+    private final Random random;
+    private final HubConnectionPool pool;
+    private final ScheduledExecutorService retryExecutor;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private HubConnector connector = null;
+    private boolean online = true;
+
+    /**
+     * Hands a hub to ASAP (service side) - e.g. ASAPActivity.connectASAPHubs.
+     */
+    public interface HubConnector {
+        /**
+         * @return false if hub could not be handed to ASAP right now
+         */
+        boolean connect(HubConnectorDescription hubDescription);
+    }
+
+    public static synchronized HubReconnectScheduler getHubReconnectScheduler() {
+        if(HubReconnectScheduler.instance == null) {
+            HubReconnectScheduler.instance = new HubReconnectScheduler(
+                    DEFAULT_BASE_DELAY_IN_MILLIS, DEFAULT_MAX_DELAY_IN_MILLIS,
+                    DEFAULT_FAILURES_TO_OPEN_CIRCUIT, DEFAULT_OPEN_CIRCUIT_IN_MILLIS,
+                    DEFAULT_CHECK_TIMEOUT_IN_MILLIS, new Random(),
+                    HubConnectionPool.getHubConnectionPool());
+        }
+
+        return HubReconnectScheduler.instance;
+    }
+
+    HubReconnectScheduler(long baseDelayInMillis, long maxDelayInMillis,
+                          int failuresToOpenCircuit, long openCircuitInMillis,
+                          int checkTimeoutInMillis, Random random, HubConnectionPool pool) {
+        this.baseDelayInMillis = baseDelayInMillis;
+        this.maxDelayInMillis = maxDelayInMillis;
+        this.failuresToOpenCircuit = failuresToOpenCircuit;
+        this.openCircuitInMillis = openCircuitInMillis;
+        this.checkTimeoutInMillis = checkTimeoutInMillis;
+        this.random = random;
+        this.pool = pool;
+        this.retryExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SN2HubReconnect");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    public synchronized void setHubConnector(HubConnector connector) {
+        this.connector = connector;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                     what to watch                                       //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Keep those hubs connected from now on. They are expected to be connected right now -
+     * failures are reported by {@link #connectResult(HubConnectResult)} or
+     * {@link #hubListReceived(List, List)}.
+     */
+    public synchronized void watch(Collection<HubConnectorDescription> hubDescriptions) {
+        for(HubConnectorDescription hubDescription : hubDescriptions) {
+            String hubName = HubConnectResult.hubName(hubDescription);
+            if(this.entries.containsKey(hubName)) continue;
+
+            // state only - caller hands hub over and reports it, that counts the connect
+            Entry entry = new Entry(hubDescription, hubName);
+            entry.handedAt = System.currentTimeMillis();
+            this.entries.put(hubName, entry);
+        }
+    }
+
+    /**
+     * Hub is no longer of interest - e.g. removed from hub descriptions.
+     */
+    public synchronized void unwatch(HubConnectorDescription hubDescription) {
+        Entry entry = this.entries.remove(HubConnectResult.hubName(hubDescription));
+        if(entry != null) entry.cancelRetry();
+    }
+
+    /**
+     * User switched hubs off - no more reconnects.
+     */
+    public synchronized void unwatchAll() {
+        for(Entry entry : this.entries.values()) entry.cancelRetry();
+        this.entries.clear();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                        feedback                                         //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    public synchronized void connectResult(HubConnectResult result) {
+        Entry entry = this.entries.get(HubConnectResult.hubName(result.getHubDescription()));
+        if(entry == null) return;
+
+        switch(result.getStatus()) {
+            case HANDED_OVER: this.handedOver(entry); break;
+            case TIMEOUT:
+            case UNREACHABLE:
+            case NOT_HANDED_OVER: this.failed(entry, result.getStatus().toString()); break;
+            default: // cancelled - user decides
+        }
+    }
+
+    /**
+     * Hub failed without ASAP noticing - e.g. left out because prober found it down.
+     */
+    public synchronized void hubFailed(HubConnectorDescription hubDescription, String reason) {
+        Entry entry = this.entries.get(HubConnectResult.hubName(hubDescription));
+        if(entry != null) this.failed(entry, reason);
+    }
+
+    /**
+     * ASAP reported its hub list - e.g. from HubManagerStatusChangedListener.
+     */
+    public synchronized void hubListReceived(List<HubConnectorDescription> connectedHubs,
+                     List<HubConnectionManager.FailedConnectionAttempt> failedAttempts) {
+
+        Map<String, Long> failedAt = new HashMap<>();
+        for(HubConnectionManager.FailedConnectionAttempt attempt : failedAttempts) {
+            String hubName = HubConnectResult.hubName(attempt.getHubConnectorDescription());
+            Long known = failedAt.get(hubName);
+            if(known == null || known < attempt.getTimeStamp()) {
+                failedAt.put(hubName, attempt.getTimeStamp());
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        for(Entry entry : this.entries.values()) {
+            if(contains(connectedHubs, entry.hubDescription)) {
+                if(entry.state != HubReconnectState.State.CONNECTED) this.handedOver(entry);
+                this.confirmed(entry);
+                continue;
+            }
+
+            Long failedTimeStamp = failedAt.get(entry.hubName);
+            if(failedTimeStamp != null && failedTimeStamp > entry.lastReportedFailure) {
+                // report each failed attempt once
+                entry.lastReportedFailure = failedTimeStamp;
+                if(entry.state == HubReconnectState.State.CONNECTED) {
+                    this.failed(entry, "connection attempt failed");
+                }
+            } else if(entry.state == HubReconnectState.State.CONNECTED
+                    && now - entry.handedAt > CONNECT_GRACE_IN_MILLIS) {
+                this.failed(entry, "connection lost");
+            }
+        }
+    }
+
+    public synchronized void connectivityLost() {
+        this.online = false;
+        for(Entry entry : this.entries.values()) {
+            if(entry.state == HubReconnectState.State.CONNECTED) continue;
+
+            entry.cancelRetry();
+            entry.state = HubReconnectState.State.OFFLINE;
+        }
+    }
+
+    /**
+     * Retry all failed hubs now - open circuits included, new network might be the remedy.
+     */
+    public synchronized void connectivityRestored() {
+        this.online = true;
+        for(Entry entry : this.entries.values()) {
+            if(entry.state == HubReconnectState.State.CONNECTED) continue;
+
+            entry.state = HubReconnectState.State.WAITING;
+            this.scheduleRetry(entry, 0);
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         state                                           //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return reconnect state of a hub, null if not watched
+     */
+    public synchronized HubReconnectState getState(HubConnectorDescription hubDescription) {
+        Entry entry = this.entries.get(HubConnectResult.hubName(hubDescription));
+        return entry == null ? null : entry.snapshot();
+    }
+
+    public synchronized List<HubReconnectState> getStates() {
+        List<HubReconnectState> states = new ArrayList<>();
+        for(Entry entry : this.entries.values()) states.add(entry.snapshot());
+        return states;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                      transitions                                        //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Hub is with ASAP - failures are kept until it is {@link #confirmed(Entry)}.
+     */
+    private void handedOver(Entry entry) {
+        entry.cancelRetry();
+        entry.state = HubReconnectState.State.CONNECTED;
+        entry.handedAt = System.currentTimeMillis();
+        this.pool.getTrafficMetrics().forHub(entry.hubDescription).connected();
+    }
+
+    /**
+     * ASAP reports hub connected.
+     */
+    private void confirmed(Entry entry) {
+        entry.failures = 0;
+        entry.lastFailure = null;
+    }
+
+    private void failed(Entry entry, String reason) {
+        entry.cancelRetry();
+        entry.failures++;
+        entry.lastFailure = reason;
+        this.pool.getTrafficMetrics().forHub(entry.hubDescription).connectFailed(reason);
+
+        if(!this.online) {
+            entry.state = HubReconnectState.State.OFFLINE;
+        } else if(entry.failures >= this.failuresToOpenCircuit) {
+            entry.state = HubReconnectState.State.CIRCUIT_OPEN;
+            this.scheduleRetry(entry, this.openCircuitInMillis);
+        } else {
+            entry.state = HubReconnectState.State.WAITING;
+            this.scheduleRetry(entry, this.backoff(entry.failures));
+        }
+    }
+
+    /**
+     * @return exponential delay - half of it fixed, half random. Hubs failing at the same time
+     * (e.g. network gone) are not retried at the same time.
+     */
+    long backoff(int failures) {
+        int exponent = Math.min(Math.max(failures - 1, 0), 20);
+        long delay = Math.min(this.maxDelayInMillis, this.baseDelayInMillis << exponent);
+        return delay / 2 + (long) (this.random.nextDouble() * (delay / 2));
+    }
+
+    private void scheduleRetry(final Entry entry, long delayInMillis) {
+        entry.cancelRetry();
+        entry.nextAttemptAt = System.currentTimeMillis() + delayInMillis;
+        entry.retry = this.retryExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                attempt(entry);
+            }
+        }, delayInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void attempt(Entry entry) {
+        HubConnector hubConnector;
+        int generation;
+        synchronized(this) {
+            if(this.entries.get(entry.hubName) != entry || !this.online) return;
+            entry.retry = null;
+            entry.nextAttemptAt = 0;
+            generation = entry.generation;
+            hubConnector = this.connector;
+        }
+
+        // do not bother ASAP with hubs not even answering
+        String failure = this.checkReachable(entry.hubDescription);
+        boolean handedOver = failure == null
+                && hubConnector != null && hubConnector.connect(entry.hubDescription);
+
+        synchronized(this) {
+            // unwatched or changed meanwhile
+            if(this.entries.get(entry.hubName) != entry || entry.generation != generation) return;
+
+            if(failure != null) {
+                this.failed(entry, failure);
+            } else if(handedOver) {
+                this.handedOver(entry);
+            } else {
+                // no one to hand it to (yet) - not the hubs fault
+                entry.state = HubReconnectState.State.WAITING;
+                this.scheduleRetry(entry, this.backoff(Math.max(1, entry.failures)));
+            }
+        }
+    }
+
+    /**
+     * @return null if reachable (or not checkable) - reason of failure otherwise
+     */
+    private String checkReachable(HubConnectorDescription hubDescription) {
+        if(hubDescription.getType() != HubConnectorDescription.TCP) return null;
+
+        if(HubConnectionPool.isPooled(hubDescription)) {
+            try {
+                this.pool.check(hubDescription, this.checkTimeoutInMillis);
+                return null;
+            } catch (IOException | ASAPException | IllegalArgumentException e) {
+                String reason = e.getLocalizedMessage();
+                return reason != null ? reason : e.getClass().getSimpleName();
+            }
+        }
+
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(hubDescription.getHostName().toString(),
+                    hubDescription.getPortNumber()), this.checkTimeoutInMillis);
+            return null;
+        } catch (IOException | ASAPHubException | IllegalArgumentException e) {
+            String reason = e.getLocalizedMessage();
+            return reason != null ? reason : e.getClass().getSimpleName();
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    private static boolean contains(List<HubConnectorDescription> hubDescriptions,
+                                    HubConnectorDescription hubDescription) {
+        for(HubConnectorDescription other : hubDescriptions) {
+            if(other.isSame(hubDescription)) return true;
+        }
+        return false;
+    }
+
+    private static class Entry {
+        final HubConnectorDescription hubDescription;
+        final String hubName;
+
+        HubReconnectState.State state = HubReconnectState.State.CONNECTED;
+        int failures = 0;
+        String lastFailure = null;
+        long nextAttemptAt = 0;
+        long handedAt = 0;
+        long lastReportedFailure = 0;
+        ScheduledFuture<?> retry = null;
+        /** changes with each transition - outdated attempts are ignored */
+        int generation = 0;
+
+        Entry(HubConnectorDescription hubDescription, String hubName) {
+            this.hubDescription = hubDescription;
+            this.hubName = hubName;
+        }
+
+        void cancelRetry() {
+            if(this.retry != null) this.retry.cancel(false);
+            this.retry = null;
+            this.nextAttemptAt = 0;
+            this.generation++;
+        }
+
+        HubReconnectState snapshot() {
+            return new HubReconnectState(this.hubName, this.state, this.failures,
+                    this.nextAttemptAt, this.lastFailure);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package net.sharksystem.sharknet.android.hubs;
+
+/**
+ * Reconnect state of one hub - see {@link HubReconnectScheduler}. Instances are immutable.
+ */
+public class HubReconnectState {
+    public enum State {
+        /** handed to ASAP - or reported connected */
+        CONNECTED,
+        /** failed - next attempt is scheduled with backoff */
+        WAITING,
+        /** failed too often - a single attempt after a long cool down */
+        CIRCUIT_OPEN,
+        /** no network - next attempt when connectivity returns */
+        OFFLINE
+    }
+
+    private final String hubName;
+    private final State state;
+    private final int failures;
+    private final long nextAttemptAt;
+    private final String lastFailure;
+
+    HubReconnectState(String hubName, State state, int failures,
+                      long nextAttemptAt, String lastFailure) {
+        this.hubName = hubName;
+        this.state = state;
+        this.failures = failures;
+        this.nextAttemptAt = nextAttemptAt;
+        this.lastFailure = lastFailure;
+    }
+
+    public String getHubName() {
+        return this.hubName;
+    }
+
+    public State getState() {
+        return this.state;
+    }
+
+    /**
+     * @return failed attempts in a row
+     */
+    public int getFailures() {
+        return this.failures;
+    }
+
+    /**
+     * @return time of next attempt, 0 if none is scheduled
+     */
+    public long getNextAttemptAt() {
+        return this.nextAttemptAt;
+    }
+
+    public String getLastFailure() {
+        return this.lastFailure;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(this.state);
+        if(this.failures > 0) sb.append(" (").append(this.failures).append(" failed)");
+        if(this.nextAttemptAt > 0) {
+            long seconds = Math.max(0, this.nextAttemptAt - System.currentTimeMillis()) / 1000;
+            sb.append(" - retry in ").append(seconds).append(" s");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,397 @@
+package net.sharksystem.sharknet.android.hubs;
+
+import net.sharksystem.SharkPeerEncounterChangedListener;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.hub.protocol.HubPDU;
+import net.sharksystem.hub.protocol.HubPDUConnectPeerNewTCPSocketRQ;
+import net.sharksystem.hub.protocol.HubPDUConnectPeerRQ;
+import net.sharksystem.hub.protocol.HubPDUHubStatusRPLY;
+import net.sharksystem.hub.protocol.HubPDUHubStatusRQ;
+import net.sharksystem.hub.protocol.HubPDURegister;
+import net.sharksystem.hub.protocol.HubPDUSilent;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Traffic per hub - which hub carries our load. Counts bytes and hub protocol PDUs on
+ * connections of this app (pool, prober), connects and failed connects reported to
+ * {@link HubReconnectScheduler} and encounters with peers found on a hub.
+ * <p>
+ * Counters are atomics - connection threads never wait for each other or for a reader.
+ * A report is a snapshot of counters read one after another, not an atomic view.
+ */
+public class HubTrafficMetrics implements SharkPeerEncounterChangedListener {
+    public static final String DUMP_FILE_NAME = "hubTraffic.txt";
+
+    public enum PduType {
+        REGISTER, CONNECT_REQUEST, SILENT, STATUS, OTHER;
+
+        static PduType of(HubPDU pdu) {
+            if(pdu instanceof HubPDURegister) return REGISTER;
+            if(pdu instanceof HubPDUConnectPeerRQ
+                    || pdu instanceof HubPDUConnectPeerNewTCPSocketRQ) return CONNECT_REQUEST;
+            if(pdu instanceof HubPDUSilent) return SILENT;
+            if(pdu instanceof HubPDUHubStatusRQ || pdu instanceof HubPDUHubStatusRPLY) return STATUS;
+            return OTHER;
+        }
+    }
+
+    private static HubTrafficMetrics instance = null;
+
+    private final ConcurrentMap<String, HubMetrics> hubs = new ConcurrentHashMap<>();
+    /** peer id - key of hub peer was last seen on */
+    private final ConcurrentMap<String, String> peerHubs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> encounterStarts = new ConcurrentHashMap<>();
+    private final AtomicLong encountersWithoutHub = new AtomicLong();
+    private volatile long since = System.currentTimeMillis();
+
+    public static synchronized HubTrafficMetrics getHubTrafficMetrics() {
+        if(HubTrafficMetrics.instance == null) {
+            HubTrafficMetrics.instance = new HubTrafficMetrics();
+        }
+
+        return HubTrafficMetrics.instance;
+    }
+
+    HubTrafficMetrics() {}
+
+    public HubMetrics forHub(HubConnectorDescription hubDescription) {
+        return this.forKey(HubDescriptionRegistry.key(hubDescription));
+    }
+
+    HubMetrics forKey(String key) {
+        HubMetrics metrics = this.hubs.get(key);
+        if(metrics != null) return metrics;
+
+        HubMetrics created = new HubMetrics(key);
+        metrics = this.hubs.putIfAbsent(key, created);
+        return metrics != null ? metrics : created;
+    }
+
+    /**
+     * @return metrics of all hubs, most bytes first
+     */
+    public List<HubMetrics> getHubs() {
+        List<HubMetrics> hubMetrics = new ArrayList<>(this.hubs.values());
+        Collections.sort(hubMetrics, new Comparator<HubMetrics>() {
+            @Override
+            public int compare(HubMetrics a, HubMetrics b) {
+                return Long.compare(b.getBytesIn() + b.getBytesOut(),
+                        a.getBytesIn() + a.getBytesOut());
+            }
+        });
+        return hubMetrics;
+    }
+
+    /**
+     * @return metrics of hub peer was last seen on, null if peer was not seen on any hub
+     */
+    public HubMetrics getHubMetricsOf(CharSequence peerID) {
+        String key = this.peerHubs.get(peerID.toString());
+        return key == null ? null : this.forKey(key);
+    }
+
+    /**
+     * @return encounters with peers not found on any hub - e.g. Bluetooth
+     */
+    public long getEncountersWithoutHub() {
+        return this.encountersWithoutHub.get();
+    }
+
+    /**
+     * @return time counting started - creation or last {@link #reset()}
+     */
+    public long getSince() {
+        return this.since;
+    }
+
+    /**
+     * Forget all counters. Running encounters are still counted when they end.
+     */
+    public void reset() {
+        this.hubs.clear();
+        this.encountersWithoutHub.set(0);
+        this.since = System.currentTimeMillis();
+    }
+
+    /**
+     * Hub reported peers connected to it (status reply). Encounters with those peers are
+     * counted for that hub.
+     */
+    void peersSeen(HubConnectorDescription hubDescription, Set<CharSequence> peerIDs) {
+        if(peerIDs == null) return;
+
+        String key = HubDescriptionRegistry.key(hubDescription);
+        for(CharSequence peerID : peerIDs) this.peerHubs.put(peerID.toString(), key);
+    }
+
+    @Override
+    public void encounterStarted(CharSequence peerID) {
+        this.encounterStarts.put(peerID.toString(), System.currentTimeMillis());
+    }
+
+    @Override
+    public void encounterTerminated(CharSequence peerID) {
+        Long startedAt = this.encounterStarts.remove(peerID.toString());
+        if(startedAt == null) return;
+
+        String key = this.peerHubs.get(peerID.toString());
+        if(key == null) {
+            this.encountersWithoutHub.incrementAndGet();
+        } else {
+            this.forKey(key).encounter(System.currentTimeMillis() - startedAt);
+        }
+    }
+
+    public String report() {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.ROOT);
+        StringBuilder sb = new StringBuilder();
+        sb.append("since ").append(dateFormat.format(new Date(this.since)))
+                .append(" (").append(dateFormat.format(new Date())).append(")\n");
+
+        List<HubMetrics> hubMetrics = this.getHubs();
+        if(hubMetrics.isEmpty()) sb.append("no hub traffic\n");
+        for(HubMetrics metrics : hubMetrics) sb.append("\n").append(metrics);
+
+        sb.append("\nencounters without hub: ").append(this.encountersWithoutHub.get()).append("\n");
+        return sb.toString();
+    }
+
+    /**
+     * Write report into a file in dir - replaces a previous dump.
+     * @return dump file
+     */
+    public File dump(File dir) throws IOException {
+        File file = new File(dir, DUMP_FILE_NAME);
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        try {
+            fos.write(this.report().getBytes(StandardCharsets.UTF_8));
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+
+        if(!tmpFile.renameTo(file)) {
+            throw new IOException("cannot rename " + tmpFile + " to " + file);
+        }
+        return file;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                      hub metrics                                        //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    public static class HubMetrics {
+        private final String key;
+        private final AtomicLong bytesIn = new AtomicLong();
+        private final AtomicLong bytesOut = new AtomicLong();
+        private final AtomicLongArray pdusIn = new AtomicLongArray(PduType.values().length);
+        private final AtomicLongArray pdusOut = new AtomicLongArray(PduType.values().length);
+        private final AtomicLong encounters = new AtomicLong();
+        private final AtomicLong encounterMillis = new AtomicLong();
+        private final AtomicLong maxEncounterMillis = new AtomicLong();
+        private final AtomicLong connects = new AtomicLong();
+        private final AtomicLong connectFailures = new AtomicLong();
+        private final AtomicLong ioErrors = new AtomicLong();
+        private volatile String lastError = null;
+
+        HubMetrics(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return stream counting bytes read from hub
+         */
+        InputStream meter(InputStream is) {
+            return new MeteredInputStream(is, this.bytesIn);
+        }
+
+        /**
+         * @return stream counting bytes written to hub - put buffers on top of it
+         */
+        OutputStream meter(OutputStream os) {
+            return new MeteredOutputStream(os, this.bytesOut);
+        }
+
+        void pduSent(HubPDU pdu) {
+            this.pdusOut.incrementAndGet(PduType.of(pdu).ordinal());
+        }
+
+        void pduReceived(HubPDU pdu) {
+            this.pdusIn.incrementAndGet(PduType.of(pdu).ordinal());
+        }
+
+        /** connection of this app to hub failed */
+        void ioError(String reason) {
+            this.ioErrors.incrementAndGet();
+            this.lastError = reason;
+        }
+
+        /** hub handed to ASAP */
+        void connected() {
+            this.connects.incrementAndGet();
+        }
+
+        /** hub could not be connected or was lost */
+        void connectFailed(String reason) {
+            this.connectFailures.incrementAndGet();
+            this.lastError = reason;
+        }
+
+        void encounter(long durationInMillis) {
+            this.encounters.incrementAndGet();
+            this.encounterMillis.addAndGet(durationInMillis);
+
+            long max = this.maxEncounterMillis.get();
+            while(durationInMillis > max
+                    && !this.maxEncounterMillis.compareAndSet(max, durationInMillis)) {
+                max = this.maxEncounterMillis.get();
+            }
+        }
+
+        public String getKey() {
+            return this.key;
+        }
+
+        public long getBytesIn() {
+            return this.bytesIn.get();
+        }
+
+        public long getBytesOut() {
+            return this.bytesOut.get();
+        }
+
+        public long getPdusIn(PduType type) {
+            return this.pdusIn.get(type.ordinal());
+        }
+
+        public long getPdusOut(PduType type) {
+            return this.pdusOut.get(type.ordinal());
+        }
+
+        public long getEncounters() {
+            return this.encounters.get();
+        }
+
+        /** @return average encounter duration, 0 if there was none */
+        public long getAverageEncounterMillis() {
+            long number = this.encounters.get();
+            return number == 0 ? 0 : this.encounterMillis.get() / number;
+        }
+
+        public long getMaxEncounterMillis() {
+            return this.maxEncounterMillis.get();
+        }
+
+        public long getConnects() {
+            return this.connects.get();
+        }
+
+        public long getConnectFailures() {
+            return this.connectFailures.get();
+        }
+
+        public long getIOErrors() {
+            return this.ioErrors.get();
+        }
+
+        /** @return reason of most recent error, null if there was none */
+        public String getLastError() {
+            return this.lastError;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(this.key).append("\n")
+                    .append("  bytes in/out: ").append(this.getBytesIn())
+                    .append(" / ").append(this.getBytesOut()).append("\n")
+                    .append("  PDUs in/out:");
+            for(PduType type : PduType.values()) {
+                long in = this.getPdusIn(type);
+                long out = this.getPdusOut(type);
+                if(in + out > 0) {
+                    sb.append(" ").append(type.name().toLowerCase(Locale.ROOT))
+                            .append(" ").append(in).append("/").append(out);
+                }
+            }
+            sb.append("\n")
+                    .append("  encounters: ").append(this.getEncounters())
+                    .append(" (avg ").append(this.getAverageEncounterMillis() / 1000)
+                    .append(" s, max ").append(this.getMaxEncounterMillis() / 1000)
+                    .append(" s)\n")
+                    .append("  connects: ").append(this.getConnects())
+                    .append(", failed: ").append(this.getConnectFailures())
+                    .append(", i/o errors: ").append(this.getIOErrors()).append("\n");
+            String error = this.lastError;
+            if(error != null) sb.append("  last error: ").append(error).append("\n");
+            return sb.toString();
+        }
+    }
+
+    private static class MeteredInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+
+        MeteredInputStream(InputStream is, AtomicLong counter) {
+            super(is);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b >= 0) this.counter.incrementAndGet();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if(n > 0) this.counter.addAndGet(n);
+            return n;
+        }
+    }
+
+    private static class MeteredOutputStream extends FilterOutputStream {
+        private final AtomicLong counter;
+
+        MeteredOutputStream(OutputStream os, AtomicLong counter) {
+            super(os);
+            this.counter = counter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.counter.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // FilterOutputStream would write byte by byte
+            this.out.write(b, off, len);
+            this.counter.addAndGet(len);
+        }
+    }
+}
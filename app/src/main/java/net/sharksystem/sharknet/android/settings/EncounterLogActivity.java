@@ -0,0 +1,82 @@
+package net.sharksystem.sharknet.android.settings;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import androidx.appcompat.widget.Toolbar;
+
+import net.sharksystem.R;
+import net.sharksystem.asap.android.apps.ASAPActivity;
+import net.sharksystem.sharknet.android.SharkNetApp;
+import net.sharksystem.sharknet.android.encounters.EncounterLog;
+
+/**
+ * Encounter history summed up per peer and transport - refreshed while shown.
+ */
+public class EncounterLogActivity extends ASAPActivity {
+    private static final long REFRESH_INTERVAL_IN_MILLIS = 5000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            showReport();
+            handler.postDelayed(this, REFRESH_INTERVAL_IN_MILLIS);
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        setContentView(R.layout.settings_encounter_log_drawer_layout);
+        SharkNetApp.getSharkNetApp().setupDrawerLayout(this);
+
+        Toolbar myToolbar = (Toolbar) findViewById(R.id.settings_encounter_log_with_toolbar);
+        setSupportActionBar(myToolbar);
+    }
+
+    private void showReport() {
+        TextView reportView = findViewById(R.id.settings_encounter_log_report);
+        EncounterLog encounterLog = SharkNetApp.getSharkNetApp().getEncounterLog();
+        reportView.setText(encounterLog == null ? "no encounter log" : encounterLog.report());
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////
+    //                              toolbar methods                                //
+    /////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        MenuInflater inflater = getMenuInflater();
+        inflater.inflate(R.menu.settings_encounter_log_toolbar, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if(item.getItemId() == R.id.settingEncounterLogCancel) {
+            this.finish();
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        this.handler.post(this.refresh);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        this.handler.removeCallbacks(this.refresh);
+    }
+}
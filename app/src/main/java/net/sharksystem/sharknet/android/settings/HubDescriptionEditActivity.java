@@ -9,20 +9,24 @@ import android.widget.Toast;
 import android.widget.ToggleButton;
 
 import net.sharksystem.R;
-import net.sharksystem.SharkException;
-import net.sharksystem.SharkPeer;
-import net.sharksystem.android.IntentWithPosition;
 import net.sharksystem.asap.android.apps.ASAPActivity;
+import net.sharksystem.hub.ASAPHubException;
 import net.sharksystem.hub.hubside.Hub;
 import net.sharksystem.hub.peerside.HubConnectorDescription;
 import net.sharksystem.hub.peerside.TCPHubConnectorDescriptionImpl;
 import net.sharksystem.sharknet.android.SharkNetApp;
+import net.sharksystem.sharknet.android.hubs.HubDescriptionRegistry;
+import net.sharksystem.sharknet.android.hubs.HubReconnectScheduler;
 
 import java.io.IOException;
 
 // TCP only
 public class HubDescriptionEditActivity extends ASAPActivity {
+    /** registry key of description to be edited - none if a new one is created */
+    public static final String HUB_KEY = "hubKey";
+
     private HubConnectorDescription origHubDescription;
+    private String origHubKey;
 
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -33,24 +37,22 @@ public class HubDescriptionEditActivity extends ASAPActivity {
         CharSequence portString = String.valueOf(Hub.DEFAULT_PORT);
         int layout = R.layout.settings_hub_description_editor_drawer_layout;
 
-        // there could be a position in intent
-        try {
-            IntentWithPosition intentWithPosition = new IntentWithPosition(intent);
-
-            // this can fail - and end in catch
-            int position = intentWithPosition.getPosition();
-
-            // we have got a position
-            this.origHubDescription =
-                    SharkNetApp.getSharkNetApp().getSharkPeer().getHubDescription(position);
-
-            hostNameString = origHubDescription.getHostName();
-            portString = Integer.toString(origHubDescription.getPortNumber());
-
-            layout = R.layout.settings_hub_description_editor_with_delete_drawer_layout;
-
-        } catch (SharkException e) {
-            // take defaults - a new description is created
+        // there could be a key in intent - entry might be gone meanwhile
+        String hubKey = intent.getStringExtra(HUB_KEY);
+        HubConnectorDescription hubDescription = hubKey == null ? null
+                : SharkNetApp.getSharkNetApp().getHubDescriptionRegistry().get(hubKey);
+
+        if(hubDescription != null) {
+            try {
+                hostNameString = hubDescription.getHostName();
+                portString = Integer.toString(hubDescription.getPortNumber());
+
+                this.origHubDescription = hubDescription;
+                this.origHubKey = hubKey;
+                layout = R.layout.settings_hub_description_editor_with_delete_drawer_layout;
+            } catch (ASAPHubException e) {
+                // take defaults - a new description is created
+            }
         }
 
         setContentView(layout);
@@ -88,7 +90,7 @@ public class HubDescriptionEditActivity extends ASAPActivity {
         EditText etPort = this.findViewById(R.id.settingsTCPHubDescriptionPort);
         ToggleButton tbMultiChannel = this.findViewById(R.id.settingsTCPHubDescriptionMultiChannel);
 
-        String hostNameString = etHostName.getEditableText().toString();
+        String hostNameString = etHostName.getEditableText().toString().trim();
         String portString = etPort.getEditableText().toString();
         boolean multiChannel = tbMultiChannel.isChecked();
 
@@ -105,19 +107,23 @@ public class HubDescriptionEditActivity extends ASAPActivity {
             HubConnectorDescription descriptionFromGUI =
                     new TCPHubConnectorDescriptionImpl(hostNameString, port, multiChannel);
 
-            SharkPeer sPeer = SharkNetApp.getSharkNetApp().getSharkPeer();
+            HubDescriptionRegistry registry = SharkNetApp.getSharkNetApp().getHubDescriptionRegistry();
 
             if(view == this.findViewById(R.id.deleteButton)) {
-                sPeer.removeHubDescription(descriptionFromGUI);
+                if(this.origHubKey != null) {
+                    registry.remove(this.origHubKey);
+                    HubReconnectScheduler.getHubReconnectScheduler().unwatch(this.origHubDescription);
+                }
             }
             else if(view == this.findViewById(R.id.save)) {
-                // remove old one - it was most probably changed
-                if(this.origHubDescription != null) {
-                    sPeer.removeHubDescription(this.origHubDescription);
+                if(this.origHubKey != null) {
+                    // replace in one step - known hubs are merged
+                    registry.update(this.origHubKey, descriptionFromGUI);
+                    HubReconnectScheduler.getHubReconnectScheduler().unwatch(this.origHubDescription);
+                } else {
+                    // add data from GUI - replaces a description of same hub
+                    registry.put(descriptionFromGUI);
                 }
-
-                // add data from GUI
-                sPeer.addHubDescription(descriptionFromGUI);
             }
         } catch (IOException e) {
             Log.e(this.getLogStart(), "not good: " + e.getLocalizedMessage());
@@ -15,11 +15,27 @@ import androidx.recyclerview.widget.RecyclerView;
 import net.sharksystem.R;
 import net.sharksystem.asap.android.apps.ASAPActivity;
 import net.sharksystem.sharknet.android.SharkNetApp;
+import net.sharksystem.sharknet.android.hubs.HubLatencyProber;
+import net.sharksystem.sharknet.android.hubs.HubProbeStats;
+
+import java.util.List;
 
 public class HubDescriptionsListActivity extends ASAPActivity {
     private RecyclerView mRecyclerView;
     private HubDescriptionsListContentAdapter mAdapter;
 
+    private final HubLatencyProber.Listener rankingListener = new HubLatencyProber.Listener() {
+        @Override
+        public void rankingChanged(List<HubProbeStats> ranking) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    if(!isFinishing()) mAdapter.notifyItemRangeChanged(0, mAdapter.getItemCount());
+                }
+            });
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -103,6 +119,15 @@ public class HubDescriptionsListActivity extends ASAPActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        this.mAdapter.notifyDataSetChanged();
+        // list changes arrive as registry events - fresh ranking while list is shown
+        HubLatencyProber prober = HubLatencyProber.getHubLatencyProber();
+        prober.addListener(this.rankingListener);
+        prober.probeNow();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        HubLatencyProber.getHubLatencyProber().removeListener(this.rankingListener);
     }
 }
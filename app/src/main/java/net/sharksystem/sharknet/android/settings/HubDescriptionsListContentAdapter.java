@@ -1,6 +1,9 @@
 package net.sharksystem.sharknet.android.settings;
 
 import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -11,12 +14,14 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import net.sharksystem.R;
-import net.sharksystem.SharkException;
-import net.sharksystem.android.IntentWithPosition;
 import net.sharksystem.hub.peerside.HubConnectorDescription;
 import net.sharksystem.sharknet.android.SharkNetApp;
+import net.sharksystem.sharknet.android.hubs.HubDescriptionRegistry;
+import net.sharksystem.sharknet.android.hubs.HubLatencyProber;
+import net.sharksystem.sharknet.android.hubs.HubProbeStats;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class HubDescriptionsListContentAdapter extends
         RecyclerView.Adapter<HubDescriptionsListContentAdapter.MyViewHolder>
@@ -25,9 +30,73 @@ public class HubDescriptionsListContentAdapter extends
     private final Context ctx;
     private View.OnClickListener clickListener;
 
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final HubDescriptionRegistry registry;
+    /** keys as shown - changed on UI thread only, by registry events in registry order */
+    private final List<String> keys = new ArrayList<>();
+    private RecyclerView recyclerView = null;
+
+    private final HubDescriptionRegistry.Listener registryListener =
+            new HubDescriptionRegistry.Listener() {
+        @Override
+        public void hubInserted(final int position, final String key) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    keys.add(position, key);
+                    notifyItemInserted(position);
+                }
+            });
+        }
+
+        @Override
+        public void hubChanged(final int position, final String key) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    keys.set(position, key);
+                    notifyItemChanged(position);
+                }
+            });
+        }
+
+        @Override
+        public void hubRemoved(final int position, final String key) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    keys.remove(position);
+                    notifyItemRemoved(position);
+                }
+            });
+        }
+    };
+
     public HubDescriptionsListContentAdapter(Context ctx) {
         this.ctx = ctx;
         this.clickListener = this;
+        this.registry = SharkNetApp.getSharkNetApp().getHubDescriptionRegistry();
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        this.recyclerView = recyclerView;
+        // snapshot and listener in one go - no change in between
+        this.mainHandler.removeCallbacksAndMessages(null);
+        synchronized(this.registry) {
+            this.keys.clear();
+            this.keys.addAll(this.registry.getKeys());
+            this.registry.addListener(this.registryListener);
+        }
+        this.notifyDataSetChanged();
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        this.registry.removeListener(this.registryListener);
+        this.recyclerView = null;
     }
 
     @NonNull
@@ -42,7 +111,7 @@ public class HubDescriptionsListContentAdapter extends
     }
 
     public class MyViewHolder extends RecyclerView.ViewHolder {
-        public TextView connectorType, connectorDescriptionString, multiChannel;
+        public TextView connectorType, connectorDescriptionString, multiChannel, ranking;
 
         public MyViewHolder(View view) {
             super(view);
@@ -52,6 +121,8 @@ public class HubDescriptionsListContentAdapter extends
                     view.findViewById(R.id.settings_hub_descriptions_row_connectorDescriptionString);
             this.multiChannel = (TextView)
                     view.findViewById(R.id.settings_hub_descriptions_row_connectorMultiChannel);
+            this.ranking = (TextView)
+                    view.findViewById(R.id.settings_hub_descriptions_row_ranking);
             view.setOnClickListener(clickListener);
         }
     }
@@ -61,45 +132,59 @@ public class HubDescriptionsListContentAdapter extends
     public void onBindViewHolder(@NonNull MyViewHolder holder, int position) {
         Log.d(this.getLogStart(), "onBindViewHolder with position: " + position);
 
-        try {
-            HubConnectorDescription hubDescriptions =
-                    SharkNetApp.getSharkNetApp().getSharkPeer().getHubDescription(position);
-
-            String typeString = "unknown type";
-            String multiChannelString = "shared connection";
-            switch(hubDescriptions.getType()) {
-                case HubConnectorDescription.TCP:
-                    typeString = "TCP";
-                    if(hubDescriptions.canMultiChannel()) {
-                        multiChannelString = "multi channel";
-                    }
-                    break;
-            }
-
-            holder.connectorType.setText(typeString);
-            holder.connectorDescriptionString.setText(hubDescriptions.toString());
-            holder.multiChannel.setText(multiChannelString);
-
-            holder.itemView.setId(position);
-
-        } catch (SharkException e) {
-            Log.e(this.getLogStart(), "problems while showing channel information: "
-                    + e.getLocalizedMessage());
-            e.printStackTrace();
+        String key = this.keys.get(position);
+        // removed - removal event is on its way
+        HubConnectorDescription hubDescriptions = this.registry.get(key);
+        if(hubDescriptions == null) return;
+
+        String typeString = "unknown type";
+        String multiChannelString = "shared connection";
+        switch(hubDescriptions.getType()) {
+            case HubConnectorDescription.TCP:
+                typeString = "TCP";
+                if(hubDescriptions.canMultiChannel()) {
+                    multiChannelString = "multi channel";
+                }
+                break;
+        }
+
+        holder.connectorType.setText(typeString);
+        holder.connectorDescriptionString.setText(hubDescriptions.toString());
+        holder.multiChannel.setText(multiChannelString);
+        holder.ranking.setText(this.getRankingString(hubDescriptions));
+    }
+
+    private String getRankingString(HubConnectorDescription hubDescription) {
+        HubLatencyProber prober = HubLatencyProber.getHubLatencyProber();
+        HubProbeStats stats = prober.getStats(hubDescription);
+        if(stats == null || stats.getProbes() == 0) {
+            return this.ctx.getString(R.string.settingsHubRankingNotProbed);
+        }
+
+        int rank = prober.getRank(hubDescription);
+        if(rank == 0) {
+            return this.ctx.getString(R.string.settingsHubRankingDown)
+                    + (stats.getLastFailure() == null ? "" : " - " + stats.getLastFailure());
         }
+
+        return String.format("#%d - rtt %.0f ms, connect %.0f ms, %.1f kB/s", rank,
+                stats.getRttMillis(), stats.getConnectMillis(), stats.getBytesPerSecond() / 1024);
     }
 
     @Override
     public int getItemCount() {
-        int i = SharkNetApp.getSharkNetApp().getSharkPeer().getHubDescriptions().size();
-        return i;
+        return this.keys.size();
     }
 
     @Override
     public void onClick(View v) {
-        v.getId();
-        IntentWithPosition intent = new IntentWithPosition(this.ctx, v.getId(),
-                HubDescriptionEditActivity.class);
+        if(this.recyclerView == null) return;
+        // adapter position follows inserts and removals - no stale position
+        int position = this.recyclerView.getChildAdapterPosition(v);
+        if(position == RecyclerView.NO_POSITION) return;
+
+        Intent intent = new Intent(this.ctx, HubDescriptionEditActivity.class);
+        intent.putExtra(HubDescriptionEditActivity.HUB_KEY, this.keys.get(position));
 
         this.ctx.startActivity(intent);
     }
@@ -0,0 +1,111 @@
+package net.sharksystem.sharknet.android.settings;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.widget.Toolbar;
+
+import net.sharksystem.R;
+import net.sharksystem.asap.android.apps.ASAPActivity;
+import net.sharksystem.sharknet.android.SharkNetApp;
+import net.sharksystem.sharknet.android.hubs.HubConnectionPool;
+import net.sharksystem.sharknet.android.hubs.HubTrafficMetrics;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Traffic per hub - refreshed while shown. Dump writes current report into app files
+ * (external if available - can be pulled from device).
+ */
+public class HubTrafficActivity extends ASAPActivity {
+    private static final long REFRESH_INTERVAL_IN_MILLIS = 2000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            showReport();
+            handler.postDelayed(this, REFRESH_INTERVAL_IN_MILLIS);
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        setContentView(R.layout.settings_hub_traffic_drawer_layout);
+        SharkNetApp.getSharkNetApp().setupDrawerLayout(this);
+
+        Toolbar myToolbar = (Toolbar) findViewById(R.id.settings_hub_traffic_with_toolbar);
+        setSupportActionBar(myToolbar);
+    }
+
+    private void showReport() {
+        TextView reportView = findViewById(R.id.settings_hub_traffic_report);
+        reportView.setText(HubTrafficMetrics.getHubTrafficMetrics().report()
+                + "\npool: " + HubConnectionPool.getHubConnectionPool().getStats());
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////
+    //                              toolbar methods                                //
+    /////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        MenuInflater inflater = getMenuInflater();
+        inflater.inflate(R.menu.settings_hub_traffic_toolbar, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if(item.getItemId() == R.id.settingHubTrafficDump) {
+            this.dump();
+            return true;
+        } else if(item.getItemId() == R.id.settingHubTrafficReset) {
+            HubTrafficMetrics.getHubTrafficMetrics().reset();
+            this.showReport();
+            return true;
+        } else if(item.getItemId() == R.id.settingHubTrafficCancel) {
+            this.finish();
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void dump() {
+        File dir = this.getExternalFilesDir(null);
+        if(dir == null) dir = this.getFilesDir();
+
+        try {
+            File file = HubTrafficMetrics.getHubTrafficMetrics().dump(dir);
+            Log.d(this.getLogStart(), "hub traffic written to " + file);
+            Toast.makeText(this, file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.w(this.getLogStart(), "cannot write hub traffic: " + e.getLocalizedMessage());
+            Toast.makeText(this, "cannot write hub traffic: " + e.getLocalizedMessage(),
+                    Toast.LENGTH_LONG).show();
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        this.handler.post(this.refresh);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        this.handler.removeCallbacks(this.refresh);
+    }
+}
@@ -8,6 +8,7 @@ import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.CompoundButton;
 import android.widget.ListView;
+import android.widget.TextView;
 import android.widget.ToggleButton;
 
 import net.sharksystem.R;
@@ -20,6 +21,12 @@ import net.sharksystem.hub.HubConnectionManager;
 import net.sharksystem.hub.peerside.HubConnectorDescription;
 import net.sharksystem.sharknet.android.SharkNetActivity;
 import net.sharksystem.sharknet.android.SharkNetApp;
+import net.sharksystem.sharknet.android.hubs.HubConnectResult;
+import net.sharksystem.sharknet.android.hubs.HubConnectionOrchestrator;
+import net.sharksystem.sharknet.android.hubs.HubConnectionPool;
+import net.sharksystem.sharknet.android.hubs.HubLatencyProber;
+import net.sharksystem.sharknet.android.hubs.HubReconnectScheduler;
+import net.sharksystem.sharknet.android.hubs.HubReconnectState;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -149,12 +156,14 @@ public class SettingsActivity extends ASAPActivity implements HubManagerStatusCh
                         if (!dontDoAnything) {
                             if (isChecked) {
                                 Log.d(getLogStart(), String.format("connect ASAPHubs.. Available " +
-                                        "descriptions: %d",SharkNetApp.getSharkNetApp().getSharkPeer().getHubDescriptions().size()));
-                                for (HubConnectorDescription hcd: SharkNetApp.getSharkNetApp().getSharkPeer().getHubDescriptions() ) {
-                                    connectASAPHubs(hcd);
-                                }
+                                        "descriptions: %d",SharkNetApp.getSharkNetApp().getHubDescriptionRegistry().size()));
+                                // all hubs at once - a dead hub must not delay the others
+                                connectAllHubs();
                             } else {
-                                for (HubConnectorDescription hcd: SharkNetApp.getSharkNetApp().getSharkPeer().getHubDescriptions() ) {
+                                HubConnectionOrchestrator.getHubConnectionOrchestrator().cancel();
+                                HubReconnectScheduler.getHubReconnectScheduler().unwatchAll();
+                                HubConnectionPool.getHubConnectionPool().clear();
+                                for (HubConnectorDescription hcd: SharkNetApp.getSharkNetApp().getHubDescriptionRegistry().getHubDescriptions() ) {
                                     disconnectASAPHubs(hcd);
                                 }
                             }
@@ -162,6 +171,19 @@ public class SettingsActivity extends ASAPActivity implements HubManagerStatusCh
                     }
                 });
 
+        ///////////////// compress messages to anybody on / off
+        toggle = (ToggleButton) findViewById(R.id.settingsCompressMessagesButton);
+        toggle.setChecked(SharkNetApp.isCompressAllMessages(this));
+        toggle.setOnCheckedChangeListener(
+                new CompoundButton.OnCheckedChangeListener() {
+                    @Override
+                    public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                        Log.d(getLogStart(), "ui said: compress all messages " + isChecked);
+                        SharkNetApp.getSharkNetApp()
+                                .setCompressAllMessages(SettingsActivity.this, isChecked);
+                    }
+                });
+
         ///////////////// ASAP Hub refresh connected hubs list and failed connection attempts list
         Button refreshButton = findViewById(R.id.settingsRefreshHubListButton);
         refreshButton.setOnClickListener(view -> {
@@ -171,6 +193,88 @@ public class SettingsActivity extends ASAPActivity implements HubManagerStatusCh
 
     private boolean dontDoAnything = false;
 
+    private void connectAllHubs() {
+        TextView latencyView = findViewById(R.id.settingsHubConnectLatencyValues);
+        latencyView.setText(R.string.settingsHubConnectLatencyNone);
+
+        List<HubConnectorDescription> hubDescriptions =
+                SharkNetApp.getSharkNetApp().getHubDescriptionRegistry().getHubDescriptions();
+        // best hubs first, hubs found down by prober are left out
+        List<HubConnectorDescription> preferred =
+                HubLatencyProber.getHubLatencyProber().preferred(hubDescriptions);
+
+        // keep them connected from now on - hubs left out are retried with backoff
+        final HubReconnectScheduler reconnectScheduler =
+                HubReconnectScheduler.getHubReconnectScheduler();
+        reconnectScheduler.watch(hubDescriptions);
+        for(HubConnectorDescription hubDescription : hubDescriptions) {
+            if(!preferred.contains(hubDescription)) {
+                reconnectScheduler.hubFailed(hubDescription, "found down by prober");
+            }
+        }
+
+        HubConnectionOrchestrator.getHubConnectionOrchestrator().connectAll(preferred,
+                new HubConnectionOrchestrator.HubConnector() {
+                    @Override
+                    public boolean connect(HubConnectorDescription hubDescription) {
+                        // called on connect threads - this activity could be gone by then
+                        return SharkNetApp.connectHub(hubDescription);
+                    }
+                },
+                new HubConnectionOrchestrator.Listener() {
+                    @Override
+                    public void hubConnectResult(HubConnectResult result) {
+                        reconnectScheduler.connectResult(result);
+                        showHubConnectResults();
+                    }
+
+                    @Override
+                    public void allHubsDone(List<HubConnectResult> results,
+                                            long timeToFirstHubInMillis) {
+                        showHubConnectResults();
+                    }
+                });
+    }
+
+    private void showHubConnectResults() {
+        this.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if(isFinishing()) return;
+
+                HubConnectionOrchestrator orchestrator =
+                        HubConnectionOrchestrator.getHubConnectionOrchestrator();
+                List<HubConnectResult> results = orchestrator.getResults();
+                if(results.isEmpty()) return;
+
+                StringBuilder sb = new StringBuilder();
+                sb.append("first hub reachable after ms: ")
+                        .append(orchestrator.getTimeToFirstHubInMillis());
+                for(HubConnectResult result : results) sb.append("\n").append(result);
+
+                TextView latencyView = findViewById(R.id.settingsHubConnectLatencyValues);
+                latencyView.setText(sb.toString());
+                showHubPoolStats();
+            }
+        });
+    }
+
+    private void showHubPoolStats() {
+        TextView poolView = findViewById(R.id.settingsHubPoolValues);
+        poolView.setText(HubConnectionPool.getHubConnectionPool().getStats().toString());
+    }
+
+    private void showMessageStats() {
+        TextView compressionView = findViewById(R.id.settingsCompressionRatioValues);
+        compressionView.setText(SharkNetApp.getSharkNetApp().getPayloadCompression().report());
+
+        TextView batchesView = findViewById(R.id.settingsMessageBatchesValues);
+        batchesView.setText(SharkNetApp.getSharkNetApp().getOutgoingMessageBatcher().report());
+
+        TextView signingView = findViewById(R.id.settingsSigningValues);
+        signingView.setText(SharkNetApp.getSharkNetApp().getSigningService().toString());
+    }
+
     private void refreshToggleButtons() {
         this.dontDoAnything = true;
 
@@ -206,6 +310,16 @@ public class SettingsActivity extends ASAPActivity implements HubManagerStatusCh
         this.startActivity(intent);
     }
 
+    public void onHubTraffic(View view) {
+        Intent intent = new Intent(this, HubTrafficActivity.class);
+        this.startActivity(intent);
+    }
+
+    public void onEncounterLog(View view) {
+        Intent intent = new Intent(this, EncounterLogActivity.class);
+        this.startActivity(intent);
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////////////
     //                             keep in sync with protocol changes                         //
     ////////////////////////////////////////////////////////////////////////////////////////////
@@ -214,6 +328,8 @@ public class SettingsActivity extends ASAPActivity implements HubManagerStatusCh
     protected void onResume() {
         super.onResume();
         this.refreshProtocolStatus();
+        this.showHubPoolStats();
+        this.showMessageStats();
     }
 
     @Override
@@ -259,9 +375,17 @@ public class SettingsActivity extends ASAPActivity implements HubManagerStatusCh
         for (HubConnectorDescription hcd : hubConnectionManager.getConnectedHubs()) {
             connectedHubs.add(hcd.toString());
         }
+        // failed hubs are retried - show when
+        HubReconnectScheduler reconnectScheduler = HubReconnectScheduler.getHubReconnectScheduler();
+        reconnectScheduler.hubListReceived(hubConnectionManager.getConnectedHubs(),
+                hubConnectionManager.getFailedConnectionAttempts());
+
         List<String> failedAttempts = new ArrayList<>();
         for (HubConnectionManager.FailedConnectionAttempt attempt : hubConnectionManager.getFailedConnectionAttempts()) {
-            failedAttempts.add(attempt.getHubConnectorDescription().toString());
+            HubReconnectState state =
+                    reconnectScheduler.getState(attempt.getHubConnectorDescription());
+            failedAttempts.add(attempt.getHubConnectorDescription().toString()
+                    + (state == null ? "" : "\n" + state));
         }
         listViewConnectedHubs.setAdapter(new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, connectedHubs.toArray(new String[0])));
         listViewFailedAttempts.setAdapter(new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, failedAttempts.toArray(new String[0])));
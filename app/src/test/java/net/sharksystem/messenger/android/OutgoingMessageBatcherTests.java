@@ -0,0 +1,113 @@
+package net.sharksystem.messenger.android;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class OutgoingMessageBatcherTests {
+    private static final String URI = "sn2://test";
+
+    @Test
+    public void recipientsWithinWindowShareOneMessage() throws Exception {
+        RecordingSender sender = new RecordingSender(1);
+        OutgoingMessageBatcher batcher = new OutgoingMessageBatcher(sender, 100, 64 * 1024);
+
+        for(int i = 0; i < 10; i++) {
+            batcher.add(URI, "Peer" + i, bytes("for Peer" + i), true);
+        }
+        // same recipient again - same batch, entry behind first one
+        batcher.add(URI, "Peer0", bytes("again for Peer0"), true);
+        Assertions.assertTrue(sender.sent.await(2, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(1, sender.contents.size());
+        byte[] batch = sender.contents.get(0);
+        Assertions.assertTrue(OutgoingMessageBatcher.isBatch(batch));
+        Assertions.assertEquals(10, sender.recipients.get(0).size());
+
+        List<byte[]> peer7 = OutgoingMessageBatcher.unpack(batch, "Peer7");
+        Assertions.assertEquals(1, peer7.size());
+        Assertions.assertArrayEquals(bytes("for Peer7"), peer7.get(0));
+        Assertions.assertTrue(OutgoingMessageBatcher.unpack(batch, "Stranger").isEmpty());
+
+        List<byte[]> peer0 = OutgoingMessageBatcher.unpack(batch, "Peer0");
+        Assertions.assertEquals(2, peer0.size());
+        Assertions.assertArrayEquals(bytes("for Peer0"), peer0.get(0));
+        Assertions.assertArrayEquals(bytes("again for Peer0"), peer0.get(1));
+
+        // sender reads own batch
+        List<byte[]> first = OutgoingMessageBatcher.unpackFirst(batch);
+        Assertions.assertEquals(2, first.size());
+        Assertions.assertArrayEquals(bytes("for Peer0"), first.get(0));
+
+        long[] histogram = batcher.getHistogram();
+        Assertions.assertEquals(1, histogram[OutgoingMessageBatcher.bucket(11)]);
+    }
+
+    @Test
+    public void singleEntryIsSentWithoutEnvelope() throws Exception {
+        RecordingSender sender = new RecordingSender(1);
+        OutgoingMessageBatcher batcher = new OutgoingMessageBatcher(sender, 50, 64 * 1024);
+
+        batcher.add(URI, "Alice", bytes("for Alice"), true);
+        Assertions.assertTrue(sender.sent.await(2, TimeUnit.SECONDS));
+
+        Assertions.assertArrayEquals(bytes("for Alice"), sender.contents.get(0));
+        Assertions.assertEquals(1, batcher.getHistogram()[OutgoingMessageBatcher.bucket(1)]);
+    }
+
+    @Test
+    public void fullBatchDoesNotWaitForWindow() throws Exception {
+        RecordingSender sender = new RecordingSender(1);
+        OutgoingMessageBatcher batcher = new OutgoingMessageBatcher(sender, 60000, 100);
+
+        batcher.add(URI, "Alice", new byte[60], false);
+        batcher.add(URI, "Bob", new byte[60], false);
+        Assertions.assertTrue(sender.sent.await(2, TimeUnit.SECONDS));
+        Assertions.assertEquals(2, sender.recipients.get(0).size());
+    }
+
+    @Test
+    public void histogramBuckets() {
+        Assertions.assertEquals(0, OutgoingMessageBatcher.bucket(1));
+        Assertions.assertEquals(1, OutgoingMessageBatcher.bucket(2));
+        Assertions.assertEquals(2, OutgoingMessageBatcher.bucket(3));
+        Assertions.assertEquals(2, OutgoingMessageBatcher.bucket(4));
+        Assertions.assertEquals(3, OutgoingMessageBatcher.bucket(5));
+        Assertions.assertEquals(7, OutgoingMessageBatcher.bucket(128));
+        Assertions.assertEquals(OutgoingMessageBatcher.HISTOGRAM_BUCKETS - 1,
+                OutgoingMessageBatcher.bucket(129));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class RecordingSender implements OutgoingMessageBatcher.Sender {
+        final CountDownLatch sent;
+        final List<byte[]> contents = new ArrayList<>();
+        final List<Set<CharSequence>> recipients = new ArrayList<>();
+
+        RecordingSender(int expected) {
+            this.sent = new CountDownLatch(expected);
+        }
+
+        @Override
+        public synchronized void send(byte[] content, CharSequence uri,
+                                      Set<CharSequence> recipients, boolean sign) {
+            this.contents.add(content);
+            this.recipients.add(recipients);
+            this.sent.countDown();
+        }
+
+        @Override
+        public void failed(Set<CharSequence> recipients, Exception e) {
+            Assertions.fail(e);
+        }
+    }
+}
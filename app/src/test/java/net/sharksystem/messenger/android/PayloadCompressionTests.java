@@ -0,0 +1,112 @@
+package net.sharksystem.messenger.android;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+
+public class PayloadCompressionTests {
+    private static final String URI = "sn2://test";
+    private static final byte[] TEXT = ("Hallo, wir treffen uns morgen um zehn am Hub - "
+            + "I am not sure that the bluetooth peer will be there. Thank you! "
+            + "Hallo, wir treffen uns morgen um zehn am Hub.").getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void textIsCompressedAndRestored() throws Exception {
+        PayloadCompression compression = new PayloadCompression(tempDir(), true);
+
+        byte[] compressed = compression.compress(TEXT, URI, null);
+        Assertions.assertTrue(PayloadCompression.isCompressed(compressed));
+        Assertions.assertTrue(compressed.length < TEXT.length);
+        Assertions.assertArrayEquals(TEXT, compression.decompress(compressed, "Alice"));
+
+        PayloadCompression.ChannelStats stats = compression.getStats(URI);
+        Assertions.assertEquals(1, stats.getCompressed());
+        Assertions.assertTrue(stats.getRatio() < 1);
+    }
+
+    @Test
+    public void highEntropyContentIsBypassed() {
+        PayloadCompression compression = new PayloadCompression(tempDir(), true);
+
+        byte[] random = new byte[2048];
+        new Random(42).nextBytes(random);
+        Assertions.assertTrue(
+                PayloadCompression.bitsPerByte(random) > PayloadCompression.MAX_BITS_PER_BYTE);
+        Assertions.assertSame(random, compression.compress(random, URI, null));
+
+        byte[] small = "ok".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertSame(small, compression.compress(small, URI, null));
+
+        PayloadCompression.ChannelStats stats = compression.getStats(URI);
+        Assertions.assertEquals(1, stats.getBypassed());
+        Assertions.assertEquals(1, stats.getPassed());
+        Assertions.assertEquals(0, stats.getSavedBytes());
+    }
+
+    @Test
+    public void onlyPeersKnownToReadItGetCompressedContent() throws Exception {
+        File dir = tempDir();
+        PayloadCompression compression = new PayloadCompression(dir, false);
+        Set<CharSequence> bob = Collections.<CharSequence>singleton("Bob");
+
+        // nobody known yet
+        Assertions.assertSame(TEXT, compression.compress(TEXT, URI, null));
+        Assertions.assertSame(TEXT, compression.compress(TEXT, URI, bob));
+
+        // Bob sent compressed content - he reads it as well
+        byte[] fromBob = PayloadCompression.deflate(TEXT, PayloadCompression.DICTIONARY_TEXT);
+        compression.decompress(fromBob, "Bob");
+        Assertions.assertTrue(
+                PayloadCompression.isCompressed(compression.compress(TEXT, URI, bob)));
+        // still not to anybody
+        Assertions.assertSame(TEXT, compression.compress(TEXT, URI, null));
+
+        // remembered after restart
+        compression.flush();
+        PayloadCompression restarted = new PayloadCompression(dir, false);
+        Assertions.assertTrue(PayloadCompression.isCompressed(restarted.compress(TEXT, URI, bob)));
+    }
+
+    @Test
+    public void declaredLengthIsNotTrusted() throws Exception {
+        PayloadCompression compression = new PayloadCompression(tempDir(), true);
+        byte[] compressed = PayloadCompression.deflate(TEXT, PayloadCompression.DICTIONARY_TEXT);
+
+        // decompressed content is cached - no second inflate
+        byte[] decompressed = compression.decompress(compressed, null);
+        Assertions.assertArrayEquals(TEXT, decompressed);
+        Assertions.assertSame(decompressed, compression.decompress(compressed.clone(), null));
+
+        // header claims 16 MB - nothing of that size is allocated, content does not match
+        byte[] lying = compressed.clone();
+        setDeclaredLength(lying, 16 * 1024 * 1024);
+        Assertions.assertThrows(IOException.class, () -> PayloadCompression.inflate(lying));
+
+        byte[] tooShort = compressed.clone();
+        setDeclaredLength(tooShort, TEXT.length - 1);
+        Assertions.assertThrows(IOException.class, () -> PayloadCompression.inflate(tooShort));
+    }
+
+    /** length is last header field - big endian int after magic, version and dictionary */
+    private static void setDeclaredLength(byte[] compressed, int length) {
+        compressed[6] = (byte) (length >>> 24);
+        compressed[7] = (byte) (length >>> 16);
+        compressed[8] = (byte) (length >>> 8);
+        compressed[9] = (byte) length;
+    }
+
+    private static File tempDir() {
+        try {
+            return Files.createTempDirectory("compression").toFile();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
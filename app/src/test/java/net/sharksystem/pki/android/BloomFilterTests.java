@@ -0,0 +1,33 @@
+package net.sharksystem.pki.android;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BloomFilterTests {
+    @Test
+    public void noFalseNegativesAndFewFalsePositives() {
+        int capacity = 1000;
+        BloomFilter filter = new BloomFilter(capacity, 0.01);
+
+        for(int i = 0; i < capacity; i++) filter.add("issuer/subject" + i + "/" + i * 1000L);
+        for(int i = 0; i < capacity; i++) {
+            Assertions.assertTrue(filter.mightContain("issuer/subject" + i + "/" + i * 1000L));
+        }
+
+        int falsePositives = 0;
+        int probes = 10000;
+        for(int i = 0; i < probes; i++) {
+            if(filter.mightContain("other/subject" + i + "/" + i)) falsePositives++;
+        }
+
+        // designed for 1% - allow some variance
+        Assertions.assertTrue(falsePositives < probes * 0.03, "false positives: " + falsePositives);
+    }
+
+    @Test
+    public void emptyFilterContainsNothing() {
+        BloomFilter filter = new BloomFilter(10, 0.01);
+        Assertions.assertFalse(filter.mightContain(""));
+        Assertions.assertFalse(filter.mightContain("owner/alice/0"));
+    }
+}
@@ -0,0 +1,174 @@
+package net.sharksystem.pki.android;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.crypto.InMemoASAPKeyStore;
+import net.sharksystem.asap.pki.ASAPCertificate;
+import net.sharksystem.asap.pki.ASAPCertificateImpl;
+import net.sharksystem.pki.SharkPKIComponent;
+import net.sharksystem.sharknet.android.SigningService;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records are signed as the app does it - SigningService with PKI's key - and verified by
+ * issuer and by a peer that knows issuer from a certificate.
+ */
+public class RevocationRecordTests {
+    private static final String ALICE = "Alice";
+    private static final String BOB = "Bob";
+    private static final String CLARA = "Clara";
+
+    @Test
+    public void revocationSignedWithPKIKeyVerifies() throws Exception {
+        InMemoASAPKeyStore aliceKeys = new InMemoASAPKeyStore(ALICE);
+        InMemoASAPKeyStore bobKeys = new InMemoASAPKeyStore(BOB);
+        InMemoASAPKeyStore claraKeys = new InMemoASAPKeyStore(CLARA);
+
+        SharkPKIComponent alicePKI = pki(aliceKeys);
+        ASAPCertificate bobByAlice = certificate(aliceKeys, bobKeys);
+
+        RevocationRecord record = revoke(bobByAlice, alicePKI);
+        Assertions.assertTrue(record.verify(alicePKI));
+
+        // Clara has certified Alice - record travels serialized
+        SharkPKIComponent claraPKI = pki(claraKeys, certificate(claraKeys, aliceKeys));
+        RevocationRecord received = RevocationRecord.fromBytes(record.asBytes());
+        Assertions.assertTrue(received.verify(claraPKI));
+        Assertions.assertEquals(RevocationRecord.certificateKey(bobByAlice),
+                received.getCertificateKey());
+
+        // Bob does not know Alice's key
+        Assertions.assertFalse(received.verify(pki(bobKeys)));
+    }
+
+    @Test
+    public void revocationSignedWithOtherKeyFails() throws Exception {
+        InMemoASAPKeyStore aliceKeys = new InMemoASAPKeyStore(ALICE);
+        InMemoASAPKeyStore claraKeys = new InMemoASAPKeyStore(CLARA);
+        InMemoASAPKeyStore bobKeys = new InMemoASAPKeyStore(BOB);
+
+        // someone claims to be Alice - with other keys
+        InMemoASAPKeyStore fakeAliceKeys = new InMemoASAPKeyStore(ALICE);
+        RevocationRecord record = revoke(certificate(aliceKeys, bobKeys), pki(fakeAliceKeys));
+
+        SharkPKIComponent claraPKI = pki(claraKeys, certificate(claraKeys, aliceKeys));
+        Assertions.assertFalse(RevocationRecord.fromBytes(record.asBytes()).verify(claraPKI));
+    }
+
+    @Test
+    public void revocationSignedInBackgroundVerifies() throws Exception {
+        InMemoASAPKeyStore aliceKeys = new InMemoASAPKeyStore(ALICE);
+        SharkPKIComponent alicePKI = pki(aliceKeys);
+        SigningService signingService = new SigningService(alicePKI);
+
+        final BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+        RevocationRecord.Callback callback = new RevocationRecord.Callback() {
+            @Override
+            public void produced(RevocationRecord record) {
+                results.add(record);
+            }
+
+            @Override
+            public void failed(ASAPException e) {
+                results.add(e);
+            }
+        };
+        for(int i = 0; i < 3; i++) {
+            RevocationRecord.produceRevocation(
+                    certificate(aliceKeys, new InMemoASAPKeyStore(BOB + i)),
+                    alicePKI, signingService, callback);
+        }
+
+        for(int i = 0; i < 3; i++) {
+            Object result = results.poll(10, TimeUnit.SECONDS);
+            Assertions.assertTrue(result instanceof RevocationRecord);
+            Assertions.assertTrue(((RevocationRecord) result).verify(alicePKI));
+        }
+        Assertions.assertEquals(3, signingService.getSignedTotal());
+    }
+
+    @Test
+    public void onlyIssuerCanRevoke() throws Exception {
+        InMemoASAPKeyStore aliceKeys = new InMemoASAPKeyStore(ALICE);
+        InMemoASAPKeyStore bobKeys = new InMemoASAPKeyStore(BOB);
+
+        Assertions.assertThrows(ASAPSecurityException.class,
+                () -> revoke(certificate(aliceKeys, bobKeys), pki(bobKeys)));
+    }
+
+    private static RevocationRecord revoke(ASAPCertificate certificate,
+                                           SharkPKIComponent sharkPKI)
+            throws ASAPSecurityException {
+
+        final SigningService signingService = new SigningService(sharkPKI);
+        return RevocationRecord.produceRevocation(certificate, sharkPKI,
+                new RevocationRecord.Signer() {
+                    @Override
+                    public byte[] sign(byte[] data) throws ASAPSecurityException {
+                        return signingService.sign(data);
+                    }
+                });
+    }
+
+    private static ASAPCertificate certificate(InMemoASAPKeyStore issuer,
+                                               InMemoASAPKeyStore subject)
+            throws ASAPSecurityException, GeneralSecurityException {
+
+        return ASAPCertificateImpl.produceCertificate(
+                issuer.getOwner(), issuer.getOwner(), issuer.getPrivateKey(),
+                subject.getOwner(), subject.getOwner(), subject.getPublicKey(),
+                System.currentTimeMillis(), ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD);
+    }
+
+    /**
+     * PKI of key store owner - knows given certificates. Only what revocation needs.
+     */
+    private static SharkPKIComponent pki(final InMemoASAPKeyStore keyStore,
+                                         ASAPCertificate... certificates) {
+        final List<ASAPCertificate> certificateList = new ArrayList<>();
+        for(ASAPCertificate certificate : certificates) certificateList.add(certificate);
+
+        return (SharkPKIComponent) Proxy.newProxyInstance(
+                SharkPKIComponent.class.getClassLoader(),
+                new Class<?>[] { SharkPKIComponent.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                            throws Throwable {
+                        switch(method.getName()) {
+                            case "getOwnerID": return keyStore.getOwner();
+                            case "getPrivateKey": return keyStore.getPrivateKey();
+                            case "getPublicKey": return keyStore.getPublicKey();
+                            case "getASAPKeyStore": return keyStore;
+                            case "getCertificatesBySubject":
+                                return bySubject(certificateList, (CharSequence) args[0]);
+                            default: throw new UnsupportedOperationException(method.getName());
+                        }
+                    }
+                });
+    }
+
+    private static Collection<ASAPCertificate> bySubject(
+            List<ASAPCertificate> certificates, CharSequence subjectID) {
+        List<ASAPCertificate> result = new ArrayList<>();
+        for(ASAPCertificate certificate : certificates) {
+            if(certificate.getSubjectID().toString().equals(subjectID.toString())) {
+                result.add(certificate);
+            }
+        }
+        return result;
+    }
+}
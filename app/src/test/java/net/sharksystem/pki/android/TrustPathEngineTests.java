@@ -0,0 +1,132 @@
+package net.sharksystem.pki.android;
+
+import net.sharksystem.asap.pki.ASAPCertificate;
+import net.sharksystem.asap.pki.ASAPStorageAddress;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class TrustPathEngineTests {
+    private static final String OWNER = "owner";
+
+    @Test
+    public void bestPathFollowsFailureRates() {
+        TrustPathEngine engine = new TrustPathEngine(OWNER);
+        engine.setSigningFailureRate("A", 5);
+        engine.setSigningFailureRate("C", 2);
+
+        engine.addCertificate(new TestCertificate(OWNER, "A"));
+        ASAPCertificate aSignsB = new TestCertificate("A", "B");
+        engine.addCertificate(aSignsB);
+        engine.addCertificate(new TestCertificate(OWNER, "C"));
+        engine.addCertificate(new TestCertificate("C", "B"));
+
+        Assertions.assertEquals(0.8f, engine.getAssurance("B"), 0.0001f);
+        List<ASAPCertificate> path = engine.getCertificationPath("B");
+        Assertions.assertEquals(2, path.size());
+        Assertions.assertEquals("C", path.get(0).getIssuerID());
+        Assertions.assertEquals(OWNER, path.get(1).getIssuerID());
+
+        // C got worse - A is better now
+        engine.setSigningFailureRate("C", 8);
+        Assertions.assertEquals(0.5f, engine.getAssurance("B"), 0.0001f);
+        Assertions.assertEquals("A", engine.getCertificationPath("B").get(0).getIssuerID());
+
+        // A's certificate for B is gone - C is the only way
+        engine.removeCertificate(aSignsB);
+        Assertions.assertEquals(0.2f, engine.getAssurance("B"), 0.0001f);
+
+        // met B in person
+        engine.addCertificate(new TestCertificate(OWNER, "B"));
+        Assertions.assertEquals(1f, engine.getAssurance("B"), 0.0001f);
+        Assertions.assertEquals(1, engine.getCertificationPath("B").size());
+
+        Assertions.assertTrue(engine.getCertificationPath("unknown").isEmpty());
+        Assertions.assertEquals(0f, engine.getAssurance("unknown"));
+    }
+
+    @Test
+    public void incrementalUpdatesMatchFullComputation() {
+        Random random = new Random(4711);
+        int persons = 30;
+
+        for(int round = 0; round < 20; round++) {
+            TrustPathEngine incremental = new TrustPathEngine(OWNER);
+            Map<String, Integer> failureRates = new HashMap<>();
+            List<ASAPCertificate> certificates = new ArrayList<>();
+
+            for(int step = 0; step < 200; step++) {
+                int action = random.nextInt(10);
+                if(action < 5) {
+                    String issuer = random.nextInt(5) == 0 ? OWNER : "P" + random.nextInt(persons);
+                    String subject = "P" + random.nextInt(persons);
+                    if(issuer.equals(subject)) continue;
+                    ASAPCertificate certificate = new TestCertificate(issuer, subject, step);
+                    certificates.add(certificate);
+                    incremental.addCertificate(certificate);
+                } else if(action < 7 && !certificates.isEmpty()) {
+                    ASAPCertificate certificate =
+                            certificates.remove(random.nextInt(certificates.size()));
+                    incremental.removeCertificate(certificate);
+                } else {
+                    String person = "P" + random.nextInt(persons);
+                    int failureRate = random.nextInt(11);
+                    failureRates.put(person, failureRate);
+                    incremental.setSigningFailureRate(person, failureRate);
+                }
+            }
+
+            // same state - computed in one go
+            TrustPathEngine full = new TrustPathEngine(OWNER);
+            for(Map.Entry<String, Integer> entry : failureRates.entrySet()) {
+                full.setSigningFailureRate(entry.getKey(), entry.getValue());
+            }
+            for(ASAPCertificate certificate : certificates) full.addCertificate(certificate);
+
+            for(int i = 0; i < persons; i++) {
+                String person = "P" + i;
+                Assertions.assertEquals(full.getAssurance(person),
+                        incremental.getAssurance(person), 0.0001f, person);
+                Assertions.assertEquals(full.getCertificationPath(person).size(),
+                        incremental.getCertificationPath(person).size(), person);
+            }
+        }
+    }
+
+    private static class TestCertificate implements ASAPCertificate {
+        private final String issuer, subject;
+        private final Calendar validSince = Calendar.getInstance();
+        private final Calendar validUntil = Calendar.getInstance();
+
+        TestCertificate(String issuer, String subject) {
+            this(issuer, subject, 0);
+        }
+
+        TestCertificate(String issuer, String subject, long serial) {
+            this.issuer = issuer;
+            this.subject = subject;
+            this.validSince.setTimeInMillis(serial);
+            this.validUntil.add(Calendar.YEAR, 1);
+        }
+
+        @Override public CharSequence getSubjectID() { return this.subject; }
+        @Override public CharSequence getSubjectName() { return this.subject; }
+        @Override public CharSequence getIssuerID() { return this.issuer; }
+        @Override public CharSequence getIssuerName() { return this.issuer; }
+        @Override public Calendar getValidSince() { return this.validSince; }
+        @Override public Calendar getValidUntil() { return this.validUntil; }
+        @Override public byte[] asBytes() { return new byte[0]; }
+        @Override public boolean verify(PublicKey publicKey) { return true; }
+        @Override public ASAPStorageAddress getASAPStorageAddress() { return null; }
+        @Override public PublicKey getPublicKey() { return null; }
+        @Override public boolean isIdentical(ASAPCertificate other) { return this == other; }
+    }
+}
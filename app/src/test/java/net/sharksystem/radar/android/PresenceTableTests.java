@@ -0,0 +1,87 @@
+package net.sharksystem.radar.android;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class PresenceTableTests {
+    @Test
+    public void encountersAreCountedOnceFromBothSources() {
+        PresenceTable table = new PresenceTable();
+        final List<CharSequence> changes = new ArrayList<>();
+        table.addListener(new PresenceTable.Listener() {
+            @Override
+            public void presenceChanged(CharSequence peerID) {
+                changes.add(peerID);
+            }
+        });
+
+        table.encounterStarted("Alice");
+        // same encounter reported by online peer list
+        table.onlinePeersChanged(peers("Alice", "Bob"));
+        Assertions.assertEquals(Arrays.<CharSequence>asList("Alice", "Bob"), changes);
+        Assertions.assertEquals(1, table.getPresence("Alice").getEncounters());
+        Assertions.assertEquals(2, table.getOnlineNumber());
+
+        // Bob left, Alice stays - only Bob changes
+        changes.clear();
+        table.onlinePeersChanged(peers("Alice"));
+        Assertions.assertEquals(Arrays.<CharSequence>asList("Bob"), changes);
+        Assertions.assertFalse(table.getPresence("Bob").isOnline());
+
+        table.encounterTerminated("Alice");
+        table.encounterTerminated("Alice");
+        table.encounterStarted("Alice");
+        PresenceTable.Presence alice = table.getPresence("Alice");
+        Assertions.assertEquals(2, alice.getEncounters());
+        Assertions.assertTrue(alice.getLastSeen() >= alice.getFirstSeen());
+
+        // online first
+        List<PresenceTable.Presence> snapshot = table.snapshot();
+        Assertions.assertEquals("Alice", snapshot.get(0).getPeerID());
+        Assertions.assertEquals("Bob", snapshot.get(1).getPeerID());
+        Assertions.assertNull(table.getPresence("Clara"));
+    }
+
+    @Test
+    public void lateOnlineListDoesNotReviveEndedEncounter() {
+        PresenceTable table = new PresenceTable();
+        table.encounterStarted("Alice");
+        table.encounterTerminated("Alice");
+
+        // list was taken while Alice was still there
+        table.onlinePeersChanged(peers("Alice"));
+        PresenceTable.Presence alice = table.getPresence("Alice");
+        Assertions.assertFalse(alice.isOnline());
+        Assertions.assertEquals(1, alice.getEncounters());
+
+        // and one taken before she came does not end her next encounter
+        table.encounterStarted("Alice");
+        table.onlinePeersChanged(peers());
+        alice = table.getPresence("Alice");
+        Assertions.assertTrue(alice.isOnline());
+        Assertions.assertEquals(2, alice.getEncounters());
+    }
+
+    @Test
+    public void peerFromListIsNotCountedAgainByEncounterChange() {
+        PresenceTable table = new PresenceTable();
+        // met before table listened to encounter changes
+        table.onlinePeersChanged(peers("Bob"));
+        table.encounterStarted("Bob");
+        Assertions.assertEquals(1, table.getPresence("Bob").getEncounters());
+
+        table.encounterTerminated("Bob");
+        table.onlinePeersChanged(peers("Bob"));
+        Assertions.assertFalse(table.getPresence("Bob").isOnline());
+    }
+
+    private static Set<CharSequence> peers(String... peerIDs) {
+        return new HashSet<CharSequence>(Arrays.asList(peerIDs));
+    }
+}
@@ -0,0 +1,94 @@
+package net.sharksystem.sharknet.android;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.util.Random;
+
+/**
+ * Key profiles with the plain JVM crypto provider - Android key store is not available here.
+ * Sign and verify times are measured in benchmarks module (KeyProfileBenchmarks).
+ */
+public class KeyProfileTests {
+    private static final int PAYLOAD_SIZE = 1024;
+
+    @Test
+    public void signaturesOfBothProfilesVerify() throws GeneralSecurityException {
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        new Random(42).nextBytes(payload);
+
+        KeyPair rsa = this.createKeyPair(KeyProfile.RSA_2048);
+        KeyPair ec = this.createKeyPair(KeyProfile.EC_P256);
+        byte[] rsaSignature = this.sign(rsa, payload);
+        byte[] ecSignature = this.sign(ec, payload);
+
+        Assertions.assertTrue(this.verify(rsa, payload, rsaSignature));
+        Assertions.assertTrue(this.verify(ec, payload, ecSignature));
+        // other key - no match
+        Assertions.assertFalse(this.verify(this.createKeyPair(KeyProfile.EC_P256),
+                payload, ecSignature));
+
+        Assertions.assertTrue(ecSignature.length < rsaSignature.length);
+        Assertions.assertTrue(ec.getPublic().getEncoded().length
+                < rsa.getPublic().getEncoded().length);
+    }
+
+    @Test
+    public void signingAlgorithmFromKey() throws GeneralSecurityException {
+        Assertions.assertEquals("SHA256withRSA/PSS",
+                KeyProfile.signingAlgorithmFor(this.createKeyPair(KeyProfile.RSA_2048).getPublic()));
+        Assertions.assertEquals("SHA256withECDSA",
+                KeyProfile.signingAlgorithmFor(this.createKeyPair(KeyProfile.EC_P256).getPublic()));
+        Assertions.assertEquals(KeyProfile.DEFAULT_PROFILE, KeyProfile.byName("unknown"));
+        Assertions.assertEquals(KeyProfile.EC_P256, KeyProfile.byName("EC_P256"));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> KeyProfile.byKeyAlgorithm("DSA"));
+    }
+
+    private KeyPair createKeyPair(KeyProfile profile) throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(profile.getKeyAlgorithm());
+        if(profile == KeyProfile.EC_P256) {
+            generator.initialize(new ECGenParameterSpec(KeyProfile.EC_CURVE_NAME));
+        } else {
+            generator.initialize(profile.getKeySize());
+        }
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * Signature as the owner of that key would produce it - algorithm derived from key.
+     */
+    private Signature getSignature(KeyPair keyPair) throws GeneralSecurityException {
+        String algorithm = KeyProfile.signingAlgorithmFor(keyPair.getPublic());
+        if(algorithm.equals(KeyProfile.RSA_2048.getSigningAlgorithm())) {
+            // JVM name of what Android calls SHA256withRSA/PSS
+            Signature signature = Signature.getInstance("RSASSA-PSS");
+            signature.setParameter(new PSSParameterSpec(
+                    "SHA-256", "MGF1", MGF1ParameterSpec.SHA256, 32, 1));
+            return signature;
+        }
+        return Signature.getInstance(algorithm);
+    }
+
+    private byte[] sign(KeyPair keyPair, byte[] payload) throws GeneralSecurityException {
+        Signature signature = this.getSignature(keyPair);
+        signature.initSign(keyPair.getPrivate());
+        signature.update(payload);
+        return signature.sign();
+    }
+
+    private boolean verify(KeyPair keyPair, byte[] payload, byte[] signed)
+            throws GeneralSecurityException {
+        Signature signature = this.getSignature(keyPair);
+        signature.initVerify(keyPair.getPublic());
+        signature.update(payload);
+        return signature.verify(signed);
+    }
+}
@@ -0,0 +1,91 @@
+package net.sharksystem.sharknet.android.encounters;
+
+import net.sharksystem.asap.ASAPEncounterConnectionType;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.List;
+
+public class EncounterLogTests {
+    private static final ASAPEncounterConnectionType HUB = ASAPEncounterConnectionType.ASAP_HUB;
+    private static final ASAPEncounterConnectionType AD_HOC =
+            ASAPEncounterConnectionType.AD_HOC_LAYER_2_NETWORK;
+
+    @TempDir
+    File tmpDir;
+
+    @Test
+    public void oldestRecordsAreOverwrittenAndSurviveReopen() {
+        EncounterLog log = new EncounterLog(this.tmpDir, 3, transport(HUB));
+        for(int i = 1; i <= 5; i++) log.append("peer" + i, i * 1000, i, AD_HOC);
+
+        EncounterLog reopened = new EncounterLog(this.tmpDir, 3, transport(HUB));
+        List<EncounterLog.Record> records = reopened.read();
+        Assertions.assertEquals(3, records.size());
+        Assertions.assertEquals("peer3", records.get(0).getPeerID());
+        Assertions.assertEquals("peer5", records.get(2).getPeerID());
+        Assertions.assertEquals(5, records.get(2).getDurationInMillis());
+        Assertions.assertEquals(AD_HOC, records.get(2).getTransport());
+
+        // appending goes on after last record
+        reopened.append("peer6", 6000, 6, HUB);
+        records = reopened.read();
+        Assertions.assertEquals("peer4", records.get(0).getPeerID());
+        Assertions.assertEquals(6, records.get(2).getSequence());
+
+        // another capacity - log starts over
+        Assertions.assertTrue(new EncounterLog(this.tmpDir, 4, transport(HUB)).read().isEmpty());
+    }
+
+    @Test
+    public void encountersAreAggregatedByPeerAndTransport() {
+        CountingSource source = new CountingSource(HUB);
+        EncounterLog log = new EncounterLog(this.tmpDir, 16, source);
+        log.encounterStarted("Alice");
+        log.encounterTerminated("Alice");
+        log.encounterStarted("Alice");
+        log.encounterTerminated("Alice");
+        log.encounterTerminated("Bob"); // never started
+        // transport looked up once per encounter - at its start
+        Assertions.assertEquals(2, source.lookups);
+        log.append("Alice", 0, 2000, AD_HOC);
+        log.append("a-very-long-peer-id-that-does-not-fit", 0, 1000, AD_HOC);
+
+        List<EncounterLog.Aggregate> aggregates = EncounterLog.aggregate(log.read());
+        Assertions.assertEquals(3, aggregates.size());
+        EncounterLog.Aggregate alice = aggregates.get(0);
+        Assertions.assertEquals("Alice", alice.getPeerID());
+        Assertions.assertEquals(HUB, alice.getTransport());
+        Assertions.assertEquals(2, alice.getEncounters());
+
+        // same encounter number - most recent first
+        Assertions.assertEquals(AD_HOC, aggregates.get(1).getTransport());
+        Assertions.assertEquals(EncounterLog.MAX_PEER_ID_LENGTH,
+                aggregates.get(2).getPeerID().length());
+    }
+
+    private static EncounterLog.TransportSource transport(ASAPEncounterConnectionType type) {
+        return new CountingSource(type);
+    }
+
+    /**
+     * Same transport for each peer - counts lookups.
+     */
+    private static class CountingSource implements EncounterLog.TransportSource {
+        private final ASAPEncounterConnectionType type;
+        int lookups = 0;
+
+        CountingSource(ASAPEncounterConnectionType type) {
+            this.type = type;
+        }
+
+        @Override
+        public ASAPEncounterConnectionType getTransport(CharSequence peerID) {
+            this.lookups++;
+            return this.type;
+        }
+    }
+}
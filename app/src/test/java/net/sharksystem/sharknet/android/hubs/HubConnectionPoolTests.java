@@ -0,0 +1,181 @@
+package net.sharksystem.sharknet.android.hubs;
+
+import net.sharksystem.hub.hubside.ASAPTCPHub;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.hub.peerside.TCPHubConnectorDescriptionImpl;
+import net.sharksystem.hub.protocol.HubPDU;
+import net.sharksystem.hub.protocol.HubPDUSilentRPLY;
+import net.sharksystem.hub.protocol.HubPDUSilentRQ;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class HubConnectionPoolTests {
+    @Test
+    public void connectionsAreReused() throws Exception {
+        int port = freePort();
+        ASAPTCPHub hub = ASAPTCPHub.startTCPHubThread(port, true, 60);
+        Thread.sleep(200);
+
+        HubConnectorDescription hubDescription =
+                new TCPHubConnectorDescriptionImpl("localhost", port, true);
+        Assertions.assertTrue(HubConnectionPool.isPooled(hubDescription));
+
+        HubConnectionPool pool =
+                new HubConnectionPool(2, 8, 60000, new HubTrafficMetrics());
+        try {
+            pool.check(hubDescription, 1000);
+            pool.check(hubDescription, 1000);
+            pool.check(hubDescription, 1000);
+
+            HubConnectionPool.Stats stats = pool.getStats();
+            Assertions.assertEquals(1, stats.getMisses());
+            Assertions.assertEquals(2, stats.getHits());
+            Assertions.assertEquals(1, stats.getSize());
+            Assertions.assertEquals(1, stats.getIdle());
+
+            // recently used connection survives eviction
+            pool.evictIdle();
+            Assertions.assertEquals(1, pool.getStats().getIdle());
+        } finally {
+            hub.kill();
+        }
+    }
+
+    @Test
+    public void brokenConnectionsAreReplaced() throws Exception {
+        DroppingHub hub = new DroppingHub();
+        HubConnectorDescription hubDescription = new TCPHubConnectorDescriptionImpl(
+                "localhost", hub.serverSocket.getLocalPort(), true);
+
+        try {
+            HubConnectionPool pool =
+                    new HubConnectionPool(2, 8, 60000, new HubTrafficMetrics());
+            pool.check(hubDescription, 1000);
+
+            // hub dropped connection - next borrower retries on a fresh one
+            hub.dropConnections();
+            pool.check(hubDescription, 1000);
+            Assertions.assertEquals(2, pool.getStats().getMisses());
+            Assertions.assertEquals(1, pool.getStats().getEvictedUnhealthy());
+            Assertions.assertEquals(1, pool.getStats().getSize());
+        } finally {
+            hub.serverSocket.close();
+        }
+    }
+
+    @Test
+    public void idleConnectionsAreEvicted() throws Exception {
+        int port = freePort();
+        ASAPTCPHub hub = ASAPTCPHub.startTCPHubThread(port, true, 60);
+        Thread.sleep(200);
+
+        try {
+            HubConnectionPool pool =
+                    new HubConnectionPool(2, 8, 0, new HubTrafficMetrics());
+            pool.check(new TCPHubConnectorDescriptionImpl("localhost", port, true), 1000);
+            Assertions.assertEquals(1, pool.getStats().getIdle());
+
+            Thread.sleep(5);
+            pool.evictIdle();
+            Assertions.assertEquals(0, pool.getStats().getSize());
+            Assertions.assertEquals(1, pool.getStats().getEvictedIdle());
+        } finally {
+            hub.kill();
+        }
+    }
+
+    @Test
+    public void poolSizeIsLimited() throws Exception {
+        DroppingHub hubA = new DroppingHub();
+        DroppingHub hubB = new DroppingHub();
+        HubConnectorDescription hubDescriptionA = new TCPHubConnectorDescriptionImpl(
+                "localhost", hubA.serverSocket.getLocalPort(), true);
+        HubConnectorDescription hubDescriptionB = new TCPHubConnectorDescriptionImpl(
+                "localhost", hubB.serverSocket.getLocalPort(), true);
+
+        try {
+            HubConnectionPool pool = new HubConnectionPool(2, 1, 60000, new HubTrafficMetrics());
+            HubConnectionPool.PooledConnection connection = pool.acquire(hubDescriptionA, 1000);
+
+            // only connection is borrowed
+            try {
+                pool.acquire(hubDescriptionB, 1000);
+                Assertions.fail("pool exceeded its size");
+            } catch (IOException e) {
+                // expected
+            }
+            Assertions.assertEquals(1, pool.getStats().getSize());
+
+            // idle connection to A makes room for B
+            pool.release(connection);
+            pool.release(pool.acquire(hubDescriptionB, 1000));
+            Assertions.assertEquals(1, pool.getStats().getSize());
+            Assertions.assertEquals(1, pool.getStats().getEvictedIdle());
+        } finally {
+            hubA.serverSocket.close();
+            hubB.serverSocket.close();
+        }
+    }
+
+    /**
+     * Answers silence requests - until told to drop its connections
+     */
+    private static class DroppingHub implements Runnable {
+        final ServerSocket serverSocket = new ServerSocket(0);
+        final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+        DroppingHub() throws IOException {
+            Thread thread = new Thread(this);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void dropConnections() throws Exception {
+            for(Socket socket : this.sockets) socket.close();
+            this.sockets.clear();
+            Thread.sleep(50);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while(true) {
+                    final Socket socket = this.serverSocket.accept();
+                    this.sockets.add(socket);
+                    Thread session = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                while(true) {
+                                    HubPDU pdu = HubPDU.readPDU(socket.getInputStream());
+                                    if(pdu instanceof HubPDUSilentRQ) {
+                                        new HubPDUSilentRPLY(1).sendPDU(socket.getOutputStream());
+                                    }
+                                }
+                            } catch (Exception e) {
+                                // dropped
+                            }
+                        }
+                    });
+                    session.setDaemon(true);
+                    session.start();
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try(ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
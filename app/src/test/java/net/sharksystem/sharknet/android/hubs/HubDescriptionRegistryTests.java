@@ -0,0 +1,93 @@
+package net.sharksystem.sharknet.android.hubs;
+
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.hub.peerside.TCPHubConnectorDescriptionImpl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HubDescriptionRegistryTests {
+    @Test
+    public void duplicatesInStoreAreRemoved() throws IOException {
+        TestStore store = new TestStore();
+        store.hubs.add(new TCPHubConnectorDescriptionImpl("hub.example.org", 6910));
+        store.hubs.add(new TCPHubConnectorDescriptionImpl("other.example.org", 6910));
+        store.hubs.add(new TCPHubConnectorDescriptionImpl(" Hub.Example.org. ", 6910));
+
+        HubDescriptionRegistry registry = new HubDescriptionRegistry(store);
+        Assertions.assertEquals(2, registry.size());
+        Assertions.assertEquals(2, store.hubs.size());
+        Assertions.assertEquals("TCP:hub.example.org:6910", registry.getKeys().get(0));
+    }
+
+    @Test
+    public void listenerReplayingEventsStaysInSync() throws IOException {
+        TestStore store = new TestStore();
+        store.hubs.add(new TCPHubConnectorDescriptionImpl("a.example.org", 1));
+        HubDescriptionRegistry registry = new HubDescriptionRegistry(store);
+
+        final List<String> shown = new ArrayList<>(registry.getKeys());
+        registry.addListener(new HubDescriptionRegistry.Listener() {
+            @Override
+            public void hubInserted(int position, String key) {
+                shown.add(position, key);
+            }
+
+            @Override
+            public void hubChanged(int position, String key) {
+                shown.set(position, key);
+            }
+
+            @Override
+            public void hubRemoved(int position, String key) {
+                Assertions.assertEquals(key, shown.remove(position));
+            }
+        });
+
+        String b = registry.put(new TCPHubConnectorDescriptionImpl("b.example.org", 2));
+        String c = registry.put(new TCPHubConnectorDescriptionImpl("c.example.org", 3));
+
+        // same hub again - replaced, not added
+        registry.put(new TCPHubConnectorDescriptionImpl("B.example.org", 2, true));
+        Assertions.assertEquals(3, registry.size());
+        Assertions.assertTrue(registry.get(b).canMultiChannel());
+
+        // edit keeps position
+        String d = registry.update(b, new TCPHubConnectorDescriptionImpl("d.example.org", 4));
+        Assertions.assertEquals(1, registry.getKeys().indexOf(d));
+        Assertions.assertNull(registry.get(b));
+
+        // edit into a known hub - merged
+        registry.update(d, new TCPHubConnectorDescriptionImpl("c.example.org", 3));
+        Assertions.assertEquals(2, registry.size());
+
+        registry.remove(c);
+        Assertions.assertEquals(1, registry.size());
+
+        Assertions.assertEquals(registry.getKeys(), shown);
+        Assertions.assertEquals(registry.size(), store.hubs.size());
+    }
+
+    private static class TestStore implements HubDescriptionRegistry.Store {
+        final List<HubConnectorDescription> hubs = new ArrayList<>();
+
+        @Override
+        public List<HubConnectorDescription> getHubDescriptions() {
+            return new ArrayList<>(this.hubs);
+        }
+
+        @Override
+        public void addHubDescription(HubConnectorDescription hubDescription) {
+            this.hubs.add(hubDescription);
+        }
+
+        @Override
+        public void removeHubDescription(HubConnectorDescription hubDescription) {
+            this.hubs.remove(hubDescription);
+        }
+    }
+}
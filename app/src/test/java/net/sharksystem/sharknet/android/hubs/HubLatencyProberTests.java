@@ -0,0 +1,80 @@
+package net.sharksystem.sharknet.android.hubs;
+
+import net.sharksystem.hub.hubside.ASAPTCPHub;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.hub.peerside.TCPHubConnectorDescriptionImpl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HubLatencyProberTests {
+    @Test
+    public void loopbackHubRanksBeforeDeadHub() throws Exception {
+        int hubPort = freePort();
+        int deadPort = freePort();
+        ASAPTCPHub hub = ASAPTCPHub.startTCPHubThread(hubPort, false, 60);
+        Thread.sleep(200);
+
+        try {
+            HubLatencyProber prober = new HubLatencyProber(1000,
+                    new HubConnectionPool(2, 8, 60000, new HubTrafficMetrics()));
+            HubConnectorDescription alive = new TCPHubConnectorDescriptionImpl("localhost", hubPort);
+            HubConnectorDescription dead = new TCPHubConnectorDescriptionImpl("localhost", deadPort);
+
+            for(int i = 0; i < HubProbeStats.DOWN_AFTER_FAILURES; i++) {
+                HubProbeStats aliveStats = prober.probe(alive);
+                Assertions.assertNull(aliveStats.getLastFailure(), aliveStats.getLastFailure());
+                Assertions.assertTrue(aliveStats.getRttMillis() >= 0);
+                Assertions.assertTrue(aliveStats.getBytesPerSecond() > 0);
+
+                Assertions.assertNotNull(prober.probe(dead).getLastFailure());
+            }
+
+            Assertions.assertEquals(1, prober.getRank(alive));
+            Assertions.assertEquals(0, prober.getRank(dead));
+            Assertions.assertTrue(prober.getStats(dead).isDown());
+
+            List<HubConnectorDescription> hubs = new ArrayList<>();
+            hubs.add(dead);
+            hubs.add(alive);
+            List<HubConnectorDescription> preferred = prober.preferred(hubs);
+            Assertions.assertEquals(1, preferred.size());
+            Assertions.assertTrue(preferred.get(0).isSame(alive));
+        } finally {
+            hub.kill();
+        }
+    }
+
+    @Test
+    public void movingAverageFollowsSamples() {
+        HubProbeStats stats = new HubProbeStats("hub:1");
+        Assertions.assertTrue(Double.isInfinite(stats.getScore()));
+
+        stats = stats.withSuccess(10, 100, 1000);
+        Assertions.assertEquals(100, stats.getRttMillis(), 0.001);
+
+        stats = stats.withSuccess(10, 200, 1000);
+        Assertions.assertEquals(130, stats.getRttMillis(), 0.001);
+
+        // one failure doubles expected time, three in a row mean down
+        double score = stats.getScore();
+        stats = stats.withFailure("timeout");
+        Assertions.assertEquals(2 * score, stats.getScore(), 0.001);
+        stats = stats.withFailure("timeout").withFailure("timeout");
+        Assertions.assertTrue(stats.isDown());
+
+        stats = stats.withSuccess(10, 100, 1000);
+        Assertions.assertFalse(stats.isDown());
+    }
+
+    private static int freePort() throws IOException {
+        try(ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package net.sharksystem.sharknet.android.hubs;
+
+import net.sharksystem.hub.HubConnectionManager;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.hub.peerside.TCPHubConnectorDescriptionImpl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HubReconnectSchedulerTests {
+    @Test
+    public void backoffGrowsWithJitterUpToMax() {
+        HubReconnectScheduler scheduler =
+                new HubReconnectScheduler(100, 1000, 10, 60000, 500, new Random(42),
+                        new HubConnectionPool(2, 8, 60000, new HubTrafficMetrics()));
+
+        for(int failures = 1; failures < 10; failures++) {
+            long max = Math.min(1000, 100L << (failures - 1));
+            for(int i = 0; i < 100; i++) {
+                long delay = scheduler.backoff(failures);
+                Assertions.assertTrue(delay >= max / 2 && delay <= max, failures + ": " + delay);
+            }
+        }
+    }
+
+    @Test
+    public void circuitOpensAndConnectivityReturnReconnects() throws Exception {
+        int port = freePort();
+        HubConnectorDescription hub = new TCPHubConnectorDescriptionImpl("localhost", port);
+
+        final AtomicInteger handedOver = new AtomicInteger();
+        HubTrafficMetrics metrics = new HubTrafficMetrics();
+        HubReconnectScheduler scheduler =
+                new HubReconnectScheduler(10, 40, 3, 60000, 500, new Random(42),
+                        new HubConnectionPool(2, 8, 60000, metrics));
+        scheduler.setHubConnector(new HubReconnectScheduler.HubConnector() {
+            @Override
+            public boolean connect(HubConnectorDescription hubDescription) {
+                handedOver.incrementAndGet();
+                return true;
+            }
+        });
+
+        scheduler.watch(Collections.singletonList(hub));
+        Assertions.assertEquals(HubReconnectState.State.CONNECTED, scheduler.getState(hub).getState());
+        // connect is counted when hand over is reported - not by watching
+        Assertions.assertEquals(0, metrics.forHub(hub).getConnects());
+
+        // nobody listens - retries fail until circuit opens
+        scheduler.hubFailed(hub, "test");
+        waitFor(scheduler, hub, HubReconnectState.State.CIRCUIT_OPEN);
+        Assertions.assertEquals(3, scheduler.getState(hub).getFailures());
+        Assertions.assertEquals(0, handedOver.get());
+
+        scheduler.connectivityLost();
+        Assertions.assertEquals(HubReconnectState.State.OFFLINE, scheduler.getState(hub).getState());
+        Assertions.assertEquals(0, scheduler.getState(hub).getNextAttemptAt());
+
+        // hub is back - and so is the network
+        try(ServerSocket hubSocket = new ServerSocket(port)) {
+            Assertions.assertTrue(hubSocket.isBound());
+            scheduler.connectivityRestored();
+            waitFor(scheduler, hub, HubReconnectState.State.CONNECTED);
+            Assertions.assertEquals(1, handedOver.get());
+            Assertions.assertEquals(1, metrics.forHub(hub).getConnects());
+            // handed over is not connected - failures count until ASAP reports the hub
+            Assertions.assertEquals(3, scheduler.getState(hub).getFailures());
+
+            scheduler.hubListReceived(Collections.singletonList(hub),
+                    Collections.<HubConnectionManager.FailedConnectionAttempt>emptyList());
+            Assertions.assertEquals(0, scheduler.getState(hub).getFailures());
+        }
+
+        scheduler.unwatchAll();
+        Assertions.assertNull(scheduler.getState(hub));
+    }
+
+    private static void waitFor(HubReconnectScheduler scheduler, HubConnectorDescription hub,
+                                HubReconnectState.State state) throws InterruptedException {
+        long until = System.currentTimeMillis() + 5000;
+        while(scheduler.getState(hub).getState() != state && System.currentTimeMillis() < until) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(state, scheduler.getState(hub).getState());
+    }
+
+    private static int freePort() throws IOException {
+        try(ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package net.sharksystem.sharknet.android.hubs;
+
+import net.sharksystem.hub.hubside.ASAPTCPHub;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.hub.peerside.TCPHubConnectorDescriptionImpl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+public class HubTrafficMetricsTests {
+    @Test
+    public void probesAndKeepAlivesAreCounted() throws Exception {
+        int port = freePort();
+        ASAPTCPHub hub = ASAPTCPHub.startTCPHubThread(port, true, 60);
+        Thread.sleep(200);
+
+        HubTrafficMetrics metrics = new HubTrafficMetrics();
+        try {
+            HubConnectionPool pool = new HubConnectionPool(2, 8, 60000, metrics);
+            HubConnectorDescription hubDescription =
+                    new TCPHubConnectorDescriptionImpl("localhost", port, true);
+
+            pool.check(hubDescription, 1000);
+            new HubLatencyProber(1000, pool).probe(hubDescription);
+
+            HubTrafficMetrics.HubMetrics hubMetrics = metrics.forHub(hubDescription);
+            Assertions.assertEquals(1, hubMetrics.getPdusOut(HubTrafficMetrics.PduType.SILENT));
+            Assertions.assertEquals(1, hubMetrics.getPdusIn(HubTrafficMetrics.PduType.SILENT));
+            Assertions.assertEquals(1 + HubLatencyProber.BURST_SIZE,
+                    hubMetrics.getPdusOut(HubTrafficMetrics.PduType.STATUS));
+            Assertions.assertEquals(1 + HubLatencyProber.BURST_SIZE,
+                    hubMetrics.getPdusIn(HubTrafficMetrics.PduType.STATUS));
+            Assertions.assertTrue(hubMetrics.getBytesIn() > 0);
+            Assertions.assertTrue(hubMetrics.getBytesOut() > 0);
+            Assertions.assertEquals(0, hubMetrics.getIOErrors());
+
+            // nobody listens
+            HubConnectorDescription dead =
+                    new TCPHubConnectorDescriptionImpl("localhost", freePort(), true);
+            try {
+                pool.check(dead, 1000);
+                Assertions.fail("dead hub answered");
+            } catch (IOException e) {
+                // expected
+            }
+            Assertions.assertEquals(1, metrics.forHub(dead).getIOErrors());
+            Assertions.assertNotNull(metrics.forHub(dead).getLastError());
+        } finally {
+            hub.kill();
+        }
+    }
+
+    @Test
+    public void encountersAreCountedForHubPeerWasSeenOn() throws Exception {
+        HubTrafficMetrics metrics = new HubTrafficMetrics();
+        HubConnectorDescription hubDescription =
+                new TCPHubConnectorDescriptionImpl("localhost", 6907);
+
+        metrics.peersSeen(hubDescription, Collections.<CharSequence>singleton("Alice"));
+        metrics.encounterStarted("Alice");
+        metrics.encounterStarted("Bob");
+        Thread.sleep(20);
+        metrics.encounterTerminated("Alice");
+        metrics.encounterTerminated("Bob");
+        // never started
+        metrics.encounterTerminated("Clara");
+
+        HubTrafficMetrics.HubMetrics hubMetrics = metrics.forHub(hubDescription);
+        Assertions.assertEquals(1, hubMetrics.getEncounters());
+        Assertions.assertTrue(hubMetrics.getMaxEncounterMillis() >= 20);
+        Assertions.assertEquals(1, metrics.getEncountersWithoutHub());
+
+        File dir = Files.createTempDirectory("hubTraffic").toFile();
+        File dump = metrics.dump(dir);
+        String report = new String(Files.readAllBytes(dump.toPath()), StandardCharsets.UTF_8);
+        Assertions.assertTrue(report.contains(HubDescriptionRegistry.key(hubDescription)), report);
+
+        metrics.reset();
+        Assertions.assertTrue(metrics.getHubs().isEmpty());
+        Assertions.assertEquals(0, metrics.getEncountersWithoutHub());
+    }
+
+    private static int freePort() throws IOException {
+        try(ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
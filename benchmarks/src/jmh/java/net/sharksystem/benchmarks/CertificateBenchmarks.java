@@ -0,0 +1,56 @@
+package net.sharksystem.benchmarks;
+
+import net.sharksystem.asap.pki.ASAPCertificateImpl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.KeyPair;
+
+/**
+ * SharkPKI certificate operations: issue, parse, verify.
+ */
+@State(Scope.Benchmark)
+public class CertificateBenchmarks {
+    @Param({"2048", "3072", "4096"})
+    public int keySize;
+
+    private KeyPair issuerKeyPair;
+    private KeyPair subjectKeyPair;
+    private ASAPCertificateImpl certificate;
+    private byte[] certificateBytes;
+
+    @Setup
+    public void setup() throws Exception {
+        this.issuerKeyPair = KeyStoreBenchmarks.generateKeyPair(this.keySize);
+        this.subjectKeyPair = KeyStoreBenchmarks.generateKeyPair(this.keySize);
+        this.certificate = issue("issuer", this.issuerKeyPair, "subject", this.subjectKeyPair);
+        this.certificateBytes = this.certificate.asBytes();
+    }
+
+    static ASAPCertificateImpl issue(String issuerID, KeyPair issuerKeys,
+                                     String subjectID, KeyPair subjectKeys) throws Exception {
+        return ASAPCertificateImpl.produceCertificate(
+                issuerID, issuerID, issuerKeys.getPrivate(),
+                subjectID, subjectID, subjectKeys.getPublic(),
+                System.currentTimeMillis(), ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD);
+    }
+
+    @Benchmark
+    public ASAPCertificateImpl issueCertificate() throws Exception {
+        return issue("issuer", this.issuerKeyPair, "subject", this.subjectKeyPair);
+    }
+
+    @Benchmark
+    public ASAPCertificateImpl parseCertificate() throws Exception {
+        return ASAPCertificateImpl.produceCertificateFromBytes(this.certificateBytes);
+    }
+
+    @Benchmark
+    public boolean verifyCertificate() throws Exception {
+        return this.certificate.verify(this.issuerKeyPair.getPublic());
+    }
+}
@@ -0,0 +1,57 @@
+package net.sharksystem.benchmarks;
+
+import net.sharksystem.asap.pki.ASAPCertificateImpl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+
+/**
+ * Checking a whole certification path from owner to a person - as behind an identity
+ * assurance value.
+ */
+@State(Scope.Benchmark)
+public class CertificationPathBenchmarks {
+    @Param({"2048", "3072", "4096"})
+    public int keySize;
+
+    @Param({"1", "3", "5"})
+    public int pathLength;
+
+    private PublicKey ownerPublicKey;
+    /** path[0] is issued by owner, path[i] by subject of path[i-1] */
+    private ASAPCertificateImpl[] path;
+
+    @Setup
+    public void setup() throws Exception {
+        KeyPair issuerKeys = KeyStoreBenchmarks.generateKeyPair(this.keySize);
+        this.ownerPublicKey = issuerKeys.getPublic();
+
+        this.path = new ASAPCertificateImpl[this.pathLength];
+        String issuerID = "owner";
+        for(int i = 0; i < this.pathLength; i++) {
+            KeyPair subjectKeys = KeyStoreBenchmarks.generateKeyPair(this.keySize);
+            String subjectID = "person" + i;
+            this.path[i] = CertificateBenchmarks.issue(issuerID, issuerKeys, subjectID, subjectKeys);
+            issuerKeys = subjectKeys;
+            issuerID = subjectID;
+        }
+    }
+
+    /** each certificate is verified with the public key of the previous subject */
+    @Benchmark
+    public boolean verifyCertificationPath() throws Exception {
+        boolean valid = true;
+        PublicKey issuerKey = this.ownerPublicKey;
+        for(ASAPCertificateImpl certificate : this.path) {
+            valid &= certificate.verify(issuerKey);
+            issuerKey = certificate.getPublicKey();
+        }
+        return valid;
+    }
+}
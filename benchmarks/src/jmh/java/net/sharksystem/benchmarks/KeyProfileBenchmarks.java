@@ -0,0 +1,74 @@
+package net.sharksystem.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Random;
+
+/**
+ * Both key profiles of the app (KeyProfile: RSA 2048 with RSA/PSS, EC P-256 with ECDSA):
+ * sign and verify. Owner keys are RSA - EC is measured for comparison. Runs with the plain
+ * JVM crypto provider - hardware backed keys on a device give other absolute numbers.
+ * <p>
+ * Signature and public key sizes are written to the log at setup.
+ */
+@State(Scope.Benchmark)
+public class KeyProfileBenchmarks {
+    @Param({"RSA_2048", "EC_P256"})
+    public String profile;
+
+    @Param({"64", "1024"})
+    public int payloadSize;
+
+    private KeyPair keyPair;
+    private byte[] payload;
+    private byte[] signature;
+
+    @Setup
+    public void setup() throws Exception {
+        if("EC_P256".equals(this.profile)) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            this.keyPair = generator.generateKeyPair();
+        } else {
+            this.keyPair = KeyStoreBenchmarks.generateKeyPair(2048);
+        }
+
+        this.payload = new byte[this.payloadSize];
+        new Random(42).nextBytes(this.payload);
+        this.signature = this.sign();
+
+        System.out.println(this.profile + ": signature " + this.signature.length
+                + " bytes | public key " + this.keyPair.getPublic().getEncoded().length + " bytes");
+    }
+
+    private Signature signature() throws GeneralSecurityException {
+        return "EC_P256".equals(this.profile)
+                ? Signature.getInstance("SHA256withECDSA")
+                : KeyStoreBenchmarks.pss();
+    }
+
+    @Benchmark
+    public byte[] sign() throws GeneralSecurityException {
+        Signature signature = this.signature();
+        signature.initSign(this.keyPair.getPrivate());
+        signature.update(this.payload);
+        return signature.sign();
+    }
+
+    @Benchmark
+    public boolean verify() throws GeneralSecurityException {
+        Signature signature = this.signature();
+        signature.initVerify(this.keyPair.getPublic());
+        signature.update(this.payload);
+        return signature.verify(this.signature);
+    }
+}
@@ -0,0 +1,127 @@
+package net.sharksystem.benchmarks;
+
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.crypto.ASAPCryptoAlgorithms;
+import net.sharksystem.asap.crypto.InMemoASAPKeyStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.util.Random;
+
+/**
+ * Signing, verification and encryption as used by the app - with ASAP algorithms
+ * ({@link InMemoASAPKeyStore}) and with the RSA/PSS signature AndroidASAPKeyStore uses.
+ * <p>
+ * Android's "SHA256withRSA/PSS" is called "RSASSA-PSS" with SHA-256 / MGF1 / 32 byte salt
+ * parameters on a plain JVM - same algorithm, different name.
+ */
+@State(Scope.Benchmark)
+public class KeyStoreBenchmarks {
+    static final String ALICE = "alice";
+    static final String BOB = "bob";
+
+    @Param({"2048", "3072", "4096"})
+    public int keySize;
+
+    @Param({"64", "1024", "16384"})
+    public int payloadSize;
+
+    private InMemoASAPKeyStore aliceKeyStore;
+    private InMemoASAPKeyStore bobKeyStore;
+    private KeyPair aliceKeyPair;
+
+    private byte[] payload;
+    private byte[] asapSignature;
+    private byte[] pssSignature;
+    private byte[] encryptedPackage;
+
+    @Setup
+    public void setup() throws Exception {
+        this.aliceKeyPair = generateKeyPair(this.keySize);
+        KeyPair bobKeyPair = generateKeyPair(this.keySize);
+
+        // each side knows the other's public key - like after certificate exchange
+        this.aliceKeyStore = new InMemoASAPKeyStore(ALICE, this.aliceKeyPair, System.currentTimeMillis());
+        this.aliceKeyStore.addKeyPair(BOB, bobKeyPair);
+        this.bobKeyStore = new InMemoASAPKeyStore(BOB, bobKeyPair, System.currentTimeMillis());
+        this.bobKeyStore.addKeyPair(ALICE, this.aliceKeyPair);
+
+        this.payload = new byte[this.payloadSize];
+        new Random(42).nextBytes(this.payload);
+
+        this.asapSignature = ASAPCryptoAlgorithms.sign(this.payload, this.aliceKeyStore);
+        this.pssSignature = this.signPSS();
+        this.encryptedPackage = ASAPCryptoAlgorithms.produceEncryptedMessagePackage(
+                this.payload, BOB, this.aliceKeyStore);
+    }
+
+    static KeyPair generateKeyPair(int keySize) throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(keySize);
+        return generator.generateKeyPair();
+    }
+
+    static Signature pss() throws GeneralSecurityException {
+        Signature signature = Signature.getInstance("RSASSA-PSS");
+        signature.setParameter(new PSSParameterSpec(
+                "SHA-256", "MGF1", MGF1ParameterSpec.SHA256, 32, 1));
+        return signature;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                        signatures                                       //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Benchmark
+    public byte[] signASAP() throws ASAPSecurityException {
+        return ASAPCryptoAlgorithms.sign(this.payload, this.aliceKeyStore);
+    }
+
+    @Benchmark
+    public boolean verifyASAP() throws ASAPSecurityException {
+        return ASAPCryptoAlgorithms.verify(this.payload, this.asapSignature, ALICE, this.bobKeyStore);
+    }
+
+    @Benchmark
+    public byte[] signPSS() throws GeneralSecurityException {
+        Signature signature = pss();
+        signature.initSign(this.aliceKeyPair.getPrivate());
+        signature.update(this.payload);
+        return signature.sign();
+    }
+
+    @Benchmark
+    public boolean verifyPSS() throws GeneralSecurityException {
+        Signature signature = pss();
+        signature.initVerify(this.aliceKeyPair.getPublic());
+        signature.update(this.payload);
+        return signature.verify(this.pssSignature);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                        encryption                                       //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /** fresh symmetric key, wrapped with recipient's public key - what each encrypted message costs */
+    @Benchmark
+    public byte[] encryptPackage() throws ASAPSecurityException {
+        return ASAPCryptoAlgorithms.produceEncryptedMessagePackage(this.payload, BOB, this.aliceKeyStore);
+    }
+
+    @Benchmark
+    public byte[] decryptPackage() throws Exception {
+        return ASAPCryptoAlgorithms.decryptPackage(
+                ASAPCryptoAlgorithms.parseEncryptedMessagePackage(this.encryptedPackage),
+                this.bobKeyStore);
+    }
+}
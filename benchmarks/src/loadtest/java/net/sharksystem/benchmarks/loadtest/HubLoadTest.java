@@ -0,0 +1,431 @@
+package net.sharksystem.benchmarks.loadtest;
+
+import net.sharksystem.hub.hubside.ASAPTCPHub;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.hub.peerside.TCPHubConnectorDescriptionImpl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Many peers, one hub, one JVM. Starts an ASAPTCPHub on loopback and N shark peers
+ * ({@link LoadTestPeer}), waits until all peers met each other through the hub and drives
+ * messenger and credential traffic. Reports throughput, end to end latency percentiles and
+ * storage growth.
+ * <p>
+ * Options are name=value arguments, see {@link #DEFAULTS}. ASAP logs a lot to stdout - it is
+ * redirected into a log file, stdout carries the report only.
+ */
+public class HubLoadTest {
+    static final Map<String, String> DEFAULTS = new HashMap<>();
+    static {
+        DEFAULTS.put("peers", "5");
+        /* messages and credentials are per peer, each is delivered to all other peers */
+        DEFAULTS.put("messages", "20");
+        /* first n peers send messages, 0: all peers. Peers sending and receiving on the same
+           channel at the same time break their ASAP sessions (ASAPJava 0.x) - try senders=0 */
+        DEFAULTS.put("senders", "1");
+        DEFAULTS.put("messageSize", "256");
+        DEFAULTS.put("credentials", "1");
+        /* between two sends of a peer */
+        DEFAULTS.put("intervalMillis", "100");
+        DEFAULTS.put("sign", "false");
+        DEFAULTS.put("multiChannel", "true");
+        /* ASAP default is a minute - a broken encounter would end the test */
+        DEFAULTS.put("reconnectMillis", "1000");
+        DEFAULTS.put("timeoutSeconds", "120");
+        DEFAULTS.put("dir", "build/loadtest");
+        DEFAULTS.put("resultsFile", "build/results/loadtest/results.json");
+    }
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 1.0};
+
+    private final Map<String, String> options;
+    private final LatencyRecorder messageLatencies = new LatencyRecorder();
+    private final LatencyRecorder credentialLatencies = new LatencyRecorder();
+    private final AtomicLong deliveredBytes = new AtomicLong();
+    private final AtomicLong lastDeliveryAt = new AtomicLong();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile String lastFailure = null;
+    /** peer id - send times of its credentials */
+    private final Map<String, List<Long>> credentialSendTimes = new HashMap<>();
+
+    HubLoadTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(DEFAULTS);
+        for(String arg : args) {
+            int i = arg.indexOf('=');
+            if(i < 0 || !DEFAULTS.containsKey(arg.substring(0, i))) {
+                System.err.println("unknown option: " + arg + " - known: " + DEFAULTS.keySet());
+                System.exit(2);
+            }
+            options.put(arg.substring(0, i), arg.substring(i + 1));
+        }
+
+        boolean complete = new HubLoadTest(options).run(System.out);
+        // hub and ASAP threads are not daemons
+        System.exit(complete ? 0 : 1);
+    }
+
+    private int intOption(String name) {
+        return Integer.parseInt(this.options.get(name));
+    }
+
+    private boolean booleanOption(String name) {
+        return Boolean.parseBoolean(this.options.get(name));
+    }
+
+    /**
+     * @return true if all traffic was delivered in time
+     */
+    boolean run(PrintStream report) throws Exception {
+        int peerNumber = this.intOption("peers");
+        int messages = this.intOption("messages");
+        int senders = this.intOption("senders");
+        if(senders <= 0 || senders > peerNumber) senders = peerNumber;
+        int messageSize = Math.max(LoadTestPeer.MESSAGE_HEADER_SIZE, this.intOption("messageSize"));
+        int credentials = this.intOption("credentials");
+        long intervalMillis = this.intOption("intervalMillis");
+        boolean sign = this.booleanOption("sign");
+        boolean multiChannel = this.booleanOption("multiChannel");
+        long timeoutMillis = this.intOption("timeoutSeconds") * 1000L;
+        long reconnectMillis = this.intOption("reconnectMillis");
+
+        File dir = new File(this.options.get("dir"));
+        File peersDir = new File(dir, "peers");
+        delete(peersDir);
+        peersDir.mkdirs();
+
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        File logFile = new File(dir, "asap.log");
+        PrintStream log = new PrintStream(new FileOutputStream(logFile), false, "UTF-8");
+        System.setOut(log);
+        System.setErr(log);
+
+        int port = freePort();
+        ASAPTCPHub hub = ASAPTCPHub.startTCPHubThread(port, multiChannel, 60);
+        List<LoadTestPeer> peers = new ArrayList<>();
+        ScheduledExecutorService sender = Executors.newScheduledThreadPool(
+                Math.min(peerNumber, Runtime.getRuntime().availableProcessors()));
+        try {
+            Thread.sleep(200);
+            HubConnectorDescription hubDescription =
+                    new TCPHubConnectorDescriptionImpl("localhost", port, multiChannel);
+
+            ///////////////////////////////////// peers meet through hub
+            long setupStart = System.nanoTime();
+            for(int i = 0; i < peerNumber; i++) {
+                LoadTestPeer peer = new LoadTestPeer(this, i, peersDir);
+                peer.start(reconnectMillis);
+                peer.connectHub(hubDescription);
+                peers.add(peer);
+                synchronized(this.credentialSendTimes) {
+                    this.credentialSendTimes.put(peer.getPeerID(), new ArrayList<Long>());
+                }
+            }
+            boolean meshed = waitFor(System.currentTimeMillis() + timeoutMillis, new Condition() {
+                @Override
+                public boolean met() {
+                    for(LoadTestPeer peer : peers) {
+                        if(peer.getEncounteredPeers() < peers.size() - 1) return false;
+                    }
+                    return true;
+                }
+            });
+            double setupSeconds = (System.nanoTime() - setupStart) / 1e9;
+            long storageBefore = storageBytes(peers);
+
+            ///////////////////////////////////// traffic
+            final long expectedMessages = (long) senders * messages * (peerNumber - 1);
+            final long expectedCredentials = (long) peerNumber * credentials * (peerNumber - 1);
+            Random random = new Random(42);
+            long trafficStart = System.nanoTime();
+            for(final LoadTestPeer peer : peers) {
+                if(!meshed) break;
+                // peers do not send in lock step
+                long offset = (long) (random.nextDouble() * intervalMillis);
+                for(int i = 0; i < messages && peers.indexOf(peer) < senders; i++) {
+                    sender.schedule(new SendMessage(peer, i, messageSize, sign),
+                            offset + i * intervalMillis, TimeUnit.MILLISECONDS);
+                }
+                for(int i = 0; i < credentials; i++) {
+                    long at = offset + (messages * intervalMillis * (i + 1)) / (credentials + 1);
+                    sender.schedule(new SendCredential(peer), at, TimeUnit.MILLISECONDS);
+                }
+            }
+
+            boolean complete = meshed && waitFor(System.currentTimeMillis() + timeoutMillis,
+                    new Condition() {
+                        @Override
+                        public boolean met() {
+                            return messageLatencies.size() >= expectedMessages
+                                    && credentialLatencies.size() >= expectedCredentials;
+                        }
+                    });
+            double trafficSeconds =
+                    Math.max(1, this.lastDeliveryAt.get() - trafficStart) / 1e9;
+            long storageAfter = storageBytes(peers);
+
+            ///////////////////////////////////// report
+            Map<String, Object> results = new HashMap<>();
+            results.put("peers", peerNumber);
+            results.put("multiChannel", multiChannel);
+            results.put("complete", complete);
+            results.put("setupSeconds", setupSeconds);
+            results.put("messagesExpected", expectedMessages);
+            results.put("messagesDelivered", this.messageLatencies.size());
+            results.put("credentialsExpected", expectedCredentials);
+            results.put("credentialsDelivered", this.credentialLatencies.size());
+            results.put("messagesPerSecond", this.messageLatencies.size() / trafficSeconds);
+            results.put("bytesPerSecond", this.deliveredBytes.get() / trafficSeconds);
+            results.put("messageLatencyMillis",
+                    this.messageLatencies.percentilesInMillis(QUANTILES));
+            results.put("credentialLatencyMillis",
+                    this.credentialLatencies.percentilesInMillis(QUANTILES));
+            results.put("storageBytesBefore", storageBefore);
+            results.put("storageBytesAfter", storageAfter);
+            results.put("failures", this.failures.get());
+
+            this.writeReport(report, results, meshed ? null : peers, logFile);
+            this.writeJSON(new File(this.options.get("resultsFile")), results);
+            return complete;
+        } finally {
+            sender.shutdownNow();
+            for(LoadTestPeer peer : peers) peer.stop();
+            hub.kill();
+            System.setOut(stdout);
+            System.setErr(stderr);
+            log.close();
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                  called by peers                                        //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    void messageDelivered(long latencyNanos, int bytes) {
+        this.messageLatencies.record(latencyNanos);
+        this.deliveredBytes.addAndGet(bytes);
+        this.lastDeliveryAt.set(System.nanoTime());
+    }
+
+    /**
+     * @param number how many credentials of that subject receiver got before
+     */
+    void credentialDelivered(String subjectID, int number, long receivedAt) {
+        Long sentAt = null;
+        synchronized(this.credentialSendTimes) {
+            List<Long> sendTimes = this.credentialSendTimes.get(subjectID);
+            if(sendTimes != null && number < sendTimes.size()) sentAt = sendTimes.get(number);
+        }
+        if(sentAt == null) return;
+
+        this.credentialLatencies.record(receivedAt - sentAt);
+        this.lastDeliveryAt.set(System.nanoTime());
+    }
+
+    void failure(String reason) {
+        this.failures.incrementAndGet();
+        this.lastFailure = reason;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                        traffic                                          //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    private class SendMessage implements Runnable {
+        private final LoadTestPeer peer;
+        private final int sequenceNumber;
+        private final int size;
+        private final boolean sign;
+
+        SendMessage(LoadTestPeer peer, int sequenceNumber, int size, boolean sign) {
+            this.peer = peer;
+            this.sequenceNumber = sequenceNumber;
+            this.size = size;
+            this.sign = sign;
+        }
+
+        @Override
+        public void run() {
+            try {
+                this.peer.sendMessage(this.sequenceNumber, this.size, this.sign);
+            } catch (Exception e) {
+                failure(this.peer.getPeerID() + ": cannot send message: " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    private class SendCredential implements Runnable {
+        private final LoadTestPeer peer;
+
+        SendCredential(LoadTestPeer peer) {
+            this.peer = peer;
+        }
+
+        @Override
+        public void run() {
+            // a peer sends one credential at a time - receivers count them in this order
+            synchronized(credentialSendTimes) {
+                credentialSendTimes.get(this.peer.getPeerID()).add(System.nanoTime());
+            }
+            try {
+                this.peer.sendCredential();
+            } catch (Exception e) {
+                failure(this.peer.getPeerID() + ": cannot send credential: "
+                        + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                        output                                           //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param unmeshedPeers peers to list with their encounters if they did not all meet, else null
+     */
+    private void writeReport(PrintStream out, Map<String, Object> results,
+                             List<LoadTestPeer> unmeshedPeers, File logFile) {
+        out.println("hub load test: " + results.get("peers") + " peers, "
+                + (Boolean.TRUE.equals(results.get("multiChannel")) ? "multi" : "shared")
+                + " channel hub");
+        out.println(String.format(Locale.ROOT, "  setup:       %.1f s%s",
+                (Double) results.get("setupSeconds"),
+                unmeshedPeers == null ? "" : " - NOT ALL PEERS MET, traffic skipped"));
+        if(unmeshedPeers != null) {
+            for(LoadTestPeer peer : unmeshedPeers) {
+                out.println("    " + peer.getPeerID() + " met " + peer.getEncounteredPeers()
+                        + " of " + (unmeshedPeers.size() - 1));
+            }
+        }
+        out.println(String.format(Locale.ROOT, "  messages:    %d / %d delivered, %.1f msg/s, %.1f kB/s",
+                results.get("messagesDelivered"), results.get("messagesExpected"),
+                (Double) results.get("messagesPerSecond"),
+                (Double) results.get("bytesPerSecond") / 1024));
+        out.println(String.format(Locale.ROOT, "  credentials: %d / %d delivered",
+                results.get("credentialsDelivered"), results.get("credentialsExpected")));
+        out.println("  latency (ms)   p50      p90      p99      max");
+        out.println(latencyLine("  messages   ", (double[]) results.get("messageLatencyMillis")));
+        out.println(latencyLine("  credentials", (double[]) results.get("credentialLatencyMillis")));
+
+        long before = (Long) results.get("storageBytesBefore");
+        long after = (Long) results.get("storageBytesAfter");
+        int peers = (Integer) results.get("peers");
+        out.println(String.format(Locale.ROOT, "  storage:     %d kB -> %d kB (+%d kB, +%d kB per peer)",
+                before / 1024, after / 1024, (after - before) / 1024,
+                (after - before) / 1024 / Math.max(1, peers)));
+        if(this.failures.get() > 0) {
+            out.println("  failures:    " + this.failures.get() + " - last: " + this.lastFailure);
+        }
+        out.println("  ASAP log:    " + logFile.getAbsolutePath());
+    }
+
+    private static String latencyLine(String label, double[] percentiles) {
+        StringBuilder sb = new StringBuilder(label);
+        for(double percentile : percentiles) {
+            sb.append(String.format(Locale.ROOT, " %8.1f", percentile));
+        }
+        return sb.toString();
+    }
+
+    private void writeJSON(File file, Map<String, Object> results) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(parent != null) parent.mkdirs();
+
+        List<String> names = new ArrayList<>(results.keySet());
+        Collections.sort(names);
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        try {
+            writer.write("{\n");
+            for(int i = 0; i < names.size(); i++) {
+                Object value = results.get(names.get(i));
+                writer.write("  \"" + names.get(i) + "\": " + toJSON(value)
+                        + (i < names.size() - 1 ? ",\n" : "\n"));
+            }
+            writer.write("}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String toJSON(Object value) {
+        if(value instanceof double[]) {
+            double[] percentiles = (double[]) value;
+            StringBuilder sb = new StringBuilder("{");
+            for(int i = 0; i < QUANTILES.length; i++) {
+                if(i > 0) sb.append(", ");
+                sb.append("\"p").append((int) (QUANTILES[i] * 100)).append("\": ")
+                        .append(toJSON(percentiles[i]));
+            }
+            return sb.append("}").toString();
+        }
+        if(value instanceof Double) {
+            double d = (Double) value;
+            return Double.isNaN(d) ? "null" : String.format(Locale.ROOT, "%.3f", d);
+        }
+        return String.valueOf(value);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                        utils                                            //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    private interface Condition {
+        boolean met();
+    }
+
+    private static boolean waitFor(long until, Condition condition) throws InterruptedException {
+        while(!condition.met()) {
+            if(System.currentTimeMillis() > until) return false;
+            Thread.sleep(50);
+        }
+        return true;
+    }
+
+    private static long storageBytes(List<LoadTestPeer> peers) {
+        long bytes = 0;
+        for(LoadTestPeer peer : peers) bytes += peer.getStorageBytes();
+        return bytes;
+    }
+
+    private static int freePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if(children != null) {
+            for(File child : children) delete(child);
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,45 @@
+package net.sharksystem.benchmarks.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Collects latencies (nanoseconds) from many threads - percentiles are computed on a copy.
+ */
+class LatencyRecorder {
+    private long[] samples = new long[1024];
+    private int size = 0;
+
+    synchronized void record(long nanos) {
+        if(this.size == this.samples.length) {
+            this.samples = Arrays.copyOf(this.samples, this.size * 2);
+        }
+        this.samples[this.size++] = nanos;
+    }
+
+    synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * @param quantiles e.g. 0.5, 0.99
+     * @return latency in milliseconds per quantile (nearest rank), NaN if nothing was recorded
+     */
+    double[] percentilesInMillis(double... quantiles) {
+        long[] sorted;
+        synchronized(this) {
+            sorted = Arrays.copyOf(this.samples, this.size);
+        }
+        Arrays.sort(sorted);
+
+        double[] result = new double[quantiles.length];
+        for(int i = 0; i < quantiles.length; i++) {
+            if(sorted.length == 0) {
+                result[i] = Double.NaN;
+            } else {
+                int rank = (int) Math.ceil(quantiles[i] * sorted.length) - 1;
+                result[i] = sorted[Math.max(0, Math.min(rank, sorted.length - 1))] / 1e6;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,197 @@
+package net.sharksystem.benchmarks.loadtest;
+
+import net.sharksystem.SharkException;
+import net.sharksystem.SharkPeerFS;
+import net.sharksystem.app.messenger.SharkMessage;
+import net.sharksystem.app.messenger.SharkMessageList;
+import net.sharksystem.app.messenger.SharkMessagesReceivedListener;
+import net.sharksystem.app.messenger.SharkMessengerComponent;
+import net.sharksystem.app.messenger.SharkMessengerComponentFactory;
+import net.sharksystem.asap.ASAPConnectionHandler;
+import net.sharksystem.asap.ASAPEncounterManagerImpl;
+import net.sharksystem.asap.ASAPPeer;
+import net.sharksystem.hub.HubConnectionManagerImpl;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.pki.CredentialMessage;
+import net.sharksystem.pki.SharkCredentialReceivedListener;
+import net.sharksystem.pki.SharkPKIComponent;
+import net.sharksystem.pki.SharkPKIComponentFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A shark peer set up like SharkNetApp does (PKI and messenger component) - but with a plain
+ * JVM ASAP peer connected to hubs instead of the Android service.
+ */
+class LoadTestPeer {
+    static final String CHANNEL_URI = "sn2://loadtest";
+    /** sender index, sequence number, send time */
+    static final int MESSAGE_HEADER_SIZE = 16;
+
+    private final HubLoadTest loadTest;
+    private final int index;
+    private final String peerID;
+    private final File folder;
+
+    private SharkPeerFS sharkPeer;
+    private SharkPKIComponent pki;
+    private SharkMessengerComponent messenger;
+    private ASAPEncounterManagerImpl encounterManager;
+    private HubConnectionManagerImpl hubConnectionManager;
+
+    /** sender index - sequence numbers received, a message is counted once */
+    private final Map<Integer, Set<Integer>> receivedMessages = new HashMap<>();
+    /** subject id - credentials received */
+    private final Map<String, Integer> receivedCredentials = new HashMap<>();
+
+    LoadTestPeer(HubLoadTest loadTest, int index, File rootFolder) {
+        this.loadTest = loadTest;
+        this.index = index;
+        this.peerID = "LoadTestPeer_" + index;
+        this.folder = new File(rootFolder, this.peerID);
+    }
+
+    String getPeerID() {
+        return this.peerID;
+    }
+
+    /**
+     * @param reconnectMillis peers meet again that long after an encounter ended
+     */
+    void start(long reconnectMillis) throws SharkException, IOException {
+        this.sharkPeer = new SharkPeerFS(this.peerID, this.folder.getAbsolutePath());
+
+        this.sharkPeer.addComponent(new SharkPKIComponentFactory(), SharkPKIComponent.class);
+        this.pki = (SharkPKIComponent) this.sharkPeer.getComponent(SharkPKIComponent.class);
+
+        this.sharkPeer.addComponent(
+                new SharkMessengerComponentFactory(this.pki), SharkMessengerComponent.class);
+        this.messenger = (SharkMessengerComponent)
+                this.sharkPeer.getComponent(SharkMessengerComponent.class);
+
+        this.sharkPeer.start(this.peerID);
+
+        this.messenger.addSharkMessagesReceivedListener(new SharkMessagesReceivedListener() {
+            @Override
+            public void sharkMessagesReceived(CharSequence uri) {
+                messagesReceived(uri);
+            }
+        });
+        this.pki.setSharkCredentialReceivedListener(new SharkCredentialReceivedListener() {
+            @Override
+            public void credentialReceived(CredentialMessage credentialMessage) {
+                LoadTestPeer.this.credentialReceived(credentialMessage);
+            }
+        });
+
+        ASAPPeer asapPeer = this.sharkPeer.getASAPPeer();
+        this.encounterManager = new ASAPEncounterManagerImpl(
+                (ASAPConnectionHandler) asapPeer, asapPeer.getPeerID(), reconnectMillis);
+        this.hubConnectionManager = new HubConnectionManagerImpl(this.encounterManager, asapPeer);
+    }
+
+    void connectHub(HubConnectorDescription hubDescription) throws SharkException, IOException {
+        this.hubConnectionManager.connectHub(hubDescription);
+    }
+
+    /**
+     * @return number of peers there is an open encounter with
+     */
+    int getEncounteredPeers() {
+        return this.encounterManager.getConnectedPeerIDs().size();
+    }
+
+    void sendMessage(int sequenceNumber, int size, boolean sign) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(size);
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeInt(this.index);
+        dos.writeInt(sequenceNumber);
+        dos.writeLong(System.nanoTime());
+        dos.write(new byte[Math.max(0, size - MESSAGE_HEADER_SIZE)]);
+
+        this.messenger.sendSharkMessage(baos.toByteArray(), CHANNEL_URI, sign);
+    }
+
+    void sendCredential() throws Exception {
+        this.pki.sendTransientCredentialMessage();
+    }
+
+    private void messagesReceived(CharSequence uri) {
+        long now = System.nanoTime();
+        try {
+            SharkMessageList messages = this.messenger.getChannel(uri).getMessages();
+            int size = messages.size();
+            for(int i = 0; i < size; i++) {
+                SharkMessage message = messages.getSharkMessage(i, true);
+                byte[] content = message.getContent();
+                if(content.length < MESSAGE_HEADER_SIZE) continue;
+
+                DataInputStream dis = new DataInputStream(new ByteArrayInputStream(content));
+                int sender = dis.readInt();
+                int sequenceNumber = dis.readInt();
+                long sentAt = dis.readLong();
+                if(sender == this.index) continue;
+
+                synchronized(this.receivedMessages) {
+                    Set<Integer> received = this.receivedMessages.get(sender);
+                    if(received == null) {
+                        received = new HashSet<>();
+                        this.receivedMessages.put(sender, received);
+                    }
+                    if(!received.add(sequenceNumber)) continue;
+                }
+                this.loadTest.messageDelivered(now - sentAt, content.length);
+            }
+        } catch (Exception e) {
+            this.loadTest.failure(this.peerID + ": cannot read messages: " + e.getLocalizedMessage());
+        }
+    }
+
+    private void credentialReceived(CredentialMessage credentialMessage) {
+        long now = System.nanoTime();
+        String subjectID = credentialMessage.getSubjectID().toString();
+        int number;
+        synchronized(this.receivedCredentials) {
+            Integer received = this.receivedCredentials.get(subjectID);
+            number = received == null ? 0 : received;
+            this.receivedCredentials.put(subjectID, number + 1);
+        }
+        this.loadTest.credentialDelivered(subjectID, number, now);
+    }
+
+    /**
+     * @return bytes stored by this peer (ASAP storage, PKI, messenger)
+     */
+    long getStorageBytes() {
+        return sizeOf(this.folder);
+    }
+
+    void stop() {
+        try {
+            this.hubConnectionManager.stopThreads();
+            this.sharkPeer.stop();
+        } catch (Exception e) {
+            // shutting down anyway
+        }
+    }
+
+    private static long sizeOf(File file) {
+        if(file.isFile()) return file.length();
+
+        long size = 0;
+        File[] children = file.listFiles();
+        if(children != null) {
+            for(File child : children) size += sizeOf(child);
+        }
+        return size;
+    }
+}